@@ -0,0 +1,529 @@
+package simulator.circuit.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+/**
+ * Class to read a circuit from a file in the binary AIGER format, the ".aig" files written by
+ * {@linkplain CSAigerWriter} and by tools such as ABC.
+ * <p>
+ * An AIGER file describes an and-inverter graph: every variable is an input, a latch or a
+ * two-input AND gate, and a literal is a variable or its inverse. The file starts with the
+ * header "aig M I L O A", giving the largest variable and the number of inputs, latches,
+ * outputs and AND gates, followed by a line per latch with the literal of its next state, a
+ * line per output with its literal, and the AND gates in binary. Every AND gate is stored as
+ * the difference between its variable and its first input and the difference between its two
+ * inputs, each written with 7 bits per byte like the varints of {@linkplain CSSaveWriter}, so
+ * most gates take two or three bytes. Names of inputs, latches and outputs follow in the
+ * symbol table. The nodes are created as follows:
+ * <ul>
+ *  <li>an input becomes an input variable node with its name, or "i" and its number</li>
+ *  <li>a latch becomes a D flip-flop with its name, or "l" and its number, with the output nodes
+ *      "-out" and "-outneg" that {@linkplain CSEngine} gives every D flip-flop</li>
+ *  <li>an AND gate becomes an AND gate named "n" and its variable</li>
+ *  <li>the inverse of an input or AND gate is read from its inverter, named with "-inverter"
+ *      like the inverters added by {@linkplain CSEngine}, and the inverse of a latch from the
+ *      "-outneg" node of its flip-flop</li>
+ *  <li>an output becomes an output variable node with its name, or "o" and its number</li>
+ * </ul>
+ * D flip-flops start at 0, so a latch that starts at 1 is stored inverted: its flip-flop
+ * reads the inverse of the next state, and the latch is read from the "-outneg" node. Latches
+ * that start undefined start at 0. The constant 0 is read from an AND gate named "false" that
+ * reads the first input and its inverse, and the constant 1 from the inverter of that gate, so
+ * that a combinational circuit stays combinational. A file without inputs instead reads the
+ * constants from the "-out" and "-outneg" nodes of a flip-flop named "false" that reads its
+ * own "-out" node. Either is only added if a constant is used.
+ * <p>
+ * The AND gates only read variables before them, so every node is created and connected in
+ * one pass through the file, and the circuit is built all at once like a circuit read from a
+ * save file rather than one node at a time.
+ * 
+ * @author Joel Tengco
+ */
+public class CSAigerReader {
+    /**
+     * Extension of the files read by this class.
+     */
+    public static final String EXTENSION = ".aig";
+
+    /**
+     * Name of the file, for messages.
+     */
+    private final String fileName;
+    /**
+     * Contents of the file.
+     */
+    private final byte[] bytes;
+    /**
+     * Position of the next byte to read.
+     */
+    private int position;
+    /**
+     * The nodes of the circuit, in the order they are created.
+     */
+    private ArrayList<CSNode> nodes;
+    /**
+     * Adjacency list of every node.
+     */
+    private ArrayList<LinkedList<Integer>> edges;
+    /**
+     * Index of the node holding the value of each variable.
+     */
+    private int[] positiveNodes;
+    /**
+     * Index of the node holding the inverse of each variable, or -1 until it is needed.
+     */
+    private int[] negativeNodes;
+    /**
+     * Names given in the file or by default, which names made up for other nodes avoid.
+     */
+    private HashSet<String> names;
+
+    /**
+     * Reads an AIGER file into memory.
+     * 
+     * @param source the file to read
+     * @throws IOException if an error occurred when reading the file, or it is not an AIGER file
+     */
+    public CSAigerReader(File source) throws IOException {
+        if(!isAigerFile(source.getName()))
+            throw new IOException(source.getName() + " is not an \"" + EXTENSION + "\" file");
+
+        fileName = source.getName();
+        bytes = Files.readAllBytes(source.toPath());
+    }
+
+    /**
+     * Returns whether a file name has the extension of the files this class reads.
+     * 
+     * @param fileName the file name
+     * @return true for ".aig" files
+     */
+    public static boolean isAigerFile(String fileName) {
+        return fileName.toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Builds the circuit described by the file.
+     * 
+     * @return the circuit
+     * @throws IOException if the file is damaged or uses what is not supported
+     */
+    public CSGraph readCircuit() throws IOException {
+        int maxVariable;
+        int inputCount;
+        int latchCount;
+        int outputCount;
+        int andCount;
+        int[] latchNext;
+        int[] latchInit;
+        int[] outputLiterals;
+        int[] andInputs;
+        String[] inputNames;
+        String[] latchNames;
+        String[] outputNames;
+        int[] latchNodes;
+        DFlipFlop flipFlop;
+        int lhs;
+        int variable;
+        int first;
+        int second;
+        int node;
+
+        position = 0;
+        if(bytes.length >= 3 && bytes[0] == 'a' && bytes[1] == 'a' && bytes[2] == 'g')
+            throw fail("ASCII AIGER files are not supported, only binary ones");
+        if(bytes.length < 4 || bytes[0] != 'a' || bytes[1] != 'i' || bytes[2] != 'g' || bytes[3] != ' ')
+            throw fail("the file does not start with an \"aig\" header");
+        position = 3;
+        maxVariable = readNumber("the header");
+        inputCount = readNumber("the header");
+        latchCount = readNumber("the header");
+        outputCount = readNumber("the header");
+        andCount = readNumber("the header");
+        while(!atLineEnd())
+            if(readNumber("the header") != 0)
+                throw fail("bad state, invariant, justice and fairness properties are not supported");
+        readLineEnd("the header");
+        if((long)inputCount + latchCount + andCount != maxVariable)
+            throw fail("the header does not give as many variables as inputs, latches and AND gates");
+        if(2L * ((long)latchCount + outputCount + andCount) > bytes.length - position)
+            throw fail("the file is shorter than its header says");
+
+        latchNext = new int[latchCount];
+        latchInit = new int[latchCount];
+        for(int j = 0; j < latchCount; j++) {
+            lhs = 2 * (inputCount + j + 1);
+            latchNext[j] = readLiteral(maxVariable, "latch " + j);
+            if(!atLineEnd()) {
+                latchInit[j] = readNumber("latch " + j);
+                if(latchInit[j] != 0 && latchInit[j] != 1 && latchInit[j] != lhs)
+                    throw fail("latch " + j + " has an invalid initial value");
+                if(latchInit[j] == lhs)
+                    latchInit[j] = 0;
+            }
+            readLineEnd("latch " + j);
+        }
+
+        outputLiterals = new int[outputCount];
+        for(int k = 0; k < outputCount; k++) {
+            outputLiterals[k] = readLiteral(maxVariable, "output " + k);
+            readLineEnd("output " + k);
+        }
+
+        andInputs = new int[2 * andCount];
+        for(int k = 0; k < andCount; k++) {
+            lhs = 2 * (inputCount + latchCount + k + 1);
+            first = lhs - readDelta(k);
+            second = first - readDelta(k);
+            if(first >= lhs || second < 0)
+                throw fail("AND gate " + k + " does not read literals before it");
+            andInputs[2 * k] = first;
+            andInputs[2 * k + 1] = second;
+        }
+
+        inputNames = new String[inputCount];
+        latchNames = new String[latchCount];
+        outputNames = new String[outputCount];
+        readSymbols(inputNames, latchNames, outputNames);
+
+        names = new HashSet<String>();
+        fillNames(inputNames, "i");
+        fillNames(latchNames, "l");
+        fillNames(outputNames, "o");
+
+        nodes = new ArrayList<CSNode>(inputCount + 3 * latchCount + andCount + outputCount);
+        edges = new ArrayList<LinkedList<Integer>>(inputCount + 3 * latchCount + andCount + outputCount);
+        positiveNodes = new int[maxVariable + 1];
+        negativeNodes = new int[maxVariable + 1];
+        Arrays.fill(positiveNodes, -1);
+        Arrays.fill(negativeNodes, -1);
+
+        for(int i = 0; i < inputCount; i++)
+            positiveNodes[i + 1] = addNode(new InputVariableNode(inputNames[i]));
+
+        latchNodes = new int[latchCount];
+        for(int j = 0; j < latchCount; j++) {
+            variable = inputCount + j + 1;
+            flipFlop = new DFlipFlop(latchNames[j]);
+            latchNodes[j] = addFlipFlop(flipFlop);
+            if(latchInit[j] == 1) {
+                // the flip-flop holds the inverse of the latch, which then starts at 1
+                positiveNodes[variable] = latchNodes[j] + 2;
+                negativeNodes[variable] = latchNodes[j] + 1;
+            } else {
+                positiveNodes[variable] = latchNodes[j] + 1;
+                negativeNodes[variable] = latchNodes[j] + 2;
+            }
+        }
+
+        for(int k = 0; k < andCount; k++) {
+            variable = inputCount + latchCount + k + 1;
+            first = getNode(andInputs[2 * k]);
+            second = getNode(andInputs[2 * k + 1]);
+            node = addNode(new AndGate(makeName("n" + variable)));
+            connect(first, node);
+            if(second != first)
+                connect(second, node);
+            positiveNodes[variable] = node;
+        }
+
+        for(int j = 0; j < latchCount; j++)
+            connect(getNode(latchInit[j] == 1 ? latchNext[j] ^ 1 : latchNext[j]), latchNodes[j]);
+
+        for(int k = 0; k < outputCount; k++) {
+            first = getNode(outputLiterals[k]);
+            node = addNode(new OutputVariableNode(outputNames[k]));
+            connect(first, node);
+        }
+
+        try {
+            return new CSGraph(nodes, edges);
+        } catch(IllegalArgumentException iae) {
+            throw fail(iae.getMessage());
+        }
+    }
+
+    /**
+     * Utility method to read the symbol table, which ends at a line starting with "c" or at the
+     * end of the file. Names of the properties that are not supported are skipped.
+     * 
+     * @param inputNames the names of the inputs, filled in from the table
+     * @param latchNames the names of the latches, filled in from the table
+     * @param outputNames the names of the outputs, filled in from the table
+     * @throws IOException if the symbol table is damaged
+     */
+    private void readSymbols(String[] inputNames, String[] latchNames, String[] outputNames) throws IOException {
+        String[] target;
+        byte kind;
+        int index;
+        int start;
+
+        while(position < bytes.length && !isCommentStart()) {
+            kind = bytes[position++];
+            switch(kind) {
+                case 'i':   target = inputNames;
+                            break;
+                case 'l':   target = latchNames;
+                            break;
+                case 'o':   target = outputNames;
+                            break;
+                case 'b':
+                case 'c':
+                case 'j':
+                case 'f':   target = null;
+                            break;
+                default:    throw fail("the symbol table is damaged");
+            }
+
+            index = readNumber("the symbol table");
+            if(position >= bytes.length || bytes[position] != ' ')
+                throw fail("the symbol table is damaged");
+            start = ++position;
+            while(position < bytes.length && bytes[position] != '\n')
+                position++;
+            if(target != null) {
+                if(index >= target.length)
+                    throw fail("the symbol table names " + (char)kind + index + ", which does not exist");
+                target[index] = new String(bytes, start, position - start, StandardCharsets.UTF_8);
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Utility method to check whether the comments start at the next byte, with a line holding
+     * only "c".
+     * 
+     * @return true at the start of the comments
+     */
+    private boolean isCommentStart() {
+        return bytes[position] == 'c'
+                && (position + 1 >= bytes.length || bytes[position + 1] == '\n' || bytes[position + 1] == '\r');
+    }
+
+    /**
+     * Utility method to give default names to the unnamed inputs, latches or outputs, and to
+     * remember every name.
+     * 
+     * @param names the names from the symbol table, with null for those without one
+     * @param prefix the prefix of the default names
+     */
+    private void fillNames(String[] names, String prefix) {
+        for(int i = 0; i < names.length; i++) {
+            if(names[i] == null)
+                names[i] = prefix + i;
+            this.names.add(names[i]);
+        }
+    }
+
+    /**
+     * Utility method to make up a name that is not given to an input, latch or output.
+     * 
+     * @param name the preferred name
+     * @return the name, with underscores appended if it is taken
+     */
+    private String makeName(String name) {
+        while(names.contains(name))
+            name = name + "_";
+
+        return name;
+    }
+
+    /**
+     * Utility method to add a node with an empty adjacency list.
+     * 
+     * @param node the node
+     * @return the index of the node
+     */
+    private int addNode(CSNode node) {
+        nodes.add(node);
+        edges.add(new LinkedList<Integer>());
+
+        return nodes.size() - 1;
+    }
+
+    /**
+     * Utility method to add a D flip-flop followed by its "-out" and "-outneg" nodes.
+     * 
+     * @param flipFlop the flip-flop
+     * @return the index of the flip-flop
+     */
+    private int addFlipFlop(DFlipFlop flipFlop) {
+        FFOutNode outNode = new FFOutNode(flipFlop.getName() + "-out", flipFlop);
+        FFOutNode outNodeNegated = new FFOutNode(flipFlop.getName() + "-outneg", flipFlop);
+        int index = addNode(flipFlop);
+
+        flipFlop.setOutNodes(outNode, outNodeNegated);
+        addNode(outNode);
+        addNode(outNodeNegated);
+        edges.get(index).add(index + 1);
+        edges.get(index).add(index + 2);
+
+        return index;
+    }
+
+    /**
+     * Utility method to connect a node to a node that reads it.
+     * 
+     * @param source the index of the node that is read
+     * @param target the index of the node that reads it
+     */
+    private void connect(int source, int target) {
+        CSSaveReader.addInput(nodes.get(target), nodes.get(source));
+        edges.get(source).add(target);
+    }
+
+    /**
+     * Utility method to get the node that holds the value of a literal, creating the inverter of
+     * a variable or the node of the constants the first time they are needed.
+     * 
+     * @param literal the literal
+     * @return the index of the node
+     */
+    private int getNode(int literal) {
+        int variable = literal >> 1;
+        int source;
+        int inverse;
+
+        if(variable == 0 && positiveNodes[0] == -1) {
+            if(positiveNodes.length > 1 && positiveNodes[1] != -1 && nodes.get(positiveNodes[1]) instanceof InputVariableNode) {
+                // an input and its inverse are never both 1, which needs no state
+                source = getNode(2);
+                inverse = getNode(3);
+                positiveNodes[0] = addNode(new AndGate(makeName("false")));
+                connect(source, positiveNodes[0]);
+                connect(inverse, positiveNodes[0]);
+            } else {
+                source = addFlipFlop(new DFlipFlop(makeName("false")));
+                connect(source + 1, source);
+                positiveNodes[0] = source + 1;
+                negativeNodes[0] = source + 2;
+            }
+        }
+        if((literal & 1) == 0)
+            return positiveNodes[variable];
+
+        if(negativeNodes[variable] == -1) {
+            source = positiveNodes[variable];
+            negativeNodes[variable] = addNode(new Inverter(nodes.get(source).getName() + "-inverter", nodes.get(source)));
+            edges.get(source).add(negativeNodes[variable]);
+        }
+
+        return negativeNodes[variable];
+    }
+
+    /**
+     * Utility method to check whether the next byte ends a line, after any spaces.
+     * 
+     * @return true at the end of a line or of the file
+     */
+    private boolean atLineEnd() {
+        while(position < bytes.length && bytes[position] == ' ')
+            position++;
+
+        return position >= bytes.length || bytes[position] == '\n' || bytes[position] == '\r';
+    }
+
+    /**
+     * Utility method to read the end of a line.
+     * 
+     * @param part the part of the file being read, for messages
+     * @throws IOException if the line goes on
+     */
+    private void readLineEnd(String part) throws IOException {
+        if(!atLineEnd() || position >= bytes.length)
+            throw fail("unexpected text or end of file in " + part);
+        if(bytes[position] == '\r')
+            position++;
+        if(position >= bytes.length || bytes[position] != '\n')
+            throw fail("unexpected text or end of file in " + part);
+        position++;
+    }
+
+    /**
+     * Utility method to read a number written in decimal, after any spaces.
+     * 
+     * @param part the part of the file being read, for messages
+     * @return the number
+     * @throws IOException if there is no number or it is too large
+     */
+    private int readNumber(String part) throws IOException {
+        long value = 0;
+        int start;
+
+        while(position < bytes.length && bytes[position] == ' ')
+            position++;
+        start = position;
+        while(position < bytes.length && bytes[position] >= '0' && bytes[position] <= '9') {
+            value = value * 10 + (bytes[position++] - '0');
+            if(value > Integer.MAX_VALUE / 2)
+                throw fail("a number in " + part + " is too large");
+        }
+        if(position == start)
+            throw fail("expected a number in " + part);
+
+        return (int)value;
+    }
+
+    /**
+     * Utility method to read a literal written in decimal.
+     * 
+     * @param maxVariable the largest variable
+     * @param part the part of the file being read, for messages
+     * @return the literal
+     * @throws IOException if there is no literal or its variable does not exist
+     */
+    private int readLiteral(int maxVariable, String part) throws IOException {
+        int literal = readNumber(part);
+
+        if(literal >> 1 > maxVariable)
+            throw fail(part + " reads a variable that does not exist");
+
+        return literal;
+    }
+
+    /**
+     * Utility method to read a difference between the literals of an AND gate, written with 7
+     * bits per byte and the high bit set on every byte but the last.
+     * 
+     * @param gate the number of the AND gate, for messages
+     * @return the difference
+     * @throws IOException if the file ends or the difference is too large
+     */
+    private int readDelta(int gate) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+
+        do {
+            if(position >= bytes.length)
+                throw fail("the file ends in AND gate " + gate);
+            if(shift > 28)
+                throw fail("AND gate " + gate + " is damaged");
+            b = bytes[position++] & 0xFF;
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        if(value < 0)
+            throw fail("AND gate " + gate + " is damaged");
+
+        return value;
+    }
+
+    /**
+     * Utility method to create the exception for an error in the file.
+     * 
+     * @param message what is wrong
+     * @return the exception, with the name of the file in its message
+     */
+    private IOException fail(String message) {
+        return new IOException(fileName + ": " + message);
+    }
+}
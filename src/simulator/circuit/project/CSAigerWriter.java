@@ -0,0 +1,328 @@
+package simulator.circuit.project;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Class to write a circuit as a file in the binary AIGER format, which is read back with
+ * {@linkplain CSAigerReader} or by tools such as ABC.
+ * <p>
+ * Input variable nodes become the inputs and D flip-flops the latches, both named after their
+ * nodes, and output variable nodes become the outputs, named after their nodes. Every other
+ * node is turned into two-input AND gates and inverses:
+ * <ul>
+ *  <li>an inverter or "-outneg" node is the inverse of the node it reads</li>
+ *  <li>AND and NAND gates are a chain of AND gates, with the result inverted for NAND gates</li>
+ *  <li>OR and NOR gates are a chain of AND gates of the inverses of their inputs, with the
+ *      result inverted for OR gates</li>
+ *  <li>XOR and XNOR gates are a chain of exclusive ors, each made of three AND gates</li>
+ * </ul>
+ * Gates without inputs are 0, as they are when simulated, and so is a flip-flop or output
+ * variable node that reads nothing. AND gates with a constant input, or with an input and
+ * its inverse, are left out. Names of other nodes, track numbers, delays and input
+ * sequences are not part of the format and are lost.
+ * <p>
+ * AND gates must come after the gates they read, so the nodes are visited in topological
+ * order, and a circuit with a loop that does not pass through a flip-flop cannot be written.
+ * 
+ * @author Joel Tengco
+ */
+public class CSAigerWriter implements Closeable {
+    /**
+     * Size of the buffer placed in front of the output stream.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Stream the file is written to, or null once closed.
+     */
+    private OutputStream out;
+    /**
+     * The two inputs of every AND gate made so far.
+     */
+    private int[] andInputs;
+    /**
+     * Number of AND gates made so far.
+     */
+    private int andCount;
+    /**
+     * Variable of the first AND gate.
+     */
+    private int firstAndVariable;
+
+    /**
+     * Creates an AIGER file to write a circuit to.
+     * 
+     * @param target the file to write; an existing file is overwritten
+     * @throws IOException if an error occurred when creating the file
+     */
+    public CSAigerWriter(File target) throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(target), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the given circuit to the file.
+     * 
+     * @param circuit the circuit to write
+     * @throws IOException if an error occurred when writing, or the circuit has a loop that
+     * does not pass through a flip-flop
+     */
+    public void writeCircuit(CSGraph circuit) throws IOException {
+        int size = circuit.getSize();
+        IdentityHashMap<CSNode, Integer> indeces = new IdentityHashMap<CSNode, Integer>(size);
+        int[] types = new int[size];
+        int[][] inputs = new int[size][];
+        int[] literals = new int[size];
+        ArrayList<Integer> inputNodes = new ArrayList<Integer>();
+        ArrayList<Integer> latchNodes = new ArrayList<Integer>();
+        ArrayList<Integer> outputNodes = new ArrayList<Integer>();
+        int[] order;
+        int previous;
+        int lhs;
+
+        for(int i = 0; i < size; i++)
+            indeces.put(circuit.getNode(i), i);
+        for(int i = 0; i < size; i++) {
+            types[i] = CSSaveWriter.getType(circuit.getNode(i));
+            inputs[i] = CSSaveWriter.getInputIndeces(circuit.getNode(i), indeces);
+            if(types[i] == CSSaveWriter.TYPE_INPUT)
+                inputNodes.add(i);
+            else if(types[i] == CSSaveWriter.TYPE_DFF)
+                latchNodes.add(i);
+            else if(types[i] == CSSaveWriter.TYPE_OUTPUT)
+                outputNodes.add(i);
+        }
+
+        // inputs and latches are numbered first, and AND gates after them as they are made
+        Arrays.fill(literals, -1);
+        for(int i = 0; i < inputNodes.size(); i++)
+            literals[inputNodes.get(i)] = 2 * (i + 1);
+        for(int j = 0; j < latchNodes.size(); j++)
+            literals[latchNodes.get(j)] = 2 * (inputNodes.size() + j + 1);
+        firstAndVariable = inputNodes.size() + latchNodes.size() + 1;
+        andInputs = new int[2 * size + 16];
+        andCount = 0;
+
+        order = sortNodes(circuit, types, inputs);
+        for(int i : order)
+            if(types[i] != CSSaveWriter.TYPE_INPUT && types[i] != CSSaveWriter.TYPE_DFF)
+                literals[i] = getLiteral(types[i], inputs[i], literals);
+
+        writeText("aig " + (firstAndVariable - 1 + andCount) + " " + inputNodes.size() + " " + latchNodes.size()
+                + " " + outputNodes.size() + " " + andCount + "\n");
+        for(int j : latchNodes)
+            writeText(getInputLiteral(inputs[j], literals) + "\n");
+        for(int k : outputNodes)
+            writeText(getInputLiteral(inputs[k], literals) + "\n");
+
+        for(int k = 0; k < andCount; k++) {
+            lhs = 2 * (firstAndVariable + k);
+            previous = andInputs[2 * k];
+            writeDelta(lhs - previous);
+            writeDelta(previous - andInputs[2 * k + 1]);
+        }
+
+        for(int i = 0; i < inputNodes.size(); i++)
+            writeText("i" + i + " " + circuit.getNode(inputNodes.get(i)).getName() + "\n");
+        for(int j = 0; j < latchNodes.size(); j++)
+            writeText("l" + j + " " + circuit.getNode(latchNodes.get(j)).getName() + "\n");
+        for(int k = 0; k < outputNodes.size(); k++)
+            writeText("o" + k + " " + circuit.getNode(outputNodes.get(k)).getName() + "\n");
+        writeText("c\nwritten by Circuit Simulator\n");
+        out.flush();
+    }
+
+    /**
+     * Closes the file.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        if(out == null)
+            return;
+
+        try {
+            out.close();
+        } finally {
+            out = null;
+        }
+    }
+
+    /**
+     * Utility method to order the nodes so that every node comes after the nodes it reads,
+     * where the output nodes of flip-flops are not taken to read anything.
+     * 
+     * @param circuit the circuit
+     * @param types the type of every node
+     * @param inputs the indeces of the nodes every node reads
+     * @return the indeces of the nodes in order
+     * @throws IOException if the circuit has a loop that does not pass through a flip-flop
+     */
+    private static int[] sortNodes(CSGraph circuit, int[] types, int[][] inputs) throws IOException {
+        int size = types.length;
+        int[] order = new int[size];
+        // 0 for nodes not visited yet, 1 for nodes being visited and 2 for nodes in the order
+        byte[] states = new byte[size];
+        int[] stack = new int[size];
+        int[] next = new int[size];
+        int orderCount = 0;
+        int depth;
+        int node;
+        int input;
+
+        for(int root = 0; root < size; root++) {
+            if(states[root] != 0)
+                continue;
+
+            depth = 0;
+            stack[0] = root;
+            next[0] = 0;
+            states[root] = 1;
+            while(depth >= 0) {
+                node = stack[depth];
+                if(types[node] == CSSaveWriter.TYPE_FF_OUT || types[node] == CSSaveWriter.TYPE_FF_OUT_NEGATED
+                        || next[depth] == inputs[node].length) {
+                    states[node] = 2;
+                    order[orderCount++] = node;
+                    depth--;
+                    continue;
+                }
+
+                input = inputs[node][next[depth]++];
+                if(states[input] == 1)
+                    throw new IOException(circuit.getNode(input).getName()
+                            + " is in a loop that does not pass through a flip-flop");
+                if(states[input] == 0) {
+                    states[input] = 1;
+                    stack[++depth] = input;
+                    next[depth] = 0;
+                }
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * Utility method to get the literal of a node from the literals of the nodes it reads.
+     * 
+     * @param type the type of the node
+     * @param inputs the indeces of the nodes it reads
+     * @param literals the literals of the nodes found so far
+     * @return the literal
+     */
+    private int getLiteral(int type, int[] inputs, int[] literals) {
+        int result;
+
+        switch(type) {
+            case CSSaveWriter.TYPE_FF_OUT:          return literals[inputs[0]];
+            case CSSaveWriter.TYPE_FF_OUT_NEGATED:  return literals[inputs[0]] ^ 1;
+            case CSSaveWriter.TYPE_INVERTER:        return literals[inputs[0]] ^ 1;
+            case CSSaveWriter.TYPE_OUTPUT:          return getInputLiteral(inputs, literals);
+            default:                                break;
+        }
+
+        if(inputs.length == 0)
+            return 0;
+
+        result = literals[inputs[0]];
+        if(type == CSSaveWriter.TYPE_OR || type == CSSaveWriter.TYPE_NOR)
+            result ^= 1;
+        for(int k = 1; k < inputs.length; k++) {
+            switch(type) {
+                case CSSaveWriter.TYPE_AND:
+                case CSSaveWriter.TYPE_NAND:    result = and(result, literals[inputs[k]]);
+                                                break;
+                case CSSaveWriter.TYPE_OR:
+                case CSSaveWriter.TYPE_NOR:     result = and(result, literals[inputs[k]] ^ 1);
+                                                break;
+                default:                        result = xor(result, literals[inputs[k]]);
+                                                break;
+            }
+        }
+
+        if(type == CSSaveWriter.TYPE_NAND || type == CSSaveWriter.TYPE_OR || type == CSSaveWriter.TYPE_NXOR)
+            result ^= 1;
+
+        return result;
+    }
+
+    /**
+     * Utility method to get the literal read by a flip-flop or output variable node.
+     * 
+     * @param inputs the indeces of the nodes it reads
+     * @param literals the literals of the nodes found so far
+     * @return the literal, or 0 if it reads nothing
+     */
+    private static int getInputLiteral(int[] inputs, int[] literals) {
+        return inputs.length == 0 ? 0 : literals[inputs[0]];
+    }
+
+    /**
+     * Utility method to make the AND gate of two literals, unless its value is known without it.
+     * 
+     * @param a a literal
+     * @param b another literal
+     * @return the literal of the AND gate
+     */
+    private int and(int a, int b) {
+        if(a == 0 || b == 0 || a == (b ^ 1))
+            return 0;
+        if(a == 1 || a == b)
+            return b;
+        if(b == 1)
+            return a;
+
+        if(2 * andCount + 2 > andInputs.length)
+            andInputs = Arrays.copyOf(andInputs, andInputs.length * 2);
+        andInputs[2 * andCount] = Math.max(a, b);
+        andInputs[2 * andCount + 1] = Math.min(a, b);
+        andCount++;
+
+        return 2 * (firstAndVariable + andCount - 1);
+    }
+
+    /**
+     * Utility method to make the exclusive or of two literals out of AND gates.
+     * 
+     * @param a a literal
+     * @param b another literal
+     * @return the literal of the exclusive or
+     */
+    private int xor(int a, int b) {
+        return and(and(a, b ^ 1) ^ 1, and(a ^ 1, b) ^ 1) ^ 1;
+    }
+
+    /**
+     * Utility method to write a line of the file in ASCII, or names in UTF-8.
+     * 
+     * @param text the text
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeText(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Utility method to write a difference between literals with 7 bits per byte, with the high
+     * bit set on every byte but the last.
+     * 
+     * @param value the difference
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeDelta(int value) throws IOException {
+        while((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
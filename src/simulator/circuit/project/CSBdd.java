@@ -0,0 +1,664 @@
+package simulator.circuit.project;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Class to manage reduced ordered binary decision diagrams.
+ * <p>
+ * A function is identified by the index of its root node. Nodes 0 and 1 are the constant
+ * functions; every other node tests one variable and has a low child for when the variable
+ * is 0 and a high child for when it is 1. Variables are tested in the order of their levels,
+ * level 0 first, and the unique table makes sure that no two nodes test the same variable with
+ * the same children, so equal functions always have the same root.
+ * <p>
+ * Results of {@linkplain #ite(int, int, int)} are kept in a computed table, a direct-mapped
+ * cache that is simply overwritten on collisions. Nodes that are no longer needed are reclaimed
+ * by garbage collection: functions that are still in use need to be protected with
+ * {@linkplain #ref(int)}, and everything that cannot be reached from a protected node is freed
+ * when the node table fills up. Since an operation may collect garbage before it starts, its
+ * operands need to be protected as well.
+ * 
+ * @author Joel Tengco
+ */
+class CSBdd {
+    /**
+     * The function that is always 0.
+     */
+    static final int ZERO = 0;
+    /**
+     * The function that is always 1.
+     */
+    static final int ONE = 1;
+    /**
+     * Default largest number of nodes.
+     */
+    static final int DEFAULT_NODE_LIMIT = 1 << 24;
+    /**
+     * Initial number of nodes the tables have room for.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    /**
+     * Number of entries in the computed table.
+     */
+    private static final int CACHE_SIZE = 1 << 18;
+
+    /**
+     * Number of variables.
+     */
+    private final int varCount;
+    /**
+     * Largest number of nodes.
+     */
+    private final int nodeLimit;
+    /**
+     * Level of the variable each node tests; {@code varCount} for the two constant nodes,
+     * and -1 for free nodes.
+     */
+    private int[] level;
+    /**
+     * Low child of each node.
+     */
+    private int[] low;
+    /**
+     * High child of each node.
+     */
+    private int[] high;
+    /**
+     * Next node in the same bucket of the unique table, or in the list of free nodes.
+     */
+    private int[] next;
+    /**
+     * Number of times each node was protected with {@linkplain #ref(int)}.
+     */
+    private int[] refCount;
+    /**
+     * First node of each bucket of the unique table, or -1.
+     */
+    private int[] buckets;
+    /**
+     * First node in the list of free nodes, or -1.
+     */
+    private int freeList;
+    /**
+     * Number of nodes that are not free, including the two constant nodes.
+     */
+    private int liveCount;
+    /**
+     * Number of node slots in use or freed; slots past this were never used.
+     */
+    private int usedCount;
+    /**
+     * Operands and results of the computed table; entry {@code i} holds f, g, h and the
+     * result at {@code 4 * i} to {@code 4 * i + 3}.
+     */
+    private final int[] cache;
+    /**
+     * Number of garbage collections so far.
+     */
+    private int gcCount;
+
+    /**
+     * Constructs a manager for functions of the given number of variables.
+     * 
+     * @param varCount the number of variables
+     * @param nodeLimit the largest number of nodes
+     * @throws IllegalArgumentException if the number of variables is negative
+     */
+    CSBdd(int varCount, int nodeLimit) throws IllegalArgumentException {
+        if(varCount < 0)
+            throw new IllegalArgumentException("The number of variables cannot be negative");
+
+        this.varCount = varCount;
+        this.nodeLimit = nodeLimit;
+        level = new int[INITIAL_CAPACITY];
+        low = new int[INITIAL_CAPACITY];
+        high = new int[INITIAL_CAPACITY];
+        next = new int[INITIAL_CAPACITY];
+        refCount = new int[INITIAL_CAPACITY];
+        buckets = new int[INITIAL_CAPACITY];
+        Arrays.fill(buckets, -1);
+        cache = new int[4 * CACHE_SIZE];
+        Arrays.fill(cache, -1);
+
+        // the constant nodes are never freed
+        level[ZERO] = varCount;
+        level[ONE] = varCount;
+        low[ONE] = high[ONE] = ONE;
+        refCount[ZERO] = refCount[ONE] = 1;
+        freeList = -1;
+        liveCount = 2;
+        usedCount = 2;
+    }
+
+    /**
+     * Gets the number of variables.
+     * 
+     * @return the number of variables
+     */
+    int getVarCount() {
+        return varCount;
+    }
+
+    /**
+     * Gets the number of nodes currently in use, including the two constant nodes and nodes
+     * that are not protected but were not collected yet.
+     * 
+     * @return the number of live nodes
+     */
+    int getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Gets the number of garbage collections so far.
+     * 
+     * @return the number of garbage collections
+     */
+    int getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * Gets the level of the variable a node tests.
+     * 
+     * @param f the node
+     * @return the level of the variable, or the number of variables for the constant nodes
+     */
+    int getLevel(int f) {
+        return level[f];
+    }
+
+    /**
+     * Gets the low child of a node.
+     * 
+     * @param f the node
+     * @return the function for when the tested variable is 0
+     */
+    int getLow(int f) {
+        return low[f];
+    }
+
+    /**
+     * Gets the high child of a node.
+     * 
+     * @param f the node
+     * @return the function for when the tested variable is 1
+     */
+    int getHigh(int f) {
+        return high[f];
+    }
+
+    /**
+     * Protects a function from garbage collection.
+     * 
+     * @param f the function
+     * @return the same function
+     */
+    int ref(int f) {
+        refCount[f]++;
+        return f;
+    }
+
+    /**
+     * Removes one protection of a function, so it can be collected once it is no longer protected.
+     * 
+     * @param f the function
+     */
+    void deref(int f) {
+        if(refCount[f] > 0)
+            refCount[f]--;
+    }
+
+    /**
+     * Gets the function that is equal to the variable at the given level.
+     * 
+     * @param varLevel the level of the variable
+     * @return the function of the variable
+     * @throws IllegalArgumentException if the level does not exist
+     * @throws IllegalStateException if the node limit is reached
+     */
+    int getVariable(int varLevel) throws IllegalArgumentException, IllegalStateException {
+        if(varLevel < 0 || varLevel >= varCount)
+            throw new IllegalArgumentException(varLevel + " is an invalid variable level");
+
+        makeRoom();
+        return mk(varLevel, ZERO, ONE);
+    }
+
+    /**
+     * Computes if-then-else: the function that is {@code g} where {@code f} is 1 and {@code h}
+     * where {@code f} is 0.
+     * <p>
+     * Every other operation can be written with this one; for instance, the AND of f and g is
+     * {@code ite(f, g, ZERO)} and the complement of f is {@code ite(f, ZERO, ONE)}.
+     * 
+     * @param f the condition
+     * @param g the function where the condition is 1
+     * @param h the function where the condition is 0
+     * @return the resulting function, which is not protected
+     * @throws IllegalStateException if the node limit is reached
+     */
+    int ite(int f, int g, int h) throws IllegalStateException {
+        makeRoom();
+        return iteRec(f, g, h);
+    }
+
+    /**
+     * Computes the complement of a function.
+     * 
+     * @param f the function
+     * @return the complement of the function, which is not protected
+     * @throws IllegalStateException if the node limit is reached
+     */
+    int not(int f) throws IllegalStateException {
+        return ite(f, ZERO, ONE);
+    }
+
+    /**
+     * Computes the AND of two functions.
+     * 
+     * @param f the first function
+     * @param g the second function
+     * @return the resulting function, which is not protected
+     * @throws IllegalStateException if the node limit is reached
+     */
+    int and(int f, int g) throws IllegalStateException {
+        return ite(f, g, ZERO);
+    }
+
+    /**
+     * Computes the OR of two functions.
+     * 
+     * @param f the first function
+     * @param g the second function
+     * @return the resulting function, which is not protected
+     * @throws IllegalStateException if the node limit is reached
+     */
+    int or(int f, int g) throws IllegalStateException {
+        return ite(f, ONE, g);
+    }
+
+    /**
+     * Computes the XOR of two functions.
+     * 
+     * @param f the first function
+     * @param g the second function
+     * @return the resulting function, which is not protected
+     * @throws IllegalStateException if the node limit is reached
+     */
+    int xor(int f, int g) throws IllegalStateException {
+        int notG = ref(not(g));
+        int result = ite(f, notG, g);
+
+        deref(notG);
+        return result;
+    }
+
+    /**
+     * Counts the nodes of a function, including the constant nodes it reaches.
+     * 
+     * @param f the function
+     * @return the number of nodes reachable from the function
+     */
+    int getNodeCount(int f) {
+        boolean[] seen = new boolean[usedCount];
+        int[] stack = new int[usedCount];
+        int stackSize = 0;
+        int count = 0;
+        int node;
+
+        seen[f] = true;
+        stack[stackSize++] = f;
+        while(stackSize > 0) {
+            node = stack[--stackSize];
+            count++;
+            if(node > ONE) {
+                if(!seen[low[node]]) {
+                    seen[low[node]] = true;
+                    stack[stackSize++] = low[node];
+                }
+                if(!seen[high[node]]) {
+                    seen[high[node]] = true;
+                    stack[stackSize++] = high[node];
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Counts the assignments of all the variables for which a function is 1.
+     * <p>
+     * Each node is visited once, so this takes time proportional to the size of the function.
+     * 
+     * @param f the function
+     * @return the number of satisfying assignments, out of 2 to the power of the number of variables
+     */
+    BigInteger getSatCount(int f) {
+        BigInteger[] counts = new BigInteger[usedCount];
+
+        return satCount(f, counts).shiftLeft(level[f]);
+    }
+
+    /**
+     * Utility method to count the assignments of the variables from a node's level onwards
+     * for which the node is 1.
+     * 
+     * @param f the node
+     * @param counts counts of the nodes seen so far
+     * @return the number of satisfying assignments of the variables at or below the node's level
+     */
+    private BigInteger satCount(int f, BigInteger[] counts) {
+        BigInteger lowCount;
+        BigInteger highCount;
+
+        if(f == ZERO)
+            return BigInteger.ZERO;
+        if(f == ONE)
+            return BigInteger.ONE;
+        if(counts[f] != null)
+            return counts[f];
+
+        // skipped levels between a node and its child can take either value
+        lowCount = satCount(low[f], counts).shiftLeft(level[low[f]] - level[f] - 1);
+        highCount = satCount(high[f], counts).shiftLeft(level[high[f]] - level[f] - 1);
+        counts[f] = lowCount.add(highCount);
+
+        return counts[f];
+    }
+
+    /**
+     * Computes the probability that a function is 1 when each variable is 1 with the given
+     * probability, independently of the others.
+     * <p>
+     * Each node is visited once, so this takes time proportional to the size of the function.
+     * 
+     * @param f the function
+     * @param probabilities the probability of each variable being 1, by level
+     * @return the probability of the function being 1
+     */
+    double getProbability(int f, double[] probabilities) {
+        double[] results = new double[usedCount];
+
+        Arrays.fill(results, -1);
+        return probability(f, probabilities, results);
+    }
+
+    /**
+     * Utility method to compute the probability of a node being 1.
+     * 
+     * @param f the node
+     * @param probabilities the probability of each variable being 1, by level
+     * @param results probabilities of the nodes seen so far, or -1
+     * @return the probability of the node being 1
+     */
+    private double probability(int f, double[] probabilities, double[] results) {
+        double p;
+
+        if(f <= ONE)
+            return f;
+        if(results[f] >= 0)
+            return results[f];
+
+        p = probabilities[level[f]];
+        results[f] = (1 - p) * probability(low[f], probabilities, results) + p * probability(high[f], probabilities, results);
+
+        return results[f];
+    }
+
+    /**
+     * Evaluates a function for 64 assignments of the variables at once.
+     * <p>
+     * Each node is evaluated once per stamp, so evaluating several functions with the same stamp
+     * shares the work for the nodes they have in common.
+     * 
+     * @param f the function
+     * @param lanes the values of each variable, by level, with one assignment per lane
+     * @param results work space with one entry per node slot
+     * @param stamps work space with one entry per node slot, all of them less than the stamp at first
+     * @param stamp a number greater than any stamp used before with the same work spaces
+     * @return the value of the function in each lane
+     */
+    long evaluate(int f, long[] lanes, long[] results, int[] stamps, int stamp) {
+        long v;
+
+        if(f <= ONE)
+            return f == ONE ? -1L : 0;
+        if(stamps[f] == stamp)
+            return results[f];
+
+        v = lanes[level[f]];
+        results[f] = (v & evaluate(high[f], lanes, results, stamps, stamp)) | (~v & evaluate(low[f], lanes, results, stamps, stamp));
+        stamps[f] = stamp;
+
+        return results[f];
+    }
+
+    /**
+     * Gets the number of node slots, which is the size needed for the work spaces of
+     * {@linkplain #evaluate(int, long[], long[], int[], int)}.
+     * 
+     * @return the number of node slots in use or freed
+     */
+    int getSlotCount() {
+        return usedCount;
+    }
+
+    /**
+     * Utility method for the recursion of {@linkplain #ite(int, int, int)}.
+     * 
+     * @param f the condition
+     * @param g the function where the condition is 1
+     * @param h the function where the condition is 0
+     * @return the resulting function
+     */
+    private int iteRec(int f, int g, int h) {
+        int top;
+        int slot;
+        int result;
+        int lowResult;
+        int highResult;
+
+        // terminal cases
+        if(f == ONE)
+            return g;
+        if(f == ZERO)
+            return h;
+        if(g == h)
+            return g;
+        if(g == ONE && h == ZERO)
+            return f;
+
+        slot = 4 * (hash(f, g, h) & (CACHE_SIZE - 1));
+        if(cache[slot] == f && cache[slot + 1] == g && cache[slot + 2] == h)
+            return cache[slot + 3];
+
+        top = Math.min(level[f], Math.min(level[g], level[h]));
+        lowResult = iteRec(cofactor(f, top, false), cofactor(g, top, false), cofactor(h, top, false));
+        highResult = iteRec(cofactor(f, top, true), cofactor(g, top, true), cofactor(h, top, true));
+        result = mk(top, lowResult, highResult);
+
+        cache[slot] = f;
+        cache[slot + 1] = g;
+        cache[slot + 2] = h;
+        cache[slot + 3] = result;
+        return result;
+    }
+
+    /**
+     * Utility method to get the cofactor of a node with respect to the variable at a level
+     * that is not below the node's own level.
+     * 
+     * @param f the node
+     * @param varLevel the level of the variable
+     * @param value the value of the variable
+     * @return the function of the node when the variable has the given value
+     */
+    private int cofactor(int f, int varLevel, boolean value) {
+        if(level[f] != varLevel)
+            return f;
+
+        return value ? high[f] : low[f];
+    }
+
+    /**
+     * Utility method to get the node that tests a variable with the given children, making it
+     * if it does not exist yet.
+     * 
+     * @param varLevel the level of the variable
+     * @param lowChild the function for when the variable is 0
+     * @param highChild the function for when the variable is 1
+     * @return the node, or the child itself if both children are the same
+     */
+    private int mk(int varLevel, int lowChild, int highChild) {
+        int bucket;
+        int node;
+
+        if(lowChild == highChild)
+            return lowChild;
+
+        bucket = hash(varLevel, lowChild, highChild) & (buckets.length - 1);
+        for(node = buckets[bucket]; node != -1; node = next[node])
+            if(level[node] == varLevel && low[node] == lowChild && high[node] == highChild)
+                return node;
+
+        if(freeList == -1 && usedCount == level.length) {
+            // in the middle of an operation nothing can be collected, so the tables grow instead
+            grow();
+            bucket = hash(varLevel, lowChild, highChild) & (buckets.length - 1);
+        }
+
+        if(freeList != -1) {
+            node = freeList;
+            freeList = next[node];
+        } else
+            node = usedCount++;
+
+        level[node] = varLevel;
+        low[node] = lowChild;
+        high[node] = highChild;
+        next[node] = buckets[bucket];
+        buckets[bucket] = node;
+        liveCount++;
+
+        return node;
+    }
+
+    /**
+     * Utility method to make room for new nodes before an operation starts, by collecting
+     * garbage or by growing the tables.
+     * 
+     * @throws IllegalStateException if the node limit is reached
+     */
+    private void makeRoom() throws IllegalStateException {
+        if(liveCount < level.length * 3 / 4)
+            return;
+
+        collectGarbage();
+        // grow as well if collecting did not free enough nodes
+        if(liveCount >= level.length / 2)
+            grow();
+    }
+
+    /**
+     * Frees every node that cannot be reached from a protected node.
+     */
+    void collectGarbage() {
+        boolean[] marked = new boolean[usedCount];
+        int[] stack = new int[usedCount];
+        int stackSize = 0;
+        int node;
+
+        for(int i = 0; i < usedCount; i++) {
+            if(refCount[i] > 0 && level[i] >= 0 && !marked[i]) {
+                marked[i] = true;
+                stack[stackSize++] = i;
+            }
+        }
+        while(stackSize > 0) {
+            node = stack[--stackSize];
+            if(node > ONE) {
+                if(!marked[low[node]]) {
+                    marked[low[node]] = true;
+                    stack[stackSize++] = low[node];
+                }
+                if(!marked[high[node]]) {
+                    marked[high[node]] = true;
+                    stack[stackSize++] = high[node];
+                }
+            }
+        }
+
+        // rebuild the unique table and the free list from the marked nodes
+        Arrays.fill(buckets, -1);
+        freeList = -1;
+        liveCount = 2;
+        for(int i = usedCount - 1; i > ONE; i--) {
+            if(marked[i]) {
+                rehash(i);
+                liveCount++;
+            } else {
+                level[i] = -1;
+                next[i] = freeList;
+                freeList = i;
+            }
+        }
+
+        // cached results may refer to freed nodes
+        Arrays.fill(cache, -1);
+        gcCount++;
+    }
+
+    /**
+     * Utility method to double the size of the node tables.
+     * 
+     * @throws IllegalStateException if the node limit is reached
+     */
+    private void grow() throws IllegalStateException {
+        int capacity = level.length * 2;
+
+        if(level.length >= nodeLimit)
+            throw new IllegalStateException("The decision diagrams need more than " + nodeLimit + " nodes");
+
+        level = Arrays.copyOf(level, capacity);
+        low = Arrays.copyOf(low, capacity);
+        high = Arrays.copyOf(high, capacity);
+        next = Arrays.copyOf(next, capacity);
+        refCount = Arrays.copyOf(refCount, capacity);
+        buckets = new int[capacity];
+        Arrays.fill(buckets, -1);
+
+        for(int i = ONE + 1; i < usedCount; i++)
+            if(level[i] >= 0)
+                rehash(i);
+    }
+
+    /**
+     * Utility method to put a node into its bucket of the unique table.
+     * 
+     * @param node the node
+     */
+    private void rehash(int node) {
+        int bucket = hash(level[node], low[node], high[node]) & (buckets.length - 1);
+
+        next[node] = buckets[bucket];
+        buckets[bucket] = node;
+    }
+
+    /**
+     * Utility method to hash three integers.
+     * 
+     * @param a the first integer
+     * @param b the second integer
+     * @param c the third integer
+     * @return the hash of the three integers
+     */
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1 + b;
+
+        h = h * 0x85EBCA77 + c;
+        return h ^ (h >>> 15);
+    }
+}
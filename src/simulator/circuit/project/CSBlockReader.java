@@ -0,0 +1,515 @@
+package simulator.circuit.project;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Class to read a file written by {@linkplain CSBlockWriter}.
+ * <p>
+ * Opening the file only reads its block index. The uncompressed bytes can then be read at any
+ * position, which decompresses only the blocks holding them, or as a stream, which decompresses
+ * the blocks ahead of the one being read as tasks of the common fork/join pool so that
+ * decompression runs in parallel with the reading and with itself. Every block is checked against
+ * the CRC-32 of its uncompressed bytes.
+ * 
+ * @author Joel Tengco
+ */
+public class CSBlockReader implements Closeable {
+    /**
+     * Number of compressed bytes read at a time by {@linkplain #readPrefix(int)}.
+     */
+    private static final int PREFIX_READ_SIZE = 1 << 12;
+
+    /**
+     * The file being read.
+     */
+    private RandomAccessFile file;
+    /**
+     * Channel of the file being read; blocks are read at their offsets, so any thread can read them.
+     */
+    private FileChannel channel;
+    /**
+     * Name of the file, for error messages.
+     */
+    private final String fileName;
+    /**
+     * Number of uncompressed bytes of every block but the last.
+     */
+    private final int blockSize;
+    /**
+     * Number of uncompressed bytes of the file.
+     */
+    private final long length;
+    /**
+     * Offset of every block, followed by the offset of the block index.
+     */
+    private final long[] offsets;
+    /**
+     * CRC-32 of the uncompressed bytes of every block.
+     */
+    private final int[] checksums;
+    /**
+     * Index of the block held by {@code cachedBlock}, or -1.
+     */
+    private int cachedIndex;
+    /**
+     * Uncompressed bytes of the block read last by {@linkplain #read(long, byte[], int, int)}.
+     */
+    private byte[] cachedBlock;
+
+    /**
+     * Opens a compressed file and reads its block index.
+     * 
+     * @param source the file to read
+     * @throws IOException if an error occurred when reading, or the file is not a complete
+     * compressed file of a supported version
+     */
+    public CSBlockReader(File source) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CSBlockWriter.HEADER_SIZE);
+        ByteBuffer trailer = ByteBuffer.allocate(CSBlockWriter.TRAILER_SIZE);
+        ByteBuffer index;
+        long size;
+        long indexOffset;
+        long expectedOffset;
+        int blockCount;
+        int storedLength;
+        int version;
+
+        file = new RandomAccessFile(source, "r");
+        channel = file.getChannel();
+        fileName = source.getName();
+
+        try {
+            size = channel.size();
+            if(size < CSBlockWriter.HEADER_SIZE + CSBlockWriter.TRAILER_SIZE)
+                throw new IOException(fileName + " is not a compressed file");
+            readFully(header, 0);
+            if(header.getInt(0) != CSBlockWriter.MAGIC)
+                throw new IOException(fileName + " is not a compressed file");
+            version = header.getInt(4);
+            if(version != CSBlockWriter.VERSION)
+                throw new IOException("Unsupported compressed file version " + version);
+            blockSize = header.getInt(8);
+
+            readFully(trailer, size - CSBlockWriter.TRAILER_SIZE);
+            indexOffset = trailer.getLong(0);
+            length = trailer.getLong(8);
+            blockCount = trailer.getInt(16);
+            // a file whose writing was not finished has no trailer
+            if(trailer.getInt(20) != CSBlockWriter.MAGIC || blockSize <= 0 || blockCount < 0
+                    || indexOffset != size - CSBlockWriter.TRAILER_SIZE - (long)blockCount * CSBlockWriter.INDEX_ENTRY_SIZE
+                    || indexOffset < CSBlockWriter.HEADER_SIZE || length > (long)blockCount * blockSize
+                    || length <= (long)(blockCount - 1) * blockSize)
+                throw new IOException(fileName + " is damaged or was not finished");
+
+            offsets = new long[blockCount + 1];
+            checksums = new int[blockCount];
+            index = ByteBuffer.allocate(blockCount * CSBlockWriter.INDEX_ENTRY_SIZE);
+            readFully(index, indexOffset);
+            // the blocks follow each other, so the stored length of each is where the next one starts
+            expectedOffset = CSBlockWriter.HEADER_SIZE;
+            for(int b = 0; b < blockCount; b++) {
+                offsets[b] = index.getLong();
+                storedLength = index.getInt();
+                checksums[b] = index.getInt();
+                if(offsets[b] != expectedOffset || storedLength <= 0 || storedLength > blockSize)
+                    throw new IOException(fileName + " is damaged");
+                expectedOffset += storedLength;
+            }
+            offsets[blockCount] = indexOffset;
+            if(expectedOffset != indexOffset)
+                throw new IOException(fileName + " is damaged");
+        } catch(IOException ioe) {
+            close();
+            throw ioe;
+        }
+
+        cachedIndex = -1;
+    }
+
+    /**
+     * Returns whether the given file starts like a file written by {@linkplain CSBlockWriter}.
+     * 
+     * @param source the file to check
+     * @return true if the file starts with the magic number of compressed files
+     * @throws IOException if an error occurred when reading the file
+     */
+    static boolean isBlockFile(File source) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(source, "r");
+
+        try {
+            return in.length() >= 4 && in.readInt() == CSBlockWriter.MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Gets the number of uncompressed bytes of the file.
+     * 
+     * @return the uncompressed length
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the number of blocks of the file.
+     * 
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return checksums.length;
+    }
+
+    /**
+     * Gets the number of uncompressed bytes of every block but the last.
+     * 
+     * @return the block size
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Decompresses one block. Blocks do not depend on each other, so this can be called from
+     * several threads at once.
+     * 
+     * @param blockIndex the index of the block
+     * @return the uncompressed bytes of the block
+     * @throws IOException if an error occurred when reading, or the block is damaged
+     * @throws IndexOutOfBoundsException if the block does not exist
+     */
+    public byte[] readBlock(int blockIndex) throws IOException, IndexOutOfBoundsException {
+        int storedLength;
+        int blockLength;
+        ByteBuffer stored;
+        byte[] bytes;
+        Inflater inflater;
+        CRC32 crc = new CRC32();
+        int count = 0;
+
+        if(blockIndex < 0 || blockIndex >= checksums.length)
+            throw new IndexOutOfBoundsException("Block " + blockIndex + " does not exist");
+
+        storedLength = (int)(offsets[blockIndex + 1] - offsets[blockIndex]);
+        blockLength = (int)Math.min(blockSize, length - (long)blockIndex * blockSize);
+        stored = ByteBuffer.allocate(storedLength);
+        readFully(stored, offsets[blockIndex]);
+
+        if(storedLength == blockLength)
+            bytes = stored.array();
+        else {
+            bytes = new byte[blockLength];
+            inflater = new Inflater(true);
+            try {
+                inflater.setInput(stored.array());
+                while(count < blockLength && !inflater.finished() && !inflater.needsInput())
+                    count += inflater.inflate(bytes, count, blockLength - count);
+            } catch(DataFormatException dfe) {
+                throw new IOException(fileName + " is damaged");
+            } finally {
+                inflater.end();
+            }
+            if(count != blockLength)
+                throw new IOException(fileName + " is damaged");
+        }
+
+        crc.update(bytes);
+        if((int)crc.getValue() != checksums[blockIndex])
+            throw new IOException(fileName + " is damaged");
+
+        return bytes;
+    }
+
+    /**
+     * Decompresses the first bytes of the file, reading no more of the first block than they
+     * need, so that a header is read without decompressing a whole block.
+     * <p>
+     * Unlike whole blocks, the bytes cannot be checked against the CRC-32 of their block, so
+     * whoever reads them has to check them.
+     * 
+     * @param count the number of bytes to read
+     * @return the first bytes, fewer than asked for only if the file is shorter
+     * @throws IOException if an error occurred when reading, or the block is damaged
+     */
+    public byte[] readPrefix(int count) throws IOException {
+        int storedLength;
+        int blockLength;
+        ByteBuffer stored;
+        byte[] bytes;
+        Inflater inflater;
+        long position;
+        int produced = 0;
+
+        if(checksums.length == 0)
+            return new byte[0];
+
+        storedLength = (int)(offsets[1] - offsets[0]);
+        blockLength = (int)Math.min(blockSize, length);
+        bytes = new byte[Math.min(count, blockLength)];
+        if(storedLength == blockLength) {
+            readFully(ByteBuffer.wrap(bytes), offsets[0]);
+            return bytes;
+        }
+
+        inflater = new Inflater(true);
+        position = offsets[0];
+        try {
+            while(produced < bytes.length) {
+                if(inflater.needsInput()) {
+                    if(position >= offsets[1])
+                        throw new IOException(fileName + " is damaged");
+                    stored = ByteBuffer.allocate((int)Math.min(PREFIX_READ_SIZE, offsets[1] - position));
+                    readFully(stored, position);
+                    position += stored.capacity();
+                    inflater.setInput(stored.array());
+                }
+                produced += inflater.inflate(bytes, produced, bytes.length - produced);
+                if(inflater.finished() && produced < bytes.length)
+                    throw new IOException(fileName + " is damaged");
+            }
+        } catch(DataFormatException dfe) {
+            throw new IOException(fileName + " is damaged");
+        } finally {
+            inflater.end();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Reads uncompressed bytes at any position of the file.
+     * <p>
+     * Only the blocks holding the bytes are decompressed; the last one is kept, so reading
+     * nearby positions one after the other decompresses each block once.
+     * 
+     * @param position the position of the first byte, in uncompressed bytes
+     * @param bytes the array to read into
+     * @param offset the index of the array to store the first byte at
+     * @param count the number of bytes to read
+     * @return the number of bytes read, less than the count only at the end of the file
+     * @throws IOException if an error occurred when reading, or a block is damaged
+     * @throws IndexOutOfBoundsException if the position is negative
+     */
+    public synchronized int read(long position, byte[] bytes, int offset, int count) throws IOException, IndexOutOfBoundsException {
+        int blockIndex;
+        int blockOffset;
+        int chunk;
+        int total = 0;
+
+        if(position < 0)
+            throw new IndexOutOfBoundsException("Position " + position + " is before the start of the file");
+
+        while(total < count && position < length) {
+            blockIndex = (int)(position / blockSize);
+            blockOffset = (int)(position % blockSize);
+            if(blockIndex != cachedIndex) {
+                cachedBlock = readBlock(blockIndex);
+                cachedIndex = blockIndex;
+            }
+
+            chunk = Math.min(count - total, cachedBlock.length - blockOffset);
+            System.arraycopy(cachedBlock, blockOffset, bytes, offset + total, chunk);
+            total += chunk;
+            position += chunk;
+        }
+
+        return total;
+    }
+
+    /**
+     * Opens a stream of the uncompressed bytes from the start of the file.
+     * <p>
+     * The stream decompresses up to one block per thread of the common fork/join pool ahead of
+     * the one being read. Closing the stream closes this reader.
+     * 
+     * @return the stream
+     */
+    public InputStream openStream() {
+        return new BlockInputStream();
+    }
+
+    /**
+     * Closes this reader and the underlying file.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        if(file != null) {
+            file.close();
+            file = null;
+            channel = null;
+            cachedBlock = null;
+        }
+    }
+
+    /**
+     * Utility method to read bytes of the file until the buffer is full.
+     * 
+     * @param buffer the buffer to fill
+     * @param position the offset to read from
+     * @throws IOException if an error occurred when reading, or the file ends before the buffer is full
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        int count;
+
+        while(buffer.hasRemaining()) {
+            count = channel.read(buffer, position + buffer.position());
+            if(count < 0)
+                throw new IOException(fileName + " ends too early");
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Stream of the uncompressed bytes that decompresses the next blocks in the background.
+     * 
+     * @author Joel Tengco
+     */
+    private class BlockInputStream extends InputStream {
+        /**
+         * Decompressions of the blocks after the current one, in order.
+         */
+        private final ArrayDeque<Future<byte[]>> pending;
+        /**
+         * Index of the next block to start decompressing.
+         */
+        private int nextBlock;
+        /**
+         * The block being read, or null before the first block.
+         */
+        private byte[] current;
+        /**
+         * Position within the block being read.
+         */
+        private int currentOffset;
+
+        /**
+         * Constructs the stream and starts decompressing the first blocks.
+         */
+        BlockInputStream() {
+            pending = new ArrayDeque<Future<byte[]>>();
+            fill();
+        }
+
+        /**
+         * Reads one byte.
+         * 
+         * @return the byte, or -1 at the end of the file
+         * @throws IOException if an error occurred when reading, or a block is damaged
+         */
+        public int read() throws IOException {
+            if(!nextBlockIfNeeded())
+                return -1;
+
+            return current[currentOffset++] & 0xFF;
+        }
+
+        /**
+         * Reads bytes into an array.
+         * 
+         * @param bytes the array to read into
+         * @param offset the index of the array to store the first byte at
+         * @param count the largest number of bytes to read
+         * @return the number of bytes read, or -1 at the end of the file
+         * @throws IOException if an error occurred when reading, or a block is damaged
+         */
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            int chunk;
+
+            if(count == 0)
+                return 0;
+            if(!nextBlockIfNeeded())
+                return -1;
+
+            chunk = Math.min(count, current.length - currentOffset);
+            System.arraycopy(current, currentOffset, bytes, offset, chunk);
+            currentOffset += chunk;
+
+            return chunk;
+        }
+
+        /**
+         * Gets the number of bytes that can be read without waiting for a block.
+         * 
+         * @return the number of bytes left in the block being read
+         */
+        public int available() {
+            return current == null ? 0 : current.length - currentOffset;
+        }
+
+        /**
+         * Stops the decompressions still running and closes the file.
+         * 
+         * @throws IOException if an error occurred when closing the file
+         */
+        public void close() throws IOException {
+            for(Future<byte[]> task : pending)
+                task.cancel(false);
+            pending.clear();
+            current = null;
+            CSBlockReader.this.close();
+        }
+
+        /**
+         * Utility method to move on to the next block once the current one was read.
+         * 
+         * @return false at the end of the file
+         * @throws IOException if an error occurred when reading, or the block is damaged
+         */
+        private boolean nextBlockIfNeeded() throws IOException {
+            Future<byte[]> task;
+
+            while(current == null || currentOffset == current.length) {
+                task = pending.poll();
+                if(task == null)
+                    return false;
+
+                try {
+                    current = task.get();
+                } catch(InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Reading " + fileName + " was interrupted");
+                } catch(ExecutionException ee) {
+                    if(ee.getCause() instanceof IOException)
+                        throw (IOException)ee.getCause();
+                    throw new IOException(fileName + " could not be read: " + ee.getCause());
+                }
+                currentOffset = 0;
+                fill();
+            }
+
+            return true;
+        }
+
+        /**
+         * Utility method to start decompressing blocks until enough are ahead of the one being read.
+         */
+        private void fill() {
+            int ahead = ForkJoinPool.getCommonPoolParallelism() + 1;
+
+            while(pending.size() < ahead && nextBlock < checksums.length) {
+                final int blockIndex = nextBlock++;
+                pending.add(ForkJoinPool.commonPool().submit(new Callable<byte[]>() {
+                    public byte[] call() throws IOException {
+                        return readBlock(blockIndex);
+                    }
+                }));
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package simulator.circuit.project;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Class to write a file compressed in independent blocks, which is read back with {@linkplain CSBlockReader}.
+ * <p>
+ * The bytes written to this stream are cut into blocks of {@linkplain #BLOCK_SIZE} bytes, and
+ * each block is compressed on its own with a {@code Deflater} that is reset between blocks.
+ * Since no block refers to the bytes of another, any block can be decompressed without the
+ * ones before it, so the file can be read at any position and its blocks can be decompressed
+ * in parallel. A block that does not get smaller is stored as it is. The layout is:
+ * <ul>
+ *  <li>header: magic, version, block size and a reserved zero</li>
+ *  <li>the compressed blocks, one after the other</li>
+ *  <li>the block index: the offset, stored length and CRC-32 of the uncompressed bytes of
+ *      every block</li>
+ *  <li>trailer: offset of the block index, number of uncompressed bytes, number of blocks and
+ *      the magic again</li>
+ * </ul>
+ * The index and trailer are written by {@linkplain #close()}, which also closes the file.
+ * 
+ * @author Joel Tengco
+ */
+public class CSBlockWriter extends OutputStream {
+    /**
+     * Identifies a file as compressed in blocks; "CSBZ" in ASCII.
+     */
+    static final int MAGIC = 0x4353425A;
+    /**
+     * Version of the block format written by this class.
+     */
+    static final int VERSION = 1;
+    /**
+     * Number of bytes of the header.
+     */
+    static final int HEADER_SIZE = 16;
+    /**
+     * Number of bytes of each entry of the block index.
+     */
+    static final int INDEX_ENTRY_SIZE = 16;
+    /**
+     * Number of bytes of the trailer.
+     */
+    static final int TRAILER_SIZE = 24;
+    /**
+     * Number of uncompressed bytes of every block but the last.
+     * <p>
+     * Deflate only looks 32KB back, so larger blocks barely compress better, while smaller
+     * blocks make reading one position cheaper; a quarter of a megabyte keeps the per-block
+     * cost of the index and of starting a task small.
+     */
+    public static final int BLOCK_SIZE = 1 << 18;
+    /**
+     * Compression level; the fastest level keeps saving and recording bound by the disk
+     * rather than the compressor, while the binary formats it is used on still shrink well.
+     */
+    public static final int LEVEL = Deflater.BEST_SPEED;
+
+    /**
+     * Stream of the file being written.
+     */
+    private FileOutputStream out;
+    /**
+     * The compressor, reset for every block.
+     */
+    private final Deflater deflater;
+    /**
+     * Checksum of the uncompressed bytes of a block.
+     */
+    private final CRC32 crc;
+    /**
+     * Uncompressed bytes of the block being gathered.
+     */
+    private final byte[] block;
+    /**
+     * Number of bytes in {@code block}.
+     */
+    private int blockLength;
+    /**
+     * Compressed bytes of the last block.
+     */
+    private byte[] compressed;
+    /**
+     * Offset of every block written.
+     */
+    private long[] offsets;
+    /**
+     * Stored length of every block written.
+     */
+    private int[] storedLengths;
+    /**
+     * CRC-32 of the uncompressed bytes of every block written.
+     */
+    private int[] checksums;
+    /**
+     * Number of blocks written.
+     */
+    private int blockCount;
+    /**
+     * Number of bytes written to the file.
+     */
+    private long position;
+    /**
+     * Number of uncompressed bytes written to this stream.
+     */
+    private long length;
+
+    /**
+     * Creates a compressed file to write to.
+     * 
+     * @param target the file to write; an existing file is overwritten
+     * @throws IOException if an error occurred when creating the file
+     */
+    public CSBlockWriter(File target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+        out = new FileOutputStream(target);
+        deflater = new Deflater(LEVEL, true);
+        crc = new CRC32();
+        block = new byte[BLOCK_SIZE];
+        compressed = new byte[BLOCK_SIZE];
+        offsets = new long[16];
+        storedLengths = new int[16];
+        checksums = new int[16];
+
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(BLOCK_SIZE);
+        header.putInt(0);
+        out.write(header.array());
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Writes a byte.
+     * 
+     * @param b the byte, in the low 8 bits
+     * @throws IOException if an error occurred when writing a block
+     */
+    public void write(int b) throws IOException {
+        if(blockLength == BLOCK_SIZE)
+            writeBlock();
+        block[blockLength++] = (byte)b;
+    }
+
+    /**
+     * Writes bytes from an array.
+     * 
+     * @param bytes the array
+     * @param offset the index of the first byte to write
+     * @param count the number of bytes to write
+     * @throws IOException if an error occurred when writing a block
+     */
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        int chunk;
+
+        while(count > 0) {
+            if(blockLength == BLOCK_SIZE)
+                writeBlock();
+            chunk = Math.min(count, BLOCK_SIZE - blockLength);
+            System.arraycopy(bytes, offset, block, blockLength, chunk);
+            blockLength += chunk;
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    /**
+     * Writes the last block, the block index and the trailer, and closes the file.
+     * 
+     * @throws IOException if an error occurred when writing or closing the file
+     */
+    public void close() throws IOException {
+        ByteBuffer index;
+
+        if(out == null)
+            return;
+
+        try {
+            if(blockLength > 0)
+                writeBlock();
+
+            index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE + TRAILER_SIZE);
+            for(int b = 0; b < blockCount; b++) {
+                index.putLong(offsets[b]);
+                index.putInt(storedLengths[b]);
+                index.putInt(checksums[b]);
+            }
+            index.putLong(position);
+            index.putLong(length);
+            index.putInt(blockCount);
+            index.putInt(MAGIC);
+            out.write(index.array());
+        } finally {
+            deflater.end();
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Utility method to compress the gathered block and write it to the file.
+     * 
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeBlock() throws IOException {
+        int storedLength = 0;
+
+        if(blockCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, blockCount * 2);
+            storedLengths = Arrays.copyOf(storedLengths, blockCount * 2);
+            checksums = Arrays.copyOf(checksums, blockCount * 2);
+        }
+
+        crc.reset();
+        crc.update(block, 0, blockLength);
+
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+        // a block is stored as it is once the compressed bytes reach its length
+        while(!deflater.finished() && storedLength < blockLength)
+            storedLength += deflater.deflate(compressed, storedLength, compressed.length - storedLength);
+
+        if(deflater.finished() && storedLength < blockLength)
+            out.write(compressed, 0, storedLength);
+        else {
+            storedLength = blockLength;
+            out.write(block, 0, blockLength);
+        }
+
+        offsets[blockCount] = position;
+        storedLengths[blockCount] = storedLength;
+        checksums[blockCount] = (int)crc.getValue();
+        blockCount++;
+        position += storedLength;
+        length += blockLength;
+        blockLength = 0;
+    }
+}
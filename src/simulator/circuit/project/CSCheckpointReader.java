@@ -0,0 +1,251 @@
+package simulator.circuit.project;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class to read a checkpoint file written by {@linkplain CSCheckpointWriter}.
+ * <p>
+ * The records of the file are memory-mapped, so finding the checkpoint for any cycle
+ * is a matter of computing its offset. Large files are mapped in segments, and only the
+ * segment holding the requested record is mapped at a time.
+ * 
+ * @author Joel Tengco
+ */
+public class CSCheckpointReader implements Closeable {
+    /**
+     * Largest number of bytes mapped at once.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * The file being read.
+     */
+    private RandomAccessFile file;
+    /**
+     * Channel of the file being read.
+     */
+    private FileChannel channel;
+    /**
+     * Number of cycles between two checkpoints.
+     */
+    private final int interval;
+    /**
+     * Number of node values stored per checkpoint.
+     */
+    private final int nodeCount;
+    /**
+     * Number of input sequence positions stored per checkpoint.
+     */
+    private final int inputCount;
+    /**
+     * Fingerprint of the circuit the checkpoints belong to.
+     */
+    private final long fingerprint;
+    /**
+     * Number of checkpoints in the file.
+     */
+    private final long checkpointCount;
+    /**
+     * Number of cycles simulated in the recorded run.
+     */
+    private final long cycleCount;
+    /**
+     * Offset of the first record.
+     */
+    private final long dataOffset;
+    /**
+     * Size of each record.
+     */
+    private final int recordSize;
+    /**
+     * Number of records in each mapped segment.
+     */
+    private final long recordsPerSegment;
+    /**
+     * The currently mapped segment; null if no segment has been mapped yet.
+     */
+    private MappedByteBuffer segment;
+    /**
+     * Index of the currently mapped segment.
+     */
+    private long segmentIndex;
+
+    /**
+     * Opens the given checkpoint file and reads its header.
+     * 
+     * @param source the checkpoint file to read
+     * @throws IOException if an error occurred when reading the header, or the file is not
+     * a finished checkpoint file
+     */
+    public CSCheckpointReader(File source) throws IOException {
+        file = new RandomAccessFile(source, "r");
+        channel = file.getChannel();
+
+        try {
+            if(file.readInt() != CSCheckpointWriter.MAGIC)
+                throw new IOException(source.getName() + " is not a checkpoint file");
+            int version = file.readInt();
+            if(version != CSCheckpointWriter.VERSION)
+                throw new IOException("Unsupported checkpoint file version " + version);
+            interval = file.readInt();
+            nodeCount = file.readInt();
+            inputCount = file.readInt();
+            file.readInt();     // padding
+            fingerprint = file.readLong();
+            checkpointCount = file.readLong();
+            cycleCount = file.readLong();
+            dataOffset = file.readLong();
+        } catch(IOException ioe) {
+            close();
+            throw ioe;
+        }
+
+        if(checkpointCount == 0) {
+            close();
+            throw new IOException(source.getName() + " does not contain any checkpoints");
+        }
+
+        recordSize = CSCheckpointWriter.getRecordSize(nodeCount, inputCount);
+        recordsPerSegment = Math.max(1, SEGMENT_SIZE / recordSize);
+        segmentIndex = -1;
+    }
+
+    /**
+     * Gets the number of cycles between two checkpoints.
+     * 
+     * @return the checkpoint interval
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Gets the number of cycles simulated in the recorded run.
+     * 
+     * @return the number of cycles covered by this file
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Gets the number of checkpoints in this file.
+     * 
+     * @return the number of checkpoints
+     */
+    public long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * Gets the number of nodes of the circuit the checkpoints belong to.
+     * 
+     * @return the number of node values stored per checkpoint
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the number of input variable nodes of the circuit the checkpoints belong to.
+     * 
+     * @return the number of input sequence positions stored per checkpoint
+     */
+    public int getInputCount() {
+        return inputCount;
+    }
+
+    /**
+     * Gets the fingerprint of the circuit the checkpoints belong to.
+     * 
+     * @return the fingerprint of the circuit
+     */
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Gets the names of the nodes of the circuit the checkpoints belong to.
+     * 
+     * @return an array containing the node names, in the order of the circuit
+     * @throws IOException if an error occurred when reading the names
+     */
+    public String[] getNodeNames() throws IOException {
+        String[] nodeNames = new String[nodeCount];
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel.position(CSCheckpointWriter.HEADER_SIZE)));
+
+        for(int i = 0; i < nodeCount; i++)
+            nodeNames[i] = in.readUTF();
+
+        return nodeNames;
+    }
+
+    /**
+     * Gets the index of the last checkpoint at or before the given cycle.
+     * 
+     * @param cycle the cycle number
+     * @return the index of the nearest checkpoint that does not come after the cycle
+     * @throws IllegalArgumentException if the cycle is negative or after the end of the recorded run
+     */
+    public long getCheckpointIndex(long cycle) throws IllegalArgumentException {
+        if(cycle < 0 || cycle > cycleCount)
+            throw new IllegalArgumentException("Cycle " + cycle + " is outside of the recorded run of " + cycleCount + " cycles");
+
+        return Math.min(cycle / interval, checkpointCount - 1);
+    }
+
+    /**
+     * Reads the checkpoint with the given index.
+     * 
+     * @param index the index of the checkpoint
+     * @param nodeValues array to store the packed node values in; bit {@code i % 64} of word
+     * {@code i / 64} holds the value of node {@code i}
+     * @param inputPositions array to store the input sequence positions in
+     * @return the cycle number of the checkpoint
+     * @throws IOException if an error occurred when mapping the file
+     * @throws IndexOutOfBoundsException if there is no checkpoint with the given index
+     */
+    public long readCheckpoint(long index, long[] nodeValues, long[] inputPositions) throws IOException, IndexOutOfBoundsException {
+        if(index < 0 || index >= checkpointCount)
+            throw new IndexOutOfBoundsException(index + " is an invalid checkpoint index");
+
+        long wantedSegment = index / recordsPerSegment;
+        if(wantedSegment != segmentIndex) {
+            long segmentStart = dataOffset + wantedSegment * recordsPerSegment * recordSize;
+            long segmentRecords = Math.min(recordsPerSegment, checkpointCount - wantedSegment * recordsPerSegment);
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentRecords * recordSize);
+            segmentIndex = wantedSegment;
+        }
+
+        int position = (int)((index - wantedSegment * recordsPerSegment) * recordSize);
+        long cycle = segment.getLong(position);
+        position += 8;
+        for(int w = 0; w < (nodeCount + 63) >>> 6; w++, position += 8)
+            nodeValues[w] = segment.getLong(position);
+        for(int i = 0; i < inputCount; i++, position += 8)
+            inputPositions[i] = segment.getLong(position);
+
+        return cycle;
+    }
+
+    /**
+     * Closes this reader and the underlying file.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        if(file != null) {
+            file.close();
+            file = null;
+            channel = null;
+            segment = null;
+        }
+    }
+}
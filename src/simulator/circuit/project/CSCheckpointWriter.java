@@ -0,0 +1,257 @@
+package simulator.circuit.project;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class to write a checkpoint file of a simulation run.
+ * <p>
+ * A checkpoint holds the full state of the circuit after some number of cycles: the value
+ * of every node and the position of every input variable node within its input sequence.
+ * Checkpoints are written every {@code interval} cycles, starting with the reset state at
+ * cycle 0, so the state after any cycle can be rebuilt by loading the checkpoint at or before
+ * it and simulating at most {@code interval - 1} cycles. Smaller intervals make that faster
+ * at the cost of a larger file.
+ * <p>
+ * Every checkpoint record has the same size, so the file itself is the index: the checkpoint
+ * for cycle {@code c} is record {@code c / interval}. The layout is:
+ * <ul>
+ *  <li>header: magic, version, interval, node count, input count, circuit fingerprint,
+ *      number of checkpoints, number of cycles simulated, offset of the first record</li>
+ *  <li>the names of the nodes, in the order of the circuit</li>
+ *  <li>the records, each holding the cycle number, the node values packed 64 per word and
+ *      the input sequence positions</li>
+ * </ul>
+ * The files are read back with {@linkplain CSCheckpointReader}.
+ * 
+ * @author Joel Tengco
+ */
+public class CSCheckpointWriter implements Closeable {
+    /**
+     * Identifies a file as a circuit simulator checkpoint file; "CSCK" in ASCII.
+     */
+    static final int MAGIC = 0x4353434B;
+    /**
+     * Version of the checkpoint format written by this class.
+     */
+    static final int VERSION = 1;
+    /**
+     * Offset of the number of checkpoints within the header.
+     */
+    static final int CHECKPOINT_COUNT_OFFSET = 32;
+    /**
+     * Offset of the number of simulated cycles within the header.
+     */
+    static final int CYCLE_COUNT_OFFSET = 40;
+    /**
+     * Offset of the offset of the first record within the header.
+     */
+    static final int DATA_OFFSET_OFFSET = 48;
+    /**
+     * Size of the fixed part of the header.
+     */
+    static final int HEADER_SIZE = 56;
+    /**
+     * Number of records gathered in memory before they are written to the file.
+     */
+    private static final int RECORDS_PER_WRITE = 64;
+
+    /**
+     * The file being written.
+     */
+    private RandomAccessFile file;
+    /**
+     * Channel of the file being written.
+     */
+    private FileChannel channel;
+    /**
+     * Buffer that gathers records before they are written.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Number of cycles between two checkpoints.
+     */
+    private final int interval;
+    /**
+     * Number of node values stored per checkpoint.
+     */
+    private final int nodeCount;
+    /**
+     * Number of input sequence positions stored per checkpoint.
+     */
+    private final int inputCount;
+    /**
+     * Number of checkpoints written so far.
+     */
+    private long checkpointCount;
+
+    /**
+     * Creates a checkpoint file for a circuit with the given nodes and input variable nodes.
+     * 
+     * @param target the file to write; an existing file is overwritten
+     * @param interval the number of cycles between two checkpoints
+     * @param nodeNames the names of all the nodes of the circuit, in the order of the circuit
+     * @param inputCount the number of input variable nodes in the circuit
+     * @param fingerprint value that identifies the circuit the checkpoints belong to
+     * @throws IOException if an error occurred when creating the file
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public CSCheckpointWriter(File target, int interval, String[] nodeNames, int inputCount, long fingerprint) throws IOException, IllegalArgumentException {
+        if(interval <= 0)
+            throw new IllegalArgumentException("The checkpoint interval must be positive");
+
+        this.interval = interval;
+        this.nodeCount = nodeNames.length;
+        this.inputCount = inputCount;
+
+        file = new RandomAccessFile(target, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+
+        // fixed header, then the node names
+        file.writeInt(MAGIC);
+        file.writeInt(VERSION);
+        file.writeInt(interval);
+        file.writeInt(nodeCount);
+        file.writeInt(inputCount);
+        file.writeInt(0);   // padding
+        file.writeLong(fingerprint);
+        file.writeLong(0);  // number of checkpoints, filled in by close()
+        file.writeLong(0);  // number of cycles, filled in by close()
+        file.writeLong(0);  // offset of the first record, filled in below
+        for(String nodeName : nodeNames)
+            file.writeUTF(nodeName);
+
+        // align the records to 8 bytes
+        long dataOffset = (file.getFilePointer() + 7) & ~7L;
+        file.seek(DATA_OFFSET_OFFSET);
+        file.writeLong(dataOffset);
+        channel.position(dataOffset);
+
+        buffer = ByteBuffer.allocateDirect(getRecordSize(nodeCount, inputCount) * RECORDS_PER_WRITE);
+    }
+
+    /**
+     * Gets the size in bytes of one checkpoint record.
+     * 
+     * @param nodeCount the number of nodes in the circuit
+     * @param inputCount the number of input variable nodes in the circuit
+     * @return the size of a record
+     */
+    static int getRecordSize(int nodeCount, int inputCount) {
+        return 8 + ((nodeCount + 63) >>> 6) * 8 + inputCount * 8;
+    }
+
+    /**
+     * Computes a fingerprint of the given circuit from the names and types of its nodes.
+     * <p>
+     * Checkpoints are only meaningful for the circuit they were recorded from, so readers
+     * compare this value before restoring a state.
+     * 
+     * @param circuit the circuit to compute the fingerprint of
+     * @return the fingerprint of the circuit
+     */
+    static long getFingerprint(CSGraph circuit) {
+        long hash = 1125899906842597L;
+        CSNode node;
+
+        for(int i = 0; i < circuit.getSize(); i++) {
+            node = circuit.getNode(i);
+            for(byte b : (node.getNodeType() + ":" + node.getName()).getBytes(StandardCharsets.UTF_8))
+                hash = 31 * hash + b;
+            hash = 31 * hash + circuit.getAdjList(i).hashCode();
+        }
+
+        return hash;
+    }
+
+    /**
+     * Gets the number of cycles between two checkpoints.
+     * 
+     * @return the checkpoint interval
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Writes the next checkpoint.
+     * <p>
+     * The n-th checkpoint, starting from zero, needs to be the state after
+     * {@code n * interval} cycles.
+     * 
+     * @param nodeValues the packed values of all the nodes; bit {@code i % 64} of word
+     * {@code i / 64} holds the value of node {@code i}
+     * @param inputPositions the positions of the input variable nodes within their input sequences
+     * @throws IOException if an error occurred when writing the checkpoint
+     */
+    public void writeCheckpoint(long[] nodeValues, long[] inputPositions) throws IOException {
+        if(buffer.remaining() < getRecordSize(nodeCount, inputCount))
+            flush();
+
+        buffer.putLong(checkpointCount * interval);
+        for(int w = 0; w < (nodeCount + 63) >>> 6; w++)
+            buffer.putLong(nodeValues[w]);
+        for(int i = 0; i < inputCount; i++)
+            buffer.putLong(inputPositions[i]);
+
+        checkpointCount++;
+    }
+
+    /**
+     * Gets the number of checkpoints written so far.
+     * 
+     * @return the number of checkpoints in this file
+     */
+    public long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * Utility method to write the gathered records to the file.
+     * 
+     * @throws IOException if an error occurred when writing
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Finishes the checkpoint file, recording how many cycles the run simulated.
+     * <p>
+     * The file is closed afterwards.
+     * 
+     * @param cycleCount the number of cycles simulated in the run
+     * @throws IOException if an error occurred when finishing the file
+     */
+    public void finish(long cycleCount) throws IOException {
+        flush();
+        file.seek(CHECKPOINT_COUNT_OFFSET);
+        file.writeLong(checkpointCount);
+        file.writeLong(cycleCount);
+        close();
+    }
+
+    /**
+     * Closes the file without finishing it, if it has not been closed yet.
+     * <p>
+     * A file that was closed without being finished contains no checkpoints.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        if(file != null) {
+            file.close();
+            file = null;
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,700 @@
+package simulator.circuit.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Class to keep many circuits in one archive file, each under a name of its own, so that
+ * families of related circuits do not take a save file each.
+ * <p>
+ * Every circuit is stored in the format of {@linkplain CSSaveWriter}, and a directory at the
+ * end of the archive lists, for every name, where its circuit starts, how long it is and the
+ * description of the circuit of {@linkplain CSSaveInfo}. The layout is:
+ * <ul>
+ *  <li>header: magic, version and the offset of the directory</li>
+ *  <li>the stored circuits, one after another</li>
+ *  <li>the directory: its length, a CRC-32 of its contents, the number of entries and every
+ *      entry as its name in UTF-8, the offset and length of its circuit and its description</li>
+ * </ul>
+ * Opening an archive only reads its header and directory, and a circuit is read by mapping
+ * the bytes of its entry into memory, so circuits are loaded by name however large the
+ * archive is.
+ * <p>
+ * Circuits are only ever appended. A circuit with the same contents as one already stored,
+ * which is found by its content hash and then compared byte for byte, is not stored again and
+ * its entry shares the stored circuit instead. When the archive is closed, a new directory is
+ * written after the circuits appended to it, forced to disk, and only then does the header
+ * point to it, so an archive whose writing was cut short still holds its previous directory.
+ * The space of circuits that were replaced or removed is not reclaimed.
+ * 
+ * @author Joel Tengco
+ */
+public class CSCircuitArchive implements Closeable {
+    /**
+     * Extension of archive files.
+     */
+    public static final String EXTENSION = ".csa";
+    /**
+     * Character separating the path of an archive from the name of an entry, as in
+     * "family.csa#variant".
+     */
+    public static final char ENTRY_SEPARATOR = '#';
+    /**
+     * Identifies a file as a circuit archive; "CSAR" in ASCII.
+     */
+    static final int MAGIC = 0x43534152;
+    /**
+     * Version of the archive format.
+     */
+    static final int VERSION = 1;
+    /**
+     * Size of the header.
+     */
+    static final int HEADER_SIZE = 16;
+    /**
+     * Largest number of bytes of a stored circuit mapped at once.
+     */
+    private static final int MAP_SIZE = 1 << 30;
+    /**
+     * Largest number of bytes of the name of an entry in UTF-8.
+     */
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    /**
+     * The archive file, for messages.
+     */
+    private final File source;
+    /**
+     * The opened archive file, or null once closed.
+     */
+    private RandomAccessFile file;
+    /**
+     * Channel of the archive file.
+     */
+    private FileChannel channel;
+    /**
+     * Lock held on the archive file while it is open for writing, or null.
+     */
+    private FileLock lock;
+    /**
+     * Whether circuits can be added to and removed from the archive.
+     */
+    private final boolean writable;
+    /**
+     * Entry of every name, in order of name.
+     */
+    private final TreeMap<String, Entry> entries;
+    /**
+     * Entries by the content hash of their circuits, to find circuits that are already stored.
+     */
+    private final HashMap<Long, ArrayList<Entry>> entriesByHash;
+    /**
+     * Whether the entries changed since the directory was written.
+     */
+    private boolean changed;
+
+    /**
+     * Opens an archive to read circuits from it.
+     * 
+     * @param source the archive file
+     * @throws FileNotFoundException if the archive file does not exist
+     * @throws IOException if an error occurred when reading the directory, or the file is not
+     * an archive of a supported version
+     */
+    public CSCircuitArchive(File source) throws FileNotFoundException, IOException {
+        this(source, false);
+    }
+
+    /**
+     * Opens an archive, which is created if it is opened for writing and does not exist yet.
+     * <p>
+     * An archive open for writing is locked, so that another program cannot write to it at
+     * the same time, and anything written after its directory by a program that stopped
+     * before it could close the archive is cut off.
+     * 
+     * @param source the archive file
+     * @param writable whether circuits are to be added to or removed from the archive
+     * @throws FileNotFoundException if the archive is opened for reading and does not exist
+     * @throws IOException if an error occurred when reading the directory, the file is not an
+     * archive of a supported version, or another program is writing to it
+     */
+    public CSCircuitArchive(File source, boolean writable) throws FileNotFoundException, IOException {
+        long directoryEnd;
+
+        if(!writable && !source.isFile())
+            throw new FileNotFoundException(source.getPath() + " does not exist");
+
+        this.source = source;
+        this.writable = writable;
+        entries = new TreeMap<String, Entry>();
+        entriesByHash = new HashMap<Long, ArrayList<Entry>>();
+        file = new RandomAccessFile(source, writable ? "rw" : "r");
+        channel = file.getChannel();
+
+        try {
+            if(writable) {
+                try {
+                    lock = channel.tryLock();
+                } catch(OverlappingFileLockException ofle) {
+                    lock = null;
+                }
+                if(lock == null)
+                    throw new IOException(source.getName() + " is being written by another program");
+            }
+
+            if(writable && channel.size() == 0) {
+                writeDirectory();
+                return;
+            }
+
+            directoryEnd = readDirectory();
+            if(writable && channel.size() > directoryEnd)
+                channel.truncate(directoryEnd);
+        } catch(IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Checks whether a file name names an entry of an archive, as the path of an archive
+     * followed by {@linkplain #ENTRY_SEPARATOR} and the name of the entry.
+     * 
+     * @param fileName the file name
+     * @return true if the file name names an entry of an archive
+     */
+    public static boolean isArchiveEntry(String fileName) {
+        int separator = fileName.toLowerCase().indexOf(EXTENSION + ENTRY_SEPARATOR);
+
+        return separator > 0 && separator + EXTENSION.length() + 1 < fileName.length();
+    }
+
+    /**
+     * Gets the path of the archive from a file name naming an entry of an archive.
+     * 
+     * @param fileName the file name, as checked by {@linkplain #isArchiveEntry(String)}
+     * @return the path of the archive
+     */
+    public static String getArchivePath(String fileName) {
+        return fileName.substring(0, fileName.toLowerCase().indexOf(EXTENSION + ENTRY_SEPARATOR) + EXTENSION.length());
+    }
+
+    /**
+     * Gets the name of the entry from a file name naming an entry of an archive.
+     * 
+     * @param fileName the file name, as checked by {@linkplain #isArchiveEntry(String)}
+     * @return the name of the entry
+     */
+    public static String getEntryName(String fileName) {
+        return fileName.substring(getArchivePath(fileName).length() + 1);
+    }
+
+    /**
+     * Gets the names of the entries of the archive, in order of name.
+     * 
+     * @return the names of the entries
+     */
+    public ArrayList<String> getNames() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    /**
+     * Checks whether the archive has an entry with the given name.
+     * 
+     * @param name the name of the entry
+     * @return true if the archive has the entry
+     */
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Gets the description of the circuit of an entry, which is read from the directory.
+     * 
+     * @param name the name of the entry
+     * @return the description, or null if the archive has no entry with the name
+     */
+    public CSSaveInfo getInfo(String name) {
+        Entry entry = entries.get(name);
+
+        return entry == null ? null : entry.info;
+    }
+
+    /**
+     * Gets the number of circuits stored in the archive, where a circuit shared by several
+     * entries is counted once.
+     * 
+     * @return the number of stored circuits
+     */
+    public int getStoredCount() {
+        HashSet<Long> offsets = new HashSet<Long>();
+
+        for(Entry entry : entries.values())
+            offsets.add(entry.offset);
+
+        return offsets.size();
+    }
+
+    /**
+     * Reads the circuit of an entry, mapping only the bytes of that entry into memory.
+     * 
+     * @param name the name of the entry
+     * @return the circuit, in the state it was added in
+     * @throws FileNotFoundException if the archive has no entry with the name
+     * @throws IOException if an error occurred when reading, or the entry is damaged
+     */
+    public CSGraph readCircuit(String name) throws FileNotFoundException, IOException {
+        Entry entry = entries.get(name);
+        CSSaveReader reader;
+
+        if(entry == null)
+            throw new FileNotFoundException(source.getName() + " has no circuit named " + name);
+
+        reader = new CSSaveReader(new EntryChannel(entry));
+        try {
+            return reader.readCircuit();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Adds a circuit to the archive under the given name, replacing the entry with that name
+     * if there is one. If the archive already stores a circuit with the same contents, the
+     * entry shares it instead of storing the circuit again.
+     * <p>
+     * The entry is only kept once the archive is closed.
+     * 
+     * @param name the name of the entry
+     * @param circuit the circuit to add
+     * @return true if the circuit was stored, false if the entry shares a stored circuit
+     * @throws IOException if an error occurred when writing the circuit
+     * @throws IllegalArgumentException if the name is empty or too long
+     * @throws IllegalStateException if the archive was not opened for writing
+     */
+    public boolean putCircuit(String name, CSGraph circuit) throws IOException, IllegalArgumentException, IllegalStateException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CSSaveWriter writer;
+        byte[] save;
+        Entry entry;
+        Entry storedEntry;
+
+        checkWritable();
+        if(name.isEmpty() || name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("The name of an archive entry must have 1 to " + MAX_NAME_LENGTH + " bytes");
+
+        writer = new CSSaveWriter(Channels.newChannel(bytes));
+        try {
+            writer.writeCircuit(circuit);
+        } finally {
+            writer.close();
+        }
+        save = bytes.toByteArray();
+
+        entry = new Entry();
+        entry.length = save.length;
+        entry.info = CSSaveInfo.read(ByteBuffer.wrap(save, CSSaveWriter.HEADER_SIZE, CSSaveInfo.SIZE));
+        storedEntry = findStored(entry.info.getContentHash(), save);
+        if(storedEntry != null)
+            entry.offset = storedEntry.offset;
+        else {
+            entry.offset = channel.size();
+            writeFully(ByteBuffer.wrap(save), entry.offset);
+        }
+
+        removeEntry(name);
+        addEntry(name, entry);
+        changed = true;
+
+        return storedEntry == null;
+    }
+
+    /**
+     * Removes an entry from the archive. The circuit it stored is left in the file.
+     * <p>
+     * The entry is only removed for good once the archive is closed.
+     * 
+     * @param name the name of the entry
+     * @return true if the archive had an entry with the name
+     * @throws IllegalStateException if the archive was not opened for writing
+     */
+    public boolean removeCircuit(String name) throws IllegalStateException {
+        checkWritable();
+        if(!removeEntry(name))
+            return false;
+
+        changed = true;
+        return true;
+    }
+
+    /**
+     * Closes the archive, writing its directory first if entries were added or removed.
+     * 
+     * @throws IOException if an error occurred when writing the directory or closing the file
+     */
+    public void close() throws IOException {
+        if(file == null)
+            return;
+
+        try {
+            if(writable && changed)
+                writeDirectory();
+        } finally {
+            try {
+                if(lock != null)
+                    lock.release();
+            } finally {
+                file.close();
+                file = null;
+                lock = null;
+            }
+        }
+    }
+
+    /**
+     * Utility method to check that the archive was opened for writing.
+     * 
+     * @throws IllegalStateException if the archive was not opened for writing
+     */
+    private void checkWritable() throws IllegalStateException {
+        if(!writable)
+            throw new IllegalStateException(source.getName() + " was not opened for writing");
+    }
+
+    /**
+     * Utility method to find a stored circuit with the same contents as the given save.
+     * <p>
+     * The descriptions of the two are left out of the comparison, since they differ in the
+     * time they were saved.
+     * 
+     * @param contentHash the content hash of the save
+     * @param save the save, in the format of {@linkplain CSSaveWriter}
+     * @return the entry of the stored circuit, or null if no stored circuit has the same contents
+     * @throws IOException if an error occurred when reading a stored circuit
+     */
+    private Entry findStored(long contentHash, byte[] save) throws IOException {
+        ArrayList<Entry> sameHash = entriesByHash.get(contentHash);
+        int infoEnd = CSSaveWriter.HEADER_SIZE + CSSaveInfo.SIZE;
+        MappedByteBuffer stored;
+
+        if(sameHash == null)
+            return null;
+
+        for(Entry entry : sameHash) {
+            if(entry.length != save.length)
+                continue;
+
+            stored = channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.length);
+            stored.limit(CSSaveWriter.HEADER_SIZE);
+            if(!stored.equals(ByteBuffer.wrap(save, 0, CSSaveWriter.HEADER_SIZE)))
+                continue;
+            stored.limit(save.length);
+            stored.position(infoEnd);
+            if(stored.equals(ByteBuffer.wrap(save, infoEnd, save.length - infoEnd)))
+                return entry;
+        }
+
+        return null;
+    }
+
+    /**
+     * Utility method to add an entry to the maps of entries.
+     * 
+     * @param name the name of the entry
+     * @param entry the entry
+     */
+    private void addEntry(String name, Entry entry) {
+        ArrayList<Entry> sameHash = entriesByHash.get(entry.info.getContentHash());
+
+        if(sameHash == null) {
+            sameHash = new ArrayList<Entry>(1);
+            entriesByHash.put(entry.info.getContentHash(), sameHash);
+        }
+        sameHash.add(entry);
+        entries.put(name, entry);
+    }
+
+    /**
+     * Utility method to remove an entry from the maps of entries.
+     * 
+     * @param name the name of the entry
+     * @return true if there was an entry with the name
+     */
+    private boolean removeEntry(String name) {
+        Entry entry = entries.remove(name);
+        ArrayList<Entry> sameHash;
+
+        if(entry == null)
+            return false;
+
+        sameHash = entriesByHash.get(entry.info.getContentHash());
+        sameHash.remove(entry);
+        if(sameHash.isEmpty())
+            entriesByHash.remove(entry.info.getContentHash());
+
+        return true;
+    }
+
+    /**
+     * Utility method to read the header and directory of the archive.
+     * 
+     * @return the offset of the end of the directory
+     * @throws IOException if an error occurred when reading, or the file is not an archive of a
+     * supported version or is damaged
+     */
+    private long readDirectory() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        ByteBuffer directory;
+        CRC32 crc = new CRC32();
+        long size = channel.size();
+        long directoryOffset;
+        int version;
+        int length;
+        int count;
+        byte[] nameBytes;
+        Entry entry;
+
+        if(size < HEADER_SIZE)
+            throw new IOException(source.getName() + " is not a circuit archive");
+        readFully(header, 0);
+        if(header.getInt(0) != MAGIC)
+            throw new IOException(source.getName() + " is not a circuit archive");
+        version = header.getInt(4);
+        if(version != VERSION)
+            throw new IOException("Unsupported circuit archive version " + version);
+
+        directoryOffset = header.getLong(8);
+        if(directoryOffset < HEADER_SIZE || directoryOffset > size - 8)
+            throw new IOException(source.getName() + " is damaged");
+        header.clear();
+        header.limit(8);
+        readFully(header, directoryOffset);
+        length = header.getInt(0);
+        if(length < 4 || length > size - directoryOffset - 8)
+            throw new IOException(source.getName() + " is damaged");
+
+        directory = ByteBuffer.allocate(length);
+        readFully(directory, directoryOffset + 8);
+        crc.update(directory.array());
+        if((int)crc.getValue() != header.getInt(4))
+            throw new IOException(source.getName() + " is damaged");
+
+        try {
+            count = directory.getInt();
+            for(int i = 0; i < count; i++) {
+                nameBytes = new byte[directory.getShort() & MAX_NAME_LENGTH];
+                directory.get(nameBytes);
+                entry = new Entry();
+                entry.offset = directory.getLong();
+                entry.length = directory.getLong();
+                entry.info = CSSaveInfo.read(directory);
+                if(entry.offset < HEADER_SIZE || entry.length < CSSaveWriter.HEADER_SIZE + CSSaveInfo.SIZE
+                        || entry.length > directoryOffset - entry.offset)
+                    throw new IOException(source.getName() + " is damaged");
+                addEntry(new String(nameBytes, StandardCharsets.UTF_8), entry);
+            }
+        } catch(BufferUnderflowException bue) {
+            throw new IOException(source.getName() + " is damaged");
+        }
+
+        return directoryOffset + 8 + length;
+    }
+
+    /**
+     * Utility method to write the directory at the end of the file, then point the header to it.
+     * 
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeDirectory() throws IOException {
+        ByteBuffer directory;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        ArrayList<byte[]> names = new ArrayList<byte[]>(entries.size());
+        long directoryOffset = Math.max(channel.size(), HEADER_SIZE);
+        int length = 4;
+        int i = 0;
+
+        for(String name : entries.keySet()) {
+            names.add(name.getBytes(StandardCharsets.UTF_8));
+            length += 2 + names.get(names.size() - 1).length + 16 + CSSaveInfo.SIZE;
+        }
+
+        directory = ByteBuffer.allocate(8 + length);
+        directory.position(8);
+        directory.putInt(entries.size());
+        for(Entry entry : entries.values()) {
+            directory.putShort((short)names.get(i).length);
+            directory.put(names.get(i++));
+            directory.putLong(entry.offset);
+            directory.putLong(entry.length);
+            entry.info.write(directory);
+        }
+        crc.update(directory.array(), 8, length);
+        directory.putInt(0, length);
+        directory.putInt(4, (int)crc.getValue());
+        directory.flip();
+        writeFully(directory, directoryOffset);
+        channel.force(false);
+
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(directoryOffset);
+        header.flip();
+        writeFully(header, 0);
+        channel.force(false);
+        changed = false;
+    }
+
+    /**
+     * Utility method to fill a buffer from the file.
+     * 
+     * @param buffer the buffer to fill
+     * @param offset where to start reading in the file
+     * @throws IOException if an error occurred when reading, or the file ended first
+     */
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        int count;
+
+        while(buffer.hasRemaining()) {
+            count = channel.read(buffer, offset);
+            if(count < 0)
+                throw new IOException(source.getName() + " is damaged");
+            offset += count;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Utility method to write a buffer to the file.
+     * 
+     * @param buffer the buffer to write
+     * @param offset where to start writing in the file
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeFully(ByteBuffer buffer, long offset) throws IOException {
+        while(buffer.hasRemaining())
+            offset += channel.write(buffer, offset);
+    }
+
+    /**
+     * Class to hold where the circuit of an entry is stored and its description.
+     * 
+     * @author Joel Tengco
+     */
+    private static class Entry {
+        /**
+         * Offset of the stored circuit in the file.
+         */
+        long offset;
+        /**
+         * Number of bytes of the stored circuit.
+         */
+        long length;
+        /**
+         * Description of the stored circuit.
+         */
+        CSSaveInfo info;
+    }
+
+    /**
+     * Class to read the bytes of a stored circuit through memory mapping, mapping at most
+     * {@linkplain CSCircuitArchive#MAP_SIZE} bytes at a time.
+     * 
+     * @author Joel Tengco
+     */
+    private class EntryChannel implements ReadableByteChannel {
+        /**
+         * Offset in the file of the first byte not mapped yet.
+         */
+        private long position;
+        /**
+         * Offset in the file of the end of the stored circuit.
+         */
+        private final long end;
+        /**
+         * The bytes mapped so far that have not been read, or null before the first read.
+         */
+        private MappedByteBuffer window;
+        /**
+         * Whether the channel is open.
+         */
+        private boolean open;
+
+        /**
+         * Prepares to read the stored circuit of the given entry.
+         * 
+         * @param entry the entry
+         */
+        EntryChannel(Entry entry) {
+            position = entry.offset;
+            end = entry.offset + entry.length;
+            open = true;
+        }
+
+        /**
+         * Reads bytes of the stored circuit into the given buffer.
+         * 
+         * @param target the buffer to read into
+         * @return the number of bytes read, or -1 at the end of the stored circuit
+         * @throws IOException if an error occurred when mapping the file
+         */
+        public int read(ByteBuffer target) throws IOException {
+            ByteBuffer part;
+            int count;
+
+            if(!open)
+                throw new ClosedChannelException();
+
+            if(window == null || !window.hasRemaining()) {
+                if(position == end)
+                    return -1;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, end - position));
+                position += window.capacity();
+            }
+
+            count = Math.min(target.remaining(), window.remaining());
+            part = window.duplicate();
+            part.limit(part.position() + count);
+            target.put(part);
+            window.position(window.position() + count);
+
+            return count;
+        }
+
+        /**
+         * Checks whether the channel is open.
+         * 
+         * @return true if the channel is open
+         */
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * Closes the channel, leaving the archive open.
+         */
+        public void close() {
+            open = false;
+            window = null;
+        }
+    }
+}
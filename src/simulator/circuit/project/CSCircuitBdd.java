@@ -0,0 +1,465 @@
+package simulator.circuit.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simulator.circuit.project.CSGraph.IllegalCircuitStateException;
+
+/**
+ * Class to hold the functions of a circuit as reduced ordered binary decision diagrams.
+ * <p>
+ * The diagrams are built by symbolic simulation: the nodes are visited along the update path,
+ * and each node's function is computed from the functions of its input nodes instead of from
+ * their values. There is one function for every output variable node, and one for every D
+ * flip-flop, which is its next state. The variables of the functions are the input variables
+ * and the present state of each D flip-flop, which is the value of its "-out" node.
+ * <p>
+ * Counting satisfying assignments, computing probabilities and evaluating a function take time
+ * proportional to the size of its diagram instead of the number of rows of its truth table, so
+ * circuits with far more input variables than {@linkplain CSEngine#getTruthTableData()} can handle
+ * can be analyzed, as long as their diagrams stay small. The size of a diagram depends heavily
+ * on the order of the variables; see {@linkplain #ORDER_DEPTH_FIRST}.
+ * 
+ * @author Joel Tengco
+ */
+public class CSCircuitBdd {
+    /**
+     * Variable order of the nodes in the circuit: input variables and flip-flops as they appear
+     * in the circuit.
+     */
+    public static final int ORDER_CIRCUIT = 0;
+    /**
+     * Variable order found by a depth-first traversal from the output variables and flip-flops
+     * through their input nodes; variables are ordered as they are first reached. Variables that
+     * feed the same gates end up next to each other, which usually keeps the diagrams small.
+     */
+    public static final int ORDER_DEPTH_FIRST = 1;
+
+    /**
+     * The manager of the diagrams.
+     */
+    private final CSBdd bdd;
+    /**
+     * Names of the variables, by level.
+     */
+    private final String[] variableNames;
+    /**
+     * Names of the functions: the output variables, then the flip-flops.
+     */
+    private final String[] functionNames;
+    /**
+     * Root of the diagram of each function.
+     */
+    private final int[] roots;
+    /**
+     * Names of the input variables, as they appear in the circuit.
+     */
+    private final String[] inputNames;
+    /**
+     * Level of each input variable, as they appear in the circuit.
+     */
+    private final int[] inputLevels;
+    /**
+     * Number of output variables; the functions after them are next states of flip-flops.
+     */
+    private final int outputCount;
+
+    /**
+     * Builds the decision diagrams of the given circuit.
+     * 
+     * @param circuit the circuit
+     * @param ordering the variable order, either {@linkplain #ORDER_CIRCUIT} or {@linkplain #ORDER_DEPTH_FIRST}
+     * @throws IllegalArgumentException if the variable order does not exist
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     * @throws IllegalStateException if the diagrams need more nodes than allowed
+     */
+    public CSCircuitBdd(CSGraph circuit, int ordering) throws IllegalArgumentException, IllegalCircuitStateException, IllegalStateException {
+        this(circuit, ordering, CSBdd.DEFAULT_NODE_LIMIT);
+    }
+
+    /**
+     * Builds the decision diagrams of the given circuit with a limit on their size.
+     * 
+     * @param circuit the circuit
+     * @param ordering the variable order, either {@linkplain #ORDER_CIRCUIT} or {@linkplain #ORDER_DEPTH_FIRST}
+     * @param nodeLimit the largest number of nodes the diagrams can take together
+     * @throws IllegalArgumentException if the variable order does not exist
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     * @throws IllegalStateException if the diagrams need more nodes than allowed
+     */
+    public CSCircuitBdd(CSGraph circuit, int ordering, int nodeLimit) throws IllegalArgumentException, IllegalCircuitStateException, IllegalStateException {
+        CSCompiledCircuit compiled = new CSCompiledCircuit(circuit);
+        int size = compiled.getSize();
+        ArrayList<Integer> variables = new ArrayList<Integer>();
+        ArrayList<Integer> functions = new ArrayList<Integer>();
+        ArrayList<String> inputs = new ArrayList<String>();
+        int[] varLevels = new int[size];
+        int[] nodeFunctions = new int[size];
+        int[] remainingFanouts = new int[size];
+        boolean[] isRoot = new boolean[size];
+        CSNode node;
+        int index;
+
+        if(ordering != ORDER_CIRCUIT && ordering != ORDER_DEPTH_FIRST)
+            throw new IllegalArgumentException(ordering + " is an invalid variable order");
+
+        // variables are the input variables and the flip-flops, whose "-out" nodes read their present state
+        for(int i = 0; i < size; i++) {
+            node = circuit.getNode(i);
+            if(node instanceof InputVariableNode) {
+                variables.add(Integer.valueOf(i));
+                inputs.add(node.getName());
+            } else if(node instanceof DFlipFlop)
+                variables.add(Integer.valueOf(i));
+        }
+        for(int i = 0; i < size; i++)
+            if(circuit.getNode(i) instanceof OutputVariableNode)
+                functions.add(Integer.valueOf(i));
+        outputCount = functions.size();
+        for(int i = 0; i < size; i++)
+            if(circuit.getNode(i) instanceof DFlipFlop)
+                functions.add(Integer.valueOf(i));
+
+        if(ordering == ORDER_DEPTH_FIRST)
+            variables = getDepthFirstOrder(circuit, compiled, functions, variables);
+
+        bdd = new CSBdd(variables.size(), nodeLimit);
+        variableNames = new String[variables.size()];
+        for(int level = 0; level < variables.size(); level++) {
+            index = variables.get(level).intValue();
+            varLevels[index] = level;
+            node = circuit.getNode(index);
+            variableNames[level] = node instanceof DFlipFlop ? circuit.getNode(index + 1).getName() : node.getName();
+        }
+
+        inputNames = inputs.toArray(new String[inputs.size()]);
+        inputLevels = new int[inputNames.length];
+        for(int j = 0; j < inputNames.length; j++)
+            inputLevels[j] = varLevels[circuit.indexOf(inputNames[j])];
+
+        functionNames = new String[functions.size()];
+        for(int j = 0; j < functionNames.length; j++) {
+            isRoot[functions.get(j).intValue()] = true;
+            functionNames[j] = circuit.getNode(functions.get(j).intValue()).getName();
+        }
+
+        for(int i = 0; i < size; i++)
+            remainingFanouts[i] = compiled.fanoutStart[i + 1] - compiled.fanoutStart[i];
+
+        for(int i : compiled.order) {
+            node = circuit.getNode(i);
+            if(node instanceof InputVariableNode)
+                nodeFunctions[i] = bdd.ref(bdd.getVariable(varLevels[i]));
+            else if(node instanceof FFOutNode) {
+                // the present state, which does not depend on the flip-flop's input node in this cycle
+                index = compiled.fanins[compiled.faninStart[i]];
+                nodeFunctions[i] = bdd.ref(bdd.getVariable(varLevels[index]));
+                if(((FFOutNode)node).isNegated())
+                    nodeFunctions[i] = replace(nodeFunctions[i], bdd.not(nodeFunctions[i]));
+            } else {
+                nodeFunctions[i] = getNodeFunction(compiled, i, nodeFunctions);
+                // functions of input nodes are freed once every node that depends on them is done
+                for(int k = compiled.faninStart[i]; k < compiled.faninStart[i + 1]; k++) {
+                    index = compiled.fanins[k];
+                    if(--remainingFanouts[index] == 0 && !isRoot[index])
+                        bdd.deref(nodeFunctions[index]);
+                }
+            }
+
+            if(remainingFanouts[i] == 0 && !isRoot[i])
+                bdd.deref(nodeFunctions[i]);
+        }
+
+        roots = new int[functionNames.length];
+        for(int j = 0; j < roots.length; j++)
+            roots[j] = nodeFunctions[functions.get(j).intValue()];
+        bdd.collectGarbage();
+    }
+
+    /**
+     * Utility method to compute the function of a gate, output variable node or flip-flop from
+     * the functions of its input nodes.
+     * 
+     * @param compiled the compiled circuit
+     * @param index the index of the node
+     * @param nodeFunctions the functions of the nodes computed so far
+     * @return the function of the node, protected once
+     */
+    private int getNodeFunction(CSCompiledCircuit compiled, int index, int[] nodeFunctions) {
+        int start = compiled.faninStart[index];
+        int end = compiled.faninStart[index + 1];
+        byte op = compiled.ops[index];
+        int result;
+
+        switch(op) {
+            case CSCompiledCircuit.OP_ZERO:     return CSBdd.ZERO;
+            case CSCompiledCircuit.OP_BUFFER:   return bdd.ref(nodeFunctions[compiled.fanins[start]]);
+            case CSCompiledCircuit.OP_NOT:      return bdd.ref(bdd.not(nodeFunctions[compiled.fanins[start]]));
+            case CSCompiledCircuit.OP_AND:
+            case CSCompiledCircuit.OP_NAND:     result = bdd.ref(CSBdd.ONE);
+                                                for(int k = start; k < end; k++)
+                                                    result = replace(result, bdd.and(result, nodeFunctions[compiled.fanins[k]]));
+                                                break;
+            case CSCompiledCircuit.OP_OR:
+            case CSCompiledCircuit.OP_NOR:      result = bdd.ref(CSBdd.ZERO);
+                                                for(int k = start; k < end; k++)
+                                                    result = replace(result, bdd.or(result, nodeFunctions[compiled.fanins[k]]));
+                                                break;
+            default:                            result = bdd.ref(CSBdd.ZERO);
+                                                for(int k = start; k < end; k++)
+                                                    result = replace(result, bdd.xor(result, nodeFunctions[compiled.fanins[k]]));
+                                                break;
+        }
+
+        if(op == CSCompiledCircuit.OP_NAND || op == CSCompiledCircuit.OP_NOR || op == CSCompiledCircuit.OP_NXOR)
+            result = replace(result, bdd.not(result));
+
+        return result;
+    }
+
+    /**
+     * Utility method to protect a new function in place of an old one.
+     * 
+     * @param oldFunction the protected function that is no longer needed
+     * @param newFunction the function that replaces it
+     * @return the new function, protected once
+     */
+    private int replace(int oldFunction, int newFunction) {
+        bdd.ref(newFunction);
+        bdd.deref(oldFunction);
+        return newFunction;
+    }
+
+    /**
+     * Utility method to order the variables by a depth-first traversal from the given nodes.
+     * 
+     * @param circuit the circuit
+     * @param compiled the compiled circuit
+     * @param functions the indeces of the nodes to start from, in order
+     * @param variables the indeces of the variable nodes
+     * @return the indeces of the variable nodes in the order they were reached, followed by the
+     * variable nodes that were not reached
+     */
+    private static ArrayList<Integer> getDepthFirstOrder(CSGraph circuit, CSCompiledCircuit compiled, ArrayList<Integer> functions, ArrayList<Integer> variables) {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        boolean[] isVariable = new boolean[compiled.getSize()];
+        boolean[] ordered = new boolean[compiled.getSize()];
+        boolean[] visited = new boolean[compiled.getSize()];
+        int[] stack = new int[compiled.getSize()];
+        int[] position = new int[compiled.getSize()];
+        int stackSize;
+        int index;
+        int fanin;
+
+        for(Integer variable : variables)
+            isVariable[variable.intValue()] = true;
+
+        for(Integer function : functions) {
+            if(visited[function.intValue()])
+                continue;
+
+            // flip-flops are roots of their own, so the traversal stops at them
+            stackSize = 0;
+            stack[stackSize++] = function.intValue();
+            visited[function.intValue()] = true;
+            while(stackSize > 0) {
+                index = stack[stackSize - 1];
+                if(isVariable[index] && index != function.intValue() || position[index] == compiled.faninStart[index + 1] - compiled.faninStart[index]) {
+                    stackSize--;
+                    continue;
+                }
+
+                fanin = compiled.fanins[compiled.faninStart[index] + position[index]++];
+                if(circuit.getNode(fanin) instanceof FFOutNode)
+                    fanin = compiled.fanins[compiled.faninStart[fanin]];
+                if(isVariable[fanin] && !ordered[fanin]) {
+                    ordered[fanin] = true;
+                    result.add(Integer.valueOf(fanin));
+                }
+                if(!visited[fanin]) {
+                    visited[fanin] = true;
+                    stack[stackSize++] = fanin;
+                }
+            }
+        }
+
+        for(Integer variable : variables)
+            if(!ordered[variable.intValue()])
+                result.add(variable);
+
+        return result;
+    }
+
+    /**
+     * Gets the names of the variables, in the order they are tested in the diagrams.
+     * <p>
+     * Input variables appear with their own names and flip-flops with the names of their
+     * "-out" nodes.
+     * 
+     * @return an array containing the names of the variables
+     */
+    public String[] getVariableNames() {
+        return variableNames.clone();
+    }
+
+    /**
+     * Gets the names of the functions: the output variables, followed by the flip-flops, whose
+     * functions are their next states.
+     * 
+     * @return an array containing the names of the functions
+     */
+    public String[] getFunctionNames() {
+        return functionNames.clone();
+    }
+
+    /**
+     * Gets the number of output variables, which come first among the functions.
+     * 
+     * @return the number of output variables
+     */
+    public int getOutputCount() {
+        return outputCount;
+    }
+
+    /**
+     * Gets the number of nodes of the diagram of a function.
+     * 
+     * @param functionName the name of an output variable or flip-flop
+     * @return the number of nodes, including the constant nodes the diagram reaches
+     * @throws IllegalArgumentException if the function does not exist
+     */
+    public int getNodeCount(String functionName) throws IllegalArgumentException {
+        return bdd.getNodeCount(getRoot(functionName));
+    }
+
+    /**
+     * Gets the number of nodes of all the diagrams together, counting shared nodes once.
+     * 
+     * @return the number of nodes in use
+     */
+    public int getNodeCount() {
+        return bdd.getLiveCount();
+    }
+
+    /**
+     * Counts the assignments of the variables for which a function is 1.
+     * 
+     * @param functionName the name of an output variable or flip-flop
+     * @return the number of satisfying assignments, out of 2 to the power of the number of variables
+     * @throws IllegalArgumentException if the function does not exist
+     */
+    public BigInteger getSatCount(String functionName) throws IllegalArgumentException {
+        return bdd.getSatCount(getRoot(functionName));
+    }
+
+    /**
+     * Computes the probability that a function is 1 when every variable is equally likely to be
+     * 1 or 0.
+     * 
+     * @param functionName the name of an output variable or flip-flop
+     * @return the probability of the function being 1
+     * @throws IllegalArgumentException if the function does not exist
+     */
+    public double getProbability(String functionName) throws IllegalArgumentException {
+        double[] probabilities = new double[variableNames.length];
+
+        Arrays.fill(probabilities, 0.5);
+        return bdd.getProbability(getRoot(functionName), probabilities);
+    }
+
+    /**
+     * Computes the probability that a function is 1 when each variable is 1 with the given
+     * probability, independently of the others.
+     * 
+     * @param functionName the name of an output variable or flip-flop
+     * @param probabilities the probability of each variable being 1, in the order of {@linkplain #getVariableNames()}
+     * @return the probability of the function being 1
+     * @throws IllegalArgumentException if the function does not exist, or the number of
+     * probabilities does not match the number of variables
+     */
+    public double getProbability(String functionName, double[] probabilities) throws IllegalArgumentException {
+        if(probabilities.length != variableNames.length)
+            throw new IllegalArgumentException("A probability is needed for each of the " + variableNames.length + " variables");
+
+        return bdd.getProbability(getRoot(functionName), probabilities);
+    }
+
+    /**
+     * Evaluates a function for one assignment of the variables.
+     * 
+     * @param functionName the name of an output variable or flip-flop
+     * @param values the value of each variable, in the order of {@linkplain #getVariableNames()}
+     * @return either 1 or 0
+     * @throws IllegalArgumentException if the function does not exist, or the number of values
+     * does not match the number of variables
+     */
+    public int evaluate(String functionName, int[] values) throws IllegalArgumentException {
+        int f = getRoot(functionName);
+
+        if(values.length != variableNames.length)
+            throw new IllegalArgumentException("A value is needed for each of the " + variableNames.length + " variables");
+
+        while(f > CSBdd.ONE)
+            f = values[bdd.getLevel(f)] == 0 ? bdd.getLow(f) : bdd.getHigh(f);
+
+        return f;
+    }
+
+    /**
+     * Gets the truth table of the output variables.
+     * <p>
+     * The input variables are in the order they appear in the circuit. Each group of 64 rows is
+     * evaluated on the diagrams with one row per lane, visiting each node once per group.
+     * 
+     * @return the truth table of the circuit
+     * @throws IllegalStateException if the circuit has flip-flops, or input variables or output
+     * variables do not exist, or there are more than {@linkplain CSTruthTable#MAX_INPUTS} input variables
+     */
+    public CSTruthTable getTruthTable() throws IllegalStateException {
+        if(outputCount < functionNames.length)
+            throw new IllegalStateException("This circuit is a sequential circuit, it does not have a truth table");
+        if(inputNames.length == 0)
+            throw new IllegalStateException("Input variables are needed to build the truth table");
+        if(outputCount == 0)
+            throw new IllegalStateException("Output variables are needed to build the truth table");
+        if(inputNames.length > CSTruthTable.MAX_INPUTS)
+            throw new IllegalStateException("The truth table of a circuit with more than " + CSTruthTable.MAX_INPUTS + " input variables is too large to build");
+
+        CSTruthTable table = new CSTruthTable(inputNames, Arrays.copyOf(functionNames, outputCount));
+        long rowCount = 1L << inputNames.length;
+        long lastWordMask = rowCount < 64 ? (1L << rowCount) - 1 : -1L;
+        int blocks = (int)((rowCount + 63) >>> 6);
+        long[][] columns = new long[outputCount][blocks];
+        long[] lanes = new long[variableNames.length];
+        long[] results = new long[bdd.getSlotCount()];
+        int[] stamps = new int[bdd.getSlotCount()];
+
+        for(int block = 0; block < blocks; block++) {
+            for(int j = 0; j < inputNames.length; j++)
+                lanes[inputLevels[j]] = CSCompiledCircuit.getCounterLanes(inputNames.length - 1 - j, block);
+            for(int j = 0; j < outputCount; j++)
+                columns[j][block] = bdd.evaluate(roots[j], lanes, results, stamps, block + 1) & lastWordMask;
+        }
+
+        for(int j = 0; j < outputCount; j++)
+            table.setColumnWords(j, columns[j]);
+
+        return table;
+    }
+
+    /**
+     * Utility method to get the root of the diagram of a function.
+     * 
+     * @param functionName the name of an output variable or flip-flop
+     * @return the root of the diagram
+     * @throws IllegalArgumentException if the function does not exist
+     */
+    private int getRoot(String functionName) throws IllegalArgumentException {
+        for(int j = 0; j < functionNames.length; j++)
+            if(functionNames[j].equals(functionName))
+                return roots[j];
+
+        throw new IllegalArgumentException(functionName + " is not an output variable or flip-flop");
+    }
+}
@@ -0,0 +1,575 @@
+package simulator.circuit.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+import simulator.circuit.project.CSGraph.IllegalCircuitStateException;
+
+/**
+ * Class to simulate a circuit 64 times at once.
+ * <p>
+ * The circuit is compiled into flat arrays: an operation for each node, the indeces of the
+ * nodes each node depends on, and the update path of the circuit. The value of each node is
+ * then a word of 64 independent lanes, so one pass along the update path evaluates 64 input
+ * combinations with a few bitwise operations per node, instead of 64 passes through the nodes
+ * of the circuit.
+ * <p>
+ * Nodes keep the indeces they have in the {@linkplain CSGraph} the compiled circuit was made
+ * from. A compiled circuit does not change the nodes of that graph, and it does not follow
+ * later edits of the graph; it needs to be compiled again after the circuit changes. A circuit
+ * opened from a mapped save file is compiled from the file, without creating its nodes.
+ * 
+ * @author Joel Tengco
+ */
+class CSCompiledCircuit {
+    /**
+     * Operation of input variable nodes; their values are set before evaluating.
+     */
+    static final byte OP_INPUT = 0;
+    /**
+     * Operation of nodes that are always 0, such as gates without input nodes.
+     */
+    static final byte OP_ZERO = 1;
+    /**
+     * Operation of nodes that copy the value of their only input node.
+     */
+    static final byte OP_BUFFER = 2;
+    /**
+     * Operation of nodes that complement the value of their only input node.
+     */
+    static final byte OP_NOT = 3;
+    /**
+     * Operation of AND gates.
+     */
+    static final byte OP_AND = 4;
+    /**
+     * Operation of NAND gates.
+     */
+    static final byte OP_NAND = 5;
+    /**
+     * Operation of OR gates.
+     */
+    static final byte OP_OR = 6;
+    /**
+     * Operation of NOR gates.
+     */
+    static final byte OP_NOR = 7;
+    /**
+     * Operation of XOR gates.
+     */
+    static final byte OP_XOR = 8;
+    /**
+     * Operation of NXOR gates.
+     */
+    static final byte OP_NXOR = 9;
+    /**
+     * Lanes of the six lowest bits of the numbers 0 to 63; lane {@code k} of entry {@code b} is bit
+     * {@code b} of {@code k}.
+     */
+    private static final long[] COUNTER_LANES = {
+        0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+        0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L
+    };
+
+    /**
+     * Operation of each node.
+     */
+    final byte[] ops;
+    /**
+     * Start of the input nodes of each node within {@code fanins}; the input nodes of node
+     * {@code i} are from {@code faninStart[i]} up to {@code faninStart[i + 1]}.
+     */
+    final int[] faninStart;
+    /**
+     * Indeces of the input nodes of all the nodes.
+     */
+    final int[] fanins;
+    /**
+     * Indeces of the nodes in the order they need to be evaluated.
+     */
+    final int[] order;
+    /**
+     * Indeces of the nodes along the update path that are not input variable nodes.
+     */
+    int[] gateOrder;
+    /**
+     * Start of the nodes that depend on each node within {@code fanouts}; the nodes that depend
+     * on node {@code i} are from {@code fanoutStart[i]} up to {@code fanoutStart[i + 1]}.
+     */
+    int[] fanoutStart;
+    /**
+     * Indeces of the nodes that depend on each node.
+     */
+    int[] fanouts;
+    /**
+     * Position of each node along the update path, or -1 for nodes that are not on it.
+     */
+    int[] rank;
+
+    /**
+     * Compiles the given circuit.
+     * 
+     * @param circuit the circuit to compile
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    CSCompiledCircuit(CSGraph circuit) throws IllegalCircuitStateException {
+        int size = circuit.getSize();
+        ArrayList<CSNode> inputs = new ArrayList<CSNode>();
+        IdentityHashMap<CSNode, Integer> indeces = new IdentityHashMap<CSNode, Integer>(size);
+        CSMappedCircuit source = circuit.getMappedSource();
+        CSNode node;
+
+        ops = new byte[size];
+        faninStart = new int[size + 1];
+        order = circuit.getUpdatePathIndeces().clone();
+
+        if(source != null) {
+            for(int i = 0; i < size; i++)
+                faninStart[i + 1] = source.getInputStart(i + 1);
+            fanins = new int[faninStart[size]];
+            for(int k = 0; k < fanins.length; k++)
+                fanins[k] = source.getInput(k);
+            for(int i = 0; i < size; i++)
+                ops[i] = getOperation(source.getTypeCode(i), faninStart[i + 1] - faninStart[i]);
+
+            link();
+            return;
+        }
+
+        // first pass counts the input nodes, second pass stores them
+        for(int i = 0; i < size; i++) {
+            indeces.put(circuit.getNode(i), Integer.valueOf(i));
+            faninStart[i + 1] = faninStart[i] + getInputNodes(circuit.getNode(i), inputs);
+        }
+        fanins = new int[faninStart[size]];
+
+        for(int i = 0; i < size; i++) {
+            node = circuit.getNode(i);
+            getInputNodes(node, inputs);
+            for(int k = 0; k < inputs.size(); k++)
+                fanins[faninStart[i] + k] = indeces.get(inputs.get(k)).intValue();
+            ops[i] = getOperation(node, inputs.size());
+        }
+
+        link();
+    }
+
+    /**
+     * Constructs the part of a compiled circuit that the given nodes depend on.
+     * <p>
+     * Nodes keep their indeces, but nodes outside of the fan-in cones of the given nodes are
+     * left off the update path and have no input nodes, so evaluating the cone does no work for
+     * the rest of the circuit.
+     * 
+     * @param circuit the compiled circuit
+     * @param roots the indeces of the nodes whose fan-in cones are kept
+     */
+    private CSCompiledCircuit(CSCompiledCircuit circuit, int[] roots) {
+        int size = circuit.getSize();
+        BitSet inCone = circuit.getFaninConeNodes(roots);
+        int coneSize = 0;
+
+        ops = circuit.ops.clone();
+        faninStart = new int[size + 1];
+        for(int i = 0; i < size; i++)
+            faninStart[i + 1] = faninStart[i] + (inCone.get(i) ? circuit.faninStart[i + 1] - circuit.faninStart[i] : 0);
+        fanins = new int[faninStart[size]];
+        for(int i = 0; i < size; i++) {
+            if(inCone.get(i))
+                System.arraycopy(circuit.fanins, circuit.faninStart[i], fanins, faninStart[i], faninStart[i + 1] - faninStart[i]);
+            else
+                ops[i] = OP_ZERO;
+        }
+
+        order = new int[inCone.cardinality()];
+        for(int i : circuit.order)
+            if(inCone.get(i))
+                order[coneSize++] = i;
+
+        link();
+    }
+
+    /**
+     * Utility method for constructors to derive the gate order, the ranks and the fan-outs from
+     * the operations, the fan-ins and the update path.
+     */
+    private void link() {
+        int size = ops.length;
+        int gateCount = 0;
+        int[] fill;
+
+        for(int index : order)
+            if(ops[index] != OP_INPUT)
+                gateCount++;
+        gateOrder = new int[gateCount];
+        gateCount = 0;
+        for(int index : order)
+            if(ops[index] != OP_INPUT)
+                gateOrder[gateCount++] = index;
+
+        rank = new int[size];
+        Arrays.fill(rank, -1);
+        for(int r = 0; r < order.length; r++)
+            rank[order[r]] = r;
+
+        // the fan-outs are the fan-ins reversed; count, then fill each range
+        fanoutStart = new int[size + 1];
+        fanouts = new int[fanins.length];
+        for(int source : fanins)
+            fanoutStart[source + 1]++;
+        for(int i = 0; i < size; i++)
+            fanoutStart[i + 1] += fanoutStart[i];
+        fill = fanoutStart.clone();
+        for(int i = 0; i < size; i++)
+            for(int k = faninStart[i]; k < faninStart[i + 1]; k++)
+                fanouts[fill[fanins[k]]++] = i;
+    }
+
+    /**
+     * Utility method to get the nodes that the given node depends on.
+     * 
+     * @param node the node to get the input nodes of
+     * @param inputs list to store the input nodes in; cleared first
+     * @return the number of input nodes
+     */
+    private static int getInputNodes(CSNode node, ArrayList<CSNode> inputs) {
+        CSNode inputNode = null;
+
+        inputs.clear();
+        if(node instanceof Gate)
+            inputs.addAll(((Gate)node).inputNodes);
+        else if(node instanceof Inverter)
+            inputNode = ((Inverter)node).getInputNode();
+        else if(node instanceof OutputVariableNode)
+            inputNode = ((OutputVariableNode)node).getInputNode();
+        else if(node instanceof DFlipFlop)
+            inputNode = ((DFlipFlop)node).getInputNode();
+        else if(node instanceof FFOutNode)
+            inputNode = ((FFOutNode)node).getInputNode();
+
+        if(inputNode != null)
+            inputs.add(inputNode);
+
+        return inputs.size();
+    }
+
+    /**
+     * Utility method to get the operation of the given node.
+     * 
+     * @param node the node to get the operation of
+     * @param inputCount the number of input nodes of the node
+     * @return the operation that computes the value of the node
+     */
+    private static byte getOperation(CSNode node, int inputCount) {
+        if(node instanceof InputVariableNode)
+            return OP_INPUT;
+        // every node without input nodes evaluates to 0, even NAND, NOR and NXOR gates
+        if(inputCount == 0)
+            return OP_ZERO;
+        if(node instanceof Inverter)
+            return OP_NOT;
+        if(node instanceof FFOutNode)
+            return ((FFOutNode)node).isNegated() ? OP_NOT : OP_BUFFER;
+        if(node instanceof AndGate)
+            return OP_AND;
+        if(node instanceof NandGate)
+            return OP_NAND;
+        if(node instanceof OrGate)
+            return OP_OR;
+        if(node instanceof NorGate)
+            return OP_NOR;
+        if(node instanceof XorGate)
+            return OP_XOR;
+        if(node instanceof NXorGate)
+            return OP_NXOR;
+
+        return OP_BUFFER;
+    }
+
+    /**
+     * Utility method to get the operation of a node from its type as written to save files.
+     * 
+     * @param type one of the {@code TYPE_} constants of {@linkplain CSSaveWriter}
+     * @param inputCount the number of input nodes of the node
+     * @return the operation that computes the value of the node
+     */
+    private static byte getOperation(int type, int inputCount) {
+        if(type == CSSaveWriter.TYPE_INPUT)
+            return OP_INPUT;
+        if(inputCount == 0)
+            return OP_ZERO;
+
+        switch(type) {
+            case CSSaveWriter.TYPE_INVERTER:        return OP_NOT;
+            case CSSaveWriter.TYPE_FF_OUT_NEGATED:  return OP_NOT;
+            case CSSaveWriter.TYPE_AND:             return OP_AND;
+            case CSSaveWriter.TYPE_NAND:            return OP_NAND;
+            case CSSaveWriter.TYPE_OR:              return OP_OR;
+            case CSSaveWriter.TYPE_NOR:             return OP_NOR;
+            case CSSaveWriter.TYPE_XOR:             return OP_XOR;
+            case CSSaveWriter.TYPE_NXOR:            return OP_NXOR;
+            default:                                return OP_BUFFER;
+        }
+    }
+
+    /**
+     * Gets one bit of 64 consecutive numbers, packed as the lanes of a word.
+     * <p>
+     * Lane {@code k} of the result is bit {@code bit} of the number {@code 64 * block + k}. Setting
+     * input variable {@code j} of n to bit {@code n - 1 - j} makes one evaluation compute 64
+     * consecutive rows of the truth table.
+     * 
+     * @param bit the bit of the numbers, from 0 to 62
+     * @param block the index of the group of 64 numbers
+     * @return the packed bits
+     */
+    static long getCounterLanes(int bit, long block) {
+        if(bit < 6)
+            return COUNTER_LANES[bit];
+
+        return ((block >>> (bit - 6)) & 1) == 0 ? 0 : -1L;
+    }
+
+    /**
+     * Gets the part of this circuit that the given nodes depend on.
+     * <p>
+     * The values of the given nodes are computed as in this circuit, while every node outside of
+     * their fan-in cones stays 0. Node indeces are the same as in this circuit.
+     * 
+     * @param roots the indeces of the nodes whose fan-in cones are needed
+     * @return the compiled fan-in cones of the nodes
+     */
+    CSCompiledCircuit getFaninCone(int[] roots) {
+        return new CSCompiledCircuit(this, roots);
+    }
+
+    /**
+     * Gets the nodes that the given nodes depend on, including the given nodes themselves.
+     * 
+     * @param roots the indeces of the nodes whose fan-in cones are needed
+     * @return the set of the indeces of the nodes in the fan-in cones
+     */
+    BitSet getFaninConeNodes(int[] roots) {
+        BitSet inCone = new BitSet(getSize());
+        int[] stack = new int[getSize()];
+        int stackSize = 0;
+        int index;
+
+        for(int root : roots) {
+            if(!inCone.get(root)) {
+                inCone.set(root);
+                stack[stackSize++] = root;
+            }
+        }
+
+        while(stackSize > 0) {
+            index = stack[--stackSize];
+            for(int k = faninStart[index]; k < faninStart[index + 1]; k++) {
+                if(!inCone.get(fanins[k])) {
+                    inCone.set(fanins[k]);
+                    stack[stackSize++] = fanins[k];
+                }
+            }
+        }
+
+        return inCone;
+    }
+
+    /**
+     * Gets the number of nodes in the compiled circuit.
+     * 
+     * @return the number of nodes
+     */
+    int getSize() {
+        return ops.length;
+    }
+
+    /**
+     * Evaluates every node that is not an input variable node, along the update path.
+     * <p>
+     * The values of the input variable nodes need to be set in the given array beforehand.
+     * 
+     * @param values the values of the nodes, one word of 64 lanes per node
+     */
+    void evaluate(long[] values) {
+        for(int index : gateOrder)
+            values[index] = evaluateNode(index, values);
+    }
+
+    /**
+     * Computes the truth table columns of the given nodes.
+     * <p>
+     * Input variable {@code j} of n is bit {@code n - 1 - j} of the row number. The last six input
+     * variables change within each group of 64 rows, one per lane. The groups are visited in Gray
+     * code order, so exactly one of the other input variables changes from one group to the next
+     * and only the nodes that depend on it are evaluated again with
+     * {@linkplain #propagate(long[], int, long[])}; each group is stored at its place in the columns.
+     * 
+     * @param inputIndeces the indeces of the input variable nodes, in the order of the table
+     * @param outputIndeces the indeces of the nodes to compute the columns of
+     * @param columns one column per output node, each with a word for every group of 64 rows
+     */
+    void sweepTruthTable(int[] inputIndeces, int[] outputIndeces, long[][] columns) {
+        int numInputVariables = inputIndeces.length;
+        long[] values = new long[getSize()];
+        long[] pending = new long[(getSize() + 63) >>> 6];
+        long rowCount = 1L << numInputVariables;
+        long lastWordMask = rowCount < 64 ? (1L << rowCount) - 1 : -1L;
+        int blocks = (int)((rowCount + 63) >>> 6);
+        int block;
+        int changedInput;
+
+        // first group of rows is evaluated in full
+        for(int j = 0; j < numInputVariables; j++)
+            values[inputIndeces[j]] = getCounterLanes(numInputVariables - 1 - j, 0);
+        evaluate(values);
+        for(int j = 0; j < outputIndeces.length; j++)
+            columns[j][0] = values[outputIndeces[j]] & lastWordMask;
+
+        // step n of the Gray code flips bit (number of trailing zeros of n) of the group number
+        for(int step = 1; step < blocks; step++) {
+            block = step ^ (step >>> 1);
+            changedInput = inputIndeces[numInputVariables - 1 - 6 - Integer.numberOfTrailingZeros(step)];
+            values[changedInput] = ~values[changedInput];
+            propagate(values, changedInput, pending);
+
+            for(int j = 0; j < outputIndeces.length; j++)
+                columns[j][block] = values[outputIndeces[j]];
+        }
+    }
+
+    /**
+     * Re-evaluates the nodes that depend on a node whose value was just changed.
+     * <p>
+     * Evaluation is event-driven: a node is only evaluated if one of its input nodes changed, and
+     * its own dependents are only scheduled if its value changed in turn. Scheduled nodes are
+     * evaluated in the order of the update path, so each node is evaluated at most once. This only
+     * applies to combinational circuits, where every dependent of a node comes after it.
+     * 
+     * @param values the values of the nodes, one word of 64 lanes per node; the changed node
+     * already holds its new value
+     * @param source the index of the node that changed
+     * @param pending work space with one bit per node, all of them 0; they are 0 again afterwards
+     * @return the number of nodes evaluated
+     */
+    int propagate(long[] values, int source, long[] pending) {
+        int evaluated = 0;
+        int pendingCount = 0;
+        int first = Integer.MAX_VALUE;
+        int r;
+        int node;
+        int target;
+        long value;
+
+        for(int k = fanoutStart[source]; k < fanoutStart[source + 1]; k++) {
+            r = rank[fanouts[k]];
+            if((pending[r >>> 6] & (1L << r)) == 0) {
+                pending[r >>> 6] |= 1L << r;
+                pendingCount++;
+                first = Math.min(first, r);
+            }
+        }
+
+        for(int w = first >>> 6; pendingCount > 0; w++) {
+            while(pending[w] != 0) {
+                r = (w << 6) + Long.numberOfTrailingZeros(pending[w]);
+                pending[w] &= pending[w] - 1;
+                pendingCount--;
+
+                node = order[r];
+                value = evaluateNode(node, values);
+                evaluated++;
+                if(value == values[node])
+                    continue;
+
+                values[node] = value;
+                for(int k = fanoutStart[node]; k < fanoutStart[node + 1]; k++) {
+                    target = rank[fanouts[k]];
+                    // dependents earlier on the path can only be flip-flop outputs, which wait for the next cycle
+                    if(target > r && (pending[target >>> 6] & (1L << target)) == 0) {
+                        pending[target >>> 6] |= 1L << target;
+                        pendingCount++;
+                    }
+                }
+            }
+        }
+
+        return evaluated;
+    }
+
+    /**
+     * Computes the value of one node from the current values of its input nodes.
+     * 
+     * @param index the index of the node
+     * @param values the values of the nodes, one word of 64 lanes per node
+     * @return the new value of the node; the value of an input variable node is returned unchanged
+     */
+    long evaluateNode(int index, long[] values) {
+        int start = faninStart[index];
+        int end = faninStart[index + 1];
+        long result;
+
+        switch(ops[index]) {
+            case OP_INPUT:  return values[index];
+            case OP_ZERO:   return 0;
+            case OP_BUFFER: return values[fanins[start]];
+            case OP_NOT:    return ~values[fanins[start]];
+            case OP_AND:
+            case OP_NAND:   result = -1L;
+                            for(int k = start; k < end; k++)
+                                result &= values[fanins[k]];
+                            return ops[index] == OP_AND ? result : ~result;
+            case OP_OR:
+            case OP_NOR:    result = 0;
+                            for(int k = start; k < end; k++)
+                                result |= values[fanins[k]];
+                            return ops[index] == OP_OR ? result : ~result;
+            default:        result = 0;
+                            for(int k = start; k < end; k++)
+                                result ^= values[fanins[k]];
+                            return ops[index] == OP_XOR ? result : ~result;
+        }
+    }
+
+    /**
+     * Computes the value of one node with some of its inputs stuck at 0 or 1.
+     * <p>
+     * The masks are indexed like {@code fanins}: input {@code k} of the node reads the value of
+     * its input node with the lanes of {@code stuckAtZero[k]} cleared and the lanes of
+     * {@code stuckAtOne[k]} set, so each lane can carry a different fault.
+     * 
+     * @param index the index of the node
+     * @param values the values of the nodes, one word of 64 lanes per node
+     * @param stuckAtZero the lanes in which each input is stuck at 0
+     * @param stuckAtOne the lanes in which each input is stuck at 1
+     * @return the new value of the node; the value of an input variable node is returned unchanged
+     */
+    long evaluateFaultyNode(int index, long[] values, long[] stuckAtZero, long[] stuckAtOne) {
+        int start = faninStart[index];
+        int end = faninStart[index + 1];
+        long result;
+
+        switch(ops[index]) {
+            case OP_INPUT:  return values[index];
+            case OP_ZERO:   return 0;
+            case OP_BUFFER: return (values[fanins[start]] & ~stuckAtZero[start]) | stuckAtOne[start];
+            case OP_NOT:    return ~((values[fanins[start]] & ~stuckAtZero[start]) | stuckAtOne[start]);
+            case OP_AND:
+            case OP_NAND:   result = -1L;
+                            for(int k = start; k < end; k++)
+                                result &= (values[fanins[k]] & ~stuckAtZero[k]) | stuckAtOne[k];
+                            return ops[index] == OP_AND ? result : ~result;
+            case OP_OR:
+            case OP_NOR:    result = 0;
+                            for(int k = start; k < end; k++)
+                                result |= (values[fanins[k]] & ~stuckAtZero[k]) | stuckAtOne[k];
+                            return ops[index] == OP_OR ? result : ~result;
+            default:        result = 0;
+                            for(int k = start; k < end; k++)
+                                result ^= (values[fanins[k]] & ~stuckAtZero[k]) | stuckAtOne[k];
+                            return ops[index] == OP_XOR ? result : ~result;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package simulator.circuit.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class to compute the truth table columns of several output variables in parallel.
+ * <p>
+ * The outputs are partitioned by their fan-in cones. An output whose cone lies within the cone
+ * of another output joins that output's partition, so logic shared by the two is evaluated only
+ * once; outputs driven by the same node always end up together. Each partition is then compiled
+ * down to its own cone, and the partitions are swept independently as tasks of a fork/join pool,
+ * where idle threads steal the remaining partitions. A partition only evaluates the nodes of its
+ * cone and has no level barriers with the other partitions.
+ * 
+ * @author Joel Tengco
+ */
+class CSConeTask extends RecursiveAction {
+    /**
+     * Needed because fork/join tasks are {@code Serializable}; tasks are never serialized.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Smallest number of groups of 64 rows worth splitting into tasks.
+     */
+    static final int MIN_PARALLEL_GROUPS = 256;
+
+    /**
+     * The compiled cone of each partition.
+     */
+    private final CSCompiledCircuit[] cones;
+    /**
+     * Indeces of the output nodes of each partition.
+     */
+    private final int[][] coneOutputs;
+    /**
+     * The columns of the output nodes of each partition.
+     */
+    private final long[][][] coneColumns;
+    /**
+     * Indeces of the input variable nodes, in the order of the table.
+     */
+    private final int[] inputIndeces;
+    /**
+     * Index of the first partition of this task.
+     */
+    private final int first;
+    /**
+     * Index after the last partition of this task.
+     */
+    private final int last;
+
+    /**
+     * Constructs the task that computes the columns of the given output nodes.
+     * 
+     * @param compiled the compiled circuit
+     * @param inputIndeces the indeces of the input variable nodes, in the order of the table
+     * @param outputIndeces the indeces of the output nodes
+     * @param columns one column per output node, each with a word for every group of 64 rows
+     */
+    CSConeTask(CSCompiledCircuit compiled, int[] inputIndeces, int[] outputIndeces, long[][] columns) {
+        long[] bySize = new long[outputIndeces.length];
+        BitSet[] outputCones = new BitSet[outputIndeces.length];
+        ArrayList<BitSet> partitionNodes = new ArrayList<BitSet>();
+        ArrayList<ArrayList<Integer>> partitionOutputs = new ArrayList<ArrayList<Integer>>();
+        ArrayList<Integer> outputs;
+        BitSet extra;
+        int j;
+        int p;
+
+        // the cone of an output without the output node itself, so that outputs can share cones
+        for(j = 0; j < outputIndeces.length; j++) {
+            outputCones[j] = compiled.getFaninConeNodes(new int[] {outputIndeces[j]});
+            outputCones[j].clear(outputIndeces[j]);
+            bySize[j] = ((long)outputCones[j].cardinality() << 32) | j;
+        }
+        Arrays.sort(bySize);
+
+        // largest cones first, so each cone is compared with the partitions that can contain it
+        for(int k = bySize.length - 1; k >= 0; k--) {
+            j = (int)bySize[k];
+            for(p = 0; p < partitionNodes.size(); p++) {
+                extra = (BitSet)outputCones[j].clone();
+                extra.andNot(partitionNodes.get(p));
+                if(extra.isEmpty())
+                    break;
+            }
+
+            if(p == partitionNodes.size()) {
+                partitionNodes.add(outputCones[j]);
+                partitionOutputs.add(new ArrayList<Integer>());
+            }
+            partitionOutputs.get(p).add(Integer.valueOf(j));
+        }
+
+        cones = new CSCompiledCircuit[partitionOutputs.size()];
+        coneOutputs = new int[cones.length][];
+        coneColumns = new long[cones.length][][];
+        for(p = 0; p < cones.length; p++) {
+            outputs = partitionOutputs.get(p);
+            coneOutputs[p] = new int[outputs.size()];
+            coneColumns[p] = new long[outputs.size()][];
+            for(int k = 0; k < outputs.size(); k++) {
+                coneOutputs[p][k] = outputIndeces[outputs.get(k).intValue()];
+                coneColumns[p][k] = columns[outputs.get(k).intValue()];
+            }
+            cones[p] = compiled.getFaninCone(coneOutputs[p]);
+        }
+
+        this.inputIndeces = inputIndeces;
+        first = 0;
+        last = cones.length;
+    }
+
+    /**
+     * Constructs the task that computes some of the partitions of another task.
+     * 
+     * @param parent the task that holds the partitions
+     * @param first the index of the first partition
+     * @param last the index after the last partition
+     */
+    private CSConeTask(CSConeTask parent, int first, int last) {
+        cones = parent.cones;
+        coneOutputs = parent.coneOutputs;
+        coneColumns = parent.coneColumns;
+        inputIndeces = parent.inputIndeces;
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Sweeps the partition of this task, or splits the partitions into two tasks.
+     */
+    protected void compute() {
+        int middle;
+
+        if(last - first == 1) {
+            cones[first].sweepTruthTable(inputIndeces, coneOutputs[first], coneColumns[first]);
+            return;
+        }
+
+        middle = (first + last) >>> 1;
+        invokeAll(new CSConeTask(this, first, middle), new CSConeTask(this, middle, last));
+    }
+}
@@ -0,0 +1,128 @@
+package simulator.circuit.project;
+
+/**
+ * Class to generate the input values of one bit of a binary counter.
+ * <p>
+ * The counter starts at a given count and goes up by one every cycle. Giving bit 0 to one
+ * input, bit 1 to the next and so on drives a group of inputs through every combination
+ * in counting order.
+ * 
+ * @author Joel Tengco
+ */
+public class CSCounterStimulus extends CSStimulusGenerator {
+    /**
+     * Needed to implement Serializable, and thus needed for saving circuits as files.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The bit of the count that gives the values; 0 is the least significant bit.
+     */
+    private final int bit;
+    /**
+     * The count at the first cycle.
+     */
+    private final long start;
+
+    /**
+     * Constructs a generator of the given bit of a counter.
+     * 
+     * @param bit the bit of the count that gives the values, from 0 to 63
+     * @param start the count at the first cycle
+     * @param length the number of values, or {@linkplain CSStimulusGenerator#UNBOUNDED}
+     * @throws IllegalArgumentException if the bit is out of range or the length is negative
+     */
+    public CSCounterStimulus(int bit, long start, long length) throws IllegalArgumentException {
+        super(length);
+        if(bit < 0 || bit > 63)
+            throw new IllegalArgumentException("The bit of a counter needs to be from 0 to 63");
+
+        this.bit = bit;
+        this.start = start;
+    }
+
+    /**
+     * Gets the bit of the count that gives the values of this generator.
+     * 
+     * @return the bit of the count; 0 is the least significant bit
+     */
+    public int getBit() {
+        return bit;
+    }
+
+    /**
+     * Gets the count at the first cycle.
+     * 
+     * @return the starting count of this generator
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the count at the given position.
+     * 
+     * @param position the index of the cycle
+     * @return the count, whose bit {@code bit} is the value at the position
+     */
+    protected long countAt(long position) {
+        return start + position;
+    }
+
+    /**
+     * Computes the value for the given position.
+     * 
+     * @param position the index of the value
+     * @return either 1 or 0
+     */
+    protected int valueAt(long position) {
+        return (int)(countAt(position) >>> bit) & 1;
+    }
+
+    /**
+     * Computes the values for 64 consecutive positions, packed as the lanes of a word.
+     * 
+     * @param position the position of the value in the lowest lane
+     * @return the packed values
+     */
+    protected long wordAt(long position) {
+        long word = 0;
+        long lane = 0;
+        long value;
+        long next;
+
+        // the value only changes when the count crosses a multiple of 2^bit, so fill whole runs at once
+        while(lane < 64) {
+            value = valueAt(position + lane);
+            next = nextChange(position + lane) - position;
+            if(next > 64)
+                next = 64;
+            if(value != 0)
+                word |= (next == 64 ? -1L : (1L << next) - 1) & (-1L << lane);
+            lane = next;
+        }
+
+        return word;
+    }
+
+    /**
+     * Gets the first position after the given one at which the value may change.
+     * 
+     * @param position the index of the cycle
+     * @return a later position, no further than the next change of the value
+     */
+    protected long nextChange(long position) {
+        long runLength = 1L << bit;
+        long offset = countAt(position) & (runLength - 1);
+
+        return bit > 62 ? position + 1 : position + (runLength - offset);
+    }
+
+    /**
+     * Gets a short description of this generator.
+     * 
+     * @return the description of this generator
+     */
+    public String getDescription() {
+        return "bit " + bit + " of counter from " + start;
+    }
+}
@@ -0,0 +1,346 @@
+package simulator.circuit.project;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Class to stream input values from a comma-separated values file.
+ * <p>
+ * The first line of the file names the inputs, and every following line holds the values
+ * of the inputs for one cycle, for example:
+ * <pre>
+ * a,b,cin
+ * 0,1,1
+ * 1,1,0
+ * </pre>
+ * A value of "0" is read as 0 and any other value as 1. Empty lines are ignored.
+ * <p>
+ * The file is memory-mapped and parsed one line at a time as the simulation advances, so
+ * the heap only holds the values of the current line no matter how long the file is.
+ * Going back to an earlier cycle, such as after a reset, parses the file again from the start.
+ * A source saved with a circuit keeps the path of the file and the name of its column, and
+ * opens the file again when the circuit is loaded.
+ * 
+ * @author Joel Tengco
+ */
+public class CSCsvStimulusFile implements Closeable {
+    /**
+     * The mapped file.
+     */
+    private final CSMappedFile mappedFile;
+    /**
+     * The file, kept so that saved sources can open it again.
+     */
+    private final File file;
+    /**
+     * Name of the file, used in descriptions.
+     */
+    private final String fileName;
+    /**
+     * Names of the inputs in the file.
+     */
+    private final String[] inputNames;
+    /**
+     * Number of cycles in the file.
+     */
+    private final long cycleCount;
+    /**
+     * Offset of the line after the header.
+     */
+    private final long firstRowOffset;
+    /**
+     * Values of the line that was parsed last.
+     */
+    private final int[] rowValues;
+    /**
+     * Cycle of the line that was parsed last; -1 if no line has been parsed yet.
+     */
+    private long currentRow;
+    /**
+     * Offset of the line after the one that was parsed last.
+     */
+    private long nextRowOffset;
+
+    /**
+     * Opens the given file and counts its lines.
+     * 
+     * @param source the file to read
+     * @throws IOException if an error occurred when reading the file, or the file does not
+     * start with a line of input names
+     */
+    public CSCsvStimulusFile(File source) throws IOException {
+        ArrayList<String> names = new ArrayList<String>();
+        StringBuilder token = new StringBuilder();
+        long offset = 0;
+        long rows = 0;
+        boolean lineHasContent = false;
+        byte b;
+
+        file = source.getAbsoluteFile();
+        fileName = source.getName();
+        mappedFile = new CSMappedFile(source);
+
+        // header line
+        while(offset < mappedFile.size() && (b = mappedFile.get(offset++)) != '\n') {
+            if(b == ',') {
+                names.add(token.toString().trim());
+                token.setLength(0);
+            } else if(b != '\r')
+                token.append((char)b);
+        }
+        names.add(token.toString().trim());
+        if(names.size() == 1 && names.get(0).isEmpty()) {
+            mappedFile.close();
+            throw new IOException(fileName + " does not name any inputs");
+        }
+
+        inputNames = names.toArray(new String[names.size()]);
+        firstRowOffset = offset;
+
+        // count the lines that hold values
+        for(; offset < mappedFile.size(); offset++) {
+            b = mappedFile.get(offset);
+            if(b == '\n') {
+                if(lineHasContent)
+                    rows++;
+                lineHasContent = false;
+            } else if(b != '\r' && b != ' ' && b != '\t')
+                lineHasContent = true;
+        }
+        if(lineHasContent)
+            rows++;
+
+        cycleCount = rows;
+        rowValues = new int[inputNames.length];
+        rewind();
+    }
+
+    /**
+     * Gets the names of the inputs in this file.
+     * 
+     * @return an array containing the input names, in the order of the columns
+     */
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    /**
+     * Gets the number of cycles in this file.
+     * 
+     * @return the number of lines of values
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Gets the stimulus source for the input with the given name.
+     * 
+     * @param inputName the name of the input in the header of this file
+     * @return a stimulus source that streams the values of the input
+     * @throws IllegalArgumentException if this file does not contain the input
+     */
+    public CSStimulusSource getSource(String inputName) throws IllegalArgumentException {
+        for(int i = 0; i < inputNames.length; i++)
+            if(inputNames[i].equals(inputName))
+                return new Column(i);
+
+        throw new IllegalArgumentException(fileName + " does not contain " + inputName);
+    }
+
+    /**
+     * Utility method to go back to the first line of values.
+     */
+    private void rewind() {
+        currentRow = -1;
+        nextRowOffset = firstRowOffset;
+    }
+
+    /**
+     * Utility method to get a single value, parsing lines up to the requested cycle.
+     * <p>
+     * All the inputs of a circuit read the same cycle one after the other, so every line
+     * is only parsed once during a simulation.
+     * 
+     * @param column the index of the input
+     * @param position the cycle of the value
+     * @return either 1 or 0
+     */
+    private int getValue(int column, long position) {
+        if(position < 0 || position >= cycleCount)
+            throw new IndexOutOfBoundsException(position + " is outside of " + fileName);
+
+        try {
+            if(position < currentRow)
+                rewind();
+            while(currentRow < position)
+                parseNextRow();
+        } catch(IOException ioe) {
+            throw new IllegalStateException("Could not read " + fileName + ": " + ioe.getMessage());
+        }
+
+        return rowValues[column];
+    }
+
+    /**
+     * Utility method to parse the next line of values into the row values.
+     * <p>
+     * Missing values at the end of a line are read as 0.
+     * 
+     * @throws IOException if an error occurred when reading the file
+     */
+    private void parseNextRow() throws IOException {
+        long offset = nextRowOffset;
+        long size = mappedFile.size();
+        int column;
+        boolean zero;
+        boolean empty;
+        byte b;
+
+        do {
+            column = 0;
+            zero = false;
+            empty = true;
+            for(int i = 0; i < rowValues.length; i++)
+                rowValues[i] = 0;
+
+            while(offset < size && (b = mappedFile.get(offset++)) != '\n') {
+                if(b == ',') {
+                    if(column < rowValues.length)
+                        rowValues[column] = empty || zero ? 0 : 1;
+                    column++;
+                    zero = false;
+                    empty = true;
+                } else if(b != '\r' && b != ' ' && b != '\t') {
+                    // a value is 0 only if it consists of the single character '0'
+                    zero = empty && b == '0';
+                    empty = false;
+                }
+            }
+            if(!empty && column < rowValues.length)
+                rowValues[column] = zero ? 0 : 1;
+        } while(column == 0 && empty && offset < size);    // skip empty lines
+
+        nextRowOffset = offset;
+        currentRow++;
+    }
+
+    /**
+     * Closes the underlying file; the sources of this file can no longer be used afterwards.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        mappedFile.close();
+    }
+
+    /**
+     * Stimulus source for one column of a comma-separated values file.
+     * 
+     * @author Joel Tengco
+     */
+    private class Column implements CSStimulusSource, Serializable {
+        /**
+         * Needed to implement Serializable, and thus needed for saving circuits as files.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Index of the column within the file.
+         */
+        private final int column;
+
+        /**
+         * Constructs the source for the column at the given index.
+         * 
+         * @param column the index of the column within the file
+         */
+        Column(int column) {
+            this.column = column;
+        }
+
+        public long getLength() {
+            return cycleCount;
+        }
+
+        public int getValue(long position) {
+            return CSCsvStimulusFile.this.getValue(column, position);
+        }
+
+        public String getDescription() {
+            return inputNames[column] + " from " + fileName;
+        }
+
+        /**
+         * Saves this source as the path of its file and the name of its column, since the
+         * mapped file itself cannot be saved.
+         * 
+         * @return the saved form of this source
+         */
+        private Object writeReplace() {
+            return new SavedColumn(file.getPath(), inputNames[column]);
+        }
+    }
+
+    /**
+     * Saved form of a source of a comma-separated values file, which opens the file again when it is read back.
+     * 
+     * @author Joel Tengco
+     */
+    private static class SavedColumn implements Serializable {
+        /**
+         * Needed to implement Serializable, and thus needed for saving circuits as files.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Absolute path of the file.
+         */
+        private final String path;
+        /**
+         * Name of the input within the file.
+         */
+        private final String inputName;
+
+        /**
+         * Constructs the saved form of the source of the given input.
+         * 
+         * @param path the absolute path of the file
+         * @param inputName the name of the input within the file
+         */
+        SavedColumn(String path, String inputName) {
+            this.path = path;
+            this.inputName = inputName;
+        }
+
+        /**
+         * Opens the file again and gets the source of the input.
+         * 
+         * @return the source of the input
+         * @throws ObjectStreamException if the file could not be opened or no longer contains the input
+         */
+        private Object readResolve() throws ObjectStreamException {
+            CSCsvStimulusFile stimulusFile;
+
+            try {
+                stimulusFile = new CSCsvStimulusFile(new File(path));
+            } catch(IOException ioe) {
+                throw new InvalidObjectException("Could not open the values of " + inputName + " from " + path + ": " + ioe.getMessage());
+            }
+
+            try {
+                return stimulusFile.getSource(inputName);
+            } catch(IllegalArgumentException iae) {
+                try {
+                    stimulusFile.close();
+                } catch(IOException ioe) {
+                    // the missing input is the error to report
+                }
+                throw new InvalidObjectException("Could not open the values of " + inputName + " from " + path + ": " + iae.getMessage());
+            }
+        }
+    }
+}
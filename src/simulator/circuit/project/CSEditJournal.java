@@ -0,0 +1,819 @@
+package simulator.circuit.project;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Class to keep a write-ahead journal of the edits made to a saved circuit.
+ * <p>
+ * The journal is a file next to the save file, named after it with ".journal" appended. Every
+ * edit made through {@linkplain CSEngine} is appended to it as soon as it is made, and saving the
+ * circuit only appends a commit record and forces the journal to disk, so a save costs as much as
+ * the edits made since the last one. Loading the circuit reads the save file as the base snapshot
+ * and replays the journal on it. Edits after the last commit are only left in the journal when
+ * the program stopped without saving or discarding them, so they are replayed as well and
+ * reported as recovered.
+ * <p>
+ * Once the committed edits take up enough of the journal, a background thread compacts it: it
+ * reads the base snapshot into a circuit of its own, replays the committed edits, writes the
+ * result as a new base snapshot and starts a new journal with the edits that were made meanwhile.
+ * The journal identifies its base snapshot by the length and last modified time of the save file,
+ * and the new journal is written before the new base snapshot replaces the old one, so a journal
+ * that matches the save file is always found after a crash.
+ * <p>
+ * The layout of the journal is:
+ * <ul>
+ *  <li>header: magic, version, length and last modified time of the save file</li>
+ *  <li>the records, each as the length of its payload, a CRC-32 of the payload and the payload:
+ *      the operation, a node name and two integers, followed by the packed words of an input
+ *      sequence or the serialized form of a stimulus source</li>
+ * </ul>
+ * A record that was only partly written when the program stopped fails its check, and the
+ * journal is cut off before it.
+ * 
+ * @author Joel Tengco
+ */
+class CSEditJournal implements Closeable {
+    /**
+     * Identifies a file as an edit journal; "CSJN" in ASCII.
+     */
+    static final int MAGIC = 0x43534A4E;
+    /**
+     * Version of the journal format.
+     */
+    static final int VERSION = 1;
+    /**
+     * Number of bytes of the header.
+     */
+    static final int HEADER_SIZE = 24;
+    /**
+     * Appended to the name of a save file to get the name of its journal.
+     */
+    static final String JOURNAL_SUFFIX = ".journal";
+    /**
+     * Appended to the name of a journal being written by compaction.
+     */
+    static final String NEXT_SUFFIX = ".next";
+    /**
+     * Appended to the name of a save file to get the name of the base snapshot being written by compaction.
+     */
+    static final String COMPACT_SUFFIX = ".compact";
+    /**
+     * Smallest number of bytes of committed edits that starts a compaction.
+     */
+    static final long COMPACT_SIZE = 1 << 20;
+    /**
+     * Operation of a commit record, written by every save.
+     */
+    static final int OP_COMMIT = 0;
+    /**
+     * Operation of adding a node; the first integer is its type, as in {@linkplain CSSaveWriter}.
+     * The name of an inverter is the name of the node it inverts.
+     */
+    static final int OP_ADD_NODE = 1;
+    /**
+     * Operation of removing the named node.
+     */
+    static final int OP_REMOVE_NODE = 2;
+    /**
+     * Operation of adding a connection from the first to the second node index.
+     */
+    static final int OP_ADD_CONNECTION = 3;
+    /**
+     * Operation of removing the connection from the first to the second node index.
+     */
+    static final int OP_REMOVE_CONNECTION = 4;
+    /**
+     * Operation of renaming the node at the first index to the given name.
+     */
+    static final int OP_RENAME_NODE = 5;
+    /**
+     * Operation of setting the delay of the node at the first index to the second integer.
+     */
+    static final int OP_SET_DELAY = 6;
+    /**
+     * Operation of setting the input sequence of the named node; the first integer is the length
+     * of the sequence, or -1 to remove it.
+     */
+    static final int OP_SET_INPUT_SEQ = 7;
+    /**
+     * Operation of setting the stimulus source of the named node; the first integer is the
+     * length of its serialized form, or -1 to remove it.
+     */
+    static final int OP_SET_SOURCE = 8;
+    /**
+     * Operation of tracking the node at the first index.
+     */
+    static final int OP_TRACK_NODE = 9;
+    /**
+     * Operation of tracking every node.
+     */
+    static final int OP_TRACK_ALL = 10;
+    /**
+     * Operation of untracking the tracked node at the first index.
+     */
+    static final int OP_UNTRACK_NODE = 11;
+    /**
+     * Operation of untracking every node.
+     */
+    static final int OP_UNTRACK_ALL = 12;
+    /**
+     * Operation of rebuilding the lists of the engine from its circuit, as loading the circuit
+     * does; written before the first edit after the circuit was loaded.
+     */
+    static final int OP_RELOAD = 13;
+
+    /**
+     * Name of the save file the journal belongs to.
+     */
+    private final String saveName;
+    /**
+     * The save file holding the base snapshot.
+     */
+    private final File baseFile;
+    /**
+     * The journal file.
+     */
+    private final File journalFile;
+    /**
+     * The open journal file.
+     */
+    private RandomAccessFile file;
+    /**
+     * Channel of the open journal file.
+     */
+    private FileChannel channel;
+    /**
+     * Length of the save file when the journal was started.
+     */
+    private long baseLength;
+    /**
+     * Last modified time of the save file when the journal was started.
+     */
+    private long baseModified;
+    /**
+     * Number of bytes of the journal.
+     */
+    private long length;
+    /**
+     * Number of bytes of the journal up to and including the last commit record.
+     */
+    private long committedLength;
+    /**
+     * Number of edits after the last commit record when the journal was opened.
+     */
+    private int recoveredCount;
+    /**
+     * Thread running a compaction, or null.
+     */
+    private Thread compaction;
+    /**
+     * True once the journal is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Utility constructor to set the files of a journal.
+     * 
+     * @param saveName the name of the save file
+     * @param baseFile the save file
+     */
+    private CSEditJournal(String saveName, File baseFile) {
+        this.saveName = saveName;
+        this.baseFile = baseFile;
+        journalFile = new File(baseFile.getPath() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Starts an empty journal for a save file that was just written, replacing any journal it had.
+     * 
+     * @param saveName the name of the save file
+     * @param baseFile the save file
+     * @return the new journal
+     * @throws IOException if the journal could not be written
+     */
+    static CSEditJournal create(String saveName, File baseFile) throws IOException {
+        CSEditJournal journal = new CSEditJournal(saveName, baseFile);
+
+        journal.baseLength = baseFile.length();
+        journal.baseModified = baseFile.lastModified();
+        writeHeader(journal.journalFile, journal.baseLength, journal.baseModified);
+        new File(journal.journalFile.getPath() + NEXT_SUFFIX).delete();
+        new File(baseFile.getPath() + COMPACT_SUFFIX).delete();
+        journal.openFile();
+
+        return journal;
+    }
+
+    /**
+     * Opens the journal of a save file, or starts an empty one if it has none that matches it.
+     * <p>
+     * A journal whose compaction was stopped after the new base snapshot replaced the old one
+     * is taken from the file the compaction wrote. Records that fail their check are cut off.
+     * 
+     * @param saveName the name of the save file
+     * @param baseFile the save file
+     * @return the journal of the save file
+     * @throws IOException if the journal could not be read or written
+     */
+    static CSEditJournal open(String saveName, File baseFile) throws IOException {
+        CSEditJournal journal = new CSEditJournal(saveName, baseFile);
+        File nextFile = new File(journal.journalFile.getPath() + NEXT_SUFFIX);
+
+        if(!journal.matches(journal.journalFile)) {
+            if(!journal.matches(nextFile))
+                return create(saveName, baseFile);
+            Files.move(nextFile.toPath(), journal.journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        nextFile.delete();
+        new File(baseFile.getPath() + COMPACT_SUFFIX).delete();
+
+        journal.baseLength = baseFile.length();
+        journal.baseModified = baseFile.lastModified();
+        journal.openFile();
+        journal.scan(true);
+
+        return journal;
+    }
+
+    /**
+     * Replays the committed edits of the journal of a save file on an engine, without changing
+     * the journal, which may be open for edits at the same time.
+     * 
+     * @param saveName the name of the save file
+     * @param baseFile the save file
+     * @param engine the engine of the circuit read from the save file
+     * @throws IOException if the journal could not be read or does not fit the circuit
+     */
+    static void replayCommitted(String saveName, File baseFile, CSEngine engine) throws IOException {
+        CSEditJournal journal = new CSEditJournal(saveName, baseFile);
+        File source = journal.journalFile;
+
+        if(!journal.matches(source)) {
+            source = new File(journal.journalFile.getPath() + NEXT_SUFFIX);
+            if(!journal.matches(source))
+                return;
+        }
+
+        journal.file = new RandomAccessFile(source, "r");
+        journal.channel = journal.file.getChannel();
+        try {
+            journal.scan(false);
+            journal.replay(engine, journal.committedLength);
+        } finally {
+            journal.file.close();
+        }
+    }
+
+    /**
+     * Gets the name of the save file this journal belongs to.
+     * 
+     * @return the name of the save file
+     */
+    String getSaveName() {
+        return saveName;
+    }
+
+    /**
+     * Returns whether the save file is still the base snapshot of this journal.
+     * 
+     * @return false if the save file was replaced or removed without this journal
+     */
+    synchronized boolean isCurrent() {
+        return !closed && baseFile.length() == baseLength && baseFile.lastModified() == baseModified;
+    }
+
+    /**
+     * Gets the number of edits that were found after the last commit when the journal was opened.
+     * 
+     * @return the number of edits that were not saved
+     */
+    int getRecoveredCount() {
+        return recoveredCount;
+    }
+
+    /**
+     * Appends an edit to the journal.
+     * 
+     * @param op the operation of the edit
+     * @param name the name of the node, or null
+     * @param first the first integer of the edit
+     * @param second the second integer of the edit
+     * @throws IOException if the edit could not be written
+     */
+    void append(int op, String name, int first, int second) throws IOException {
+        appendRecord(encode(op, name, first, second));
+    }
+
+    /**
+     * Appends the input sequence of a node to the journal.
+     * 
+     * @param name the name of the input variable node
+     * @param words the packed values of the sequence, or null if it has none
+     * @param seqLength the number of values of the sequence
+     * @throws IOException if the edit could not be written
+     */
+    void appendInputSeq(String name, long[] words, int seqLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.write(encode(OP_SET_INPUT_SEQ, name, words == null ? -1 : seqLength, 0));
+        if(words != null)
+            for(int w = 0; w < (seqLength + 63) >>> 6; w++)
+                out.writeLong(words[w]);
+        appendRecord(bytes.toByteArray());
+    }
+
+    /**
+     * Appends the stimulus source of a node to the journal.
+     * <p>
+     * As in a save file, a source that cannot be serialized is journaled as no source.
+     * 
+     * @param name the name of the input variable node
+     * @param source the stimulus source, or null
+     * @throws IOException if the edit could not be written
+     */
+    void appendStimulusSource(String name, CSStimulusSource source) throws IOException {
+        ByteArrayOutputStream sourceBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream objectOut;
+
+        if(source instanceof Serializable) {
+            objectOut = new ObjectOutputStream(sourceBytes);
+            objectOut.writeObject(source);
+            objectOut.close();
+        }
+
+        bytes.write(encode(OP_SET_SOURCE, name, sourceBytes.size() == 0 ? -1 : sourceBytes.size(), 0));
+        sourceBytes.writeTo(bytes);
+        appendRecord(bytes.toByteArray());
+    }
+
+    /**
+     * Commits the edits appended since the last commit and forces the journal to disk.
+     * <p>
+     * A compaction is started in the background once the committed edits take at least
+     * {@linkplain #COMPACT_SIZE} bytes and half the size of the save file.
+     * 
+     * @throws IOException if the commit could not be written
+     */
+    synchronized void commit() throws IOException {
+        appendRecord(encode(OP_COMMIT, null, 0, 0));
+        channel.force(false);
+        committedLength = length;
+
+        if(compaction == null && committedLength - HEADER_SIZE >= Math.max(COMPACT_SIZE, baseLength / 2)) {
+            compaction = new Thread(new Runnable() {
+                public void run() {
+                    compact();
+                }
+            }, "journal compaction of " + saveName);
+            compaction.start();
+        }
+    }
+
+    /**
+     * Replays the journal on an engine holding the base snapshot.
+     * 
+     * @param engine the engine of the circuit read from the save file
+     * @throws IOException if the journal could not be read or does not fit the circuit
+     */
+    void replay(CSEngine engine) throws IOException {
+        replay(engine, length);
+    }
+
+    /**
+     * Drops the edits after the last commit and closes the journal.
+     * <p>
+     * A running compaction is waited for, so that the save file and journal stay consistent.
+     * 
+     * @throws IOException if the journal could not be cut off
+     */
+    public void close() throws IOException {
+        Thread running;
+
+        synchronized(this) {
+            if(closed)
+                return;
+            closed = true;
+            running = compaction;
+        }
+
+        if(running != null) {
+            try {
+                running.join();
+            } catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized(this) {
+            try {
+                channel.truncate(committedLength);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Utility method to replay the records of the journal up to an offset.
+     * 
+     * @param engine the engine to apply the edits to
+     * @param end the offset to stop at
+     * @throws IOException if the journal could not be read or does not fit the circuit
+     */
+    private void replay(CSEngine engine, long end) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        ByteBuffer payload;
+        long position = HEADER_SIZE;
+
+        while(position < end) {
+            header.clear();
+            readFully(header, position);
+            payload = ByteBuffer.allocate(header.getInt(0));
+            readFully(payload, position + 8);
+            position += 8 + payload.capacity();
+
+            try {
+                apply(engine, new DataInputStream(new ByteArrayInputStream(payload.array())));
+            } catch(IllegalArgumentException iae) {
+                throw new IOException("The edit journal of " + saveName + " does not fit its save file");
+            } catch(ClassCastException cce) {
+                throw new IOException("The edit journal of " + saveName + " does not fit its save file");
+            } catch(ClassNotFoundException cnfe) {
+                throw new IOException("The edit journal of " + saveName + " does not fit its save file");
+            }
+        }
+    }
+
+    /**
+     * Utility method to apply one edit to an engine.
+     * 
+     * @param engine the engine to apply the edit to
+     * @param in the payload of the record
+     * @throws IOException if the payload could not be read
+     * @throws ClassNotFoundException if the class of a stimulus source could not be found
+     * @throws IllegalArgumentException if the edit does not fit the circuit
+     * @throws ClassCastException if the edit does not fit the circuit
+     */
+    private static void apply(CSEngine engine, DataInputStream in) throws IOException, ClassNotFoundException,
+            IllegalArgumentException, ClassCastException {
+        int op = in.readByte();
+        String name = in.readBoolean() ? in.readUTF() : null;
+        int first = in.readInt();
+        int second = in.readInt();
+        long[] words;
+        byte[] bytes;
+        ObjectInputStream objectIn;
+
+        switch(op) {
+            case OP_COMMIT:             break;
+            case OP_ADD_NODE:           addNode(engine, first, name);
+                                        break;
+            case OP_REMOVE_NODE:        engine.removeNode(name);
+                                        break;
+            case OP_ADD_CONNECTION:     engine.addConnection(first, second);
+                                        break;
+            case OP_REMOVE_CONNECTION:  engine.removeConnection(first, second);
+                                        break;
+            case OP_RENAME_NODE:        engine.renameNode(first, name);
+                                        break;
+            case OP_SET_DELAY:          engine.setNodeDelay(first, second);
+                                        break;
+            case OP_SET_INPUT_SEQ:      words = null;
+                                        if(first >= 0) {
+                                            words = new long[(first + 63) >>> 6];
+                                            for(int w = 0; w < words.length; w++)
+                                                words[w] = in.readLong();
+                                        }
+                                        engine.setInputSeq(name, words, first);
+                                        break;
+            case OP_SET_SOURCE:         if(first < 0) {
+                                            engine.setStimulusSource(name, null);
+                                            break;
+                                        }
+                                        bytes = new byte[first];
+                                        in.readFully(bytes);
+                                        objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                                        try {
+                                            engine.setStimulusSource(name, (CSStimulusSource)objectIn.readObject());
+                                        } finally {
+                                            objectIn.close();
+                                        }
+                                        break;
+            case OP_TRACK_NODE:         engine.trackNode(first);
+                                        break;
+            case OP_TRACK_ALL:          engine.trackAllNodes();
+                                        break;
+            case OP_UNTRACK_NODE:       engine.untrackNode(first);
+                                        break;
+            case OP_UNTRACK_ALL:        engine.untrackAllNodes();
+                                        break;
+            case OP_RELOAD:             engine.reloadLists();
+                                        break;
+            default:                    throw new IllegalArgumentException("Unknown edit " + op);
+        }
+    }
+
+    /**
+     * Utility method to add a node of the given type through an engine.
+     * 
+     * @param engine the engine to add the node with
+     * @param type the type of the node, as in {@linkplain CSSaveWriter}
+     * @param name the name of the node, or of the node to invert for inverters
+     * @throws IllegalArgumentException if the node could not be added
+     */
+    private static void addNode(CSEngine engine, int type, String name) throws IllegalArgumentException {
+        switch(type) {
+            case CSSaveWriter.TYPE_INPUT:       engine.addInputNode(name);
+                                                break;
+            case CSSaveWriter.TYPE_OUTPUT:      engine.addOutputNode(name);
+                                                break;
+            case CSSaveWriter.TYPE_DFF:         engine.addDFFNode(name);
+                                                break;
+            case CSSaveWriter.TYPE_AND:         engine.addAndGate(name);
+                                                break;
+            case CSSaveWriter.TYPE_NAND:        engine.addNandGate(name);
+                                                break;
+            case CSSaveWriter.TYPE_OR:          engine.addOrGate(name);
+                                                break;
+            case CSSaveWriter.TYPE_NOR:         engine.addNorGate(name);
+                                                break;
+            case CSSaveWriter.TYPE_XOR:         engine.addXorGate(name);
+                                                break;
+            case CSSaveWriter.TYPE_NXOR:        engine.addNXorGate(name);
+                                                break;
+            case CSSaveWriter.TYPE_INVERTER:    engine.addInverter(name);
+                                                break;
+            default:                            throw new IllegalArgumentException("Unknown node type " + type);
+        }
+    }
+
+    /**
+     * Utility method to write the committed edits into a new base snapshot and start a new
+     * journal with the rest. Runs on the compaction thread.
+     */
+    private void compact() {
+        File compactFile = new File(baseFile.getPath() + COMPACT_SUFFIX);
+        File nextFile = new File(journalFile.getPath() + NEXT_SUFFIX);
+        CSEngine engine;
+        long end;
+        long modified;
+
+        try {
+            synchronized(this) {
+                end = committedLength;
+            }
+
+            engine = new CSEngine(CSFileIO.readSaveFile(saveName));
+            replay(engine, end);
+            CSFileIO.writeSaveFile(engine.getCircuit(), compactFile.getName());
+            sync(compactFile);
+            // the journal tells base snapshots apart by their length and last modified time
+            modified = Math.max(compactFile.lastModified(), baseModified + 1000);
+            compactFile.setLastModified(modified);
+
+            synchronized(this) {
+                if(closed)
+                    return;
+
+                writeHeader(nextFile, compactFile.length(), compactFile.lastModified());
+                copyRecords(nextFile, end);
+                Files.move(compactFile.toPath(), baseFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(nextFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                file.close();
+                baseLength = baseFile.length();
+                baseModified = baseFile.lastModified();
+                length -= end - HEADER_SIZE;
+                committedLength -= end - HEADER_SIZE;
+                openFile();
+            }
+        } catch(Exception e) {
+            // the journal is still complete, so compacting it can wait for the next commit
+        } finally {
+            compactFile.delete();
+            nextFile.delete();
+            synchronized(this) {
+                compaction = null;
+            }
+        }
+    }
+
+    /**
+     * Utility method to copy the records of the journal after an offset to the end of another file.
+     * 
+     * @param target the file to copy the records to
+     * @param start the offset of the first record to copy
+     * @throws IOException if the records could not be copied
+     */
+    private void copyRecords(File target, long start) throws IOException {
+        RandomAccessFile targetFile = new RandomAccessFile(target, "rw");
+        FileChannel targetChannel = targetFile.getChannel();
+        long position = start;
+
+        try {
+            targetChannel.position(targetChannel.size());
+            while(position < length)
+                position += channel.transferTo(position, length - position, targetChannel);
+            targetChannel.force(false);
+        } finally {
+            targetFile.close();
+        }
+    }
+
+    /**
+     * Utility method to open the journal file for appending.
+     * 
+     * @throws IOException if the journal could not be opened
+     */
+    private void openFile() throws IOException {
+        file = new RandomAccessFile(journalFile, "rw");
+        channel = file.getChannel();
+        if(length == 0) {
+            length = channel.size();
+            committedLength = length;
+        }
+    }
+
+    /**
+     * Utility method to find the last commit and the end of the records that pass their check.
+     * 
+     * @param cutOff true to cut off the records that fail their check
+     * @throws IOException if the journal could not be read
+     */
+    private void scan(boolean cutOff) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        ByteBuffer payload;
+        CRC32 crc = new CRC32();
+        long size = channel.size();
+        long position = HEADER_SIZE;
+        int payloadLength;
+
+        committedLength = HEADER_SIZE;
+        recoveredCount = 0;
+        while(position + 8 <= size) {
+            header.clear();
+            readFully(header, position);
+            payloadLength = header.getInt(0);
+            if(payloadLength < 1 || payloadLength > size - position - 8)
+                break;
+
+            payload = ByteBuffer.allocate(payloadLength);
+            readFully(payload, position + 8);
+            crc.reset();
+            crc.update(payload.array());
+            if((int)crc.getValue() != header.getInt(4))
+                break;
+
+            position += 8 + payloadLength;
+            if(payload.get(0) == OP_COMMIT) {
+                committedLength = position;
+                recoveredCount = 0;
+            } else if(payload.get(0) != OP_RELOAD)
+                recoveredCount++;
+        }
+
+        length = position;
+        if(cutOff && size != length)
+            channel.truncate(length);
+    }
+
+    /**
+     * Utility method to check whether a journal file belongs to the current save file.
+     * 
+     * @param candidate the journal file
+     * @return true if the file is a journal stamped with the length and last modified time of the save file
+     * @throws IOException if the file could not be read
+     */
+    private boolean matches(File candidate) throws IOException {
+        RandomAccessFile in;
+
+        if(!candidate.isFile() || candidate.length() < HEADER_SIZE)
+            return false;
+
+        in = new RandomAccessFile(candidate, "r");
+        try {
+            return in.readInt() == MAGIC && in.readInt() == VERSION
+                    && in.readLong() == baseFile.length() && in.readLong() == baseFile.lastModified();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Utility method to append a record with the given payload.
+     * 
+     * @param payload the payload of the record
+     * @throws IOException if the record could not be written
+     */
+    private synchronized void appendRecord(byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        CRC32 crc = new CRC32();
+
+        if(closed)
+            throw new IOException("The edit journal of " + saveName + " is closed");
+
+        crc.update(payload);
+        record.putInt(payload.length);
+        record.putInt((int)crc.getValue());
+        record.put(payload);
+        record.flip();
+        while(record.hasRemaining())
+            length += channel.write(record, length);
+    }
+
+    /**
+     * Utility method to read bytes of the journal until the buffer is full.
+     * 
+     * @param buffer the buffer to fill
+     * @param position the offset to read from
+     * @throws IOException if the journal ends before the buffer is full
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int count = channel.read(buffer, position + buffer.position());
+            if(count < 0)
+                throw new IOException("The edit journal of " + saveName + " is damaged");
+        }
+    }
+
+    /**
+     * Utility method to encode the part of a record every edit has.
+     * 
+     * @param op the operation of the edit
+     * @param name the name of the node, or null
+     * @param first the first integer of the edit
+     * @param second the second integer of the edit
+     * @return the encoded bytes
+     * @throws IOException if the name could not be encoded
+     */
+    private static byte[] encode(int op, String name, int first, int second) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(op);
+        out.writeBoolean(name != null);
+        if(name != null)
+            out.writeUTF(name);
+        out.writeInt(first);
+        out.writeInt(second);
+        out.close();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Utility method to write a journal file holding only the header.
+     * 
+     * @param target the journal file
+     * @param baseLength the length of its save file
+     * @param baseModified the last modified time of its save file
+     * @throws IOException if the file could not be written
+     */
+    private static void writeHeader(File target, long baseLength, long baseModified) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+
+        try {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(baseLength);
+            out.writeLong(baseModified);
+            out.getChannel().force(false);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Utility method to force a file to disk.
+     * 
+     * @param target the file
+     * @throws IOException if the file could not be forced
+     */
+    private static void sync(File target) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+
+        try {
+            out.getChannel().force(true);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -5,8 +5,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
 
 import simulator.circuit.project.CSGraph.IllegalCircuitStateException;
 
@@ -48,6 +50,38 @@ public class CSEngine {
      * the list being the node with a track number of 1, and so on.
      */
     private ArrayList<CSNode> trackedNodes;
+    /**
+     * Cache of the truth table columns computed last, by output variable name. Edits remove
+     * the columns of the output variables that depend on the edited nodes.
+     */
+    private HashMap<String, long[]> truthTableColumns;
+    /**
+     * Names of the input variable nodes, in order, when the cached truth table columns were computed.
+     */
+    private ArrayList<String> truthTableInputs;
+    /**
+     * Journal of the edits made since the circuit was last written to its save file, or null
+     * if the circuit was not saved or loaded yet.
+     */
+    private CSEditJournal journal;
+    /**
+     * True if the circuit was loaded and not edited since, so the next edit journaled first
+     * records that the lists were rebuilt.
+     */
+    private boolean journalReloaded;
+    /**
+     * Number of unsaved edits replayed from the journal when the circuit was loaded.
+     */
+    private int recoveredEditCount;
+    /**
+     * Compiled form of the circuit while it is opened from a mapped save file, used to update
+     * it without creating its nodes; null until it is first updated.
+     */
+    private CSCompiledCircuit mappedCompiled;
+    /**
+     * The mapped save file {@linkplain #mappedCompiled} was compiled from.
+     */
+    private CSMappedCircuit mappedCompiledSource;
 
     /**
      * Constructs a new engine with a new, empty circuit to work on.
@@ -64,36 +98,13 @@ public class CSEngine {
      * @param circuit the circuit that the engine will correspond to
      */
     public CSEngine(CSGraph circuit) {
-        CSNode node;
-        Inverter inverterNode;
-
         this.circuit = circuit;
 
         // initialize array list fields
         initArrayLists();
 
         // fill the fields with appropriate data
-        for(int i = 0; i < circuit.getSize(); i++) {
-            node = circuit.getNode(i);
-
-            if(node instanceof InputVariableNode)
-                inputNodeNames.add(node.getName());
-            else if(node instanceof OutputVariableNode)
-                outputNodeNames.add(node.getName());
-            else if(node instanceof FlipFlop)
-                flipFlopNodeNames.add(node.getName());
-            else if(node instanceof Inverter) {
-                inverterNode = (Inverter)node;
-                invertedNodes.add(inverterNode.getInputNode().getName());
-            }
-
-            if(node.getTrackNum() > 0)
-                trackedNodes.add(node);
-        }
-
-        // sort the trackedNodes list because nodes are not necessarily
-        // ordered by their track number
-        trackedNodes.sort(new CSNodeTrackNumComparator());
+        fillArrayLists();
     }
 
     /**
@@ -105,6 +116,38 @@ public class CSEngine {
         flipFlopNodeNames = new ArrayList<String>();
         invertedNodes = new ArrayList<String>();
         trackedNodes = new ArrayList<CSNode>();
+        truthTableColumns = new HashMap<String, long[]>();
+        truthTableInputs = new ArrayList<String>();
+    }
+
+    /**
+     * Utility method to fill the list fields with the nodes of the circuit.
+     * <p>
+     * Only the key nodes of the circuit are looked at, by type and name, so that a circuit
+     * opened from a mapped save file only creates its tracked nodes.
+     */
+    private void fillArrayLists() {
+        int type;
+
+        for(int i : circuit.getKeyNodeIndeces()) {
+            type = circuit.getTypeCode(i);
+
+            if(type == CSSaveWriter.TYPE_INPUT)
+                inputNodeNames.add(circuit.getNodeName(i));
+            else if(type == CSSaveWriter.TYPE_OUTPUT)
+                outputNodeNames.add(circuit.getNodeName(i));
+            else if(type == CSSaveWriter.TYPE_DFF)
+                flipFlopNodeNames.add(circuit.getNodeName(i));
+            else if(type == CSSaveWriter.TYPE_INVERTER)
+                invertedNodes.add(circuit.getInvertedNodeName(i));
+
+            if(circuit.getNodeTrackNum(i) > 0)
+                trackedNodes.add(circuit.getNode(i));
+        }
+
+        // sort the trackedNodes list because nodes are not necessarily
+        // ordered by their track number
+        trackedNodes.sort(new CSNodeTrackNumComparator());
     }
 
     /**
@@ -117,6 +160,7 @@ public class CSEngine {
     public void addInputNode(String nodeID) throws IllegalArgumentException {
         circuit.addNode(new InputVariableNode(nodeID));
         inputNodeNames.add(nodeID);
+        logEdit(CSEditJournal.OP_ADD_NODE, nodeID, CSSaveWriter.TYPE_INPUT, 0);
     }
 
     /**
@@ -129,6 +173,7 @@ public class CSEngine {
     public void addOutputNode(String nodeID) throws IllegalArgumentException {
         circuit.addNode(new OutputVariableNode(nodeID));
         outputNodeNames.add(nodeID);
+        logEdit(CSEditJournal.OP_ADD_NODE, nodeID, CSSaveWriter.TYPE_OUTPUT, 0);
     }
 
     /**
@@ -162,6 +207,7 @@ public class CSEngine {
         // add appropriate edges
         circuit.addEdge(circuit.getSize() - 3, circuit.getSize() - 2);
         circuit.addEdge(circuit.getSize() - 3, circuit.getSize() - 1);
+        logEdit(CSEditJournal.OP_ADD_NODE, nodeID, CSSaveWriter.TYPE_DFF, 0);
     }
 
     /**
@@ -173,6 +219,7 @@ public class CSEngine {
      */
     public void addAndGate(String nodeID) throws IllegalArgumentException {
         circuit.addNode(new AndGate(nodeID));
+        logEdit(CSEditJournal.OP_ADD_NODE, nodeID, CSSaveWriter.TYPE_AND, 0);
     }
 
     /**
@@ -184,6 +231,7 @@ public class CSEngine {
      */
     public void addNandGate(String nodeID) throws IllegalArgumentException {
         circuit.addNode(new NandGate(nodeID));
+        logEdit(CSEditJournal.OP_ADD_NODE, nodeID, CSSaveWriter.TYPE_NAND, 0);
     }
 
     /**
@@ -195,6 +243,7 @@ public class CSEngine {
      */
     public void addOrGate(String nodeID) throws IllegalArgumentException {
         circuit.addNode(new OrGate(nodeID));
+        logEdit(CSEditJournal.OP_ADD_NODE, nodeID, CSSaveWriter.TYPE_OR, 0);
     }
 
     /**
@@ -206,6 +255,7 @@ public class CSEngine {
      */
     public void addNorGate(String nodeID) throws IllegalArgumentException {
         circuit.addNode(new NorGate(nodeID));
+        logEdit(CSEditJournal.OP_ADD_NODE, nodeID, CSSaveWriter.TYPE_NOR, 0);
     }
 
     /**
@@ -217,6 +267,7 @@ public class CSEngine {
      */
     public void addXorGate(String nodeID) throws IllegalArgumentException {
         circuit.addNode(new XorGate(nodeID));
+        logEdit(CSEditJournal.OP_ADD_NODE, nodeID, CSSaveWriter.TYPE_XOR, 0);
     }
 
     /**
@@ -228,6 +279,7 @@ public class CSEngine {
      */
     public void addNXorGate(String nodeID) throws IllegalArgumentException {
         circuit.addNode(new NXorGate(nodeID));
+        logEdit(CSEditJournal.OP_ADD_NODE, nodeID, CSSaveWriter.TYPE_NXOR, 0);
     }
 
     /**
@@ -266,6 +318,7 @@ public class CSEngine {
 
         circuit.addEdge(sourceIndex, newInverterIndex);
         invertedNodes.add(sourceNodeID);
+        logEdit(CSEditJournal.OP_ADD_NODE, sourceNodeID, CSSaveWriter.TYPE_INVERTER, 0);
     }
 
     /**
@@ -327,6 +380,8 @@ public class CSEngine {
         
         // now add the edge
         circuit.addEdge(sourceIndex, targetIndex);
+        invalidateTruthTable(targetIndex);
+        logEdit(CSEditJournal.OP_ADD_CONNECTION, null, sourceIndex, targetIndex);
     }
 
     /**
@@ -381,6 +436,8 @@ public class CSEngine {
         
         // now add the edge
         circuit.addEdge(sourceIndex, targetIndex);
+        invalidateTruthTable(targetIndex);
+        logEdit(CSEditJournal.OP_ADD_CONNECTION, null, sourceIndex, targetIndex);
     }
 
     /**
@@ -404,11 +461,14 @@ public class CSEngine {
 
         if(node instanceof FFOutNode)
             throw new IllegalArgumentException("Output nodes for flip flops cannot be removed, try to remove the flip flop itself instead");
-        else if(node instanceof FlipFlop) {
+
+        invalidateTruthTable(nodeIndex);
+        if(node instanceof FlipFlop) {
             flipFlopNodeNames.remove(node.getName());
             // if more flip-flops become supported, implement switch-case
             // here to choose what kind of flip-flop is being removed
             removeDFFNode(nodeIndex);
+            logEdit(CSEditJournal.OP_REMOVE_NODE, nodeID, 0, 0);
             return;
         } else if(node instanceof Inverter) {
             // need to remove the source of this inverter from the invertedNodes list
@@ -442,6 +502,8 @@ public class CSEngine {
             trackedNodes.remove(circuit.getNode(indecesToRemove.get(i)));
             circuit.removeNode(indecesToRemove.get(i));
         }
+
+        logEdit(CSEditJournal.OP_REMOVE_NODE, nodeID, 0, 0);
     }
 
     /**
@@ -581,9 +643,12 @@ public class CSEngine {
         if(inputNodeNames.remove(targetNodeName))
             inputNodeNames.add(newName);
         
-        // if renamed an output node, update the outputNodeNames array
-        if(outputNodeNames.remove(targetNodeName))
+        // if renamed an output node, update the outputNodeNames array and move its cached column
+        if(outputNodeNames.remove(targetNodeName)) {
             outputNodeNames.add(newName);
+            if(truthTableColumns.containsKey(targetNodeName))
+                truthTableColumns.put(newName, truthTableColumns.remove(targetNodeName));
+        }
 
         // if renamed a flip flop, also need to rename its output nodes and update the flipFlopNodeNames array
         if(flipFlopNodeNames.remove(targetNodeName)) {
@@ -632,6 +697,37 @@ public class CSEngine {
             targetNodeName = tempTargetName;
             newName = tempNewName;
         }
+
+        logEdit(CSEditJournal.OP_RENAME_NODE, newName, nodeIndex, 0);
+    }
+
+    /**
+     * Sets the propagation delay of a gate or inverter in this circuit.
+     * <p>
+     * The indeces start from zero, so use index 0 for the first node in
+     * the circuit, and so on. The delay is only used by timing simulation;
+     * see {@linkplain CSTimingSimulator}.
+     * 
+     * @param nodeIndex the index of the node
+     * @param delay the new delay, in units of time
+     * @throws IllegalArgumentException if the given index is invalid, the node is
+     * not a gate or an inverter, or the delay is not positive or above
+     * {@linkplain CSTimingSimulator#MAX_DELAY}
+     */
+    public void setNodeDelay(int nodeIndex, int delay) throws IllegalArgumentException {
+        CSNode targetNode;
+
+        if(nodeIndex < 0 || nodeIndex >= circuit.getSize())
+            throw new IllegalArgumentException("The given node index is invalid");
+
+        targetNode = circuit.getNode(nodeIndex);
+        if(!(targetNode instanceof Gate) && !(targetNode instanceof Inverter))
+            throw new IllegalArgumentException("Only gates and inverters have a propagation delay");
+        if(delay <= 0 || delay > CSTimingSimulator.MAX_DELAY)
+            throw new IllegalArgumentException("The propagation delay must be from 1 to " + CSTimingSimulator.MAX_DELAY);
+
+        circuit.setNodeDelay(nodeIndex, delay);
+        logEdit(CSEditJournal.OP_SET_DELAY, null, nodeIndex, delay);
     }
 
     /**
@@ -674,6 +770,7 @@ public class CSEngine {
         if(sourceNode instanceof FlipFlop)
             throw new IllegalArgumentException("Flip flops cannot exist without their output nodes");
 
+        invalidateTruthTable(targetIndex);
         circuit.removeEdge(sourceIndex, targetIndex);
 
         // inverters cannot exist without an input
@@ -692,6 +789,8 @@ public class CSEngine {
             VariableInput varInputNode = (VariableInput)targetNode;
             varInputNode.removeInputNode(sourceNode);
         }
+
+        logEdit(CSEditJournal.OP_REMOVE_CONNECTION, null, sourceIndex, targetIndex);
     }
 
     /**
@@ -728,6 +827,7 @@ public class CSEngine {
         if(sourceNode instanceof FlipFlop)
             throw new IllegalArgumentException("Flip flops cannot exist without their output nodes");
 
+        invalidateTruthTable(targetIndex);
         circuit.removeEdge(sourceIndex, targetIndex);
 
         // inverters cannot exist without an input
@@ -746,6 +846,8 @@ public class CSEngine {
             VariableInput varInputNode = (VariableInput)targetNode;
             varInputNode.removeInputNode(sourceNode);
         }
+
+        logEdit(CSEditJournal.OP_REMOVE_CONNECTION, null, sourceIndex, targetIndex);
     }
 
     /**
@@ -759,6 +861,50 @@ public class CSEngine {
         InputVariableNode node = (InputVariableNode)circuit.getNode(nodeIndex);
 
         node.setInputSeq(newSeq);
+        logInputSeq(node);
+    }
+
+    /**
+     * Sets a packed input sequence to a specified input variable node in the circuit.
+     * <p>
+     * Bit {@code i % 64} of word {@code i / 64} is the i-th value of the sequence.
+     * 
+     * @param inputNodeID the ID/name of the input variable node
+     * @param words the packed values of the new sequence
+     * @param length the number of values in the new sequence
+     * @throws IllegalArgumentException if the node does not exist or is not an input variable node,
+     * or if the length does not fit the given words
+     */
+    public void setInputSeq(String inputNodeID, long[] words, int length) throws IllegalArgumentException {
+        int nodeIndex = circuit.indexOf(inputNodeID);
+        InputVariableNode node;
+
+        if(nodeIndex == -1 || !(circuit.getNode(nodeIndex) instanceof InputVariableNode))
+            throw new IllegalArgumentException(inputNodeID + " is not an input variable in the circuit");
+
+        node = (InputVariableNode)circuit.getNode(nodeIndex);
+        node.setInputSeq(words, length);
+        logInputSeq(node);
+    }
+
+    /**
+     * Sets a stimulus source to a specified input variable node in the circuit.
+     * <p>
+     * The node then pulls its values from the source instead of an input sequence,
+     * which lets very long stimuli be streamed from a file without loading them.
+     * 
+     * @param inputNodeID the ID/name of the input variable node
+     * @param source the new source of values, or null to remove the current one
+     * @throws IllegalArgumentException if the node does not exist or is not an input variable node
+     */
+    public void setStimulusSource(String inputNodeID, CSStimulusSource source) throws IllegalArgumentException {
+        int nodeIndex = circuit.indexOf(inputNodeID);
+
+        if(nodeIndex == -1 || !(circuit.getNode(nodeIndex) instanceof InputVariableNode))
+            throw new IllegalArgumentException(inputNodeID + " is not an input variable in the circuit");
+
+        ((InputVariableNode)circuit.getNode(nodeIndex)).setStimulusSource(source);
+        logStimulusSource(inputNodeID, source);
     }
 
     /**
@@ -798,6 +944,7 @@ public class CSEngine {
             node = circuit.getNode(nodeIndex);
             node.setTrackNum(trackedNodes.size() + 1);
             trackedNodes.add(node);
+            logEdit(CSEditJournal.OP_TRACK_NODE, null, nodeIndex, 0);
         }
             
     }
@@ -823,6 +970,8 @@ public class CSEngine {
                     untrackedNodes--;
                 }
             }
+
+        logEdit(CSEditJournal.OP_TRACK_ALL, null, 0, 0);
     }
 
     /**
@@ -853,6 +1002,7 @@ public class CSEngine {
             trackedNodes.get(i).setTrackNum(i - 1);
 
         trackedNodes.remove(nodeIndex);
+        logEdit(CSEditJournal.OP_UNTRACK_NODE, null, nodeIndex, 0);
     }
 
     /**
@@ -863,6 +1013,7 @@ public class CSEngine {
             node.resetTrackNum();
 
         trackedNodes.clear();
+        logEdit(CSEditJournal.OP_UNTRACK_ALL, null, 0, 0);
     }
 
     /**
@@ -973,20 +1124,189 @@ public class CSEngine {
 
     }
 
+    /**
+     * Runs the circuit for the specified number of cycles and records the states
+     * of the tracked nodes as a binary trace file.
+     * <p>
+     * Each recorded state is what {@linkplain #getNextCircuitState()} would return for
+     * that cycle. The circuit is reset before and after recording. The trace file is
+     * written to the trace folder and can be read back with {@linkplain CSTraceReader};
+     * if recording fails, the trace file is deleted.
+     * 
+     * @param fileName the file name of the trace
+     * @param cycles the number of cycles to record
+     * @return the number of cycles recorded
+     * @throws IllegalStateException if there are no tracked nodes
+     * @throws IllegalCircuitStateException if the circuit could not be updated
+     * due to it being in an invalid state
+     * @throws IOException if an error occurred when writing the trace file
+     */
+    public long recordTrace(String fileName, long cycles) throws IllegalStateException, IllegalCircuitStateException, IOException {
+        if(trackedNodes.size() == 0)
+            throw new IllegalStateException("Track a node in order to record its values in a trace");
+
+        CSTraceWriter writer = new CSTraceWriter(CSFileIO.openTraceOutput(fileName), getTrackedNodeNames());
+        boolean finished = false;
+
+        circuit.reset();
+        try {
+            for(long i = 0; i < cycles; i++)
+                writer.writeState(getNextCircuitState());
+            writer.close();
+            finished = true;
+        } finally {
+            // a failed recording leaves no trace behind that could pass for a shorter run
+            if(!finished) {
+                writer.abort();
+                CSFileIO.getTraceFile(fileName).delete();
+            }
+            circuit.reset();
+        }
+
+        return writer.getCycleCount();
+    }
+
+    /**
+     * Runs the circuit for the specified number of cycles and records periodic checkpoints
+     * of its full state as a checkpoint file.
+     * <p>
+     * A checkpoint is written for cycle 0 (the reset state) and after every {@code interval}
+     * cycles. With the resulting file, {@linkplain #restoreCycle(CSCheckpointReader, long)} can
+     * rebuild the state after any cycle of the run by simulating at most {@code interval - 1}
+     * cycles. The circuit is reset before and after recording. The checkpoint file is written
+     * to the trace folder.
+     * 
+     * @param fileName the file name of the checkpoint file
+     * @param cycles the number of cycles to run
+     * @param interval the number of cycles between two checkpoints
+     * @return the number of checkpoints written
+     * @throws IllegalArgumentException if the interval is not positive
+     * @throws IllegalCircuitStateException if the circuit could not be updated
+     * due to it being in an invalid state
+     * @throws IOException if an error occurred when writing the checkpoint file
+     */
+    public long recordCheckpoints(String fileName, long cycles, int interval) throws IllegalArgumentException, IllegalCircuitStateException, IOException {
+        long[] nodeValues = new long[(circuit.getSize() + 63) >>> 6];
+        long[] inputPositions = new long[inputNodeNames.size()];
+        CSCheckpointWriter writer = new CSCheckpointWriter(CSFileIO.getTraceFile(fileName), interval,
+            getCircuitNodeNames(), inputNodeNames.size(), CSCheckpointWriter.getFingerprint(circuit));
+
+        // every node is part of a checkpoint, so they are all created at once
+        circuit.createAllNodes();
+        circuit.reset();
+        try {
+            captureState(nodeValues, inputPositions);
+            writer.writeCheckpoint(nodeValues, inputPositions);
+            for(long cycle = 1; cycle <= cycles; cycle++) {
+                updateCircuit();
+                if(cycle % interval == 0) {
+                    captureState(nodeValues, inputPositions);
+                    writer.writeCheckpoint(nodeValues, inputPositions);
+                }
+            }
+            writer.finish(cycles);
+        } finally {
+            writer.close();
+            circuit.reset();
+        }
+
+        return writer.getCheckpointCount();
+    }
+
+    /**
+     * Brings the circuit to its state after the specified cycle of a recorded run.
+     * <p>
+     * The nearest checkpoint at or before the cycle is loaded and the remaining cycles are
+     * simulated. Afterwards the circuit continues from that state, so further calls to
+     * {@linkplain #getNextCircuitState()} return the states of the following cycles.
+     * 
+     * @param checkpoints the checkpoint file of the run, recorded from this circuit
+     * @param cycle the cycle to restore; 0 is the reset state and cycle {@code n} is the state
+     * that the n-th call to {@linkplain #getNextCircuitState()} would have returned
+     * @return array containing the values of the tracked nodes after the cycle
+     * @throws IllegalArgumentException if the checkpoints were not recorded from this circuit or
+     * the cycle is outside of the recorded run
+     * @throws IllegalCircuitStateException if the circuit could not be updated
+     * due to it being in an invalid state
+     * @throws IOException if an error occurred when reading the checkpoint file
+     */
+    public int[] restoreCycle(CSCheckpointReader checkpoints, long cycle) throws IllegalArgumentException, IllegalCircuitStateException, IOException {
+        if(checkpoints.getFingerprint() != CSCheckpointWriter.getFingerprint(circuit)
+                || checkpoints.getNodeCount() != circuit.getSize() || checkpoints.getInputCount() != inputNodeNames.size())
+            throw new IllegalArgumentException("The checkpoints were not recorded from this circuit");
+
+        long[] nodeValues = new long[(circuit.getSize() + 63) >>> 6];
+        long[] inputPositions = new long[inputNodeNames.size()];
+        long checkpointCycle = checkpoints.readCheckpoint(checkpoints.getCheckpointIndex(cycle), nodeValues, inputPositions);
+
+        // every node is given its value from the checkpoint, so they are all created at once
+        circuit.createAllNodes();
+        for(int i = 0; i < circuit.getSize(); i++)
+            circuit.getNode(i).value = (int)(nodeValues[i >>> 6] >>> (i & 63)) & 1;
+        for(int i = 0; i < inputNodeNames.size(); i++)
+            ((InputVariableNode)circuit.getNode(inputNodeNames.get(i))).setSeqPosition(inputPositions[i]);
+
+        for(long c = checkpointCycle; c < cycle; c++)
+            updateCircuit();
+
+        return getCurrentCircuitState();
+    }
+
+    /**
+     * Utility method to record the full state of the circuit.
+     * 
+     * @param nodeValues array to store the packed node values in; bit {@code i % 64} of word
+     * {@code i / 64} holds the value of node {@code i}
+     * @param inputPositions array to store the positions of the input variable nodes within
+     * their input sequences in
+     */
+    private void captureState(long[] nodeValues, long[] inputPositions) {
+        Arrays.fill(nodeValues, 0);
+        for(int i = 0; i < circuit.getSize(); i++)
+            if(circuit.getNode(i).value != 0)
+                nodeValues[i >>> 6] |= 1L << (i & 63);
+        for(int i = 0; i < inputNodeNames.size(); i++)
+            inputPositions[i] = ((InputVariableNode)circuit.getNode(inputNodeNames.get(i))).getSeqPosition();
+    }
+
     /**
      * Updates the circuit.
+     * <p>
+     * A circuit opened from a mapped save file is updated through its compiled form, along
+     * the same update path, so that only its input variable nodes and the nodes that were
+     * already created are kept as nodes. Once every node is created, the nodes are updated
+     * themselves.
      * 
      * @throws IllegalCircuitStateException if the circuit is in an invalid state
      */
     private void updateCircuit() throws IllegalCircuitStateException {
-        String updatePath = "";
-
-        updatePath = circuit.getUpdatePath();
+        CSMappedCircuit source = circuit.getMappedSource();
+        long[] values;
+        int nodeIndex;
+        CSNode inputNode;
+
+        if(source == null || source.getCreatedCount() == circuit.getSize()) {
+            mappedCompiled = null;
+            mappedCompiledSource = null;
+            for(int index : circuit.getUpdatePathIndeces())
+                circuit.getNode(index).updateValue();
+            return;
+        }
 
-        StringTokenizer tokenizer = new StringTokenizer(updatePath);
+        if(mappedCompiledSource != source) {
+            mappedCompiled = new CSCompiledCircuit(circuit);
+            mappedCompiledSource = source;
+        }
 
-        while(tokenizer.hasMoreTokens())
-            circuit.getNode(Integer.valueOf(tokenizer.nextToken())).updateValue();
+        values = source.getValues();
+        for(String inputNodeName : inputNodeNames) {
+            nodeIndex = circuit.indexOf(inputNodeName);
+            inputNode = circuit.getNode(nodeIndex);
+            inputNode.updateValue();
+            values[nodeIndex] = inputNode.value;
+        }
+        mappedCompiled.evaluate(values);
+        source.applyValues();
     }
 
     /**
@@ -1055,81 +1375,276 @@ public class CSEngine {
         if(outputNodeNames.size() == 0)
             throw new IllegalStateException("Output variables are needed to build the truth table");
 
-        int rowSize = (int)Math.pow(2.0, inputNodeNames.size());
-        int colSize = inputNodeNames.size() + outputNodeNames.size();
+        if(inputNodeNames.size() > 30)
+            throw new IllegalStateException("The truth table of a circuit with more than 30 input variables is too large to build");
 
-        // initialize the result double array to appropriate size
-        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>(rowSize);
-        for(int i = 0; i < rowSize; i++) {
-            result.add(new ArrayList<Integer>(colSize));
-            for(int j = 0; j < colSize; j++)
-                result.get(i).add(Integer.valueOf(0));
+        TruthTableCollector collector = new TruthTableCollector();
+        try {
+            getTruthTable().writeTo(collector);
+        } catch(IOException ioe) {
+            // the collector only stores the rows in memory
+            throw new IllegalStateException(ioe.getMessage());
         }
 
-        // array lists to store references to input and output variables in circuit
-        ArrayList<InputVariableNode> inputVariables = new ArrayList<InputVariableNode>();
-        ArrayList<OutputVariableNode> outputVariables = new ArrayList<OutputVariableNode>();
+        return collector.result;
+    }
 
-        // add all input and output variables in circuit into the appropriate list above
-        for(String inputNodeName : inputNodeNames)
-            inputVariables.add((InputVariableNode)circuit.getNode(inputNodeName));
-        for(String outputNodeName : outputNodeNames)
-            outputVariables.add((OutputVariableNode)circuit.getNode(outputNodeName));
+    /**
+     * Gets the circuit's truth table in its columnar form.
+     * <p>
+     * This method applies only to circuits that are not sequential. The table is computed 64 rows
+     * at a time by a bit-parallel simulation of the circuit, and takes one bit per row for each
+     * output variable; see {@linkplain CSTruthTable}.
+     * <p>
+     * The last six input variables change within each group of 64 rows, one per lane. The groups
+     * are visited in Gray code order, so exactly one of the other input variables changes from one
+     * group to the next, and only the nodes that depend on it are evaluated again; the results are
+     * stored at the group's place in the table, in normal row order.
+     * <p>
+     * The columns are cached. After an edit of the circuit, only the columns of the output
+     * variables that depend on the edited nodes are computed again, from their fan-in cones;
+     * changing the input variables computes the whole table again.
+     * <p>
+     * Input sequences and stimulus sources of the input variables are not changed.
+     * 
+     * @return the truth table of the circuit
+     * @throws IllegalStateException if the circuit is sequential, or input variable nodes do not exist,
+     * or output variable nodes do not exist, or there are more than {@linkplain CSTruthTable#MAX_INPUTS}
+     * input variable nodes
+     * @throws IllegalCircuitStateException if the circuit could not be updated due to it being in
+     * an invalid state
+     */
+    public CSTruthTable getTruthTable() throws IllegalStateException, IllegalCircuitStateException {
+        if(circuit.isSequential())
+            throw new IllegalStateException("This circuit is a sequential circuit, it does not have a truth table");
+        if(inputNodeNames.size() == 0)
+            throw new IllegalStateException("Input variables are needed to build the truth table");
+        if(outputNodeNames.size() == 0)
+            throw new IllegalStateException("Output variables are needed to build the truth table");
+        if(inputNodeNames.size() > CSTruthTable.MAX_INPUTS)
+            throw new IllegalStateException("The truth table of a circuit with more than " + CSTruthTable.MAX_INPUTS + " input variables is too large to build");
 
-        // store the original sequences in temporary storage
-        ArrayList<String> originalSequences = new ArrayList<String>(inputVariables.size());
-        for(InputVariableNode inputNode : inputVariables)
-            originalSequences.add(inputNode.getInputSeq().replaceAll("[^01]", "")); // instead of [0, 1, 1, 0], store 0110
-
-        // fill input variable columns to store all possible combinations; along with setting the variables to have
-        // the corresponding input sequences
-        int numInputVariables = inputVariables.size();
-        int[] tempSequence = new int[rowSize];
-        int freq;   // indicates how many 0's or 1's to store before switching to the other
-        int count;  // counts how many 0's or 1's have been stored this cycle
-        boolean storeZero;
-        for(int j = numInputVariables - 1; j >= 0; j--) {
-            count = 0;
-            storeZero = true;
-            freq = (int)Math.pow(2.0, numInputVariables - j - 1);
-            for(int i = 0; i < rowSize; i++) {
-                result.get(i).set(j, Integer.valueOf((storeZero ? 0 : 1)));
-                tempSequence[i] = storeZero ? 0 : 1;
-                if(++count == freq) {
-                    storeZero = !storeZero;
-                    count = 0;
-                }
-            }
-            inputVariables.get(j).setInputSeq(Arrays.copyOf(tempSequence, tempSequence.length));
+        CSTruthTable table = new CSTruthTable(getInputNodeNames(), getOutputNodeNames());
+        ArrayList<String> staleOutputs = new ArrayList<String>();
+
+        // cached columns only hold for the same input variables, in the same order
+        if(!inputNodeNames.equals(truthTableInputs)) {
+            truthTableColumns.clear();
+            truthTableInputs = new ArrayList<String>(inputNodeNames);
         }
 
-        circuit.reset();
+        // the circuit needs to be valid even if every column is cached
+        circuit.getUpdatePathIndeces();
 
-        // fill output variables section in array; for each input variable combination, store the values in the output variables
-        int startColumn = inputVariables.size();
-        for(int i = 0; i < rowSize; i++) {
-            updateCircuit();
-            for(int j = startColumn; j < result.get(0).size(); j++)
-                result.get(i).set(j, Integer.valueOf((outputVariables.get(j - startColumn).getValue())));
+        for(String outputName : outputNodeNames)
+            if(!truthTableColumns.containsKey(outputName))
+                staleOutputs.add(outputName);
+        if(staleOutputs.size() > 0)
+            computeTruthTableColumns(staleOutputs);
+
+        for(int j = 0; j < outputNodeNames.size(); j++)
+            table.setColumnWords(j, truthTableColumns.get(outputNodeNames.get(j)));
+
+        return table;
+    }
+
+    /**
+     * Utility method to compute the truth table columns of the given output variables and cache them.
+     * <p>
+     * Only the fan-in cones of the given output variables are evaluated. The groups of 64 rows
+     * are visited in Gray code order; see {@linkplain #getTruthTable()}. Large tables of several
+     * output variables are computed one cone at a time as tasks of the common fork/join pool;
+     * see {@linkplain CSConeTask}.
+     * 
+     * @param outputNames the names of the output variables
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    private void computeTruthTableColumns(ArrayList<String> outputNames) throws IllegalCircuitStateException {
+        CSCompiledCircuit compiled = new CSCompiledCircuit(circuit);
+        int[] inputIndeces = getNodeIndeces(inputNodeNames);
+        int[] outputIndeces = getNodeIndeces(outputNames);
+        int blocks = (int)(((1L << inputNodeNames.size()) + 63) >>> 6);
+        long[][] columns = new long[outputIndeces.length][blocks];
+
+        if(outputIndeces.length > 1 && blocks >= CSConeTask.MIN_PARALLEL_GROUPS)
+            ForkJoinPool.commonPool().invoke(new CSConeTask(compiled, inputIndeces, outputIndeces, columns));
+        else {
+            if(outputNames.size() < outputNodeNames.size())
+                compiled = compiled.getFaninCone(outputIndeces);
+            compiled.sweepTruthTable(inputIndeces, outputIndeces, columns);
         }
 
-        circuit.reset();
+        for(int j = 0; j < outputIndeces.length; j++)
+            truthTableColumns.put(outputNames.get(j), columns[j]);
+    }
+
+    /**
+     * Builds the binary decision diagrams of the circuit's output variables and flip-flops.
+     * <p>
+     * Unlike a truth table, the diagrams are not limited in the number of input variables; see
+     * {@linkplain CSCircuitBdd} for what can be derived from them.
+     * 
+     * @param ordering the variable order, either {@linkplain CSCircuitBdd#ORDER_CIRCUIT} or
+     * {@linkplain CSCircuitBdd#ORDER_DEPTH_FIRST}
+     * @return the decision diagrams of the circuit
+     * @throws IllegalArgumentException if the variable order does not exist
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     * @throws IllegalStateException if the diagrams need too many nodes
+     */
+    public CSCircuitBdd getCircuitBdd(int ordering) throws IllegalArgumentException, IllegalCircuitStateException, IllegalStateException {
+        return new CSCircuitBdd(circuit, ordering);
+    }
 
-        // restore original sequences
-        String seqString;
-        for(int i = 0; i < originalSequences.size(); i++) {
-            seqString = originalSequences.get(i);
-            if(seqString.equals(""))
-                inputVariables.get(i).setInputSeq(null);
-            else {
-                tempSequence = new int[seqString.length()];
-                for(int n = 0; n < seqString.length(); n++)
-                    tempSequence[n] = Integer.parseInt(String.valueOf(seqString.charAt(n)));
-                inputVariables.get(i).setInputSeq(tempSequence);
+    /**
+     * Finds which stuck-at faults of the circuit are detected by the input sequences.
+     * <p>
+     * Each input sequence or stimulus source is read from its start; see
+     * {@linkplain CSFaultSimulator} for the faults and how they are simulated.
+     * 
+     * @return the result of the fault simulation, with the fault coverage
+     * @throws IllegalStateException if output variable nodes do not exist, or no input variable
+     * has values, or an input variable has an unbounded stimulus source
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    public CSFaultSimulator simulateFaults() throws IllegalStateException, IllegalCircuitStateException {
+        return new CSFaultSimulator(circuit);
+    }
+
+    /**
+     * Generates input sequences that detect the stuck-at faults of the circuit.
+     * <p>
+     * This method applies only to circuits that are not sequential. The patterns are generated
+     * with {@linkplain CSTestGenerator}, and they replace the input sequences and stimulus sources
+     * of the input variable nodes, one pattern per position of the sequences.
+     * 
+     * @return the generator, with the number of patterns and the fault coverage they reach
+     * @throws IllegalStateException if the circuit is sequential, or output variable nodes do not exist
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    public CSTestGenerator generateTestSeqs() throws IllegalStateException, IllegalCircuitStateException {
+        CSTestGenerator generator;
+        String[] inputNames;
+
+        if(circuit.isSequential())
+            throw new IllegalStateException("Test sequences can only be generated for circuits that are not sequential");
+
+        generator = new CSTestGenerator(circuit);
+        inputNames = generator.getInputNames();
+        for(int j = 0; j < inputNames.length; j++)
+            setInputSeq(inputNames[j], generator.getInputSeq(j));
+
+        return generator;
+    }
+
+    /**
+     * Gets a timing simulator of the circuit, starting from the first values of the input sequences.
+     * <p>
+     * The circuit is reset and each simulated cycle moves its input variables to their next
+     * values, so call {@linkplain #resetCircuit()} once the simulation is done.
+     * 
+     * @return the timing simulator, before its first cycle
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    public CSTimingSimulator getTimingSimulator() throws IllegalCircuitStateException {
+        return new CSTimingSimulator(circuit);
+    }
+
+    /**
+     * Gets the static timing analysis of the circuit.
+     * <p>
+     * The analysis follows the edits of the circuit: adding and removing connections and nodes,
+     * and setting delays, only updates the times of the nodes they affect. See
+     * {@linkplain CSTimingAnalyzer} for the times it finds.
+     * 
+     * @return the timing analyzer, up to date with the circuit
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    public CSTimingAnalyzer getTimingAnalyzer() throws IllegalCircuitStateException {
+        return circuit.getTimingAnalyzer();
+    }
+
+    /**
+     * Checks whether the circuit computes the same functions as the circuit saved in a file.
+     * <p>
+     * Input variables and output variables are matched by name; see
+     * {@linkplain CSEquivalenceChecker} for how the check is done.
+     * 
+     * @param fileName the name of the file holding the other circuit
+     * @return the result of the check, with a counterexample if the circuits differ
+     * @throws FileNotFoundException if something went wrong in locating the file
+     * @throws IOException if an error occurred when attemping to read the file
+     * @throws ClassNotFoundException if a circuit could not be read from the file
+     * @throws ClassCastException if the object read from the file is not a circuit
+     * @throws IllegalArgumentException if either circuit is sequential, or the circuits do not
+     * have input variables and output variables with the same names
+     * @throws IllegalCircuitStateException if either circuit is in an invalid state
+     */
+    public CSEquivalenceChecker checkEquivalence(String fileName) throws FileNotFoundException, IOException, ClassNotFoundException,
+            ClassCastException, IllegalArgumentException, IllegalCircuitStateException {
+        CSEngine savedEngine = new CSEngine(CSFileIO.readSaveFile(fileName));
+
+        // the saved circuit includes the edits committed to its journal
+        CSFileIO.replayJournal(fileName, savedEngine);
+
+        return new CSEquivalenceChecker(circuit, savedEngine.circuit);
+    }
+
+    /**
+     * Computes the circuit's truth table and gives each row to the given sink as soon as it is computed.
+     * <p>
+     * This method applies only to circuits that are not sequential. Unlike
+     * {@linkplain #getTruthTableData()}, the table is never held in memory, so tables with many
+     * input variables can be printed or exported. Rows are given in increasing row order; see
+     * {@linkplain CSTruthTableSink#acceptRow(long, long[])} for how each row is packed.
+     * <p>
+     * Input sequences and stimulus sources of the input variables are not changed.
+     * 
+     * @param sink the receiver of the rows
+     * @return the number of rows computed
+     * @throws IllegalStateException if the circuit is sequential, or input variable nodes do not exist,
+     * or output variable nodes do not exist, or there are more than 62 input variable nodes
+     * @throws IllegalCircuitStateException if the circuit could not be updated due to it being in
+     * an invalid state
+     * @throws IOException if the sink failed to handle the table
+     */
+    public long streamTruthTable(CSTruthTableSink sink) throws IllegalStateException, IllegalCircuitStateException, IOException {
+        if(circuit.isSequential())
+            throw new IllegalStateException("This circuit is a sequential circuit, it does not have a truth table");
+        if(inputNodeNames.size() == 0)
+            throw new IllegalStateException("Input variables are needed to build the truth table");
+        if(outputNodeNames.size() == 0)
+            throw new IllegalStateException("Output variables are needed to build the truth table");
+        if(inputNodeNames.size() > 62)
+            throw new IllegalStateException("The truth table of a circuit with more than 62 input variables has too many rows");
+
+        int numInputVariables = inputNodeNames.size();
+        int numOutputVariables = outputNodeNames.size();
+        long rowSize = 1L << numInputVariables;
+        CSCompiledCircuit compiled = new CSCompiledCircuit(circuit);
+        int[] inputIndeces = getNodeIndeces(inputNodeNames);
+        int[] outputIndeces = getNodeIndeces(outputNodeNames);
+        long[] values = new long[compiled.getSize()];
+        long[] outputs = new long[(numOutputVariables + 63) >>> 6];
+        long row = 0;
+
+        sink.startTable(getInputNodeNames(), getOutputNodeNames());
+
+        // each evaluation computes the next 64 rows, one per lane
+        for(long block = 0; row < rowSize; block++) {
+            for(int j = 0; j < numInputVariables; j++)
+                values[inputIndeces[j]] = CSCompiledCircuit.getCounterLanes(numInputVariables - 1 - j, block);
+            compiled.evaluate(values);
+
+            for(int lane = 0; lane < 64 && row < rowSize; lane++, row++) {
+                Arrays.fill(outputs, 0);
+                for(int j = 0; j < numOutputVariables; j++)
+                    outputs[j >>> 6] |= ((values[outputIndeces[j]] >>> lane) & 1) << j;
+                sink.acceptRow(row, outputs);
             }
         }
 
-        return result;
+        sink.endTable();
+        return rowSize;
     }
 
     /**
@@ -1368,13 +1883,14 @@ public class CSEngine {
      *   <li>Number of inverters</li>
      *   <li>Number of connections</li>
      * </ol>
+     * <p>
+     * The nodes are counted by their types, so no node of a circuit opened from a mapped save
+     * file is created.
      * 
      * @return an array containing information about the circuit
      */
     public int[] getCircuitStatus() {
         int[] status = new int[7];
-        CSNode node;
-        InputVariableNode inputNode;
         int inputNodes = 0;
         int sequences = 0;
         int outNodes = 0;
@@ -1384,22 +1900,26 @@ public class CSEngine {
         int connections;
 
         for(int i = 0; i < circuit.getSize(); i++) {
-            node = circuit.getNode(i);
-
-            if(node instanceof InputVariableNode) {
-                inputNodes++;
-                inputNode = (InputVariableNode)node;
-                if(!inputNode.getInputSeq().equals("null"))
-                    sequences++;
-                
-            } else if(node instanceof OutputVariableNode)
-                outNodes++;
-            else if(node instanceof FlipFlop)
-                flipFlops++;
-            else if(node instanceof Gate)
-                gates++;
-            else if(node instanceof Inverter)
-                inverters++;
+            switch(circuit.getTypeCode(i)) {
+                case CSSaveWriter.TYPE_INPUT:       inputNodes++;
+                                                    if(circuit.nodeHasInputSeq(i))
+                                                        sequences++;
+                                                    break;
+                case CSSaveWriter.TYPE_OUTPUT:      outNodes++;
+                                                    break;
+                case CSSaveWriter.TYPE_DFF:         flipFlops++;
+                                                    break;
+                case CSSaveWriter.TYPE_AND:
+                case CSSaveWriter.TYPE_NAND:
+                case CSSaveWriter.TYPE_OR:
+                case CSSaveWriter.TYPE_NOR:
+                case CSSaveWriter.TYPE_XOR:
+                case CSSaveWriter.TYPE_NXOR:        gates++;
+                                                    break;
+                case CSSaveWriter.TYPE_INVERTER:    inverters++;
+                                                    break;
+                default:                            break;
+            }
         }
 
         connections = circuit.getEdgeCount();
@@ -1485,7 +2005,7 @@ public class CSEngine {
             inputNodeName = inputNodeNames.get(i);
             currentNode = (InputVariableNode)circuit.getNode(inputNodeName);
             nodeSeq = currentNode.getInputSeq();
-            if(nodeSeq.equals("null"))
+            if(!currentNode.hasInputSeq())
                 result[i] = String.format("%d. %-" + fieldWidth + "s %s", (i + 1), inputNodeName, "[]");
             else
                 result[i] = String.format("%d. %-" + fieldWidth + "s %s", (i + 1), inputNodeName, nodeSeq);
@@ -1496,63 +2016,298 @@ public class CSEngine {
 
     /**
      * Saves the current circuit as a file.
+     * <p>
+     * If the circuit was last saved to or loaded from the same file, only the edits made since
+     * are committed to the file's edit journal; see {@linkplain CSEditJournal}. Otherwise the
+     * whole circuit is written and a new journal is started, and the lists of the engine are
+     * rebuilt as loading the file would, so that the journal replays the same way.
      * 
      * @param fileName the name of the save file
      * @throws FileNotFoundException if something went wrong in setting up saving the circuit
      * @throws IOException if an error occurred when attempting to save the circuit
      */
     public void saveCircuit(String fileName) throws FileNotFoundException, IOException {
+        if(journal != null && journal.getSaveName().equals(fileName) && journal.isCurrent()) {
+            try {
+                journal.commit();
+                return;
+            } catch(IOException ioe) {
+                // write the whole circuit instead
+            }
+        }
+
+        closeJournal();
         CSFileIO.writeSaveFile(circuit, fileName);
+        clearArrayLists();
+        fillArrayLists();
+        journal = CSFileIO.createJournal(fileName);
+        journalReloaded = false;
     }
 
     /**
      * Loads a circuit from a file.
+     * <p>
+     * The edits in the file's journal are replayed on the circuit, including any that were not
+     * saved because the program stopped; see {@linkplain #getRecoveredEditCount()}.
      * 
      * @param fileName the name of the file
      * @throws FileNotFoundException if something went wrong in locating the file
-     * @throws IOException if an error occurred when attemping to read the file
+     * @throws IOException if an error occurred when attemping to read the file or its journal
      * @throws ClassNotFoundException if a circuit could not be read from the file
      * @throws ClassCastException if the object read from the file is not a circuit
      */
     public void loadCircuit(String fileName) throws FileNotFoundException, IOException, ClassNotFoundException, ClassCastException {
-        CSNode node;
-        Inverter inverterNode;
+        CSEngine loadedEngine;
+        CSEditJournal loadedJournal;
+
+        // unsaved edits of the current circuit are dropped before its journal may be opened again
+        closeJournal();
 
-        circuit = CSFileIO.readSaveFile(fileName);
+        try {
+            loadedEngine = new CSEngine(CSFileIO.readSaveFile(fileName));
+        } catch(IllegalStateException ise) {
+            // the nodes of a save file are created as they are needed, starting with the key nodes
+            throw new IOException(ise.getMessage());
+        }
+        loadedJournal = CSFileIO.openJournal(fileName);
+        if(loadedJournal != null) {
+            try {
+                loadedJournal.replay(loadedEngine);
+            } catch(IOException ioe) {
+                loadedJournal.close();
+                throw ioe;
+            }
+        }
+
+        circuit = loadedEngine.circuit;
 
         // clear the list fields of their contents
         clearArrayLists();
 
-        for(int i = 0; i < circuit.getSize(); i++) {
-            node = circuit.getNode(i);
+        fillArrayLists();
 
-            if(node instanceof InputVariableNode)
-                inputNodeNames.add(node.getName());
-            else if(node instanceof OutputVariableNode)
-                outputNodeNames.add(node.getName());
-            else if(node instanceof FlipFlop)
-                flipFlopNodeNames.add(node.getName());
-            else if(node instanceof Inverter) {
-                inverterNode = (Inverter)node;
-                invertedNodes.add(inverterNode.getInputNode().getName());
-            }
+        journal = loadedJournal;
+        journalReloaded = true;
+        recoveredEditCount = loadedJournal == null ? 0 : loadedJournal.getRecoveredCount();
+    }
 
-            if(node.getTrackNum() > 0)
-                trackedNodes.add(node);
-        }
+    /**
+     * Imports a circuit from a netlist or AIGER file, or from an entry of an archive, for this
+     * engine to work on.
+     * <p>
+     * The imported circuit has no save file yet, so it has no journal either.
+     * 
+     * @param fileName the path of the netlist or AIGER file, or the path of the archive followed
+     * by "#" and the name of the entry
+     * @throws FileNotFoundException if something went wrong in locating the file or archive entry
+     * @throws IOException if an error occurred when reading the file, or the file has an error
+     */
+    public void importCircuit(String fileName) throws FileNotFoundException, IOException {
+        CSGraph importedCircuit = CSFileIO.importCircuit(fileName);
 
-        trackedNodes.sort(new CSNodeTrackNumComparator());
+        closeJournal();
+        circuit = importedCircuit;
+
+        // clear the list fields of their contents
+        clearArrayLists();
+
+        fillArrayLists();
+    }
+
+    /**
+     * Exports the circuit as an AIGER file, or adds it to an archive, which leaves its save file
+     * and journal as they are.
+     * 
+     * @param fileName the path of the AIGER file, or the path of the archive followed by "#" and
+     * the name of the entry
+     * @throws FileNotFoundException if something went wrong in creating the file
+     * @throws IOException if an error occurred when writing the file, or the circuit has a loop
+     * that does not pass through a flip-flop and is written as an AIGER file
+     */
+    public void exportCircuit(String fileName) throws FileNotFoundException, IOException {
+        CSFileIO.exportCircuit(circuit, fileName);
     }
 
     /**
      * Creates a new circuit for this engine to work on.
      */
     public void newCircuit() {
+        closeJournal();
         circuit = new CSGraph();
         // clear the list fields of their contents
         clearArrayLists();
     }
 
+    /**
+     * Gets the number of edits that were not saved but recovered from the journal when the
+     * circuit was loaded, which happens if the program stopped without saving or discarding them.
+     * 
+     * @return the number of recovered edits, or 0 if the circuit was not loaded
+     */
+    public int getRecoveredEditCount() {
+        return recoveredEditCount;
+    }
+
+    /**
+     * Closes the edit journal of the circuit, dropping the edits that were not saved.
+     * <p>
+     * This is done before exiting so that discarded edits are not recovered the next time
+     * the circuit is loaded. The next save writes the whole circuit.
+     */
+    public void closeJournal() {
+        if(journal != null) {
+            try {
+                journal.close();
+            } catch(IOException ioe) {
+                // the journal is no longer used, and unsaved edits are all it could keep
+            }
+        }
+
+        journal = null;
+        journalReloaded = false;
+        recoveredEditCount = 0;
+    }
+
+    /**
+     * Gets the circuit this engine works on.
+     * 
+     * @return the circuit
+     */
+    CSGraph getCircuit() {
+        return circuit;
+    }
+
+    /**
+     * Rebuilds the list fields from the circuit, as loading the circuit does.
+     */
+    void reloadLists() {
+        clearArrayLists();
+        fillArrayLists();
+    }
+
+    /**
+     * Utility method to append an edit to the journal, if the circuit has one.
+     * <p>
+     * If the edit cannot be written, the journal is dropped and the next save writes the whole circuit.
+     * 
+     * @param op the operation of the edit, as in {@linkplain CSEditJournal}
+     * @param name the name of the node, or null
+     * @param first the first integer of the edit
+     * @param second the second integer of the edit
+     */
+    private void logEdit(int op, String name, int first, int second) {
+        if(journal == null)
+            return;
+
+        try {
+            startJournalEdit();
+            journal.append(op, name, first, second);
+        } catch(IOException ioe) {
+            closeJournal();
+        }
+    }
+
+    /**
+     * Utility method to append the input sequence of an input variable node to the journal,
+     * if the circuit has one.
+     * 
+     * @param node the input variable node
+     */
+    private void logInputSeq(InputVariableNode node) {
+        if(journal == null)
+            return;
+
+        try {
+            startJournalEdit();
+            journal.appendInputSeq(node.getName(), node.getInputSeqWords(), node.getInputSeqLength());
+        } catch(IOException ioe) {
+            closeJournal();
+        }
+    }
+
+    /**
+     * Utility method to append the stimulus source of an input variable node to the journal,
+     * if the circuit has one.
+     * 
+     * @param nodeID the name of the input variable node
+     * @param source the new stimulus source, or null
+     */
+    private void logStimulusSource(String nodeID, CSStimulusSource source) {
+        if(journal == null)
+            return;
+
+        try {
+            startJournalEdit();
+            journal.appendStimulusSource(nodeID, source);
+        } catch(IOException ioe) {
+            closeJournal();
+        }
+    }
+
+    /**
+     * Utility method to record that the lists were rebuilt when the circuit was loaded, before
+     * the first edit journaled since.
+     * 
+     * @throws IOException if the record could not be written
+     */
+    private void startJournalEdit() throws IOException {
+        if(journalReloaded) {
+            journal.append(CSEditJournal.OP_RELOAD, null, 0, 0);
+            journalReloaded = false;
+        }
+    }
+
+    /**
+     * Utility method to get the indeces of the nodes with the given names.
+     * 
+     * @param nodeNames the names of the nodes
+     * @return the index of each node in the circuit
+     */
+    private int[] getNodeIndeces(ArrayList<String> nodeNames) {
+        int[] indeces = new int[nodeNames.size()];
+
+        for(int i = 0; i < indeces.length; i++)
+            indeces[i] = circuit.indexOf(nodeNames.get(i));
+
+        return indeces;
+    }
+
+    /**
+     * Utility method to remove the cached truth table columns of the output variables that depend
+     * on the given node.
+     * 
+     * @param nodeIndex the index of the edited node; indeces start from zero
+     */
+    private void invalidateTruthTable(int nodeIndex) {
+        boolean[] visited;
+        LinkedList<Integer> queue;
+        CSNode node;
+        int index;
+
+        if(truthTableColumns.isEmpty())
+            return;
+
+        visited = new boolean[circuit.getSize()];
+        queue = new LinkedList<Integer>();
+        visited[nodeIndex] = true;
+        queue.add(nodeIndex);
+
+        // every output variable reachable from the node depends on it
+        while(!queue.isEmpty()) {
+            index = queue.removeFirst();
+            node = circuit.getNode(index);
+            if(node instanceof OutputVariableNode)
+                truthTableColumns.remove(node.getName());
+
+            for(int neighborIndex : circuit.getAdjList(index)) {
+                if(!visited[neighborIndex]) {
+                    visited[neighborIndex] = true;
+                    queue.add(neighborIndex);
+                }
+            }
+        }
+    }
+
     /**
      * Utility method for loading a circuit and creating a new circuit.
      */
@@ -1562,5 +2317,46 @@ public class CSEngine {
         flipFlopNodeNames.clear();
         invertedNodes.clear();
         trackedNodes.clear();
+        truthTableColumns.clear();
+        truthTableInputs.clear();
+    }
+
+    /**
+     * Truth table sink that stores the rows in the format of {@linkplain CSEngine#getTruthTableData()}.
+     * 
+     * @author Joel Tengco
+     */
+    private class TruthTableCollector implements CSTruthTableSink {
+        /**
+         * The stored rows.
+         */
+        private ArrayList<ArrayList<Integer>> result;
+        /**
+         * Number of input variables in the table.
+         */
+        private int inputCount;
+        /**
+         * Number of output variables in the table.
+         */
+        private int outputCount;
+
+        public void startTable(String[] inputNames, String[] outputNames) {
+            inputCount = inputNames.length;
+            outputCount = outputNames.length;
+            result = new ArrayList<ArrayList<Integer>>(1 << inputCount);
+        }
+
+        public void acceptRow(long row, long[] outputs) {
+            ArrayList<Integer> rowData = new ArrayList<Integer>(inputCount + outputCount);
+
+            for(int j = 0; j < inputCount; j++)
+                rowData.add(Integer.valueOf((int)(row >>> (inputCount - 1 - j)) & 1));
+            for(int j = 0; j < outputCount; j++)
+                rowData.add(Integer.valueOf((int)(outputs[j >>> 6] >>> j) & 1));
+            result.add(rowData);
+        }
+
+        public void endTable() {
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,410 @@
+package simulator.circuit.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import simulator.circuit.project.CSGraph.IllegalCircuitStateException;
+
+/**
+ * Class to check whether two combinational circuits compute the same functions.
+ * <p>
+ * Input variables and output variables of the two circuits are matched by name. The check
+ * first simulates both circuits on random input values, 64 combinations at a time, which
+ * finds most differences right away. If none is found, the circuits are combined into a miter:
+ * the two circuits share their input variables, and the miter is 1 when any pair of outputs
+ * with the same name differs. Every gate is translated into clauses that tie a variable to the
+ * gate's function, and a {@linkplain CSSatSolver} then searches for input values that make the
+ * miter 1. If there are none, the circuits are equivalent; otherwise the input values are a
+ * counterexample.
+ * <p>
+ * Unlike comparing truth tables, the time needed does not grow with 2 to the power of the
+ * number of input variables for the circuits met in practice, so circuits with hundreds of
+ * input variables can be checked.
+ * 
+ * @author Joel Tengco
+ */
+public class CSEquivalenceChecker {
+    /**
+     * Number of words of random input values simulated before the solver is used.
+     */
+    private static final int RANDOM_WORDS = 64;
+
+    /**
+     * Names of the input variables, in the order of the first circuit.
+     */
+    private final String[] inputNames;
+    /**
+     * Names of the output variables, in the order of the first circuit.
+     */
+    private final String[] outputNames;
+    /**
+     * True if the circuits are equivalent.
+     */
+    private final boolean equivalent;
+    /**
+     * Input values for which the circuits differ, or null.
+     */
+    private final int[] counterexample;
+    /**
+     * Value of each output variable in the first and second circuit for the counterexample,
+     * or null.
+     */
+    private final int[][] counterexampleOutputs;
+    /**
+     * Number of conflicts the solver needed, or 0 if random simulation found a difference.
+     */
+    private final long conflictCount;
+
+    /**
+     * Checks whether the given circuits are equivalent.
+     * 
+     * @param first the first circuit
+     * @param second the second circuit
+     * @throws IllegalArgumentException if either circuit is sequential, or the circuits do not
+     * have input variables and output variables with the same names
+     * @throws IllegalCircuitStateException if either circuit is in an invalid state
+     */
+    public CSEquivalenceChecker(CSGraph first, CSGraph second) throws IllegalArgumentException, IllegalCircuitStateException {
+        CSCompiledCircuit firstCompiled;
+        CSCompiledCircuit secondCompiled;
+        int[] firstInputs;
+        int[] secondInputs;
+        int[] firstOutputs;
+        int[] secondOutputs;
+        int[] found;
+
+        if(first.isSequential() || second.isSequential())
+            throw new IllegalArgumentException("Only circuits without flip flops can be checked for equivalence");
+
+        inputNames = getNames(first, InputVariableNode.class);
+        outputNames = getNames(first, OutputVariableNode.class);
+        if(outputNames.length == 0)
+            throw new IllegalArgumentException("Output variables are needed to check for equivalence");
+
+        firstCompiled = new CSCompiledCircuit(first);
+        secondCompiled = new CSCompiledCircuit(second);
+        firstInputs = matchNames(first, inputNames, InputVariableNode.class);
+        secondInputs = matchNames(second, inputNames, InputVariableNode.class);
+        firstOutputs = matchNames(first, outputNames, OutputVariableNode.class);
+        secondOutputs = matchNames(second, outputNames, OutputVariableNode.class);
+
+        found = simulateRandomly(firstCompiled, firstInputs, firstOutputs, secondCompiled, secondInputs, secondOutputs);
+        if(found != null) {
+            conflictCount = 0;
+        } else {
+            CSSatSolver solver = new CSSatSolver();
+            found = solveMiter(solver, firstCompiled, firstInputs, firstOutputs, secondCompiled, secondInputs, secondOutputs);
+            conflictCount = solver.getConflictCount();
+        }
+
+        equivalent = found == null;
+        counterexample = found;
+        if(found == null)
+            counterexampleOutputs = null;
+        else {
+            counterexampleOutputs = new int[2][];
+            counterexampleOutputs[0] = simulate(firstCompiled, firstInputs, firstOutputs, found);
+            counterexampleOutputs[1] = simulate(secondCompiled, secondInputs, secondOutputs, found);
+        }
+    }
+
+    /**
+     * Returns whether the two circuits compute the same functions.
+     * 
+     * @return true if every output variable has the same value in both circuits for all input values
+     */
+    public boolean isEquivalent() {
+        return equivalent;
+    }
+
+    /**
+     * Gets the names of the input variables.
+     * 
+     * @return an array containing the input variable names, in the order of the first circuit
+     */
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    /**
+     * Gets the names of the output variables.
+     * 
+     * @return an array containing the output variable names, in the order of the first circuit
+     */
+    public String[] getOutputNames() {
+        return outputNames.clone();
+    }
+
+    /**
+     * Gets input values for which the two circuits differ.
+     * 
+     * @return the value of each input variable, in the order of {@linkplain #getInputNames()},
+     * or null if the circuits are equivalent
+     */
+    public int[] getCounterexample() {
+        return counterexample == null ? null : counterexample.clone();
+    }
+
+    /**
+     * Gets the values of the output variables of one of the circuits for the counterexample.
+     * 
+     * @param circuit 0 for the first circuit, 1 for the second circuit
+     * @return the value of each output variable, in the order of {@linkplain #getOutputNames()},
+     * or null if the circuits are equivalent
+     * @throws IndexOutOfBoundsException if the circuit is neither 0 nor 1
+     */
+    public int[] getCounterexampleOutputs(int circuit) throws IndexOutOfBoundsException {
+        if(circuit < 0 || circuit > 1)
+            throw new IndexOutOfBoundsException(circuit + " is an invalid circuit");
+
+        return counterexampleOutputs == null ? null : counterexampleOutputs[circuit].clone();
+    }
+
+    /**
+     * Gets the number of conflicts the solver needed.
+     * 
+     * @return the number of conflicts, or 0 if the solver was not needed
+     */
+    public long getConflictCount() {
+        return conflictCount;
+    }
+
+    /**
+     * Utility method to get the names of the nodes of a type, in the order of the circuit.
+     * 
+     * @param circuit the circuit
+     * @param type the type of the nodes
+     * @return the names of the nodes
+     */
+    private static String[] getNames(CSGraph circuit, Class<? extends CSNode> type) {
+        ArrayList<String> names = new ArrayList<String>();
+
+        for(int i = 0; i < circuit.getSize(); i++)
+            if(type.isInstance(circuit.getNode(i)))
+                names.add(circuit.getNode(i).getName());
+
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Utility method to find the nodes of a circuit with the given names.
+     * 
+     * @param circuit the circuit
+     * @param names the names of the nodes
+     * @param type the type the nodes need to be
+     * @return the index of each node
+     * @throws IllegalArgumentException if the circuit has other nodes of the type, or a name
+     * does not exist or is not of the type
+     */
+    private static int[] matchNames(CSGraph circuit, String[] names, Class<? extends CSNode> type) throws IllegalArgumentException {
+        int[] indeces = new int[names.length];
+        String kind = type == InputVariableNode.class ? "input" : "output";
+
+        if(getNames(circuit, type).length != names.length)
+            throw new IllegalArgumentException("The circuits do not have the same " + kind + " variables");
+
+        for(int j = 0; j < names.length; j++) {
+            indeces[j] = circuit.indexOf(names[j]);
+            if(indeces[j] == -1 || !type.isInstance(circuit.getNode(indeces[j])))
+                throw new IllegalArgumentException(names[j] + " is not an " + kind + " variable in both circuits");
+        }
+
+        return indeces;
+    }
+
+    /**
+     * Utility method to simulate both circuits on random input values.
+     * 
+     * @param firstCompiled the first circuit
+     * @param firstInputs the input variable nodes of the first circuit
+     * @param firstOutputs the output variable nodes of the first circuit
+     * @param secondCompiled the second circuit
+     * @param secondInputs the input variable nodes of the second circuit
+     * @param secondOutputs the output variable nodes of the second circuit
+     * @return input values for which the circuits differ, or null if none was found
+     */
+    private static int[] simulateRandomly(CSCompiledCircuit firstCompiled, int[] firstInputs, int[] firstOutputs,
+            CSCompiledCircuit secondCompiled, int[] secondInputs, int[] secondOutputs) {
+        Random random = new Random(firstInputs.length * 31L + firstOutputs.length);
+        long[] firstValues = new long[firstCompiled.getSize()];
+        long[] secondValues = new long[secondCompiled.getSize()];
+        long[] inputWords = new long[firstInputs.length];
+        long difference;
+        int lane;
+        int[] result;
+
+        for(int w = 0; w < RANDOM_WORDS; w++) {
+            for(int j = 0; j < inputWords.length; j++) {
+                inputWords[j] = random.nextLong();
+                firstValues[firstInputs[j]] = inputWords[j];
+                secondValues[secondInputs[j]] = inputWords[j];
+            }
+            firstCompiled.evaluate(firstValues);
+            secondCompiled.evaluate(secondValues);
+
+            difference = 0;
+            for(int j = 0; j < firstOutputs.length; j++)
+                difference |= firstValues[firstOutputs[j]] ^ secondValues[secondOutputs[j]];
+            if(difference != 0) {
+                lane = Long.numberOfTrailingZeros(difference);
+                result = new int[inputWords.length];
+                for(int j = 0; j < result.length; j++)
+                    result[j] = (int)(inputWords[j] >>> lane) & 1;
+                return result;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Utility method to simulate a circuit for one combination of input values.
+     * 
+     * @param compiled the circuit
+     * @param inputs the input variable nodes
+     * @param outputs the output variable nodes
+     * @param inputValues the value of each input variable
+     * @return the value of each output variable
+     */
+    private static int[] simulate(CSCompiledCircuit compiled, int[] inputs, int[] outputs, int[] inputValues) {
+        long[] values = new long[compiled.getSize()];
+        int[] result = new int[outputs.length];
+
+        for(int j = 0; j < inputs.length; j++)
+            values[inputs[j]] = inputValues[j];
+        compiled.evaluate(values);
+        for(int j = 0; j < outputs.length; j++)
+            result[j] = (int)values[outputs[j]] & 1;
+
+        return result;
+    }
+
+    /**
+     * Utility method to build the miter of the two circuits and solve it.
+     * 
+     * @param solver the solver to use
+     * @param firstCompiled the first circuit
+     * @param firstInputs the input variable nodes of the first circuit
+     * @param firstOutputs the output variable nodes of the first circuit
+     * @param secondCompiled the second circuit
+     * @param secondInputs the input variable nodes of the second circuit
+     * @param secondOutputs the output variable nodes of the second circuit
+     * @return input values for which the circuits differ, or null if they are equivalent
+     */
+    private static int[] solveMiter(CSSatSolver solver, CSCompiledCircuit firstCompiled, int[] firstInputs, int[] firstOutputs,
+            CSCompiledCircuit secondCompiled, int[] secondInputs, int[] secondOutputs) {
+        int[] inputVariables = new int[firstInputs.length];
+        int[] firstLiterals;
+        int[] secondLiterals;
+        int[] differences = new int[firstOutputs.length];
+        int trueLiteral;
+        int[] result;
+
+        // one variable that is always true gives gates without input nodes their constant 0
+        trueLiteral = 2 * solver.newVariable();
+        solver.addClause(trueLiteral);
+
+        for(int j = 0; j < inputVariables.length; j++)
+            inputVariables[j] = solver.newVariable();
+        firstLiterals = encode(solver, firstCompiled, firstInputs, inputVariables, trueLiteral);
+        secondLiterals = encode(solver, secondCompiled, secondInputs, inputVariables, trueLiteral);
+
+        // the miter: at least one pair of outputs differs
+        for(int j = 0; j < differences.length; j++)
+            differences[j] = encodeXor(solver, firstLiterals[firstOutputs[j]], secondLiterals[secondOutputs[j]]);
+        solver.addClause(differences);
+
+        if(!solver.solve())
+            return null;
+
+        result = new int[inputVariables.length];
+        for(int j = 0; j < result.length; j++)
+            result[j] = solver.getValue(inputVariables[j]);
+
+        return result;
+    }
+
+    /**
+     * Utility method to translate a circuit into clauses, one variable per gate.
+     * 
+     * @param solver the solver to add the clauses to
+     * @param compiled the circuit
+     * @param inputs the input variable nodes
+     * @param inputVariables the variable of each input variable node
+     * @param trueLiteral a literal that is always true
+     * @return the literal of each node's value
+     */
+    private static int[] encode(CSSatSolver solver, CSCompiledCircuit compiled, int[] inputs, int[] inputVariables, int trueLiteral) {
+        int[] literals = new int[compiled.getSize()];
+        HashMap<Integer, Integer> inputPositions = new HashMap<Integer, Integer>();
+        int start;
+        int end;
+        int gate;
+        int flip;
+        int[] clause;
+
+        for(int j = 0; j < inputs.length; j++)
+            inputPositions.put(Integer.valueOf(inputs[j]), Integer.valueOf(j));
+
+        for(int i : compiled.order) {
+            start = compiled.faninStart[i];
+            end = compiled.faninStart[i + 1];
+
+            switch(compiled.ops[i]) {
+                case CSCompiledCircuit.OP_INPUT:    literals[i] = 2 * inputVariables[inputPositions.get(Integer.valueOf(i)).intValue()];
+                                                    break;
+                case CSCompiledCircuit.OP_ZERO:     literals[i] = trueLiteral ^ 1;
+                                                    break;
+                case CSCompiledCircuit.OP_BUFFER:   literals[i] = literals[compiled.fanins[start]];
+                                                    break;
+                case CSCompiledCircuit.OP_NOT:      literals[i] = literals[compiled.fanins[start]] ^ 1;
+                                                    break;
+                case CSCompiledCircuit.OP_AND:
+                case CSCompiledCircuit.OP_NAND:
+                case CSCompiledCircuit.OP_OR:
+                case CSCompiledCircuit.OP_NOR:      // an OR gate is an AND gate of the complemented inputs, complemented
+                                                    flip = compiled.ops[i] == CSCompiledCircuit.OP_OR || compiled.ops[i] == CSCompiledCircuit.OP_NOR ? 1 : 0;
+                                                    gate = 2 * solver.newVariable();
+                                                    clause = new int[end - start + 1];
+                                                    for(int k = start; k < end; k++) {
+                                                        solver.addClause(gate ^ 1, literals[compiled.fanins[k]] ^ flip);
+                                                        clause[k - start] = literals[compiled.fanins[k]] ^ flip ^ 1;
+                                                    }
+                                                    clause[end - start] = gate;
+                                                    solver.addClause(clause);
+                                                    literals[i] = gate ^ flip;
+                                                    if(compiled.ops[i] == CSCompiledCircuit.OP_NAND || compiled.ops[i] == CSCompiledCircuit.OP_NOR)
+                                                        literals[i] ^= 1;
+                                                    break;
+                default:                            literals[i] = literals[compiled.fanins[start]];
+                                                    for(int k = start + 1; k < end; k++)
+                                                        literals[i] = encodeXor(solver, literals[i], literals[compiled.fanins[k]]);
+                                                    if(compiled.ops[i] == CSCompiledCircuit.OP_NXOR)
+                                                        literals[i] ^= 1;
+                                                    break;
+            }
+        }
+
+        return literals;
+    }
+
+    /**
+     * Utility method to add a variable that is the XOR of two literals.
+     * 
+     * @param solver the solver to add the clauses to
+     * @param a the first literal
+     * @param b the second literal
+     * @return the literal of the XOR
+     */
+    private static int encodeXor(CSSatSolver solver, int a, int b) {
+        int x = 2 * solver.newVariable();
+
+        solver.addClause(x ^ 1, a, b);
+        solver.addClause(x ^ 1, a ^ 1, b ^ 1);
+        solver.addClause(x, a ^ 1, b);
+        solver.addClause(x, a, b ^ 1);
+
+        return x;
+    }
+}
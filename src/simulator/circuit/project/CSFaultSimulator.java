@@ -0,0 +1,514 @@
+package simulator.circuit.project;
+
+import java.util.concurrent.ForkJoinPool;
+
+import simulator.circuit.project.CSGraph.IllegalCircuitStateException;
+
+/**
+ * Class to find which stuck-at faults of a circuit are detected by its input sequences.
+ * <p>
+ * Every node output can be stuck at 0 or at 1, and so can every input of a gate. A fault is
+ * detected when some output variable has a different value than in the fault free circuit
+ * for one of the patterns, where pattern {@code t} gives each input variable the t-th value of
+ * its input sequence or stimulus source, and 0 after the end of it.
+ * <p>
+ * For circuits without flip-flops the patterns are independent, so 64 patterns are simulated
+ * at once, one per lane of a word. The fault free values of each group of 64 patterns are
+ * computed once; every fault not yet detected is then injected in turn and only the nodes
+ * that depend on it are evaluated again. For sequential circuits the patterns are clock cycles
+ * and have to be simulated in order, so 63 faults are simulated at once instead, next to the
+ * fault free circuit in lane 0. In both cases a fault is dropped as soon as it is detected.
+ * The fault list is split into parts that are simulated in parallel with a
+ * {@linkplain CSFaultTask}.
+ * 
+ * @author Joel Tengco
+ */
+public class CSFaultSimulator {
+    /**
+     * Number of faults simulated at once in sequential circuits; lane 0 is the fault free circuit.
+     */
+    static final int FAULTS_PER_WORD = 63;
+
+    /**
+     * The compiled circuit.
+     */
+    final CSCompiledCircuit compiled;
+    /**
+     * True if the circuit contains flip-flops.
+     */
+    private final boolean sequential;
+    /**
+     * Names of the nodes of the circuit.
+     */
+    private final String[] nodeNames;
+    /**
+     * Indeces of the input variable nodes.
+     */
+    final int[] inputIndeces;
+    /**
+     * Indeces of the output variable nodes.
+     */
+    final int[] outputIndeces;
+    /**
+     * Values of each input variable for all patterns; bit {@code t % 64} of word {@code t / 64}
+     * is the value for pattern {@code t}.
+     */
+    private final long[][] inputWords;
+    /**
+     * Number of patterns simulated.
+     */
+    private final int patternCount;
+    /**
+     * Index of the node of each fault.
+     */
+    final int[] faultNodes;
+    /**
+     * Position of the faulty input within {@code fanins} of the compiled circuit for each fault,
+     * or -1 for faults of the node output.
+     */
+    final int[] faultPins;
+    /**
+     * Value each fault is stuck at.
+     */
+    final int[] stuckValues;
+    /**
+     * First pattern that detected each fault, or -1 for faults not detected.
+     */
+    private final long[] detectingPatterns;
+
+    /**
+     * Simulates all stuck-at faults of the given circuit with its input sequences.
+     * 
+     * @param circuit the circuit to simulate
+     * @throws IllegalStateException if output variable nodes do not exist, or no input variable
+     * has values, or an input variable has an unbounded stimulus source
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    public CSFaultSimulator(CSGraph circuit) throws IllegalStateException, IllegalCircuitStateException {
+        this(circuit, true);
+    }
+
+    /**
+     * Lists the stuck-at faults of the given circuit, and optionally simulates them with its
+     * input sequences.
+     * <p>
+     * Without the input sequences no fault is detected yet; patterns can then be given with
+     * {@linkplain #simulatePatterns(long[], long, long)}.
+     * 
+     * @param circuit the circuit to simulate
+     * @param useInputSeqs true to simulate the input sequences of the circuit
+     * @throws IllegalStateException if output variable nodes do not exist, or the input sequences
+     * are used and no input variable has values, or an input variable has an unbounded stimulus source
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    CSFaultSimulator(CSGraph circuit, boolean useInputSeqs) throws IllegalStateException, IllegalCircuitStateException {
+        int inputCount = 0;
+        int outputCount = 0;
+        int faultCount = 0;
+        long longestLength = 0;
+        InputVariableNode inputNode;
+        CSNode node;
+        int f;
+
+        compiled = new CSCompiledCircuit(circuit);
+        sequential = circuit.isSequential();
+        nodeNames = new String[circuit.getSize()];
+
+        // first pass counts, second pass fills in
+        for(int i = 0; i < circuit.getSize(); i++) {
+            node = circuit.getNode(i);
+            nodeNames[i] = node.getName();
+            if(node instanceof InputVariableNode) {
+                inputCount++;
+                if(useInputSeqs && ((InputVariableNode)node).getStimulusLength() == CSStimulusGenerator.UNBOUNDED)
+                    throw new IllegalStateException(node.getName() + " has an unbounded stimulus source");
+                longestLength = Math.max(longestLength, ((InputVariableNode)node).getStimulusLength());
+            } else if(node instanceof OutputVariableNode)
+                outputCount++;
+
+            faultCount += 2;
+            if(node instanceof Gate)
+                faultCount += 2 * (compiled.faninStart[i + 1] - compiled.faninStart[i]);
+        }
+
+        if(outputCount == 0)
+            throw new IllegalStateException("Output variable nodes are needed to detect faults");
+        if(useInputSeqs && longestLength == 0)
+            throw new IllegalStateException("Input sequences are needed to detect faults");
+        if(useInputSeqs && longestLength > Integer.MAX_VALUE)
+            throw new IllegalStateException("The input sequences are too long to simulate faults");
+
+        patternCount = useInputSeqs ? (int)longestLength : 0;
+        inputIndeces = new int[inputCount];
+        outputIndeces = new int[outputCount];
+        inputWords = new long[inputCount][];
+        faultNodes = new int[faultCount];
+        faultPins = new int[faultCount];
+        stuckValues = new int[faultCount];
+        detectingPatterns = new long[faultCount];
+        inputCount = 0;
+        outputCount = 0;
+        f = 0;
+
+        for(int i = 0; i < circuit.getSize(); i++) {
+            node = circuit.getNode(i);
+            if(node instanceof InputVariableNode) {
+                inputNode = (InputVariableNode)node;
+                inputWords[inputCount] = getPatternWords(inputNode, patternCount);
+                inputIndeces[inputCount++] = i;
+            } else if(node instanceof OutputVariableNode)
+                outputIndeces[outputCount++] = i;
+
+            for(int value = 0; value < 2; value++) {
+                faultNodes[f] = i;
+                faultPins[f] = -1;
+                stuckValues[f++] = value;
+            }
+
+            if(node instanceof Gate) {
+                for(int k = compiled.faninStart[i]; k < compiled.faninStart[i + 1]; k++) {
+                    for(int value = 0; value < 2; value++) {
+                        faultNodes[f] = i;
+                        faultPins[f] = k;
+                        stuckValues[f++] = value;
+                    }
+                }
+            }
+        }
+
+        for(f = 0; f < faultCount; f++)
+            detectingPatterns[f] = -1;
+
+        if(useInputSeqs)
+            ForkJoinPool.commonPool().invoke(new CSFaultTask(this, 0, faultCount));
+    }
+
+    /**
+     * Gets the number of patterns simulated.
+     * 
+     * @return the length of the longest input sequence
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Gets the number of faults simulated.
+     * 
+     * @return the number of faults
+     */
+    public int getFaultCount() {
+        return faultNodes.length;
+    }
+
+    /**
+     * Gets the number of faults detected by the patterns.
+     * 
+     * @return the number of detected faults
+     */
+    public int getDetectedCount() {
+        int count = 0;
+
+        for(long pattern : detectingPatterns)
+            if(pattern != -1)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * Gets the fraction of the faults that are detected by the patterns.
+     * 
+     * @return the fault coverage, from 0 to 1
+     */
+    public double getCoverage() {
+        return getDetectedCount() / (double)getFaultCount();
+    }
+
+    /**
+     * Gets a description of a fault.
+     * <p>
+     * Faults of a node output are described as "node stuck-at-v", faults of a gate input as
+     * "node input source stuck-at-v", where source is the node driving that input.
+     * 
+     * @param fault the index of the fault
+     * @return the description of the fault
+     * @throws IndexOutOfBoundsException if the fault does not exist
+     */
+    public String getFaultName(int fault) throws IndexOutOfBoundsException {
+        if(faultPins[fault] == -1)
+            return nodeNames[faultNodes[fault]] + " stuck-at-" + stuckValues[fault];
+
+        return nodeNames[faultNodes[fault]] + " input " + nodeNames[compiled.fanins[faultPins[fault]]]
+            + " stuck-at-" + stuckValues[fault];
+    }
+
+    /**
+     * Returns whether a fault is detected by the patterns.
+     * 
+     * @param fault the index of the fault
+     * @return true if the fault is detected
+     * @throws IndexOutOfBoundsException if the fault does not exist
+     */
+    public boolean isDetected(int fault) throws IndexOutOfBoundsException {
+        return detectingPatterns[fault] != -1;
+    }
+
+    /**
+     * Gets the first pattern that detects a fault.
+     * 
+     * @param fault the index of the fault
+     * @return the index of the pattern, or -1 if the fault is not detected
+     * @throws IndexOutOfBoundsException if the fault does not exist
+     */
+    public long getDetectingPattern(int fault) throws IndexOutOfBoundsException {
+        return detectingPatterns[fault];
+    }
+
+    /**
+     * Simulates some of the faults.
+     * <p>
+     * Different parts of the fault list can be simulated at the same time.
+     * 
+     * @param first the index of the first fault
+     * @param last the index after the last fault
+     */
+    void simulateFaults(int first, int last) {
+        if(sequential) {
+            for(int f = first; f < last; f += FAULTS_PER_WORD)
+                simulateFaultGroup(f, Math.min(f + FAULTS_PER_WORD, last));
+        } else
+            simulatePatternGroups(first, last);
+    }
+
+    /**
+     * Utility method to simulate faults of a circuit without flip-flops, 64 patterns at a time.
+     * 
+     * @param first the index of the first fault
+     * @param last the index after the last fault
+     */
+    private void simulatePatternGroups(int first, int last) {
+        long[] values = new long[compiled.getSize()];
+        long[] pending = new long[(compiled.getSize() + 63) >>> 6];
+        long[] goodOutputs = new long[outputIndeces.length];
+        long[] stuckAtZero = new long[compiled.fanins.length];
+        long[] stuckAtOne = new long[compiled.fanins.length];
+        int[] remaining = new int[last - first];
+        int remainingCount = remaining.length;
+        int blocks = (patternCount + 63) >>> 6;
+        int kept;
+        int f;
+        long valid;
+        long difference;
+
+        for(int r = 0; r < remainingCount; r++)
+            remaining[r] = first + r;
+
+        for(int block = 0; block < blocks && remainingCount > 0; block++) {
+            valid = block == blocks - 1 && (patternCount & 63) != 0 ? (1L << patternCount) - 1 : -1L;
+            for(int j = 0; j < inputIndeces.length; j++)
+                values[inputIndeces[j]] = inputWords[j][block];
+            compiled.evaluate(values);
+            for(int j = 0; j < outputIndeces.length; j++)
+                goodOutputs[j] = values[outputIndeces[j]];
+
+            kept = 0;
+            for(int r = 0; r < remainingCount; r++) {
+                f = remaining[r];
+                difference = detectFault(f, values, pending, goodOutputs, stuckAtZero, stuckAtOne) & valid;
+                if(difference != 0)
+                    detectingPatterns[f] = ((long)block << 6) + Long.numberOfTrailingZeros(difference);
+                else
+                    remaining[kept++] = f;
+            }
+            remainingCount = kept;
+        }
+    }
+
+    /**
+     * Simulates up to 64 patterns of a circuit without flip-flops on the faults not yet detected.
+     * <p>
+     * The faults are simulated one after the other, without tasks.
+     * 
+     * @param patternValues the values of the input variables, one word per input variable with
+     * one pattern per lane, in the order of the circuit
+     * @param valid the lanes that hold patterns
+     * @param firstPattern the index of the pattern in lane 0
+     * @return the number of faults detected by the patterns
+     */
+    int simulatePatterns(long[] patternValues, long valid, long firstPattern) {
+        long[] values = new long[compiled.getSize()];
+        long[] pending = new long[(compiled.getSize() + 63) >>> 6];
+        long[] goodOutputs = new long[outputIndeces.length];
+        long[] stuckAtZero = new long[compiled.fanins.length];
+        long[] stuckAtOne = new long[compiled.fanins.length];
+        int detected = 0;
+        long difference;
+
+        for(int j = 0; j < inputIndeces.length; j++)
+            values[inputIndeces[j]] = patternValues[j];
+        compiled.evaluate(values);
+        for(int j = 0; j < outputIndeces.length; j++)
+            goodOutputs[j] = values[outputIndeces[j]];
+
+        for(int f = 0; f < detectingPatterns.length; f++) {
+            if(detectingPatterns[f] != -1)
+                continue;
+
+            difference = detectFault(f, values, pending, goodOutputs, stuckAtZero, stuckAtOne) & valid;
+            if(difference != 0) {
+                detectingPatterns[f] = firstPattern + Long.numberOfTrailingZeros(difference);
+                detected++;
+            }
+        }
+
+        return detected;
+    }
+
+    /**
+     * Utility method to find the lanes in which a fault changes an output variable.
+     * <p>
+     * The values need to hold the fault free values of all nodes, and they do so again afterwards.
+     * 
+     * @param f the index of the fault
+     * @param values the fault free values of the nodes
+     * @param pending work space with one bit per node, all of them 0
+     * @param goodOutputs the fault free values of the output variable nodes
+     * @param stuckAtZero work space with one word per gate input, all of them 0
+     * @param stuckAtOne work space with one word per gate input, all of them 0
+     * @return the lanes that detect the fault
+     */
+    private long detectFault(int f, long[] values, long[] pending, long[] goodOutputs, long[] stuckAtZero, long[] stuckAtOne) {
+        int node = faultNodes[f];
+        long good = values[node];
+        long faulty;
+        long difference = 0;
+
+        if(faultPins[f] == -1)
+            faulty = stuckValues[f] == 0 ? 0 : -1L;
+        else {
+            if(stuckValues[f] == 0)
+                stuckAtZero[faultPins[f]] = -1L;
+            else
+                stuckAtOne[faultPins[f]] = -1L;
+            faulty = compiled.evaluateFaultyNode(node, values, stuckAtZero, stuckAtOne);
+            stuckAtZero[faultPins[f]] = 0;
+            stuckAtOne[faultPins[f]] = 0;
+        }
+
+        // only lanes that change the value at the fault can detect it
+        if(faulty != good) {
+            values[node] = faulty;
+            compiled.propagate(values, node, pending);
+            for(int j = 0; j < outputIndeces.length; j++)
+                difference |= values[outputIndeces[j]] ^ goodOutputs[j];
+            values[node] = good;
+            compiled.propagate(values, node, pending);
+        }
+
+        return difference;
+    }
+
+    /**
+     * Utility method to simulate up to 63 faults of a sequential circuit over all patterns.
+     * 
+     * @param first the index of the first fault
+     * @param last the index after the last fault
+     */
+    private void simulateFaultGroup(int first, int last) {
+        long[] values = new long[compiled.getSize()];
+        long[] stemZero = new long[compiled.getSize()];
+        long[] stemOne = new long[compiled.getSize()];
+        long[] stuckAtZero = new long[compiled.fanins.length];
+        long[] stuckAtOne = new long[compiled.fanins.length];
+        boolean[] faultyInputs = new boolean[compiled.getSize()];
+        int[] inputPositions = new int[compiled.getSize()];
+        long lane;
+        long undetected = 0;
+        long difference;
+        long newlyDetected;
+        long value;
+
+        for(int i = 0; i < inputPositions.length; i++)
+            inputPositions[i] = -1;
+        for(int j = 0; j < inputIndeces.length; j++)
+            inputPositions[inputIndeces[j]] = j;
+
+        // lane f - first + 1 carries fault f
+        for(int f = first; f < last; f++) {
+            lane = 1L << (f - first + 1);
+            undetected |= lane;
+            if(faultPins[f] == -1) {
+                if(stuckValues[f] == 0)
+                    stemZero[faultNodes[f]] |= lane;
+                else
+                    stemOne[faultNodes[f]] |= lane;
+            } else {
+                if(stuckValues[f] == 0)
+                    stuckAtZero[faultPins[f]] |= lane;
+                else
+                    stuckAtOne[faultPins[f]] |= lane;
+                faultyInputs[faultNodes[f]] = true;
+            }
+        }
+
+        for(int t = 0; t < patternCount && undetected != 0; t++) {
+            for(int i : compiled.order) {
+                if(inputPositions[i] != -1)
+                    value = -((inputWords[inputPositions[i]][t >>> 6] >>> t) & 1);
+                else if(faultyInputs[i])
+                    value = compiled.evaluateFaultyNode(i, values, stuckAtZero, stuckAtOne);
+                else
+                    value = compiled.evaluateNode(i, values);
+                values[i] = (value & ~stemZero[i]) | stemOne[i];
+            }
+
+            // a lane differs from the fault free circuit if it differs from lane 0
+            difference = 0;
+            for(int o : outputIndeces)
+                difference |= values[o] ^ -(values[o] & 1);
+
+            newlyDetected = difference & undetected;
+            undetected &= ~newlyDetected;
+            while(newlyDetected != 0) {
+                detectingPatterns[first + Long.numberOfTrailingZeros(newlyDetected) - 1] = t;
+                newlyDetected &= newlyDetected - 1;
+            }
+        }
+    }
+
+    /**
+     * Utility method to pack the values of an input variable for all patterns.
+     * <p>
+     * Generators are asked for 64 patterns at a time with {@linkplain CSStimulusGenerator#getWord(long)};
+     * other stimulus sources are asked for each value.
+     * 
+     * @param inputNode the input variable node
+     * @param patternCount the number of patterns
+     * @return the packed values; values after the end of the input sequence are 0
+     */
+    private static long[] getPatternWords(InputVariableNode inputNode, int patternCount) {
+        long[] words = new long[(patternCount + 63) >>> 6];
+        long[] seqWords;
+        long length = Math.min(inputNode.getStimulusLength(), patternCount);
+        CSStimulusSource source = inputNode.getStimulusSource();
+
+        if(source instanceof CSStimulusGenerator) {
+            for(int w = 0; w < (int)((length + 63) >>> 6); w++)
+                words[w] = ((CSStimulusGenerator)source).getWord((long)w << 6);
+            if((length & 63) != 0)
+                words[(int)(length >>> 6)] &= (1L << length) - 1;
+        } else if(source != null) {
+            for(int t = 0; t < length; t++)
+                if(source.getValue(t) != 0)
+                    words[t >>> 6] |= 1L << t;
+        } else if(length > 0) {
+            seqWords = inputNode.getInputSeqWords();
+            System.arraycopy(seqWords, 0, words, 0, (int)((length + 63) >>> 6));
+            if((length & 63) != 0)
+                words[(int)(length >>> 6)] &= (1L << length) - 1;
+        }
+
+        return words;
+    }
+}
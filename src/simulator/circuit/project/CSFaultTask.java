@@ -0,0 +1,65 @@
+package simulator.circuit.project;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class to simulate part of the fault list of a {@linkplain CSFaultSimulator} in parallel.
+ * <p>
+ * The faults are split in half until each task holds a few words worth of faults, and the
+ * tasks run in a fork/join pool. Each task has its own values, so the tasks do not share any
+ * state other than the results of their own faults.
+ * 
+ * @author Joel Tengco
+ */
+class CSFaultTask extends RecursiveAction {
+    /**
+     * Needed because fork/join tasks are {@code Serializable}; tasks are never serialized.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Largest number of faults simulated by one task.
+     */
+    static final int MAX_TASK_FAULTS = 4 * CSFaultSimulator.FAULTS_PER_WORD;
+
+    /**
+     * The simulator holding the faults.
+     */
+    private final CSFaultSimulator simulator;
+    /**
+     * Index of the first fault of this task.
+     */
+    private final int first;
+    /**
+     * Index after the last fault of this task.
+     */
+    private final int last;
+
+    /**
+     * Constructs the task that simulates the given faults.
+     * 
+     * @param simulator the simulator holding the faults
+     * @param first the index of the first fault
+     * @param last the index after the last fault
+     */
+    CSFaultTask(CSFaultSimulator simulator, int first, int last) {
+        this.simulator = simulator;
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Simulates the faults of this task, or splits them into two tasks.
+     */
+    protected void compute() {
+        int middle;
+
+        if(last - first <= MAX_TASK_FAULTS) {
+            simulator.simulateFaults(first, last);
+            return;
+        }
+
+        // split on a whole number of words, so that no word of faults is left half full
+        middle = first + (last - first) / (2 * CSFaultSimulator.FAULTS_PER_WORD) * CSFaultSimulator.FAULTS_PER_WORD;
+        invokeAll(new CSFaultTask(simulator, first, middle), new CSFaultTask(simulator, middle, last));
+    }
+}
@@ -1,19 +1,24 @@
 package simulator.circuit.project;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
 
 /**
  * Class to handle file input and output.
  * <p>
  * This class handles saving a circuit to a file on disk as well as
  * loading a circuit from a file on disk. The folder in which circuits
- * are saved to and loaded from is named "cs-saves".
+ * are saved to and loaded from is named "cs-saves". Recorded simulation
+ * traces are kept separately in a folder named "cs-traces".
  * 
  * @author Joel Tengco
  */
@@ -26,9 +31,53 @@ public class CSFileIO {
      * Save directory name where circuit files are saved to and loaded from.
      */
     private static final String SAVE_DIR_NAME = "cs-saves";
+    /**
+     * Trace directory name where recorded simulation traces are written to and read from.
+     */
+    private static final String TRACE_DIR_NAME = "cs-traces";
+    /**
+     * Table directory name where exported truth tables are written to.
+     */
+    private static final String TABLE_DIR_NAME = "cs-tables";
+    /**
+     * Number of nodes from which circuits are saved in the layout of {@linkplain CSMappedSaveWriter}.
+     */
+    public static final int MAPPED_SAVE_SIZE = 1 << 20;
+    /**
+     * Whether save files and traces are written compressed with {@linkplain CSBlockWriter}.
+     */
+    private static boolean compressing;
+
+    /**
+     * Sets whether save files and traces written from now on are compressed.
+     * <p>
+     * Compressed files are written with {@linkplain CSBlockWriter}, and are read back no
+     * matter what this is set to. Circuits saved in the layout of {@linkplain CSMappedSaveWriter}
+     * are never compressed, since they are read from the file in place.
+     * 
+     * @param compress true to compress save files and traces, false to write them as they are
+     */
+    public static void setCompression(boolean compress) {
+        compressing = compress;
+    }
+
+    /**
+     * Checks whether save files and traces are written compressed.
+     * 
+     * @return true if save files and traces are compressed, false otherwise
+     */
+    public static boolean isCompressing() {
+        return compressing;
+    }
 
     /**
      * Saves a given circuit as a file on disk with the given file name.
+     * <p>
+     * The circuit is written in the format of {@linkplain CSSaveWriter}, unless it has at least
+     * {@linkplain #MAPPED_SAVE_SIZE} nodes, in which case it is written in the layout of
+     * {@linkplain CSMappedSaveWriter} so that it can be opened without reading all of it.
+     * When compression is on, the format of {@linkplain CSSaveWriter} is written through
+     * {@linkplain CSBlockWriter}.
      * 
      * @param circuit the circuit to be saved as a file
      * @param fileName the file name of the saved circuit
@@ -36,22 +85,45 @@ public class CSFileIO {
      * @throws IOException if an error occurred when attempting to save the circuit
      */
     public static void writeSaveFile(CSGraph circuit, String fileName) throws FileNotFoundException, IOException {
-        FileOutputStream fos;
-        ObjectOutputStream oos;
+        CSSaveWriter writer;
+        CSMappedSaveWriter mappedWriter;
 
         File dir = new File(SAVE_DIR_NAME);
         if(!dir.exists() || !dir.isDirectory())
             dir.mkdir();
 
-        fos = new FileOutputStream(dir.getName() + FILE_SEPARATOR + fileName);
-        oos = new ObjectOutputStream(fos);
+        // the circuit may still be read from the file about to be overwritten
+        circuit.createAllNodes();
 
-        oos.writeObject(circuit);
-        oos.close();
+        if(circuit.getSize() >= MAPPED_SAVE_SIZE) {
+            mappedWriter = new CSMappedSaveWriter(new File(dir, fileName));
+            try {
+                mappedWriter.writeCircuit(circuit);
+            } finally {
+                mappedWriter.close();
+            }
+            return;
+        }
+
+        if(compressing)
+            writer = new CSSaveWriter(Channels.newChannel(new CSBlockWriter(new File(dir, fileName))));
+        else
+            writer = new CSSaveWriter(new File(dir, fileName));
+        try {
+            writer.writeCircuit(circuit);
+        } finally {
+            writer.close();
+        }
     }
 
     /**
      * Loads a circuit from a file with the given file name.
+     * <p>
+     * Older save files holding the circuit as serialized Java objects are read in full. Save files
+     * written by {@linkplain CSMappedSaveWriter} are only opened, and the returned circuit reads its
+     * nodes from the file as they are needed. Save files written by {@linkplain CSSaveWriter} are
+     * read into memory in the same layout, so their nodes are also only created as they are needed.
+     * Save files compressed with {@linkplain CSBlockWriter} are decompressed as they are read.
      * 
      * @param fileName the name of the file to load a circuit with
      * @return the circuit loaded by the specified file
@@ -63,12 +135,30 @@ public class CSFileIO {
     public static CSGraph readSaveFile(String fileName) throws FileNotFoundException, IOException, ClassNotFoundException, ClassCastException {
         FileInputStream fis;
         ObjectInputStream ois;
+        CSSaveReader reader;
         CSGraph circuit;
 
         File file = new File(SAVE_DIR_NAME + FILE_SEPARATOR + fileName);
 
+        if(!file.isFile())
+            throw new FileNotFoundException(file.getPath() + " does not exist");
+
+        if(CSMappedCircuit.isMappedSave(file))
+            return new CSGraph(new CSMappedCircuit(file));
+        if(CSSaveReader.isSaveFile(file) || CSBlockReader.isBlockFile(file)) {
+            if(CSBlockReader.isBlockFile(file))
+                reader = new CSSaveReader(Channels.newChannel(new CSBlockReader(file).openStream()));
+            else
+                reader = new CSSaveReader(file);
+            try {
+                return reader.readCircuit();
+            } finally {
+                reader.close();
+            }
+        }
+
         fis = new FileInputStream(file);
-        ois = new ObjectInputStream(fis);
+        ois = new ObjectInputStream(new BufferedInputStream(fis));
 
         circuit = (CSGraph)ois.readObject();
 
@@ -77,6 +167,261 @@ public class CSFileIO {
         return circuit;
     }
 
+    /**
+     * Reads a circuit from a netlist or AIGER file with the given path, or from an entry of
+     * an archive named as the path of the archive followed by "#" and the name of the entry;
+     * see {@linkplain CSNetlistReader}, {@linkplain CSAigerReader} and {@linkplain CSCircuitArchive}.
+     * <p>
+     * Unlike save files, netlists are not kept in the save folder, so the path is taken as it is.
+     * 
+     * @param fileName the path of the netlist or AIGER file, or the name of the archive entry
+     * @return the circuit described by the file
+     * @throws FileNotFoundException if something went wrong in locating the file or archive entry
+     * @throws IOException if an error occurred when reading the file, or the file has an error
+     */
+    public static CSGraph importCircuit(String fileName) throws FileNotFoundException, IOException {
+        File file = new File(CSCircuitArchive.isArchiveEntry(fileName) ? CSCircuitArchive.getArchivePath(fileName) : fileName);
+        CSCircuitArchive archive;
+
+        if(!file.isFile())
+            throw new FileNotFoundException(file.getPath() + " does not exist");
+        if(CSCircuitArchive.isArchiveEntry(fileName)) {
+            archive = new CSCircuitArchive(file);
+            try {
+                return archive.readCircuit(CSCircuitArchive.getEntryName(fileName));
+            } finally {
+                archive.close();
+            }
+        }
+        if(CSAigerReader.isAigerFile(fileName))
+            return new CSAigerReader(file).readCircuit();
+
+        return new CSNetlistReader(file).readCircuit();
+    }
+
+    /**
+     * Checks whether a file name is the name of a file that can be imported as a circuit.
+     * 
+     * @param fileName the file name
+     * @return true if the file name has the extension of a netlist or of an AIGER file, or names
+     * an entry of an archive
+     */
+    public static boolean isImportable(String fileName) {
+        return CSNetlistReader.isNetlistFile(fileName) || CSAigerReader.isAigerFile(fileName)
+                || CSCircuitArchive.isArchiveEntry(fileName);
+    }
+
+    /**
+     * Writes a circuit as an AIGER file with the given path, or adds it to an archive as the
+     * entry named by the path of the archive followed by "#" and the name of the entry; see
+     * {@linkplain CSAigerWriter} and {@linkplain CSCircuitArchive}. The archive is created if
+     * it does not exist, and an entry with the same name is replaced.
+     * <p>
+     * Like imported files, exported files are not kept in the save folder.
+     * 
+     * @param circuit the circuit to write
+     * @param fileName the path of the AIGER file, or the name of the archive entry
+     * @throws FileNotFoundException if something went wrong in creating the file
+     * @throws IOException if an error occurred when writing the file, or the circuit has a loop
+     * that does not pass through a flip-flop and is written as an AIGER file
+     */
+    public static void exportCircuit(CSGraph circuit, String fileName) throws FileNotFoundException, IOException {
+        CSAigerWriter writer;
+        CSCircuitArchive archive;
+
+        if(CSCircuitArchive.isArchiveEntry(fileName)) {
+            archive = new CSCircuitArchive(new File(CSCircuitArchive.getArchivePath(fileName)), true);
+            try {
+                archive.putCircuit(CSCircuitArchive.getEntryName(fileName), circuit);
+            } finally {
+                archive.close();
+            }
+            return;
+        }
+
+        writer = new CSAigerWriter(new File(fileName));
+
+        try {
+            writer.writeCircuit(circuit);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Checks whether a file name is the name of a file that a circuit can be exported to.
+     * 
+     * @param fileName the file name
+     * @return true if the file name has the extension of an AIGER file, or names an entry of an archive
+     */
+    public static boolean isExportable(String fileName) {
+        return CSAigerReader.isAigerFile(fileName) || CSCircuitArchive.isArchiveEntry(fileName);
+    }
+
+    /**
+     * Checks whether exporting a circuit to the given file name would replace a file or
+     * archive entry.
+     * 
+     * @param fileName the path of the AIGER file, or the name of the archive entry
+     * @return true if the file or archive entry exists
+     * @throws IOException if an error occurred when reading the directory of the archive, or
+     * the file is not an archive
+     */
+    public static boolean isExported(String fileName) throws IOException {
+        File file = new File(CSCircuitArchive.isArchiveEntry(fileName) ? CSCircuitArchive.getArchivePath(fileName) : fileName);
+        CSCircuitArchive archive;
+
+        if(!CSCircuitArchive.isArchiveEntry(fileName) || !file.isFile())
+            return file.exists();
+
+        archive = new CSCircuitArchive(file);
+        try {
+            return archive.contains(CSCircuitArchive.getEntryName(fileName));
+        } finally {
+            archive.close();
+        }
+    }
+
+    /**
+     * Gets the name of a circuit imported from a file, which is the file name without its
+     * folders and extension, or the name of the entry for an archive entry.
+     * 
+     * @param fileName the path of the imported file, or the name of the archive entry
+     * @return the name of the circuit
+     */
+    public static String getImportedName(String fileName) {
+        String name = new File(fileName).getName();
+        int dot = name.lastIndexOf('.');
+
+        if(CSCircuitArchive.isArchiveEntry(fileName))
+            return CSCircuitArchive.getEntryName(fileName);
+
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Rewrites a save file holding the circuit as serialized Java objects in the format of
+     * {@linkplain CSSaveWriter}.
+     * 
+     * @param fileName the name of the save file
+     * @return true if the file was converted, false if it already was in a current format
+     * @throws FileNotFoundException if something went wrong in locating the file
+     * @throws IOException if an error occurred when reading or writing the file
+     * @throws ClassNotFoundException if a circuit could not be read from the file
+     * @throws ClassCastException if the object read from the file is not a circuit
+     */
+    public static boolean convertSaveFile(String fileName) throws FileNotFoundException, IOException, ClassNotFoundException, ClassCastException {
+        File file = new File(SAVE_DIR_NAME + FILE_SEPARATOR + fileName);
+
+        if(!file.isFile())
+            throw new FileNotFoundException(file.getPath() + " does not exist");
+        if(isCurrentSave(file))
+            return false;
+
+        writeSaveFile(readSaveFile(fileName), fileName);
+        return true;
+    }
+
+    /**
+     * Starts an empty edit journal for a save file that was just written.
+     * 
+     * @param fileName the name of the save file
+     * @return the new journal
+     * @throws IOException if the journal could not be written
+     */
+    static CSEditJournal createJournal(String fileName) throws IOException {
+        return CSEditJournal.create(fileName, new File(SAVE_DIR_NAME, fileName));
+    }
+
+    /**
+     * Opens the edit journal of a save file, or starts an empty one if it has none.
+     * <p>
+     * Save files holding the circuit as serialized Java objects get no journal, so that
+     * their next save writes them in a current format.
+     * 
+     * @param fileName the name of the save file
+     * @return the journal of the save file, or null if the save file is in the old format
+     * @throws IOException if the journal could not be read or written
+     */
+    static CSEditJournal openJournal(String fileName) throws IOException {
+        File file = new File(SAVE_DIR_NAME, fileName);
+
+        if(!isCurrentSave(file))
+            return null;
+
+        return CSEditJournal.open(fileName, file);
+    }
+
+    /**
+     * Utility method to check whether a save file is in a current format, compressed or not.
+     * 
+     * @param file the save file
+     * @return true if the file is in a current format, false if it holds serialized Java objects
+     * @throws IOException if an error occurred when reading the file
+     */
+    private static boolean isCurrentSave(File file) throws IOException {
+        return CSSaveReader.isSaveFile(file) || CSMappedCircuit.isMappedSave(file)
+                || CSBlockReader.isBlockFile(file);
+    }
+
+    /**
+     * Replays the edits committed to the journal of a save file on an engine holding the
+     * circuit read from it, without changing the journal.
+     * 
+     * @param fileName the name of the save file
+     * @param engine the engine of the circuit read from the save file
+     * @throws IOException if the journal could not be read or does not fit the circuit
+     */
+    static void replayJournal(String fileName, CSEngine engine) throws IOException {
+        CSEditJournal.replayCommitted(fileName, new File(SAVE_DIR_NAME, fileName), engine);
+    }
+
+    /**
+     * Gets the save files in the save folder.
+     * <p>
+     * Edit journals and the files written while compacting them are kept in the save folder
+     * next to their save files, and are left out, as is the index of the save folder.
+     * 
+     * @return the save files, or null if the save folder does not exist
+     */
+    public static File[] getSaveFiles() {
+        return getSaveDir().listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                String name = file.getName();
+
+                return !name.endsWith(CSEditJournal.JOURNAL_SUFFIX)
+                        && !name.endsWith(CSEditJournal.JOURNAL_SUFFIX + CSEditJournal.NEXT_SUFFIX)
+                        && !name.endsWith(CSEditJournal.COMPACT_SUFFIX)
+                        && !name.equals(CSSaveCatalog.FILE_NAME)
+                        && !name.equals(CSSaveCatalog.FILE_NAME + CSEditJournal.NEXT_SUFFIX);
+            }
+        });
+    }
+
+    /**
+     * Gets the index of the save folder, brought up to date with the save files in it; see
+     * {@linkplain CSSaveCatalog}.
+     * <p>
+     * Only the save files that changed since the index was last written are read, and most of
+     * them only for their header, and the index is written again only if anything changed.
+     * 
+     * @return the index of the save folder, empty if the save folder does not exist
+     */
+    public static CSSaveCatalog getCatalog() {
+        File[] files = getSaveFiles();
+        CSSaveCatalog catalog = CSSaveCatalog.open(getSaveDir());
+
+        if(files != null && catalog.refresh(files)) {
+            try {
+                catalog.write();
+            } catch(IOException ioe) {
+                // the index is still up to date in memory, and is written again next time
+            }
+        }
+
+        return catalog;
+    }
+
     /**
      * Gets a {@code File} object corresponding to the save folder.
      * 
@@ -85,4 +430,89 @@ public class CSFileIO {
     public static File getSaveDir() {
         return new File(SAVE_DIR_NAME);
     }
+
+    /**
+     * Opens a stream to write a trace file with the given file name.
+     * <p>
+     * The trace folder is created if it does not exist yet, and an existing
+     * trace with the same file name is overwritten. When compression is on, the trace is
+     * compressed with {@linkplain CSBlockWriter} as it is written.
+     * 
+     * @param fileName the file name of the trace
+     * @return a stream to write the contents of the trace file to
+     * @throws FileNotFoundException if something went wrong in setting up the trace file
+     * @throws IOException if an error occurred when starting the compressed trace file
+     */
+    public static OutputStream openTraceOutput(String fileName) throws FileNotFoundException, IOException {
+        File dir = new File(TRACE_DIR_NAME);
+        if(!dir.exists() || !dir.isDirectory())
+            dir.mkdir();
+
+        if(compressing)
+            return new CSBlockWriter(new File(dir, fileName));
+        return new FileOutputStream(dir.getName() + FILE_SEPARATOR + fileName);
+    }
+
+    /**
+     * Opens a stream to read the trace file with the given file name.
+     * <p>
+     * A trace compressed with {@linkplain CSBlockWriter} is decompressed as it is read, with
+     * the blocks ahead of the reader decompressed in parallel.
+     * 
+     * @param fileName the file name of the trace
+     * @return a stream to read the contents of the trace file from
+     * @throws FileNotFoundException if something went wrong in locating the file
+     * @throws IOException if an error occurred when opening the compressed trace file
+     */
+    public static InputStream openTraceInput(String fileName) throws FileNotFoundException, IOException {
+        File file = new File(TRACE_DIR_NAME + FILE_SEPARATOR + fileName);
+
+        if(CSBlockReader.isBlockFile(file))
+            return new CSBlockReader(file).openStream();
+        return new FileInputStream(file);
+    }
+
+    /**
+     * Gets a {@code File} object for the trace file with the given file name.
+     * <p>
+     * The trace folder is created if it does not exist yet. This is used for trace
+     * files that are accessed randomly rather than as a stream.
+     * 
+     * @param fileName the file name of the trace
+     * @return a {@code File} object that represents the trace file
+     */
+    public static File getTraceFile(String fileName) {
+        File dir = new File(TRACE_DIR_NAME);
+        if(!dir.exists() || !dir.isDirectory())
+            dir.mkdir();
+
+        return new File(dir, fileName);
+    }
+
+    /**
+     * Gets a {@code File} object corresponding to the trace folder.
+     * 
+     * @return a {@code File} object that represents the trace folder
+     */
+    public static File getTraceDir() {
+        return new File(TRACE_DIR_NAME);
+    }
+
+    /**
+     * Opens a stream to write an exported table with the given file name.
+     * <p>
+     * The table folder is created if it does not exist yet, and an existing
+     * table with the same file name is overwritten.
+     * 
+     * @param fileName the file name of the table
+     * @return a stream to write the contents of the table file to
+     * @throws FileNotFoundException if something went wrong in setting up the table file
+     */
+    public static OutputStream openTableOutput(String fileName) throws FileNotFoundException {
+        File dir = new File(TABLE_DIR_NAME);
+        if(!dir.exists() || !dir.isDirectory())
+            dir.mkdir();
+
+        return new FileOutputStream(dir.getName() + FILE_SEPARATOR + fileName);
+    }
 }
\ No newline at end of file
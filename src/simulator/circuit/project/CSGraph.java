@@ -1,7 +1,11 @@
 package simulator.circuit.project;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 
 /**
@@ -9,6 +13,10 @@ import java.util.LinkedList;
  * <p>
  * This class contains the necessary data of a circuit and operations to
  * modify a circuit.
+ * <p>
+ * A circuit opened from a mapped save file, or from a save file laid out in memory the same way,
+ * reads its nodes and edges from the file, and only creates the nodes that are asked for; see
+ * {@linkplain CSMappedCircuit}. Its first edit creates every node, after which the file is closed.
  * 
  * @author Joel Tengco
  */
@@ -25,6 +33,20 @@ public class CSGraph implements Serializable {
      * Adjacency lists for this circuit.
      */
     private ArrayList<LinkedList<Integer>> edges;
+    /**
+     * Cached update path of this circuit as node indeces; null if the circuit has
+     * changed since the update path was last found.
+     */
+    private transient int[] updatePathCache;
+    /**
+     * Timing analyzer kept up to date with the edits of this circuit; null until it is asked for.
+     */
+    private transient CSTimingAnalyzer timingAnalyzer;
+    /**
+     * Mapped save file the nodes and edges of this circuit are read from; null once every node
+     * has been created, and for circuits that were not opened from a mapped save file.
+     */
+    private transient CSMappedCircuit source;
 
     /**
      * Constructs a new, empty circuit.
@@ -34,6 +56,43 @@ public class CSGraph implements Serializable {
         edges = new ArrayList<LinkedList<Integer>>();
     }
 
+    /**
+     * Constructs a circuit from the given nodes and adjacency lists, as read from a save file.
+     * <p>
+     * Unlike adding the nodes one at a time, the names are checked for duplicates all at once,
+     * which keeps building large circuits linear in their size. The lists are used as they are.
+     * 
+     * @param nodes the nodes of the circuit, in order
+     * @param edges the adjacency list of each node
+     * @throws IllegalArgumentException if two nodes have the same name, or an edge leads to a node
+     * that does not exist
+     */
+    CSGraph(ArrayList<CSNode> nodes, ArrayList<LinkedList<Integer>> edges) throws IllegalArgumentException {
+        HashSet<String> names = new HashSet<String>(nodes.size() * 2);
+
+        if(nodes.size() != edges.size())
+            throw new IllegalArgumentException("Every node needs an adjacency list");
+        for(CSNode node : nodes)
+            if(!names.add(node.getName()))
+                throw new IllegalArgumentException("Node with the name " + node.getName() + " already exists");
+        for(LinkedList<Integer> adjacencyList : edges)
+            for(int targetIndex : adjacencyList)
+                if(targetIndex < 0 || targetIndex >= nodes.size())
+                    throw new IllegalArgumentException(targetIndex + " is an invalid index");
+
+        this.nodes = nodes;
+        this.edges = edges;
+    }
+
+    /**
+     * Constructs a circuit that reads its nodes and edges from the given mapped save file.
+     * 
+     * @param source the opened mapped save file
+     */
+    CSGraph(CSMappedCircuit source) {
+        this.source = source;
+    }
+
     /**
      * Adds a node to this circuit.
      * <p>
@@ -46,12 +105,16 @@ public class CSGraph implements Serializable {
     public void addNode(CSNode newNode) throws IllegalArgumentException {
         String newNodeName = newNode.getName();
 
+        createAllNodes();
         for(CSNode node : nodes)
             if(newNodeName.equals(node.getName()))
                 throw new IllegalArgumentException("Node with that name already exists");
         
         nodes.add(newNode);
         edges.add(new LinkedList<Integer>());
+        updatePathCache = null;
+        if(timingAnalyzer != null)
+            timingAnalyzer.nodeAdded();
     }
 
     /**
@@ -67,6 +130,7 @@ public class CSGraph implements Serializable {
     public void removeNode(int targetIndex) throws IndexOutOfBoundsException {
         int targetNodeIndex;
 
+        createAllNodes();
         nodes.remove(targetIndex);
         edges.remove(targetIndex);
         for(LinkedList<Integer> adjacencyList : edges) {
@@ -77,6 +141,9 @@ public class CSGraph implements Serializable {
                     adjacencyList.set(i, targetNodeIndex - 1);
             }
         }
+        updatePathCache = null;
+        if(timingAnalyzer != null)
+            timingAnalyzer.nodeRemoved(targetIndex);
     }
 
     /**
@@ -88,6 +155,9 @@ public class CSGraph implements Serializable {
      * equal to the number of nodes in this circuit
      */
     public CSNode getNode(int nodeIndex) throws IndexOutOfBoundsException {
+        if(source != null)
+            return source.getNode(nodeIndex);
+
         return nodes.get(nodeIndex);
     }
 
@@ -100,6 +170,12 @@ public class CSGraph implements Serializable {
      * given ID/name
      */
     public CSNode getNode(String nodeID) throws IllegalArgumentException {
+        if(source != null) {
+            if(source.indexOf(nodeID) == -1)
+                throw new IllegalArgumentException(nodeID + " does not exist");
+            return source.getNode(source.indexOf(nodeID));
+        }
+
         for(CSNode node : nodes)
             if(node.getName().equals(nodeID))
                 return node;
@@ -116,6 +192,9 @@ public class CSGraph implements Serializable {
      * or greater than or equal to the number of nodes in this circuit
      */
     public LinkedList<Integer> getAdjList(int nodeIndex) throws IndexOutOfBoundsException {
+        if(source != null)
+            return source.getAdjList(nodeIndex);
+
         LinkedList<Integer> temp = new LinkedList<Integer>(edges.get(nodeIndex));
         return temp;
     }
@@ -130,6 +209,9 @@ public class CSGraph implements Serializable {
      * @return true if this circuit contains at least one flip-flop, false otherwise
      */
     public boolean isSequential() {
+        if(source != null)
+            return source.isSequential();
+
         for(CSNode node : nodes)
             if(node instanceof FlipFlop)
                 return true;
@@ -144,6 +226,9 @@ public class CSGraph implements Serializable {
      * @return true if a node with the specified ID/name exists in this circuit, false otherwise
      */
     public boolean contains(String nodeID) {
+        if(source != null)
+            return source.indexOf(nodeID) != -1;
+
         for(CSNode node : nodes)
             if(node.getName().equals(nodeID))
                 return true;
@@ -161,6 +246,9 @@ public class CSGraph implements Serializable {
      * of them are negative or greater than or equal to the number of nodes in this circuit
      */
     public boolean containsEdge(int sourceIndex, int targetIndex) throws IndexOutOfBoundsException {
+        if(source != null)
+            return source.getAdjList(sourceIndex).contains(targetIndex);
+
         return edges.get(sourceIndex).contains(targetIndex);
     }
 
@@ -171,6 +259,9 @@ public class CSGraph implements Serializable {
      * @return the index of the specified node, if it exists, otherwise -1 is returned
      */
     public int indexOf(String nodeID) {
+        if(source != null)
+            return source.indexOf(nodeID);
+
         for(int i = 0; i < nodes.size(); i++)
             if(nodes.get(i).getName().equals(nodeID))
                 return i;
@@ -187,10 +278,14 @@ public class CSGraph implements Serializable {
      * of them are negative or greater than or equal to the number of nodes in this circuit
      */
     public void addEdge(int sourceIndex, int targetIndex) throws IndexOutOfBoundsException {
+        createAllNodes();
         if(targetIndex < 0 || targetIndex >= nodes.size())
             throw new IndexOutOfBoundsException(targetIndex + " is an invalid index");
 
         edges.get(sourceIndex).add(targetIndex);
+        updatePathCache = null;
+        if(timingAnalyzer != null)
+            timingAnalyzer.edgeAdded(sourceIndex, targetIndex);
     }
 
     /**
@@ -202,10 +297,51 @@ public class CSGraph implements Serializable {
      * of them are negative or greater than or equal to the number of nodes in this circuit
      */
     public void removeEdge(int sourceIndex, int targetIndex) {
+        createAllNodes();
         if(targetIndex < 0 || targetIndex >= nodes.size())
             throw new IndexOutOfBoundsException(targetIndex + " is an invalid index");
 
-        edges.get(sourceIndex).remove(Integer.valueOf(targetIndex));
+        if(edges.get(sourceIndex).remove(Integer.valueOf(targetIndex))) {
+            updatePathCache = null;
+            if(timingAnalyzer != null)
+                timingAnalyzer.edgeRemoved(sourceIndex, targetIndex);
+        }
+    }
+
+    /**
+     * Sets the propagation delay of a node in this circuit.
+     * <p>
+     * The delay is not changed for non-positive integers given.
+     * 
+     * @param nodeIndex the index of the node
+     * @param delay positive integer representing the node's new delay, in units of time
+     * @throws IndexOutOfBoundsException if the given index is negative or greater than or
+     * equal to the number of nodes in this circuit
+     */
+    public void setNodeDelay(int nodeIndex, int delay) throws IndexOutOfBoundsException {
+        createAllNodes();
+        nodes.get(nodeIndex).setDelay(delay);
+        if(timingAnalyzer != null)
+            timingAnalyzer.delayChanged(nodeIndex);
+    }
+
+    /**
+     * Gets the timing analyzer of this circuit.
+     * <p>
+     * The analyzer is built the first time it is asked for, and from then on every edit of this
+     * circuit updates the times of the nodes it affects, rather than finding every time again.
+     * 
+     * @return the timing analyzer, up to date with this circuit
+     * @throws IllegalCircuitStateException if this circuit was found to be cyclic, even with disregard
+     * to any cycles created by flip-flops
+     */
+    CSTimingAnalyzer getTimingAnalyzer() throws IllegalCircuitStateException {
+        if(timingAnalyzer == null)
+            timingAnalyzer = new CSTimingAnalyzer(this);
+        else
+            timingAnalyzer.validate();
+
+        return timingAnalyzer;
     }
 
     /**
@@ -214,6 +350,9 @@ public class CSGraph implements Serializable {
      * @return the number of nodes within this circuit
      */
     public int getSize() {
+        if(source != null)
+            return source.getSize();
+
         return nodes.size();
     }
 
@@ -225,12 +364,37 @@ public class CSGraph implements Serializable {
     public int getEdgeCount() {
         int count = 0;
 
+        if(source != null)
+            return source.getEdgeCount();
+
         for(LinkedList<Integer> adjList : edges)
             count += adjList.size();
 
         return count;
     }
 
+    /**
+     * Gets the edges of this circuit in compressed sparse row form, without copying the
+     * adjacency lists.
+     * 
+     * @param edgeStart array to store where the edges of each node start, one longer than the
+     * number of nodes
+     * @return the targets of the edges, one node after the other
+     */
+    int[] getEdges(int[] edgeStart) {
+        int[] edgeTargets = new int[getEdgeCount()];
+        int k = 0;
+
+        for(int i = 0; i + 1 < edgeStart.length; i++) {
+            edgeStart[i] = k;
+            for(int targetIndex : source != null ? source.getAdjList(i) : edges.get(i))
+                edgeTargets[k++] = targetIndex;
+        }
+        edgeStart[edgeStart.length - 1] = k;
+
+        return edgeTargets;
+    }
+
     /**
      * Gets the update path for this circuit.
      * <p>
@@ -245,21 +409,34 @@ public class CSGraph implements Serializable {
      * to any cycles created by flip-flops
      */
     public String getUpdatePath() throws IllegalCircuitStateException {
-        char[] marks = new char[nodes.size()];
-        LinkedList<Integer> indexPath = new LinkedList<Integer>();
-        String updatePath = "";
-
-        for(int i = 0; i < marks.length; i++)
-            marks[i] = 'U';
+        StringBuilder updatePath = new StringBuilder();
 
-        for(int i = 0; i < marks.length; i++)
-            if(marks[i] == 'U')
-                getUpdatePathUtil(marks, i, indexPath);
+        for(int index : getUpdatePathIndeces())
+            updatePath.append(index).append(' ');
 
-        for(int index : indexPath)
-            updatePath += index + " ";
+        return updatePath.toString();
+    }
 
-        return updatePath;
+    /**
+     * Gets the update path for this circuit as an array of node indeces.
+     * <p>
+     * This is the same path as {@linkplain #getUpdatePath()}, but it is only found
+     * again after this circuit has changed, which makes it suitable for simulating
+     * many cycles. The returned array must not be modified.
+     * 
+     * @return the indeces of the nodes in the order they need to be updated
+     * @throws IllegalCircuitStateException if this circuit was found to be cyclic, even with disregard
+     * to any cycles created by flip-flops
+     */
+    int[] getUpdatePathIndeces() throws IllegalCircuitStateException {
+        if(updatePathCache != null)
+            return updatePathCache;
+        if(source != null)
+            updatePathCache = getMappedUpdatePath();
+        else
+            updatePathCache = getUpdatePathUtil();
+
+        return updatePathCache;
     }
 
     /**
@@ -267,36 +444,267 @@ public class CSGraph implements Serializable {
      * <p>
      * Implements a modified version of topological ordering to find a circuit's update path.
      * Sequential circuits almost certainly contain cycles, but these cycles need to be disregarded.
-     * Solution is to simply skip the recursive call of this method when dealing with flip-flops,
-     * allowing the update path to be properly found.
+     * Solution is to simply skip the edges of flip-flops, allowing the update path to be properly found.
+     * The nodes are visited depth first with a stack of their own instead of recursive calls, so that
+     * long chains of gates do not overflow the call stack.
+     * 
+     * @return the indeces of the nodes in the order they need to be updated
+     * @throws IllegalCircuitStateException if this circuit was found to be cyclic, even with disregard
+     * to any cycles created by flip-flops
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private int[] getUpdatePathUtil() throws IllegalCircuitStateException {
+        int size = nodes.size();
+        char[] marks = new char[size];
+        int[] stack = new int[size];
+        Iterator<Integer>[] nextEdge = new Iterator[size];
+        int[] updatePath = new int[size];
+        int pathStart = size;
+        int depth;
+        int nodeIndex;
+        int targetNodeIndex;
+
+        for(int i = 0; i < size; i++)
+            marks[i] = 'U';
+
+        for(int i = 0; i < size; i++) {
+            if(marks[i] != 'U')
+                continue;
+            marks[i] = 'T';
+            stack[0] = i;
+            nextEdge[0] = edges.get(i).iterator();
+            depth = 0;
+            while(depth >= 0) {
+                nodeIndex = stack[depth];
+                // skip the edges of flip-flops to break cycles
+                if(nextEdge[depth].hasNext() && !(nodes.get(nodeIndex) instanceof FlipFlop)) {
+                    targetNodeIndex = nextEdge[depth].next();
+                    if(marks[targetNodeIndex] == 'T')
+                        throw new IllegalCircuitStateException(); // current graph is cyclic
+                    if(marks[targetNodeIndex] == 'U') {
+                        marks[targetNodeIndex] = 'T';
+                        stack[++depth] = targetNodeIndex;
+                        nextEdge[depth] = edges.get(targetNodeIndex).iterator();
+                    }
+                } else {
+                    marks[nodeIndex] = 'P';
+                    updatePath[--pathStart] = nodeIndex;
+                    nextEdge[depth--] = null;
+                }
+            }
+        }
+
+        return updatePath;
+    }
+
+    /**
+     * Utility method for getting the update path of a circuit that is read from a mapped save file.
+     * <p>
+     * Visits the nodes in the same order as {@linkplain #getUpdatePathUtil()}, reading the edges
+     * from the file, so that no node needs to be created.
      * 
-     * @param marks character array representing the marks of this circuit's nodes
-     * @param nodeIndex the index of the current node
-     * @param indexPath resulting list of indeces to contain the update path
+     * @return the indeces of the nodes in the order they need to be updated
      * @throws IllegalCircuitStateException if this circuit was found to be cyclic, even with disregard
      * to any cycles created by flip-flops
      */
-    private void getUpdatePathUtil(char[] marks, int nodeIndex, LinkedList<Integer> indexPath) throws IllegalCircuitStateException {
-        if(marks[nodeIndex] == 'P')
+    private int[] getMappedUpdatePath() throws IllegalCircuitStateException {
+        int size = source.getSize();
+        char[] marks = new char[size];
+        int[] stack = new int[size];
+        int[] nextEdge = new int[size];
+        int[] updatePath = new int[size];
+        int pathStart = size;
+        int depth;
+        int nodeIndex;
+        int targetNodeIndex;
+
+        for(int i = 0; i < size; i++)
+            marks[i] = 'U';
+
+        for(int i = 0; i < size; i++) {
+            if(marks[i] != 'U')
+                continue;
+            marks[i] = 'T';
+            stack[0] = i;
+            nextEdge[0] = source.getEdgeStart(i);
+            depth = 0;
+            while(depth >= 0) {
+                nodeIndex = stack[depth];
+                // skip the edges of flip-flops to break cycles
+                if(nextEdge[depth] < source.getEdgeStart(nodeIndex + 1) && source.getTypeCode(nodeIndex) != CSSaveWriter.TYPE_DFF) {
+                    targetNodeIndex = source.getEdgeTarget(nextEdge[depth]++);
+                    if(marks[targetNodeIndex] == 'T')
+                        throw new IllegalCircuitStateException(); // current graph is cyclic
+                    if(marks[targetNodeIndex] == 'U') {
+                        marks[targetNodeIndex] = 'T';
+                        stack[++depth] = targetNodeIndex;
+                        nextEdge[depth] = source.getEdgeStart(targetNodeIndex);
+                    }
+                } else {
+                    marks[nodeIndex] = 'P';
+                    updatePath[--pathStart] = nodeIndex;
+                    depth--;
+                }
+            }
+        }
+
+        return updatePath;
+    }
+
+    /**
+     * Gets the mapped save file this circuit reads its nodes from.
+     * 
+     * @return the opened mapped save file, or null if every node of this circuit exists
+     */
+    CSMappedCircuit getMappedSource() {
+        return source;
+    }
+
+    /**
+     * Creates every node of a circuit opened from a mapped save file, after which the file is closed.
+     * <p>
+     * Nothing is done for other circuits.
+     */
+    void createAllNodes() {
+        if(source == null)
             return;
-        if(marks[nodeIndex] == 'T')
-            throw new IllegalCircuitStateException(); // current graph is cyclic
-        marks[nodeIndex] = 'T';
-        // skip for-loop for FlipFlop objects to break cycles
-        if(!(nodes.get(nodeIndex) instanceof FlipFlop))
-            for(int targetNodeIndex : edges.get(nodeIndex))
-                getUpdatePathUtil(marks, targetNodeIndex, indexPath);
-        marks[nodeIndex] = 'P';
-        indexPath.addFirst(nodeIndex);
+
+        nodes = new ArrayList<CSNode>(source.getSize());
+        edges = new ArrayList<LinkedList<Integer>>(source.getSize());
+        source.readCircuit(nodes, edges);
+        try {
+            source.close();
+        } catch(IOException ioe) {
+            // the file was only read, so every node is still complete
+        }
+        source = null;
+    }
+
+    /**
+     * Gets the indeces of the nodes that are not gates, and of the tracked gates.
+     * <p>
+     * These are the nodes that an engine keeps lists of, and for a circuit opened from a mapped
+     * save file they are found without creating any node.
+     * 
+     * @return the indeces of the nodes, in increasing order
+     */
+    int[] getKeyNodeIndeces() {
+        ArrayList<Integer> keyNodes = new ArrayList<Integer>();
+        int[] indeces;
+
+        if(source != null)
+            return source.getKeyNodeIndeces();
+
+        for(int i = 0; i < nodes.size(); i++)
+            if(CSMappedSaveWriter.isKeyNode(nodes.get(i)))
+                keyNodes.add(i);
+        indeces = new int[keyNodes.size()];
+        for(int k = 0; k < indeces.length; k++)
+            indeces[k] = keyNodes.get(k);
+
+        return indeces;
+    }
+
+    /**
+     * Gets the type of a node, without creating the node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return one of the {@code TYPE_} constants of {@linkplain CSSaveWriter}
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    int getTypeCode(int nodeIndex) throws IndexOutOfBoundsException {
+        if(source != null)
+            return source.getTypeCode(nodeIndex);
+
+        return CSSaveWriter.getType(nodes.get(nodeIndex));
+    }
+
+    /**
+     * Gets the name of a node, without creating the node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the name of the node
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    String getNodeName(int nodeIndex) throws IndexOutOfBoundsException {
+        if(source != null)
+            return source.getName(nodeIndex);
+
+        return nodes.get(nodeIndex).getName();
+    }
+
+    /**
+     * Gets the track number of a node, without creating the node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the track number of the node, or 0 if it is not tracked
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    int getNodeTrackNum(int nodeIndex) throws IndexOutOfBoundsException {
+        if(source != null)
+            return source.getTrackNum(nodeIndex);
+
+        return nodes.get(nodeIndex).getTrackNum();
+    }
+
+    /**
+     * Checks whether a node is an input variable node with an input sequence or a stimulus
+     * source, without creating the node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return true if the node is an input variable node with an input sequence or a stimulus source
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    boolean nodeHasInputSeq(int nodeIndex) throws IndexOutOfBoundsException {
+        if(source != null)
+            return source.hasInputSeq(nodeIndex);
+
+        return nodes.get(nodeIndex) instanceof InputVariableNode && ((InputVariableNode)nodes.get(nodeIndex)).hasInputSeq();
+    }
+
+    /**
+     * Gets the name of the node an inverter inverts, without creating either node.
+     * 
+     * @param inverterIndex the index of the inverter
+     * @return the name of the input node of the inverter
+     * @throws IndexOutOfBoundsException if the node does not exist
+     * @throws ClassCastException if the node is not an inverter
+     */
+    String getInvertedNodeName(int inverterIndex) throws IndexOutOfBoundsException, ClassCastException {
+        if(source != null) {
+            if(source.getTypeCode(inverterIndex) != CSSaveWriter.TYPE_INVERTER)
+                throw new ClassCastException(source.getName(inverterIndex) + " is not an inverter");
+            return source.getName(source.getInput(source.getInputStart(inverterIndex)));
+        }
+
+        return ((Inverter)nodes.get(inverterIndex)).getInputNode().getName();
+    }
+
+    /**
+     * Utility method to create every node before this circuit is serialized.
+     * 
+     * @param out the stream this circuit is written to
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        createAllNodes();
+        out.defaultWriteObject();
     }
 
     /**
      * Resets the nodes in this circuit.
      * <p>
      * Each node in this circuit will be reset to their initial states,
-     * with values of 0.
+     * with values of 0. A circuit opened from a mapped save file keeps the
+     * nodes it has not created yet in the file; they are created with a
+     * value of 0.
      */
     public void reset() {
+        if(source != null) {
+            source.resetValues();
+            return;
+        }
+
         for(CSNode node : nodes)
             node.resetValue();
     }
@@ -0,0 +1,68 @@
+package simulator.circuit.project;
+
+/**
+ * Class to generate the input values of one bit of a Gray code counter.
+ * <p>
+ * The count goes through the reflected binary code, where consecutive counts differ in exactly
+ * one bit. Driving a group of inputs with the bits of the same Gray code counter toggles only
+ * one input per cycle, which is useful to exercise a circuit with the fewest changes.
+ * 
+ * @author Joel Tengco
+ */
+public class CSGrayCodeStimulus extends CSCounterStimulus {
+    /**
+     * Needed to implement Serializable, and thus needed for saving circuits as files.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a generator of the given bit of a Gray code counter.
+     * 
+     * @param bit the bit of the Gray code that gives the values, from 0 to 63
+     * @param start the binary count whose Gray code is used at the first cycle
+     * @param length the number of values, or {@linkplain CSStimulusGenerator#UNBOUNDED}
+     * @throws IllegalArgumentException if the bit is out of range or the length is negative
+     */
+    public CSGrayCodeStimulus(int bit, long start, long length) throws IllegalArgumentException {
+        super(bit, start, length);
+    }
+
+    /**
+     * Gets the Gray code at the given position.
+     * 
+     * @param position the index of the cycle
+     * @return the Gray code, whose bit {@code bit} is the value at the position
+     */
+    protected long countAt(long position) {
+        long count = super.countAt(position);
+
+        return count ^ (count >>> 1);
+    }
+
+    /**
+     * Gets the first position after the given one at which the value may change.
+     * <p>
+     * Bit {@code b} of a Gray code only changes when the binary count crosses a multiple of
+     * {@code 2^b} that is not a multiple of {@code 2^(b+1)}, so the runs are twice as long
+     * as those of the binary counter, except for the first one.
+     * 
+     * @param position the index of the cycle
+     * @return a later position, no further than the next change of the value
+     */
+    protected long nextChange(long position) {
+        int bit = getBit();
+        long runLength = 1L << bit;
+        long offset = (super.countAt(position) + runLength) & ((runLength << 1) - 1);
+
+        return bit > 61 ? position + 1 : position + ((runLength << 1) - offset);
+    }
+
+    /**
+     * Gets a short description of this generator.
+     * 
+     * @return the description of this generator
+     */
+    public String getDescription() {
+        return "bit " + getBit() + " of Gray code from " + getStart();
+    }
+}
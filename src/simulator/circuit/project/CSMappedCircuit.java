@@ -0,0 +1,879 @@
+package simulator.circuit.project;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+
+/**
+ * Class to open a circuit from a save file written by {@linkplain CSMappedSaveWriter}.
+ * <p>
+ * The file is memory-mapped and only its header is read when it is opened, so opening takes
+ * the same time for any size of circuit. Names, edges and inputs are read from the mapped file
+ * when they are asked for, and a node is only created the first time it is asked for. Since a
+ * node refers to the nodes it reads, creating a node also creates the nodes its value depends on,
+ * and a flip-flop is always created along with its output nodes. The same node is returned every
+ * time it is asked for, so changes made to it are kept.
+ * <p>
+ * Save files written by {@linkplain CSSaveWriter} are opened the same way, once
+ * {@linkplain CSSaveReader} has decoded them into this layout in memory.
+ * <p>
+ * Methods that read the file throw {@code IllegalStateException} if the file could not be read
+ * or is damaged.
+ * 
+ * @author Joel Tengco
+ */
+public class CSMappedCircuit implements Closeable {
+    /**
+     * The mapped file.
+     */
+    private final CSMappedFile mappedFile;
+    /**
+     * Name of the file, used in error messages.
+     */
+    private final String fileName;
+    /**
+     * Number of nodes in the circuit.
+     */
+    private final int nodeCount;
+    /**
+     * Number of edges in the circuit.
+     */
+    private final int edgeCount;
+    /**
+     * Number of inputs of all the nodes.
+     */
+    private final int inputCount;
+    /**
+     * Number of key nodes.
+     */
+    private final int keyCount;
+    /**
+     * Number of nodes with a track number or delay.
+     */
+    private final int attributeCount;
+    /**
+     * Number of input variable nodes with input data.
+     */
+    private final int dataCount;
+    /**
+     * Number of slots of the name table.
+     */
+    private final int nameTableSize;
+    /**
+     * Offset of each section within the file.
+     */
+    private final long[] sections;
+    /**
+     * The nodes created so far; null until the first node is created.
+     */
+    private CSNode[] nodes;
+    /**
+     * Indeces of the nodes created so far, in the order they were created.
+     */
+    private int[] createdIndeces;
+    /**
+     * Number of nodes created so far.
+     */
+    private int createdCount;
+    /**
+     * Nodes about to be created.
+     */
+    private BitSet queued;
+    /**
+     * Value of every node while the circuit is simulated without creating its nodes, in the
+     * lowest bit of a word per node; null until the circuit is first reset or simulated, while
+     * nodes are created with their saved values.
+     */
+    private long[] values;
+
+    /**
+     * Opens the given mapped save file.
+     * 
+     * @param source the file to open
+     * @throws IOException if an error occurred when reading the header, or the file is not a
+     * mapped save file or is damaged
+     */
+    public CSMappedCircuit(File source) throws IOException {
+        this(source.getName(), new CSMappedFile(source));
+    }
+
+    /**
+     * Opens a circuit in the layout of a mapped save file, such as a save file that
+     * {@linkplain CSSaveReader} laid out in memory.
+     * 
+     * @param fileName the name of the file, used in error messages
+     * @param mappedFile the contents in the layout of a mapped save file; closed if they are not
+     * @throws IOException if the contents are not in the layout of a mapped save file or are damaged
+     */
+    CSMappedCircuit(String fileName, CSMappedFile mappedFile) throws IOException {
+        long expected;
+        long end;
+
+        this.fileName = fileName;
+        this.mappedFile = mappedFile;
+        sections = new long[CSMappedSaveWriter.SECTION_COUNT];
+
+        try {
+            if(mappedFile.size() < 4 || mappedFile.getInt(0) != CSMappedSaveWriter.MAGIC)
+                throw new IOException(fileName + " is not a mapped save file");
+            if(mappedFile.size() < CSMappedSaveWriter.HEADER_SIZE)
+                throw new IOException(fileName + " is damaged");
+            int version = mappedFile.getInt(4);
+            if(version < 1 || version > CSMappedSaveWriter.VERSION)
+                throw new IOException("Unsupported mapped save version " + version);
+            nodeCount = mappedFile.getInt(8);
+            edgeCount = mappedFile.getInt(12);
+            inputCount = mappedFile.getInt(16);
+            keyCount = mappedFile.getInt(20);
+            attributeCount = mappedFile.getInt(24);
+            dataCount = mappedFile.getInt(28);
+            nameTableSize = mappedFile.getInt(32);
+            for(int s = 0; s < sections.length; s++)
+                sections[s] = mappedFile.getLong(40 + 8 * s);
+
+            if(nodeCount < 0 || edgeCount < 0 || inputCount < 0 || keyCount < 0 || attributeCount < 0 || dataCount < 0
+                    || nameTableSize <= 0 || Integer.bitCount(nameTableSize) != 1)
+                throw new IOException(fileName + " is damaged");
+            for(int s = 0; s < sections.length; s++) {
+                expected = getSectionSize(s);
+                end = s + 1 < sections.length ? sections[s + 1] : mappedFile.size();
+                if(sections[s] < CSMappedSaveWriter.HEADER_SIZE || sections[s] % 8 != 0 || sections[s] + expected > end)
+                    throw new IOException(fileName + " is damaged");
+            }
+        } catch(IOException ioe) {
+            mappedFile.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Gets the number of nodes in the circuit.
+     * 
+     * @return the number of nodes
+     */
+    public int getSize() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the number of edges in the circuit, as it was saved.
+     * 
+     * @return the number of edges
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Gets the number of nodes created so far.
+     * 
+     * @return the number of nodes that were asked for, or that those nodes depend on
+     */
+    public int getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * Gets the name of a node, without creating the node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the name of the node
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    public String getName(int nodeIndex) throws IndexOutOfBoundsException {
+        checkIndex(nodeIndex);
+        if(nodes != null && nodes[nodeIndex] != null)
+            return nodes[nodeIndex].getName();
+
+        return readName(nodeIndex);
+    }
+
+    /**
+     * Gets the index of the node with the given name.
+     * <p>
+     * The name is looked up in the name table of the file; only nodes that were renamed after
+     * being created are searched for one by one.
+     * 
+     * @param nodeID the name of the node
+     * @return the index of the node, or -1 if no node has that name
+     */
+    public int indexOf(String nodeID) {
+        long tableStart = sections[CSMappedSaveWriter.SECTION_NAME_TABLE];
+        int slot = CSMappedSaveWriter.getNameSlot(nodeID, nameTableSize);
+        int index;
+
+        for(int probes = 0; probes < nameTableSize; probes++) {
+            index = readInt(tableStart + 4L * slot);
+            if(index == -1)
+                break;
+            checkEntry(index, nodeCount);
+            if(getName(index).equals(nodeID))
+                return index;
+            slot = (slot + 1) & (nameTableSize - 1);
+        }
+
+        for(int c = 0; c < createdCount; c++)
+            if(nodes[createdIndeces[c]].getName().equals(nodeID))
+                return createdIndeces[c];
+
+        return -1;
+    }
+
+    /**
+     * Gets a node of the circuit, creating it and the nodes it depends on if they were not
+     * created yet.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the node
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    public CSNode getNode(int nodeIndex) throws IndexOutOfBoundsException {
+        checkIndex(nodeIndex);
+        if(nodes == null) {
+            nodes = new CSNode[nodeCount];
+            createdIndeces = new int[16];
+            queued = new BitSet();
+        }
+        if(nodes[nodeIndex] == null)
+            createCone(nodeIndex);
+
+        return nodes[nodeIndex];
+    }
+
+    /**
+     * Gets the value of every node, for simulating the circuit without creating its nodes.
+     * <p>
+     * The values start as the values of the created nodes and the saved values of the others.
+     * Once they are changed, {@linkplain #applyValues()} gives the created nodes their new
+     * values, and nodes created afterwards start with their values as well.
+     * 
+     * @return the values, in the lowest bit of a word per node
+     */
+    long[] getValues() {
+        if(values != null)
+            return values;
+
+        values = new long[nodeCount];
+        for(int i = 0; i < nodeCount; i++) {
+            if(nodes != null && nodes[i] != null)
+                values[i] = nodes[i].value;
+            else if((getOpcode(i) & CSSaveWriter.FLAG_VALUE) != 0)
+                values[i] = 1;
+        }
+
+        return values;
+    }
+
+    /**
+     * Gives the created nodes the values from {@linkplain #getValues()}.
+     */
+    void applyValues() {
+        for(int c = 0; c < createdCount; c++)
+            nodes[createdIndeces[c]].value = (int)values[createdIndeces[c]] & 1;
+    }
+
+    /**
+     * Resets every node to 0 without creating the nodes that are not input variable nodes.
+     * <p>
+     * Input variable nodes are created, so that they start again from the beginning of their
+     * input sequences.
+     */
+    void resetValues() {
+        for(int index : getKeyNodeIndeces())
+            if(getTypeCode(index) == CSSaveWriter.TYPE_INPUT)
+                getNode(index);
+        for(int c = 0; c < createdCount; c++)
+            nodes[createdIndeces[c]].resetValue();
+
+        if(values == null)
+            values = new long[nodeCount];
+        else
+            Arrays.fill(values, 0);
+    }
+
+    /**
+     * Closes the underlying file; nodes that were already created can still be used.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        mappedFile.close();
+    }
+
+    /**
+     * Returns whether the given file starts like a save file written by {@linkplain CSMappedSaveWriter}.
+     * 
+     * @param source the file to check
+     * @return true if the file starts with the magic number of mapped save files
+     * @throws IOException if an error occurred when reading the file
+     */
+    static boolean isMappedSave(File source) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(source, "r");
+
+        try {
+            return in.length() >= 4 && in.readInt() == CSMappedSaveWriter.MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Gets the type of a node, without creating the node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return one of the {@code TYPE_} constants of {@linkplain CSSaveWriter}
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    int getTypeCode(int nodeIndex) throws IndexOutOfBoundsException {
+        int type = getOpcode(nodeIndex) & CSSaveWriter.TYPE_MASK;
+
+        if(type > CSSaveWriter.TYPE_INVERTER)
+            throw new IllegalStateException(fileName + " is damaged");
+
+        return type;
+    }
+
+    /**
+     * Gets the track number of a node, without creating the node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the track number of the node, or 0 if it is not tracked
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    int getTrackNum(int nodeIndex) throws IndexOutOfBoundsException {
+        int attribute;
+
+        checkIndex(nodeIndex);
+        if(nodes != null && nodes[nodeIndex] != null)
+            return nodes[nodeIndex].getTrackNum();
+        if((getOpcode(nodeIndex) & CSSaveWriter.FLAG_TRACKED) == 0)
+            return 0;
+
+        attribute = findAttribute(nodeIndex);
+        return readInt(sections[CSMappedSaveWriter.SECTION_ATTRIBUTES] + (long)attribute * CSMappedSaveWriter.ATTRIBUTE_SIZE + 4);
+    }
+
+    /**
+     * Checks whether an input variable node has an input sequence or a stimulus source, without
+     * creating the node.
+     * 
+     * @param nodeIndex the index of the input variable node
+     * @return true if the node has an input sequence or a stimulus source
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    boolean hasInputSeq(int nodeIndex) throws IndexOutOfBoundsException {
+        int entry;
+        long offset;
+
+        checkIndex(nodeIndex);
+        if(nodes != null && nodes[nodeIndex] != null)
+            return nodes[nodeIndex] instanceof InputVariableNode && ((InputVariableNode)nodes[nodeIndex]).hasInputSeq();
+        if((getOpcode(nodeIndex) & CSSaveWriter.FLAG_INPUT_DATA) == 0)
+            return false;
+
+        entry = findEntry(sections[CSMappedSaveWriter.SECTION_INPUT_DATA_INDEX], CSMappedSaveWriter.DATA_INDEX_SIZE,
+                dataCount, nodeIndex);
+        try {
+            offset = sections[CSMappedSaveWriter.SECTION_INPUT_DATA]
+                    + mappedFile.getLong(sections[CSMappedSaveWriter.SECTION_INPUT_DATA_INDEX] + (long)entry * CSMappedSaveWriter.DATA_INDEX_SIZE + 8);
+            if(offset < sections[CSMappedSaveWriter.SECTION_INPUT_DATA] || offset + 16 > mappedFile.size() || offset % 8 != 0)
+                throw new IllegalStateException(fileName + " is damaged");
+            return mappedFile.getInt(offset + 8) != CSSaveWriter.DATA_NONE;
+        } catch(IOException ioe) {
+            throw new IllegalStateException("Could not read " + fileName + ": " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Gets the indeces of the nodes that are not gates, and of the tracked gates, as saved.
+     * 
+     * @return the indeces of the key nodes, in increasing order
+     */
+    int[] getKeyNodeIndeces() {
+        int[] keyNodes = new int[keyCount];
+
+        for(int k = 0; k < keyCount; k++) {
+            keyNodes[k] = readInt(sections[CSMappedSaveWriter.SECTION_KEY_NODES] + 4L * k);
+            checkEntry(keyNodes[k], nodeCount);
+        }
+
+        return keyNodes;
+    }
+
+    /**
+     * Gets where the adjacency list of a node starts among the edges.
+     * 
+     * @param nodeIndex the index of the node, or the number of nodes for the end of the last list
+     * @return the position of the first edge of the node
+     */
+    int getEdgeStart(int nodeIndex) {
+        int start = readInt(sections[CSMappedSaveWriter.SECTION_EDGE_START] + 4L * nodeIndex);
+
+        checkEntry(start, edgeCount + 1);
+        return start;
+    }
+
+    /**
+     * Gets the target of an edge.
+     * 
+     * @param edge the position of the edge
+     * @return the index of the node the edge leads to
+     */
+    int getEdgeTarget(int edge) {
+        int target = readInt(sections[CSMappedSaveWriter.SECTION_EDGES] + 4L * edge);
+
+        checkEntry(target, nodeCount);
+        return target;
+    }
+
+    /**
+     * Gets where the inputs of a node start among the inputs of all nodes.
+     * 
+     * @param nodeIndex the index of the node, or the number of nodes for the end of the last node
+     * @return the position of the first input of the node
+     */
+    int getInputStart(int nodeIndex) {
+        int start = readInt(sections[CSMappedSaveWriter.SECTION_INPUT_START] + 4L * nodeIndex);
+
+        checkEntry(start, inputCount + 1);
+        return start;
+    }
+
+    /**
+     * Gets an input of a node.
+     * 
+     * @param input the position of the input
+     * @return the index of the node that is read
+     */
+    int getInput(int input) {
+        int inputIndex = readInt(sections[CSMappedSaveWriter.SECTION_INPUTS] + 4L * input);
+
+        checkEntry(inputIndex, nodeCount);
+        return inputIndex;
+    }
+
+    /**
+     * Gets the adjacency list of a node, as saved.
+     * 
+     * @param nodeIndex the index of the node
+     * @return a new list of the indeces of the nodes that the node leads to
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    LinkedList<Integer> getAdjList(int nodeIndex) throws IndexOutOfBoundsException {
+        LinkedList<Integer> adjacencyList = new LinkedList<Integer>();
+        int end;
+
+        checkIndex(nodeIndex);
+        end = getEdgeStart(nodeIndex + 1);
+        for(int k = getEdgeStart(nodeIndex); k < end; k++)
+            adjacencyList.add(getEdgeTarget(k));
+
+        return adjacencyList;
+    }
+
+    /**
+     * Returns whether the saved circuit contains a flip-flop.
+     * 
+     * @return true if a key node is a flip-flop
+     */
+    boolean isSequential() {
+        for(int index : getKeyNodeIndeces())
+            if(getTypeCode(index) == CSSaveWriter.TYPE_DFF)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Creates every node that was not created yet and gives all nodes and adjacency lists of
+     * the circuit.
+     * 
+     * @param nodeList list to add the nodes to, in order
+     * @param edges list to add the adjacency lists to, in order
+     */
+    void readCircuit(ArrayList<CSNode> nodeList, ArrayList<LinkedList<Integer>> edges) {
+        int[] remaining = new int[nodeCount - createdCount];
+        int remainingCount = 0;
+
+        if(nodes == null) {
+            nodes = new CSNode[nodeCount];
+            createdIndeces = new int[16];
+            queued = new BitSet();
+        }
+        for(int i = 0; i < nodeCount; i++)
+            if(nodes[i] == null)
+                remaining[remainingCount++] = i;
+        createNodes(remaining, remainingCount);
+
+        for(int i = 0; i < nodeCount; i++) {
+            nodeList.add(nodes[i]);
+            edges.add(getAdjList(i));
+        }
+    }
+
+    /**
+     * Utility method to create a node along with the nodes it depends on that were not created yet.
+     * 
+     * @param nodeIndex the index of the node
+     */
+    private void createCone(int nodeIndex) {
+        int[] cone = new int[16];
+        int coneSize = 0;
+        int index;
+        int end;
+
+        queue(nodeIndex);
+        cone[coneSize++] = nodeIndex;
+        for(int c = 0; c < coneSize; c++) {
+            index = cone[c];
+            end = getInputStart(index + 1);
+            for(int k = getInputStart(index); k < end; k++)
+                if(queue(getInput(k)))
+                    cone = append(cone, coneSize++, getInput(k));
+            // a flip-flop needs both of its output nodes
+            if(getTypeCode(index) == CSSaveWriter.TYPE_DFF) {
+                end = getEdgeStart(index + 1);
+                for(int k = getEdgeStart(index); k < end; k++)
+                    if(getTypeCode(getEdgeTarget(k)) >= CSSaveWriter.TYPE_FF_OUT && getTypeCode(getEdgeTarget(k)) <= CSSaveWriter.TYPE_FF_OUT_NEGATED
+                            && queue(getEdgeTarget(k)))
+                        cone = append(cone, coneSize++, getEdgeTarget(k));
+            }
+        }
+
+        for(int c = 0; c < coneSize; c++)
+            queued.clear(cone[c]);
+        createNodes(cone, coneSize);
+    }
+
+    /**
+     * Utility method to mark a node as about to be created, unless it was created or marked before.
+     * 
+     * @param nodeIndex the index of the node
+     * @return true if the node was marked by this call
+     */
+    private boolean queue(int nodeIndex) {
+        if(nodes[nodeIndex] != null || queued.get(nodeIndex))
+            return false;
+
+        queued.set(nodeIndex);
+        return true;
+    }
+
+    /**
+     * Utility method to store a value in an array, growing the array if it is full.
+     * 
+     * @param array the array
+     * @param position where to store the value
+     * @param value the value
+     * @return the array, or a longer copy of it
+     */
+    private static int[] append(int[] array, int position, int value) {
+        if(position == array.length)
+            array = Arrays.copyOf(array, position * 2);
+        array[position] = value;
+
+        return array;
+    }
+
+    /**
+     * Utility method to create the given nodes, whose input nodes are either among them or
+     * already created.
+     * 
+     * @param indeces the indeces of the nodes
+     * @param count the number of nodes to create
+     */
+    private void createNodes(int[] indeces, int count) {
+        int pendingCount = 0;
+        int createdNow;
+        int type;
+        int index;
+        int inputIndex;
+        int end;
+        int opcode;
+
+        try {
+            // inverters and flip-flop output nodes need their input node when they are created
+            for(int c = 0; c < count; c++) {
+                type = getTypeCode(indeces[c]);
+                if(!CSSaveReader.isDependentType(type))
+                    nodes[indeces[c]] = CSSaveReader.createNode(type, readName(indeces[c]));
+                else
+                    pendingCount++;
+            }
+            while(pendingCount > 0) {
+                createdNow = 0;
+                for(int c = 0; c < count; c++) {
+                    index = indeces[c];
+                    if(nodes[index] != null)
+                        continue;
+                    if(getInputStart(index + 1) - getInputStart(index) != 1)
+                        throw new IOException(fileName + " is damaged");
+                    inputIndex = getInput(getInputStart(index));
+                    if(nodes[inputIndex] != null) {
+                        nodes[index] = CSSaveReader.createDependentNode(getTypeCode(index), readName(index), nodes[inputIndex]);
+                        createdNow++;
+                    }
+                }
+                if(createdNow == 0)
+                    throw new IOException(fileName + " is damaged");
+                pendingCount -= createdNow;
+            }
+
+            for(int c = 0; c < count; c++) {
+                index = indeces[c];
+                opcode = getOpcode(index);
+                end = getInputStart(index + 1);
+                CSSaveReader.checkInputCount(nodes[index], end - getInputStart(index));
+                for(int k = getInputStart(index); k < end; k++)
+                    CSSaveReader.addInput(nodes[index], nodes[getInput(k)]);
+                if(values != null)
+                    nodes[index].value = (int)values[index] & 1;
+                else if((opcode & CSSaveWriter.FLAG_VALUE) != 0)
+                    nodes[index].value = 1;
+                if((opcode & (CSSaveWriter.FLAG_TRACKED | CSSaveWriter.FLAG_DELAY)) != 0)
+                    readAttributes(index, opcode);
+                if((opcode & CSSaveWriter.FLAG_INPUT_DATA) != 0) {
+                    if(!(nodes[index] instanceof InputVariableNode))
+                        throw new IOException(fileName + " is damaged");
+                    readInputData(index);
+                }
+                addCreated(index);
+            }
+        } catch(IOException ioe) {
+            throw new IllegalStateException("Could not read " + fileName + ": " + ioe.getMessage());
+        } catch(ClassNotFoundException cnfe) {
+            throw new IllegalStateException("Could not read " + fileName + ": " + cnfe.getMessage());
+        }
+    }
+
+    /**
+     * Utility method to remember that a node was created.
+     * 
+     * @param nodeIndex the index of the node
+     */
+    private void addCreated(int nodeIndex) {
+        createdIndeces = append(createdIndeces, createdCount++, nodeIndex);
+    }
+
+    /**
+     * Utility method to give a new node its saved track number and delay.
+     * 
+     * @param nodeIndex the index of the node
+     * @param opcode the opcode of the node
+     */
+    private void readAttributes(int nodeIndex, int opcode) {
+        long offset = sections[CSMappedSaveWriter.SECTION_ATTRIBUTES]
+                + (long)findAttribute(nodeIndex) * CSMappedSaveWriter.ATTRIBUTE_SIZE;
+
+        if((opcode & CSSaveWriter.FLAG_TRACKED) != 0)
+            nodes[nodeIndex].setTrackNum(readInt(offset + 4));
+        if((opcode & CSSaveWriter.FLAG_DELAY) != 0)
+            nodes[nodeIndex].delay = readInt(offset + 8);
+    }
+
+    /**
+     * Utility method to find the entry of a node in the attributes section.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the position of the entry
+     */
+    private int findAttribute(int nodeIndex) {
+        return findEntry(sections[CSMappedSaveWriter.SECTION_ATTRIBUTES], CSMappedSaveWriter.ATTRIBUTE_SIZE, attributeCount, nodeIndex);
+    }
+
+    /**
+     * Utility method to find the entry of a node in a section of entries sorted by node index.
+     * 
+     * @param sectionStart the offset of the section
+     * @param entrySize the size of each entry, which starts with the node index
+     * @param entryCount the number of entries
+     * @param nodeIndex the index of the node
+     * @return the position of the entry
+     */
+    private int findEntry(long sectionStart, int entrySize, int entryCount, int nodeIndex) {
+        int low = 0;
+        int high = entryCount - 1;
+        int middle;
+        int middleIndex;
+
+        while(low <= high) {
+            middle = (low + high) >>> 1;
+            middleIndex = readInt(sectionStart + (long)middle * entrySize);
+            if(middleIndex < nodeIndex)
+                low = middle + 1;
+            else if(middleIndex > nodeIndex)
+                high = middle - 1;
+            else
+                return middle;
+        }
+
+        throw new IllegalStateException(fileName + " is damaged");
+    }
+
+    /**
+     * Utility method to give a new input variable node its saved position and values.
+     * 
+     * @param nodeIndex the index of the input variable node
+     * @throws IOException if an error occurred when reading, or the data is damaged
+     * @throws ClassNotFoundException if the class of a saved stimulus source could not be found
+     */
+    private void readInputData(int nodeIndex) throws IOException, ClassNotFoundException {
+        InputVariableNode inputNode = (InputVariableNode)nodes[nodeIndex];
+        int entry = findEntry(sections[CSMappedSaveWriter.SECTION_INPUT_DATA_INDEX], CSMappedSaveWriter.DATA_INDEX_SIZE,
+                dataCount, nodeIndex);
+        long offset = sections[CSMappedSaveWriter.SECTION_INPUT_DATA]
+                + mappedFile.getLong(sections[CSMappedSaveWriter.SECTION_INPUT_DATA_INDEX] + (long)entry * CSMappedSaveWriter.DATA_INDEX_SIZE + 8);
+        long position;
+        int kind;
+        int length;
+        long[] words;
+        byte[] bytes;
+        ObjectInputStream in;
+
+        if(offset < sections[CSMappedSaveWriter.SECTION_INPUT_DATA] || offset + 16 > mappedFile.size() || offset % 8 != 0)
+            throw new IOException(fileName + " is damaged");
+        position = mappedFile.getLong(offset);
+        kind = mappedFile.getInt(offset + 8);
+        length = mappedFile.getInt(offset + 12);
+        offset += 16;
+
+        if(kind == CSSaveWriter.DATA_SEQUENCE) {
+            words = new long[(int)((length + 63L) >>> 6)];
+            if(length < 0 || offset + 8L * words.length > mappedFile.size())
+                throw new IOException(fileName + " is damaged");
+            for(int w = 0; w < words.length; w++)
+                words[w] = mappedFile.getLong(offset + 8L * w);
+            inputNode.setInputSeq(words, length);
+        } else if(kind == CSSaveWriter.DATA_SOURCE) {
+            if(length < 0 || offset + length > mappedFile.size())
+                throw new IOException(fileName + " is damaged");
+            bytes = new byte[length];
+            for(int b = 0; b < length; b++)
+                bytes[b] = mappedFile.get(offset + b);
+            in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                inputNode.setStimulusSource((CSStimulusSource)in.readObject());
+            } catch(ClassCastException cce) {
+                throw new IOException(fileName + " is damaged");
+            } finally {
+                in.close();
+            }
+        } else if(kind != CSSaveWriter.DATA_NONE)
+            throw new IOException(fileName + " is damaged");
+
+        inputNode.setSeqPosition(position);
+    }
+
+    /**
+     * Utility method to read the name of a node from the file.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the saved name of the node
+     */
+    private String readName(int nodeIndex) {
+        long offsets = sections[CSMappedSaveWriter.SECTION_NAME_OFFSETS];
+        long namesStart = sections[CSMappedSaveWriter.SECTION_NAMES];
+        long start;
+        long end;
+        byte[] bytes;
+
+        try {
+            start = mappedFile.getLong(offsets + 8L * nodeIndex);
+            end = mappedFile.getLong(offsets + 8L * (nodeIndex + 1));
+            if(start < 0 || end < start || end - start > Integer.MAX_VALUE
+                    || namesStart + end > sections[CSMappedSaveWriter.SECTION_NAME_TABLE])
+                throw new IllegalStateException(fileName + " is damaged");
+
+            bytes = new byte[(int)(end - start)];
+            for(int b = 0; b < bytes.length; b++)
+                bytes[b] = mappedFile.get(namesStart + start + b);
+        } catch(IOException ioe) {
+            throw new IllegalStateException("Could not read " + fileName + ": " + ioe.getMessage());
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Utility method to read the opcode of a node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the saved opcode
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    private int getOpcode(int nodeIndex) throws IndexOutOfBoundsException {
+        checkIndex(nodeIndex);
+        try {
+            return mappedFile.get(sections[CSMappedSaveWriter.SECTION_OPCODES] + nodeIndex) & 0xFF;
+        } catch(IOException ioe) {
+            throw new IllegalStateException("Could not read " + fileName + ": " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Utility method to read an int from the file.
+     * 
+     * @param offset the offset of the int, a multiple of 4
+     * @return the int
+     */
+    private int readInt(long offset) {
+        try {
+            return mappedFile.getInt(offset);
+        } catch(IOException ioe) {
+            throw new IllegalStateException("Could not read " + fileName + ": " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Utility method to get the smallest size a section can have, from the counts of the header.
+     * 
+     * @param section one of the {@code SECTION_} constants of {@linkplain CSMappedSaveWriter}
+     * @return the size of the section in bytes
+     */
+    private long getSectionSize(int section) {
+        switch(section) {
+            case CSMappedSaveWriter.SECTION_OPCODES:            return nodeCount;
+            case CSMappedSaveWriter.SECTION_NAME_OFFSETS:       return 8L * (nodeCount + 1);
+            case CSMappedSaveWriter.SECTION_NAME_TABLE:         return 4L * nameTableSize;
+            case CSMappedSaveWriter.SECTION_EDGE_START:         return 4L * (nodeCount + 1);
+            case CSMappedSaveWriter.SECTION_EDGES:              return 4L * edgeCount;
+            case CSMappedSaveWriter.SECTION_INPUT_START:        return 4L * (nodeCount + 1);
+            case CSMappedSaveWriter.SECTION_INPUTS:             return 4L * inputCount;
+            case CSMappedSaveWriter.SECTION_KEY_NODES:          return 4L * keyCount;
+            case CSMappedSaveWriter.SECTION_ATTRIBUTES:         return (long)CSMappedSaveWriter.ATTRIBUTE_SIZE * attributeCount;
+            case CSMappedSaveWriter.SECTION_INPUT_DATA_INDEX:   return (long)CSMappedSaveWriter.DATA_INDEX_SIZE * dataCount;
+            default:                                            return 0;
+        }
+    }
+
+    /**
+     * Utility method to check the index of a node.
+     * 
+     * @param nodeIndex the index of the node
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    private void checkIndex(int nodeIndex) throws IndexOutOfBoundsException {
+        if(nodeIndex < 0 || nodeIndex >= nodeCount)
+            throw new IndexOutOfBoundsException(nodeIndex + " is an invalid index");
+    }
+
+    /**
+     * Utility method to check a value read from the file.
+     * 
+     * @param value the value
+     * @param limit the value the value needs to be below
+     * @throws IllegalStateException if the value is negative or not below the limit
+     */
+    private void checkEntry(int value, int limit) throws IllegalStateException {
+        if(value < 0 || value >= limit)
+            throw new IllegalStateException(fileName + " is damaged");
+    }
+}
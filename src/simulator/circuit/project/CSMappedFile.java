@@ -0,0 +1,199 @@
+package simulator.circuit.project;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class to read a file of any size through memory mapping.
+ * <p>
+ * A single mapping is limited to 2 GB, so the file is mapped in fixed-size segments and
+ * only the segment being read is kept mapped. Reads that stay within a segment, which is
+ * the common case for sequential access, only cost a buffer access.
+ * <p>
+ * The contents of a file can also be given already in memory, split into segments, so that
+ * they are read the same way as a mapped file.
+ * 
+ * @author Joel Tengco
+ */
+class CSMappedFile implements Closeable {
+    /**
+     * Default number of bytes mapped at once.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    /**
+     * The file being read.
+     */
+    private RandomAccessFile file;
+    /**
+     * Channel of the file being read.
+     */
+    private FileChannel channel;
+    /**
+     * Size of the file in bytes.
+     */
+    private final long size;
+    /**
+     * Number of bytes mapped at once.
+     */
+    private final int segmentSize;
+    /**
+     * Segments of the contents held in memory; null for a file that is mapped.
+     */
+    private final ByteBuffer[] segments;
+    /**
+     * The currently mapped segment; null if no segment has been mapped yet.
+     */
+    private ByteBuffer segment;
+    /**
+     * Offset within the file of the currently mapped segment.
+     */
+    private long segmentStart;
+
+    /**
+     * Opens the given file for reading with the default segment size.
+     * 
+     * @param source the file to read
+     * @throws IOException if an error occurred when opening the file
+     */
+    CSMappedFile(File source) throws IOException {
+        this(source, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the given file for reading with the given segment size.
+     * <p>
+     * Callers that read fixed-size records should use a multiple of the record size, so that
+     * no record spans two segments.
+     * 
+     * @param source the file to read
+     * @param segmentSize the number of bytes to map at once
+     * @throws IOException if an error occurred when opening the file
+     */
+    CSMappedFile(File source, int segmentSize) throws IOException {
+        file = new RandomAccessFile(source, "r");
+        channel = file.getChannel();
+        size = channel.size();
+        this.segmentSize = segmentSize;
+        segments = null;
+        segmentStart = -1;
+    }
+
+    /**
+     * Reads contents held in memory as if they were a mapped file.
+     * 
+     * @param segments the contents, where every segment but the last holds the given number of bytes
+     * @param segmentSize the number of bytes of each segment, a multiple of 8
+     */
+    CSMappedFile(ByteBuffer[] segments, int segmentSize) {
+        long total = 0;
+
+        for(ByteBuffer contents : segments)
+            total += contents.limit();
+
+        this.segments = segments;
+        this.segmentSize = segmentSize;
+        size = total;
+        segmentStart = -1;
+    }
+
+    /**
+     * Gets the size of the file.
+     * 
+     * @return the number of bytes in the file
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Gets the segment containing the given offset, mapping it if needed.
+     * <p>
+     * The returned buffer starts at {@linkplain #getSegmentStart()}.
+     * 
+     * @param offset an offset within the file
+     * @return the mapped segment
+     * @throws IOException if an error occurred when mapping the segment
+     */
+    ByteBuffer getSegment(long offset) throws IOException {
+        if(segment == null || offset < segmentStart || offset >= segmentStart + segment.limit()) {
+            if(offset < 0 || offset >= size)
+                throw new IndexOutOfBoundsException(offset + " is outside of the file");
+
+            long start = offset - offset % segmentSize;
+            if(segments != null)
+                segment = segments[(int)(start / segmentSize)];
+            else
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+            segmentStart = start;
+        }
+
+        return segment;
+    }
+
+    /**
+     * Gets the offset within the file of the segment last returned by {@linkplain #getSegment(long)}.
+     * 
+     * @return the offset of the current segment
+     */
+    long getSegmentStart() {
+        return segmentStart;
+    }
+
+    /**
+     * Gets the byte at the given offset.
+     * 
+     * @param offset an offset within the file
+     * @return the byte at the offset
+     * @throws IOException if an error occurred when mapping the file
+     */
+    byte get(long offset) throws IOException {
+        return getSegment(offset).get((int)(offset - segmentStart));
+    }
+
+    /**
+     * Gets the int at the given offset.
+     * <p>
+     * The int must not span two segments, which holds for offsets that are a multiple of 4
+     * since the segment size is a multiple of 8.
+     * 
+     * @param offset an offset within the file
+     * @return the int at the offset
+     * @throws IOException if an error occurred when mapping the file
+     */
+    int getInt(long offset) throws IOException {
+        return getSegment(offset).getInt((int)(offset - segmentStart));
+    }
+
+    /**
+     * Gets the long at the given offset.
+     * <p>
+     * The long must not span two segments, which holds for offsets that are a multiple of 8
+     * since the segment size is a multiple of 8.
+     * 
+     * @param offset an offset within the file
+     * @return the long at the offset
+     * @throws IOException if an error occurred when mapping the file
+     */
+    long getLong(long offset) throws IOException {
+        return getSegment(offset).getLong((int)(offset - segmentStart));
+    }
+
+    /**
+     * Closes the underlying file.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        if(file != null) {
+            file.close();
+            file = null;
+            channel = null;
+            segment = null;
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package simulator.circuit.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Class to write a circuit to a save file that is opened through memory mapping by
+ * {@linkplain CSMappedCircuit}.
+ * <p>
+ * Unlike the files of {@linkplain CSSaveWriter}, which have to be read from start to end, every
+ * part of this layout has a fixed size per entry, so any node, name or edge can be found from
+ * its index without reading what comes before it. The file starts with a header holding the
+ * counts and the offset of each section, followed by the description of the circuit of
+ * {@linkplain CSSaveInfo}; each section starts at a multiple of 8 bytes:
+ * <ul>
+ *  <li>opcodes: one byte per node, as in {@linkplain CSSaveWriter}</li>
+ *  <li>name offsets: a long per node, plus one, where each name starts within the names</li>
+ *  <li>names: the names of the nodes in UTF-8, one after the other</li>
+ *  <li>name table: an open addressing hash table of node indeces, or -1 for empty slots,
+ *      so that a node is found by its name without reading every name</li>
+ *  <li>edge starts and edges: the adjacency lists in compressed sparse row form, as ints</li>
+ *  <li>input starts and inputs: the nodes each node reads, in the order it reads them</li>
+ *  <li>key nodes: the indeces of the nodes that are not gates, and of the tracked gates</li>
+ *  <li>attributes: the index, track number and delay of the nodes flagged as having them</li>
+ *  <li>input data index: the index of each flagged input variable node and the offset of its
+ *      data within the input data</li>
+ *  <li>input data: the position within the sequence, the kind and the length of the data,
+ *      then either the packed input sequence or a serialized stimulus source</li>
+ * </ul>
+ * The file is bigger than a compact save file, but it is opened in the same time no matter
+ * how big the circuit is.
+ * 
+ * @author Joel Tengco
+ */
+public class CSMappedSaveWriter implements Closeable {
+    /**
+     * Identifies a file as a mapped save file; "CSMS" in ASCII.
+     */
+    static final int MAGIC = 0x43534D53;
+    /**
+     * Version of the layout written by this class.
+     */
+    static final int VERSION = 2;
+    /**
+     * Section of the opcodes.
+     */
+    static final int SECTION_OPCODES = 0;
+    /**
+     * Section of the offsets of the names.
+     */
+    static final int SECTION_NAME_OFFSETS = 1;
+    /**
+     * Section of the names.
+     */
+    static final int SECTION_NAMES = 2;
+    /**
+     * Section of the hash table of the names.
+     */
+    static final int SECTION_NAME_TABLE = 3;
+    /**
+     * Section of the starts of the adjacency lists.
+     */
+    static final int SECTION_EDGE_START = 4;
+    /**
+     * Section of the targets of the edges.
+     */
+    static final int SECTION_EDGES = 5;
+    /**
+     * Section of the starts of the inputs of the nodes.
+     */
+    static final int SECTION_INPUT_START = 6;
+    /**
+     * Section of the inputs of the nodes.
+     */
+    static final int SECTION_INPUTS = 7;
+    /**
+     * Section of the key nodes.
+     */
+    static final int SECTION_KEY_NODES = 8;
+    /**
+     * Section of the track numbers and delays.
+     */
+    static final int SECTION_ATTRIBUTES = 9;
+    /**
+     * Section of the index of the input data.
+     */
+    static final int SECTION_INPUT_DATA_INDEX = 10;
+    /**
+     * Section of the input data.
+     */
+    static final int SECTION_INPUT_DATA = 11;
+    /**
+     * Number of sections.
+     */
+    static final int SECTION_COUNT = 12;
+    /**
+     * Size of the header: the magic, the version, eight counts and the offset of each section.
+     * From version 2 on, the description of the circuit follows it.
+     */
+    static final int HEADER_SIZE = 40 + 8 * SECTION_COUNT;
+    /**
+     * Size of an entry of the attributes section.
+     */
+    static final int ATTRIBUTE_SIZE = 12;
+    /**
+     * Size of an entry of the input data index section.
+     */
+    static final int DATA_INDEX_SIZE = 16;
+    /**
+     * Size of the buffer that gathers the file before it is written.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The file being written.
+     */
+    private RandomAccessFile file;
+    /**
+     * Channel of the file being written.
+     */
+    private FileChannel channel;
+    /**
+     * Buffer that gathers the file before it is written.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Number of bytes written so far, including those still in the buffer.
+     */
+    private long position;
+
+    /**
+     * Creates a mapped save file to write a circuit to.
+     * 
+     * @param target the file to write; an existing file is overwritten
+     * @throws IOException if an error occurred when creating the file
+     */
+    public CSMappedSaveWriter(File target) throws IOException {
+        file = new RandomAccessFile(target, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the given circuit to the mapped save file.
+     * 
+     * @param circuit the circuit to write
+     * @throws IOException if an error occurred when writing
+     */
+    public void writeCircuit(CSGraph circuit) throws IOException {
+        int size = circuit.getSize();
+        int[] opcodes = new int[size];
+        int[] edgeStart = new int[size + 1];
+        int[] edgeTargets = circuit.getEdges(edgeStart);
+        int[] inputStart = new int[size + 1];
+        int[] inputs = CSSaveWriter.getInputs(circuit, edgeStart, edgeTargets, inputStart);
+        ArrayList<byte[]> inputData = new ArrayList<byte[]>();
+        long[] sections = new long[SECTION_COUNT];
+        int[] nameTable;
+        int keyCount = 0;
+        int attributeCount = 0;
+        long nameOffset = 0;
+        long dataOffset = 0;
+        CSSaveInfo info;
+        CSNode node;
+
+        for(int i = 0; i < size; i++) {
+            node = circuit.getNode(i);
+            opcodes[i] = CSSaveWriter.getOpcode(node);
+            if(isKeyNode(node))
+                keyCount++;
+            if((opcodes[i] & (CSSaveWriter.FLAG_TRACKED | CSSaveWriter.FLAG_DELAY)) != 0)
+                attributeCount++;
+            if((opcodes[i] & CSSaveWriter.FLAG_INPUT_DATA) != 0)
+                inputData.add(getInputData((InputVariableNode)node));
+        }
+        info = CSSaveInfo.describe(circuit, opcodes, inputStart, inputs, edgeStart, edgeTargets, System.currentTimeMillis());
+
+        // the header is written last, once the offsets of the sections are known
+        position = HEADER_SIZE + CSSaveInfo.SIZE;
+        channel.position(position);
+
+        sections[SECTION_OPCODES] = startSection();
+        for(int i = 0; i < size; i++)
+            putByte(opcodes[i]);
+
+        sections[SECTION_NAME_OFFSETS] = startSection();
+        for(int i = 0; i < size; i++) {
+            putLong(nameOffset);
+            nameOffset += getEncodedLength(circuit.getNode(i).getName());
+        }
+        putLong(nameOffset);
+
+        sections[SECTION_NAMES] = startSection();
+        for(int i = 0; i < size; i++)
+            putBytes(circuit.getNode(i).getName().getBytes(StandardCharsets.UTF_8));
+
+        sections[SECTION_NAME_TABLE] = startSection();
+        nameTable = getNameTable(circuit);
+        for(int slot : nameTable)
+            putInt(slot);
+
+        sections[SECTION_EDGE_START] = startSection();
+        for(int start : edgeStart)
+            putInt(start);
+        sections[SECTION_EDGES] = startSection();
+        for(int targetIndex : edgeTargets)
+            putInt(targetIndex);
+
+        sections[SECTION_INPUT_START] = startSection();
+        for(int start : inputStart)
+            putInt(start);
+        sections[SECTION_INPUTS] = startSection();
+        for(int inputIndex : inputs)
+            putInt(inputIndex);
+
+        sections[SECTION_KEY_NODES] = startSection();
+        for(int i = 0; i < size; i++)
+            if(isKeyNode(circuit.getNode(i)))
+                putInt(i);
+
+        sections[SECTION_ATTRIBUTES] = startSection();
+        for(int i = 0; i < size; i++) {
+            if((opcodes[i] & (CSSaveWriter.FLAG_TRACKED | CSSaveWriter.FLAG_DELAY)) != 0) {
+                putInt(i);
+                putInt(circuit.getNode(i).getTrackNum());
+                putInt(circuit.getNode(i).getDelay());
+            }
+        }
+
+        sections[SECTION_INPUT_DATA_INDEX] = startSection();
+        for(int i = 0, d = 0; i < size; i++) {
+            if((opcodes[i] & CSSaveWriter.FLAG_INPUT_DATA) != 0) {
+                putInt(i);
+                putInt(0);
+                putLong(dataOffset);
+                dataOffset += inputData.get(d++).length;
+            }
+        }
+
+        sections[SECTION_INPUT_DATA] = startSection();
+        for(byte[] data : inputData)
+            putBytes(data);
+        flush();
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(size);
+        buffer.putInt(edgeTargets.length);
+        buffer.putInt(inputs.length);
+        buffer.putInt(keyCount);
+        buffer.putInt(attributeCount);
+        buffer.putInt(inputData.size());
+        buffer.putInt(nameTable.length);
+        buffer.putInt(0);
+        for(long sectionOffset : sections)
+            buffer.putLong(sectionOffset);
+        info.write(buffer);
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer, HEADER_SIZE + CSSaveInfo.SIZE - buffer.remaining());
+        buffer.clear();
+    }
+
+    /**
+     * Closes the mapped save file.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        if(file == null)
+            return;
+
+        flush();
+        channel.close();
+        file.close();
+        file = null;
+    }
+
+    /**
+     * Returns whether a node is listed among the key nodes: every node but untracked gates.
+     * 
+     * @param node the node
+     * @return true if the node is not a gate or is tracked
+     */
+    static boolean isKeyNode(CSNode node) {
+        return !(node instanceof Gate) || node.getTrackNum() > 0;
+    }
+
+    /**
+     * Gets the slot of the name table that a search for a name starts at.
+     * 
+     * @param name the name
+     * @param tableSize the number of slots of the table, a power of two
+     * @return the first slot to look at
+     */
+    static int getNameSlot(String name, int tableSize) {
+        return getNameSlot(name.hashCode(), tableSize);
+    }
+
+    /**
+     * Gets the slot of the name table that a search for a name with the given hash code starts at.
+     * 
+     * @param hash the hash code of the name as a string
+     * @param tableSize the number of slots of the table, a power of two
+     * @return the first slot to look at
+     */
+    static int getNameSlot(int hash, int tableSize) {
+        return (hash ^ (hash >>> 16)) & (tableSize - 1);
+    }
+
+    /**
+     * Gets the number of slots of the name table of a circuit, at least twice as many as nodes.
+     * 
+     * @param nodeCount the number of nodes of the circuit
+     * @return the number of slots, a power of two
+     */
+    static int getNameTableSize(int nodeCount) {
+        return Integer.highestOneBit(Math.max(nodeCount, 1)) << 2;
+    }
+
+    /**
+     * Utility method to build the hash table of the names of a circuit.
+     * 
+     * @param circuit the circuit
+     * @return the index of the node of every slot, or -1 for empty slots
+     */
+    private static int[] getNameTable(CSGraph circuit) {
+        int tableSize = getNameTableSize(circuit.getSize());
+        int[] table = new int[tableSize];
+        int slot;
+
+        for(int s = 0; s < tableSize; s++)
+            table[s] = -1;
+        for(int i = 0; i < circuit.getSize(); i++) {
+            slot = getNameSlot(circuit.getNode(i).getName(), tableSize);
+            while(table[slot] != -1)
+                slot = (slot + 1) & (tableSize - 1);
+            table[slot] = i;
+        }
+
+        return table;
+    }
+
+    /**
+     * Utility method to get the number of bytes of a name in UTF-8.
+     * 
+     * @param name the name
+     * @return the length of the encoded name
+     */
+    private static int getEncodedLength(String name) {
+        int length = 0;
+        char c;
+
+        for(int k = 0; k < name.length(); k++) {
+            c = name.charAt(k);
+            if(c < 0x80)
+                length++;
+            else if(c < 0x800)
+                length += 2;
+            else if(Character.isHighSurrogate(c) && k + 1 < name.length() && Character.isLowSurrogate(name.charAt(k + 1))) {
+                length += 4;
+                k++;
+            } else
+                length += 3;
+        }
+
+        return length;
+    }
+
+    /**
+     * Encodes the position and values of an input variable node as an entry of the input data,
+     * padded to a multiple of 8 bytes.
+     * 
+     * @param inputNode the input variable node
+     * @return the entry
+     * @throws IOException if the stimulus source could not be serialized
+     */
+    static byte[] getInputData(InputVariableNode inputNode) throws IOException {
+        long[] words = inputNode.getInputSeqWords();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out;
+        byte[] payload = new byte[0];
+        int kind = CSSaveWriter.DATA_NONE;
+        int length = 0;
+        ByteBuffer entry;
+
+        if(words != null) {
+            kind = CSSaveWriter.DATA_SEQUENCE;
+            length = inputNode.getInputSeqLength();
+        } else if(inputNode.getStimulusSource() instanceof Serializable) {
+            out = new ObjectOutputStream(bytes);
+            out.writeObject(inputNode.getStimulusSource());
+            out.close();
+            kind = CSSaveWriter.DATA_SOURCE;
+            payload = bytes.toByteArray();
+            length = payload.length;
+        }
+
+        entry = ByteBuffer.allocate(16 + (kind == CSSaveWriter.DATA_SEQUENCE ? words.length * 8 : (payload.length + 7) & ~7));
+        entry.putLong(inputNode.getSeqPosition());
+        entry.putInt(kind);
+        entry.putInt(length);
+        if(kind == CSSaveWriter.DATA_SEQUENCE)
+            for(long word : words)
+                entry.putLong(word);
+        else
+            entry.put(payload);
+
+        return entry.array();
+    }
+
+    /**
+     * Utility method to pad the file to a multiple of 8 bytes, where the next section starts.
+     * 
+     * @return the offset of the next section
+     * @throws IOException if an error occurred when writing
+     */
+    private long startSection() throws IOException {
+        while(position % 8 != 0)
+            putByte(0);
+
+        return position;
+    }
+
+    /**
+     * Utility method to write a byte.
+     * 
+     * @param value the byte, in the low 8 bits
+     * @throws IOException if an error occurred when writing
+     */
+    private void putByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte)value);
+        position++;
+    }
+
+    /**
+     * Utility method to write an int.
+     * 
+     * @param value the int
+     * @throws IOException if an error occurred when writing
+     */
+    private void putInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+        position += 4;
+    }
+
+    /**
+     * Utility method to write a long.
+     * 
+     * @param value the long
+     * @throws IOException if an error occurred when writing
+     */
+    private void putLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+        position += 8;
+    }
+
+    /**
+     * Utility method to write an array of bytes of any length.
+     * 
+     * @param bytes the bytes
+     * @throws IOException if an error occurred when writing
+     */
+    private void putBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        int count;
+
+        while(offset < bytes.length) {
+            ensure(1);
+            count = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+        position += bytes.length;
+    }
+
+    /**
+     * Utility method to make room in the buffer for the given number of bytes.
+     * 
+     * @param count the number of bytes, at most the size of the buffer
+     * @throws IOException if an error occurred when writing the buffer to the file
+     */
+    private void ensure(int count) throws IOException {
+        if(buffer.remaining() < count)
+            flush();
+    }
+
+    /**
+     * Utility method to write the contents of the buffer to the file.
+     * 
+     * @throws IOException if an error occurred when writing
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,1572 @@
+package simulator.circuit.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class to read a circuit from a gate-level netlist, either in the ".bench" format of the ISCAS
+ * and ITC benchmarks or in a subset of structural Verilog.
+ * <p>
+ * Every signal of the netlist is driven by one statement, which becomes nodes as follows:
+ * <ul>
+ *  <li>an input becomes an input variable node with the name of the signal</li>
+ *  <li>AND, NAND, OR, NOR, XOR and XNOR gates become gates of the same type named after the
+ *      signal they drive</li>
+ *  <li>a NOT gate becomes the inverter of the node it reads, named with "-inverter" like the
+ *      inverters added by {@linkplain CSEngine}; NOT gates reading the same signal share one
+ *      inverter, and the inverse of an output node of a flip-flop is its other output node</li>
+ *  <li>a DFF becomes a D flip-flop named after the signal it drives, with the output nodes
+ *      "-out" and "-outneg" that {@linkplain CSEngine} gives every D flip-flop; the signal
+ *      is read from the "-out" node</li>
+ *  <li>a buffer gets no node, and the signal it drives is another name for the signal it reads</li>
+ * </ul>
+ * The signals driven by NOT gates and buffers are thus not node names. Once buffers are left
+ * out, a gate may read a node more than once; AND, NAND, OR and NOR gates read it once, and
+ * for XOR and XNOR gates the node cancels out in pairs. An XOR or XNOR gate whose inputs all
+ * cancel out is a constant, and becomes an AND or OR gate of a node and its inverter.
+ * Every declared output becomes an output variable node named after the signal with "-output".
+ * The circuit has one clock, so the clocks of flip-flops are left out, along with inputs that
+ * are only used as a clock.
+ * <p>
+ * Verilog files hold one module without submodules. The module can declare its ports in its
+ * header or in its body, and declares signals with {@code input}, {@code output} and
+ * {@code wire}; vectors are split into single bits named like {@code a[0]}. The module is
+ * made of the primitives {@code and}, {@code nand}, {@code or}, {@code nor}, {@code xor},
+ * {@code xnor}, {@code not} and {@code buf}, which may be given a delay with {@code #}, of
+ * {@code dff} cells connected by position as (Q, D) or (CK, Q, D) or by the ports D, Q, QN
+ * and CK, and of assignments of a signal or its inverse.
+ * <p>
+ * The file is cut into chunks of about {@linkplain #CHUNK_SIZE} bytes at the ends of statements,
+ * and every step after that works on the chunks in parallel as tasks of the common fork/join
+ * pool: parsing the statements, naming the signals, finding the signals each statement reads,
+ * creating the nodes and connecting them. Nodes are numbered in the order of the file, so the
+ * circuit does not depend on how the tasks were run, and it is built all at once like a
+ * circuit read from a save file rather than one node at a time.
+ * 
+ * @author Joel Tengco
+ */
+public class CSNetlistReader {
+    /**
+     * Number of bytes after which the file is cut into another chunk at the next statement.
+     */
+    static final int CHUNK_SIZE = 1 << 20;
+    /**
+     * Suffix of the names of the output variable nodes of declared outputs.
+     */
+    public static final String OUTPUT_SUFFIX = "-output";
+    /**
+     * Statement type of a buffer; unlike the other statement types, it is not a type of node.
+     */
+    private static final int TYPE_BUFFER = 12;
+    /**
+     * Statement type of the clock of a flip-flop, which only names the signal of the clock.
+     */
+    private static final int TYPE_CLOCK = 13;
+    /**
+     * Step of parsing the statements of a chunk.
+     */
+    private static final int STEP_PARSE = 0;
+    /**
+     * Step of naming the signals driven by a chunk.
+     */
+    private static final int STEP_DEFINE = 1;
+    /**
+     * Step of finding the signals read by the statements of a chunk.
+     */
+    private static final int STEP_RESOLVE = 2;
+    /**
+     * Step of creating the nodes of a chunk.
+     */
+    private static final int STEP_CREATE = 3;
+    /**
+     * Step of connecting the nodes of a chunk to the nodes they read.
+     */
+    private static final int STEP_CONNECT = 4;
+    /**
+     * Token found at the end of a chunk.
+     */
+    private static final int TOKEN_END = 0;
+    /**
+     * Token of a name.
+     */
+    private static final int TOKEN_NAME = 1;
+    /**
+     * Token of a number.
+     */
+    private static final int TOKEN_NUMBER = 2;
+    /**
+     * Token of a single character of punctuation.
+     */
+    private static final int TOKEN_SYMBOL = 3;
+    /**
+     * Token of the end of a line, which ends statements of ".bench" files.
+     */
+    private static final int TOKEN_LINE = 4;
+
+    /**
+     * Name of the file, for messages.
+     */
+    private final String fileName;
+    /**
+     * Contents of the file.
+     */
+    private final byte[] bytes;
+    /**
+     * Whether the file is Verilog rather than ".bench".
+     */
+    private final boolean verilog;
+    /**
+     * Chunks of the file, in order.
+     */
+    private Chunk[] chunks;
+    /**
+     * Index of every signal by name.
+     */
+    private ConcurrentHashMap<String, Integer> signalIndeces;
+    /**
+     * Type of the statement driving each signal.
+     */
+    private int[] signalTypes;
+    /**
+     * Name of each signal.
+     */
+    private String[] signalNames;
+    /**
+     * Delay of the gate driving each signal, or 0 if it has none.
+     */
+    private int[] signalDelays;
+    /**
+     * Number of signals read by the statement driving each signal.
+     */
+    private int[] signalFanIns;
+    /**
+     * Signal read by the statement driving each signal, for statements that read one signal.
+     */
+    private int[] signalSources;
+    /**
+     * Whether each signal is read by a statement other than a clock.
+     */
+    private boolean[] readSignals;
+    /**
+     * Whether each signal is the clock of a flip-flop.
+     */
+    private boolean[] clockSignals;
+    /**
+     * Index of the node each signal is read from, or -1 for inputs that are only clocks.
+     */
+    private int[] signalNodes;
+    /**
+     * Node type of each node.
+     */
+    private int[] nodeTypes;
+    /**
+     * Node read by each inverter.
+     */
+    private int[] inverterSources;
+    /**
+     * Delay of each inverter, or 0 if it has none.
+     */
+    private int[] inverterDelays;
+    /**
+     * Node read through an inverter by each XOR or XNOR gate whose inputs all cancel out.
+     */
+    private int[] constantComplements;
+    /**
+     * Index of the node of the first inverter.
+     */
+    private int firstInverterNode;
+    /**
+     * Signal read by each declared output, in order.
+     */
+    private int[] outputSignals;
+    /**
+     * Index of the node of the first declared output.
+     */
+    private int firstOutputNode;
+    /**
+     * The nodes of the circuit.
+     */
+    private CSNode[] nodes;
+    /**
+     * Start of the inputs of each node in {@code inputSources}, and their total at the end.
+     */
+    private int[] inputStart;
+    /**
+     * End of the inputs of each node in {@code inputSources}, which is before the start of the
+     * next node for gates that read a node more than once.
+     */
+    private int[] inputEnd;
+    /**
+     * Index of the node read by every input of every node.
+     */
+    private int[] inputSources;
+
+    /**
+     * Reads a netlist file into memory, choosing its format from its extension.
+     * 
+     * @param source the file to read
+     * @throws IOException if an error occurred when reading the file, or it is not a netlist
+     */
+    public CSNetlistReader(File source) throws IOException {
+        if(!isNetlistFile(source.getName()))
+            throw new IOException(source.getName() + " is not a \".bench\" or \".v\" netlist");
+
+        fileName = source.getName();
+        verilog = !source.getName().toLowerCase().endsWith(".bench");
+        bytes = Files.readAllBytes(source.toPath());
+    }
+
+    /**
+     * Returns whether a file name has the extension of a netlist this class reads.
+     * 
+     * @param fileName the file name
+     * @return true for ".bench" and ".v" files
+     */
+    public static boolean isNetlistFile(String fileName) {
+        String name = fileName.toLowerCase();
+
+        return name.endsWith(".bench") || name.endsWith(".v");
+    }
+
+    /**
+     * Builds the circuit described by the netlist.
+     * 
+     * @return the circuit
+     * @throws IOException if the netlist has an error or uses what is not supported; the
+     * message gives the line of the error
+     */
+    public CSGraph readCircuit() throws IOException {
+        ArrayList<CSNode> nodeList;
+        ArrayList<LinkedList<Integer>> edges;
+        Integer target;
+        int signalCount = 0;
+        int outputCount = 0;
+        int moduleCount = 0;
+
+        splitChunks();
+        runStep(STEP_PARSE);
+
+        for(Chunk chunk : chunks) {
+            chunk.signalBase = signalCount;
+            chunk.outputBase = outputCount;
+            signalCount += chunk.signalCount;
+            outputCount += chunk.outputCount;
+            moduleCount += chunk.moduleCount;
+        }
+        if(verilog && moduleCount != 1)
+            throw new IOException(fileName + ": exactly one module is supported, found " + moduleCount);
+
+        signalIndeces = new ConcurrentHashMap<String, Integer>(signalCount * 2);
+        signalTypes = new int[signalCount];
+        signalNames = new String[signalCount];
+        signalDelays = new int[signalCount];
+        signalFanIns = new int[signalCount];
+        signalSources = new int[signalCount];
+        readSignals = new boolean[signalCount];
+        clockSignals = new boolean[signalCount];
+        outputSignals = new int[outputCount];
+        runStep(STEP_DEFINE);
+        runStep(STEP_RESOLVE);
+
+        assignNodes();
+        inputSources = new int[inputStart[nodes.length]];
+        runStep(STEP_CREATE);
+        createInverters();
+        runStep(STEP_CONNECT);
+
+        nodeList = new ArrayList<CSNode>(Arrays.asList(nodes));
+        edges = new ArrayList<LinkedList<Integer>>(nodes.length);
+        for(int i = 0; i < nodes.length; i++)
+            edges.add(new LinkedList<Integer>());
+        for(int i = 0; i < nodes.length; i++) {
+            target = i;
+            for(int k = inputStart[i]; k < inputEnd[i]; k++)
+                edges.get(inputSources[k]).add(target);
+        }
+
+        try {
+            return new CSGraph(nodeList, edges);
+        } catch(IllegalArgumentException iae) {
+            throw new IOException(fileName + ": " + iae.getMessage());
+        }
+    }
+
+    /**
+     * Utility method to cut the file into chunks that end at the end of a statement.
+     * <p>
+     * Statements of ".bench" files end at the end of a line, and statements of Verilog files at
+     * a semicolon, which is only looked for outside of comments and escaped names.
+     */
+    private void splitChunks() {
+        ArrayList<Chunk> chunkList = new ArrayList<Chunk>();
+        int start = 0;
+        int i;
+
+        if(!verilog) {
+            for(i = CHUNK_SIZE; i < bytes.length; i++) {
+                if(bytes[i] == '\n') {
+                    chunkList.add(new Chunk(start, i + 1));
+                    start = i + 1;
+                    i += CHUNK_SIZE;
+                }
+            }
+        } else {
+            for(i = 0; i < bytes.length; i++) {
+                if(bytes[i] == '/' && i + 1 < bytes.length && bytes[i + 1] == '/') {
+                    while(i < bytes.length && bytes[i] != '\n')
+                        i++;
+                } else if(bytes[i] == '/' && i + 1 < bytes.length && bytes[i + 1] == '*') {
+                    i += 2;
+                    while(i + 1 < bytes.length && !(bytes[i] == '*' && bytes[i + 1] == '/'))
+                        i++;
+                    i++;
+                } else if(bytes[i] == '\\') {
+                    while(i < bytes.length && (bytes[i] & 0xFF) > ' ')
+                        i++;
+                } else if(bytes[i] == ';' && i + 1 - start >= CHUNK_SIZE) {
+                    chunkList.add(new Chunk(start, i + 1));
+                    start = i + 1;
+                }
+            }
+        }
+        if(start < bytes.length || chunkList.isEmpty())
+            chunkList.add(new Chunk(start, bytes.length));
+
+        chunks = chunkList.toArray(new Chunk[chunkList.size()]);
+    }
+
+    /**
+     * Utility method to run a step on every chunk in parallel.
+     * 
+     * @param step the step
+     * @throws IOException the error of the first chunk whose step failed
+     */
+    private void runStep(int step) throws IOException {
+        ForkJoinPool.commonPool().invoke(new StepTask(step, 0, chunks.length));
+
+        for(Chunk chunk : chunks)
+            if(chunk.error != null)
+                throw chunk.error;
+    }
+
+    /**
+     * Utility method to number the nodes of the signals and outputs.
+     * <p>
+     * Inputs, gates and flip-flops are numbered in the order of the file; a flip-flop takes
+     * three nodes and is read from the second. The signals of buffers and NOT gates are then
+     * found by following the signals they read, which can come later in the file, and the
+     * inverters are numbered as they are first needed. XOR and XNOR gates whose inputs all cancel
+     * out are then turned into constants, which can number more inverters. Declared outputs come
+     * last.
+     * 
+     * @throws IOException if buffers and NOT gates form a loop
+     */
+    private void assignNodes() throws IOException {
+        int bound = signalTypes.length * 3 + outputSignals.length;
+        int[] fanIns = new int[bound];
+        int[] inverterOf = new int[bound];
+        int[] stack = new int[signalTypes.length];
+        int nodeCount = 0;
+        int depth;
+        int top;
+        int next;
+        int node;
+
+        signalNodes = new int[signalTypes.length];
+        nodeTypes = new int[bound];
+        inverterSources = new int[bound];
+        inverterDelays = new int[bound];
+        constantComplements = new int[bound];
+        for(int s = 0; s < signalTypes.length; s++) {
+            signalNodes[s] = -1;
+            if(signalTypes[s] == CSSaveWriter.TYPE_INPUT) {
+                if(readSignals[s] || !clockSignals[s]) {
+                    nodeTypes[nodeCount] = CSSaveWriter.TYPE_INPUT;
+                    signalNodes[s] = nodeCount++;
+                }
+            } else if(signalTypes[s] == CSSaveWriter.TYPE_DFF) {
+                nodeTypes[nodeCount] = CSSaveWriter.TYPE_DFF;
+                nodeTypes[nodeCount + 1] = CSSaveWriter.TYPE_FF_OUT;
+                nodeTypes[nodeCount + 2] = CSSaveWriter.TYPE_FF_OUT_NEGATED;
+                fanIns[nodeCount] = 1;
+                fanIns[nodeCount + 1] = 1;
+                fanIns[nodeCount + 2] = 1;
+                signalNodes[s] = nodeCount + 1;
+                nodeCount += 3;
+            } else if(signalTypes[s] != CSSaveWriter.TYPE_INVERTER && signalTypes[s] != TYPE_BUFFER) {
+                nodeTypes[nodeCount] = signalTypes[s];
+                fanIns[nodeCount] = signalFanIns[s];
+                signalNodes[s] = nodeCount++;
+            }
+        }
+
+        firstInverterNode = nodeCount;
+        Arrays.fill(inverterOf, -1);
+        for(int s = 0; s < signalTypes.length; s++) {
+            if(signalNodes[s] != -1 || (signalTypes[s] != CSSaveWriter.TYPE_INVERTER && signalTypes[s] != TYPE_BUFFER))
+                continue;
+
+            // -2 marks the signals being followed
+            depth = 0;
+            stack[depth++] = s;
+            signalNodes[s] = -2;
+            while(depth > 0) {
+                top = stack[depth - 1];
+                next = signalSources[top];
+                if(signalNodes[next] == -2)
+                    throw new IOException(fileName + ": the buffers and NOT gates of " + signalNames[next] + " form a loop");
+                if(signalNodes[next] == -1) {
+                    stack[depth++] = next;
+                    signalNodes[next] = -2;
+                    continue;
+                }
+
+                node = signalNodes[next];
+                if(signalTypes[top] == CSSaveWriter.TYPE_INVERTER) {
+                    if(nodeTypes[node] == CSSaveWriter.TYPE_FF_OUT)
+                        node++;
+                    else if(nodeTypes[node] == CSSaveWriter.TYPE_FF_OUT_NEGATED)
+                        node--;
+                    else {
+                        if(inverterOf[node] == -1) {
+                            inverterOf[node] = nodeCount;
+                            nodeTypes[nodeCount] = CSSaveWriter.TYPE_INVERTER;
+                            fanIns[nodeCount] = 1;
+                            inverterSources[nodeCount] = node;
+                            inverterDelays[nodeCount] = signalDelays[top];
+                            nodeCount++;
+                        }
+                        node = inverterOf[node];
+                    }
+                }
+                signalNodes[top] = node;
+                depth--;
+            }
+        }
+
+        nodeCount = assignConstants(fanIns, inverterOf, nodeCount);
+
+        firstOutputNode = nodeCount;
+        for(int o = 0; o < outputSignals.length; o++)
+            fanIns[nodeCount++] = 1;
+
+        nodes = new CSNode[nodeCount];
+        inputStart = new int[nodeCount + 1];
+        inputEnd = new int[nodeCount];
+        for(int i = 0; i < nodeCount; i++) {
+            inputStart[i + 1] = inputStart[i] + fanIns[i];
+            inputEnd[i] = inputStart[i + 1];
+        }
+    }
+
+    /**
+     * Utility method to turn the XOR and XNOR gates whose inputs all cancel out into constants.
+     * <p>
+     * Every node read by such a gate is read an even number of times, so an XOR gate is always 0
+     * and an XNOR gate always 1. The gate is read as an AND gate, or an OR gate for XNOR, of the
+     * first node it reads and the complement of that node, numbering an inverter if the node has
+     * none yet.
+     * 
+     * @param fanIns the number of inputs of each node
+     * @param inverterOf the inverter of each node, or -1 if it has none
+     * @param nodeCount the number of nodes numbered so far
+     * @return the number of nodes numbered, with the new inverters
+     */
+    private int assignConstants(int[] fanIns, int[] inverterOf, int nodeCount) {
+        int[] sources = new int[0];
+        int signal;
+        int length;
+        int node;
+        int source;
+        int run;
+
+        for(Chunk chunk : chunks) {
+            signal = chunk.signalBase;
+            for(int i = 0; i < chunk.count; i++) {
+                if(!isDriving(chunk.types[i]))
+                    continue;
+                if(chunk.types[i] != CSSaveWriter.TYPE_XOR && chunk.types[i] != CSSaveWriter.TYPE_NXOR) {
+                    signal++;
+                    continue;
+                }
+
+                length = chunk.argStart[i + 1] - chunk.argStart[i];
+                if(sources.length < length)
+                    sources = new int[length];
+                for(int k = 0; k < length; k++)
+                    sources[k] = signalNodes[chunk.argSignals[chunk.argStart[i] + k]];
+                Arrays.sort(sources, 0, length);
+                run = 1;
+                for(int k = 1; k < length && run >= 0; k++) {
+                    if(sources[k] == sources[k - 1])
+                        run++;
+                    else if(run % 2 == 0)
+                        run = 1;
+                    else
+                        run = -1;
+                }
+                if(run % 2 != 0) {
+                    signal++;
+                    continue;
+                }
+
+                node = signalNodes[signal];
+                source = signalNodes[chunk.argSignals[chunk.argStart[i]]];
+                if(nodeTypes[source] == CSSaveWriter.TYPE_FF_OUT)
+                    constantComplements[node] = source + 1;
+                else if(nodeTypes[source] == CSSaveWriter.TYPE_FF_OUT_NEGATED)
+                    constantComplements[node] = source - 1;
+                else if(nodeTypes[source] == CSSaveWriter.TYPE_INVERTER)
+                    constantComplements[node] = inverterSources[source];
+                else {
+                    if(inverterOf[source] == -1) {
+                        inverterOf[source] = nodeCount;
+                        nodeTypes[nodeCount] = CSSaveWriter.TYPE_INVERTER;
+                        fanIns[nodeCount] = 1;
+                        inverterSources[nodeCount] = source;
+                        nodeCount++;
+                    }
+                    constantComplements[node] = inverterOf[source];
+                }
+                nodeTypes[node] = chunk.types[i] == CSSaveWriter.TYPE_XOR ? CSSaveWriter.TYPE_AND : CSSaveWriter.TYPE_OR;
+                signal++;
+            }
+        }
+        return nodeCount;
+    }
+
+    /**
+     * Utility method to create the inverters, once the nodes they read have been created.
+     * <p>
+     * An inverter is numbered after the node it reads, so the inverters are created in order.
+     */
+    private void createInverters() {
+        CSNode inputNode;
+
+        for(int i = firstInverterNode; i < firstOutputNode; i++) {
+            inputNode = nodes[inverterSources[i]];
+            nodes[i] = new Inverter(inputNode.getName() + "-inverter", inputNode);
+            nodes[i].setDelay(inverterDelays[i]);
+            inputSources[inputStart[i]] = inverterSources[i];
+        }
+    }
+
+    /**
+     * Utility method to find the line of a position in the file.
+     * 
+     * @param position the position, in bytes
+     * @return the line, starting from 1
+     */
+    private int lineOf(int position) {
+        int line = 1;
+
+        for(int i = 0; i < position && i < bytes.length; i++)
+            if(bytes[i] == '\n')
+                line++;
+
+        return line;
+    }
+
+    /**
+     * Utility method to find the node type of a gate or cell name of either format.
+     * 
+     * @param typeName the name, in any case
+     * @return the type of node or statement, or -1 if the name is not supported
+     */
+    private static int gateType(String typeName) {
+        switch(typeName.toLowerCase()) {
+            case "and":     return CSSaveWriter.TYPE_AND;
+            case "nand":    return CSSaveWriter.TYPE_NAND;
+            case "or":      return CSSaveWriter.TYPE_OR;
+            case "nor":     return CSSaveWriter.TYPE_NOR;
+            case "xor":     return CSSaveWriter.TYPE_XOR;
+            case "xnor":    return CSSaveWriter.TYPE_NXOR;
+            case "not":     return CSSaveWriter.TYPE_INVERTER;
+            case "buf":
+            case "buff":    return TYPE_BUFFER;
+            case "dff":     return CSSaveWriter.TYPE_DFF;
+            default:        return -1;
+        }
+    }
+
+    /**
+     * Utility method to check whether a statement type drives a signal.
+     * 
+     * @param type the statement type
+     * @return false for declared outputs and clocks, true otherwise
+     */
+    private static boolean isDriving(int type) {
+        return type != CSSaveWriter.TYPE_OUTPUT && type != TYPE_CLOCK;
+    }
+
+    /**
+     * Task that runs a step on a range of chunks, splitting the range among the threads of the pool.
+     * 
+     * @author Joel Tengco
+     */
+    private class StepTask extends RecursiveAction {
+        /**
+         * Needed because fork/join tasks are {@code Serializable}; tasks are never serialized.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The step to run.
+         */
+        private final int step;
+        /**
+         * Index of the first chunk of this task.
+         */
+        private final int first;
+        /**
+         * Index after the last chunk of this task.
+         */
+        private final int last;
+
+        /**
+         * Constructs the task that runs a step on a range of chunks.
+         * 
+         * @param step the step to run
+         * @param first the index of the first chunk
+         * @param last the index after the last chunk
+         */
+        StepTask(int step, int first, int last) {
+            this.step = step;
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * Runs the step on a single chunk, or splits the range in two.
+         */
+        protected void compute() {
+            int middle;
+
+            if(last - first > 1) {
+                middle = (first + last) >>> 1;
+                invokeAll(new StepTask(step, first, middle), new StepTask(step, middle, last));
+                return;
+            }
+
+            chunks[first].run(step);
+        }
+    }
+
+    /**
+     * A range of the file that ends at the end of a statement, with the statements parsed from it.
+     * 
+     * @author Joel Tengco
+     */
+    private class Chunk {
+        /**
+         * Position of the first byte of this chunk.
+         */
+        private final int start;
+        /**
+         * Position after the last byte of this chunk.
+         */
+        private final int end;
+        /**
+         * Position of the next byte to read.
+         */
+        private int position;
+        /**
+         * Type of the current token.
+         */
+        private int tokenType;
+        /**
+         * Text of the current name or number token.
+         */
+        private String tokenText;
+        /**
+         * Character of the current symbol token.
+         */
+        private char tokenSymbol;
+        /**
+         * Position of the current token.
+         */
+        private int tokenStart;
+        /**
+         * Number of statements.
+         */
+        private int count;
+        /**
+         * Type of each statement.
+         */
+        private int[] types;
+        /**
+         * Name of the signal each statement drives, declares or uses as a clock.
+         */
+        private String[] names;
+        /**
+         * Delay of each statement, or 0 if it has none.
+         */
+        private int[] delays;
+        /**
+         * Position of each statement, for messages.
+         */
+        private int[] positions;
+        /**
+         * Start of the signals read by each statement in {@code args}, and their total at the end.
+         */
+        private int[] argStart;
+        /**
+         * Names of the signals read by every statement.
+         */
+        private String[] args;
+        /**
+         * Number of signals read by every statement.
+         */
+        private int argCount;
+        /**
+         * Index of every signal read by every statement.
+         */
+        private int[] argSignals;
+        /**
+         * Ports of the instance being parsed.
+         */
+        private final ArrayList<String> ports;
+        /**
+         * Number of statements driving a signal.
+         */
+        private int signalCount;
+        /**
+         * Number of declared outputs.
+         */
+        private int outputCount;
+        /**
+         * Number of Verilog modules started.
+         */
+        private int moduleCount;
+        /**
+         * Index of the first signal driven in this chunk.
+         */
+        private int signalBase;
+        /**
+         * Index of the first output declared in this chunk.
+         */
+        private int outputBase;
+        /**
+         * Error of the last step, or null if it succeeded.
+         */
+        private IOException error;
+
+        /**
+         * Constructs a chunk of the file.
+         * 
+         * @param start the position of the first byte
+         * @param end the position after the last byte
+         */
+        Chunk(int start, int end) {
+            this.start = start;
+            this.end = end;
+            ports = new ArrayList<String>();
+        }
+
+        /**
+         * Runs a step on this chunk, keeping its error.
+         * 
+         * @param step the step
+         */
+        void run(int step) {
+            try {
+                switch(step) {
+                    case STEP_PARSE:    parse();
+                                        break;
+                    case STEP_DEFINE:   define();
+                                        break;
+                    case STEP_RESOLVE:  resolve();
+                                        break;
+                    case STEP_CREATE:   create();
+                                        break;
+                    default:            connect();
+                                        break;
+                }
+            } catch(IOException ioe) {
+                error = ioe;
+            }
+        }
+
+        /**
+         * Parses the statements of this chunk.
+         * 
+         * @throws IOException if a statement has an error
+         */
+        private void parse() throws IOException {
+            types = new int[64];
+            names = new String[64];
+            delays = new int[64];
+            positions = new int[64];
+            argStart = new int[65];
+            args = new String[128];
+            position = start;
+
+            nextToken();
+            if(verilog)
+                parseVerilog();
+            else
+                parseBench();
+            argStart[count] = argCount;
+        }
+
+        /**
+         * Gives every signal driven in this chunk its index.
+         * 
+         * @throws IOException if a signal is driven more than once
+         */
+        private void define() throws IOException {
+            int signal = signalBase;
+            Integer previous;
+
+            for(int i = 0; i < count; i++) {
+                if(!isDriving(types[i]))
+                    continue;
+                previous = signalIndeces.putIfAbsent(names[i], signal);
+                if(previous != null)
+                    throw fail(names[i] + " is driven more than once", positions[i]);
+                signalTypes[signal] = types[i];
+                signalNames[signal] = names[i];
+                signalDelays[signal] = delays[i];
+                signalFanIns[signal] = argStart[i + 1] - argStart[i];
+                signal++;
+            }
+        }
+
+        /**
+         * Finds the index of every signal read in this chunk.
+         * 
+         * @throws IOException if a signal that is read is never driven
+         */
+        private void resolve() throws IOException {
+            int signal = signalBase;
+            int output = outputBase;
+            Integer index;
+
+            argSignals = new int[argCount];
+            for(int i = 0; i < count; i++) {
+                if(types[i] == TYPE_CLOCK) {
+                    index = signalIndeces.get(names[i]);
+                    if(index != null)
+                        clockSignals[index] = true;
+                    continue;
+                }
+                if(types[i] == CSSaveWriter.TYPE_OUTPUT) {
+                    index = signalIndeces.get(names[i]);
+                    if(index == null)
+                        throw fail("output " + names[i] + " is never driven", positions[i]);
+                    readSignals[index] = true;
+                    outputSignals[output++] = index;
+                    continue;
+                }
+
+                for(int k = argStart[i]; k < argStart[i + 1]; k++) {
+                    index = signalIndeces.get(args[k]);
+                    if(index == null)
+                        throw fail(args[k] + " is never driven", positions[i]);
+                    argSignals[k] = index;
+                    readSignals[index] = true;
+                }
+                if(argStart[i + 1] - argStart[i] == 1)
+                    signalSources[signal] = argSignals[argStart[i]];
+                signal++;
+            }
+        }
+
+        /**
+         * Creates the nodes of this chunk, except for inverters, which need the node they read.
+         */
+        private void create() {
+            int signal = signalBase;
+            int output = outputBase;
+            int node;
+            DFlipFlop flipFlop;
+
+            for(int i = 0; i < count; i++) {
+                if(types[i] == CSSaveWriter.TYPE_OUTPUT) {
+                    nodes[firstOutputNode + output++] = new OutputVariableNode(names[i] + OUTPUT_SUFFIX);
+                    continue;
+                }
+                if(!isDriving(types[i]))
+                    continue;
+
+                node = signalNodes[signal];
+                if(types[i] == CSSaveWriter.TYPE_INPUT) {
+                    if(node != -1)
+                        nodes[node] = new InputVariableNode(names[i]);
+                } else if(types[i] == CSSaveWriter.TYPE_DFF) {
+                    flipFlop = new DFlipFlop(names[i]);
+                    nodes[node - 1] = flipFlop;
+                    nodes[node] = new FFOutNode(names[i] + "-out", flipFlop);
+                    nodes[node + 1] = new FFOutNode(names[i] + "-outneg", flipFlop);
+                    flipFlop.setOutNodes((FFOutNode)nodes[node], (FFOutNode)nodes[node + 1]);
+                } else if(types[i] != CSSaveWriter.TYPE_INVERTER && types[i] != TYPE_BUFFER) {
+                    nodes[node] = CSSaveReader.createNode(nodeTypes[node], names[i]);
+                    nodes[node].setDelay(delays[i]);
+                }
+                signal++;
+            }
+        }
+
+        /**
+         * Connects the nodes of this chunk to the nodes they read.
+         */
+        private void connect() {
+            int signal = signalBase;
+            int output = outputBase;
+            int node;
+            int source;
+            int next;
+            int repeated;
+
+            for(int i = 0; i < count; i++) {
+                if(types[i] == CSSaveWriter.TYPE_OUTPUT) {
+                    node = firstOutputNode + output;
+                    source = signalNodes[outputSignals[output++]];
+                    inputSources[inputStart[node]] = source;
+                    ((OutputVariableNode)nodes[node]).addInputNode(nodes[source]);
+                    continue;
+                }
+                if(!isDriving(types[i]))
+                    continue;
+
+                node = signalNodes[signal];
+                if(types[i] == CSSaveWriter.TYPE_DFF) {
+                    source = signalNodes[argSignals[argStart[i]]];
+                    inputSources[inputStart[node - 1]] = source;
+                    ((DFlipFlop)nodes[node - 1]).addInputNode(nodes[source]);
+                    inputSources[inputStart[node]] = node - 1;
+                    inputSources[inputStart[node + 1]] = node - 1;
+                } else if((types[i] == CSSaveWriter.TYPE_XOR || types[i] == CSSaveWriter.TYPE_NXOR)
+                        && nodeTypes[node] != types[i]) {
+                    // an XOR or XNOR gate whose inputs cancel out reads a node and its complement
+                    source = signalNodes[argSignals[argStart[i]]];
+                    inputSources[inputStart[node]] = source;
+                    inputSources[inputStart[node] + 1] = constantComplements[node];
+                    ((Gate)nodes[node]).addInputNode(nodes[source]);
+                    ((Gate)nodes[node]).addInputNode(nodes[constantComplements[node]]);
+                    inputEnd[node] = inputStart[node] + 2;
+                } else if(types[i] != CSSaveWriter.TYPE_INPUT && types[i] != CSSaveWriter.TYPE_INVERTER
+                        && types[i] != TYPE_BUFFER) {
+                    next = inputStart[node];
+                    for(int k = argStart[i]; k < argStart[i + 1]; k++) {
+                        source = signalNodes[argSignals[k]];
+                        repeated = -1;
+                        for(int j = inputStart[node]; j < next && repeated == -1; j++)
+                            if(inputSources[j] == source)
+                                repeated = j;
+
+                        if(repeated == -1) {
+                            inputSources[next++] = source;
+                            ((Gate)nodes[node]).addInputNode(nodes[source]);
+                        } else if(types[i] == CSSaveWriter.TYPE_XOR || types[i] == CSSaveWriter.TYPE_NXOR) {
+                            // a node read twice by an exclusive gate cancels out
+                            System.arraycopy(inputSources, repeated + 1, inputSources, repeated, next - repeated - 1);
+                            next--;
+                            ((Gate)nodes[node]).removeInputNode(nodes[source]);
+                        }
+                    }
+                    inputEnd[node] = next;
+                }
+                signal++;
+            }
+        }
+
+        /**
+         * Utility method to parse the statements of a ".bench" file, one per line.
+         * 
+         * @throws IOException if a statement has an error
+         */
+        private void parseBench() throws IOException {
+            String first;
+            String typeName;
+            int statementStart;
+            int type;
+
+            while(tokenType != TOKEN_END) {
+                if(tokenType == TOKEN_LINE) {
+                    nextToken();
+                    continue;
+                }
+
+                statementStart = tokenStart;
+                first = expectName();
+                if(acceptSymbol('(')) {
+                    if(first.equalsIgnoreCase("INPUT"))
+                        addStatement(CSSaveWriter.TYPE_INPUT, expectName(), statementStart);
+                    else if(first.equalsIgnoreCase("OUTPUT"))
+                        addStatement(CSSaveWriter.TYPE_OUTPUT, expectName(), statementStart);
+                    else
+                        throw fail("unknown declaration " + first, statementStart);
+                    expectSymbol(')');
+                } else {
+                    expectSymbol('=');
+                    typeName = expectName();
+                    type = gateType(typeName);
+                    if(type == -1)
+                        throw fail("unknown gate type " + typeName, statementStart);
+                    expectSymbol('(');
+                    addStatement(type, first, statementStart);
+                    do {
+                        addArg(expectName());
+                    } while(acceptSymbol(','));
+                    expectSymbol(')');
+                    checkArgCount(statementStart);
+                }
+
+                if(tokenType != TOKEN_LINE && tokenType != TOKEN_END)
+                    throw fail("expected the end of the line", tokenStart);
+            }
+        }
+
+        /**
+         * Utility method to parse the statements of a Verilog file, each ending with a semicolon.
+         * 
+         * @throws IOException if a statement has an error or is not supported
+         */
+        private void parseVerilog() throws IOException {
+            String keyword;
+            int statementStart;
+
+            while(tokenType != TOKEN_END) {
+                if(acceptSymbol(';'))
+                    continue;
+
+                statementStart = tokenStart;
+                keyword = expectName();
+                switch(keyword) {
+                    case "module":      parseModule();
+                                        break;
+                    case "endmodule":   break;
+                    case "input":       parseDeclaration(CSSaveWriter.TYPE_INPUT);
+                                        break;
+                    case "output":      parseDeclaration(CSSaveWriter.TYPE_OUTPUT);
+                                        break;
+                    case "wire":
+                    case "reg":         parseDeclaration(-1);
+                                        break;
+                    case "assign":      parseAssign();
+                                        break;
+                    case "inout":       throw fail("bidirectional ports are not supported", statementStart);
+                    default:            parseInstance(keyword, statementStart);
+                                        break;
+                }
+            }
+        }
+
+        /**
+         * Utility method to parse the header of a module, declaring the ports given a direction.
+         * 
+         * @throws IOException if the header has an error
+         */
+        private void parseModule() throws IOException {
+            int type = -1;
+            int[] range = null;
+            int nameStart;
+
+            moduleCount++;
+            expectName();
+            if(isSymbol('#'))
+                throw fail("module parameters are not supported", tokenStart);
+            if(acceptSymbol('(')) {
+                while(!acceptSymbol(')')) {
+                    if(tokenType == TOKEN_NAME && (tokenText.equals("input") || tokenText.equals("output") || tokenText.equals("inout"))) {
+                        if(tokenText.equals("inout"))
+                            throw fail("bidirectional ports are not supported", tokenStart);
+                        type = tokenText.equals("input") ? CSSaveWriter.TYPE_INPUT : CSSaveWriter.TYPE_OUTPUT;
+                        nextToken();
+                        range = parseType();
+                    }
+                    nameStart = tokenStart;
+                    declare(type, expectName(), range, nameStart);
+                    if(!isSymbol(')'))
+                        expectSymbol(',');
+                }
+            }
+            expectSymbol(';');
+        }
+
+        /**
+         * Utility method to parse the names of a declaration up to its semicolon.
+         * 
+         * @param type the type of the declared signals, or -1 for wires
+         * @throws IOException if the declaration has an error
+         */
+        private void parseDeclaration(int type) throws IOException {
+            int[] range = parseType();
+            int nameStart;
+
+            do {
+                nameStart = tokenStart;
+                declare(type, expectName(), range, nameStart);
+            } while(acceptSymbol(','));
+            expectSymbol(';');
+        }
+
+        /**
+         * Utility method to parse the optional "wire" or "reg" and the range after a direction.
+         * 
+         * @return the most and least significant bit of the range, or null if there is none
+         * @throws IOException if the range has an error
+         */
+        private int[] parseType() throws IOException {
+            int[] range;
+
+            if(tokenType == TOKEN_NAME && (tokenText.equals("wire") || tokenText.equals("reg")))
+                nextToken();
+            if(!acceptSymbol('['))
+                return null;
+
+            range = new int[2];
+            range[0] = expectNumber();
+            expectSymbol(':');
+            range[1] = expectNumber();
+            expectSymbol(']');
+
+            return range;
+        }
+
+        /**
+         * Utility method to declare a signal, or each bit of a vector.
+         * 
+         * @param type the type of the declared signal, or -1 for wires, which need no declaration
+         * @param name the name of the signal
+         * @param range the most and least significant bit, or null for a single signal
+         * @param declarationStart the position of the name
+         */
+        private void declare(int type, String name, int[] range, int declarationStart) {
+            int step;
+
+            if(type == -1)
+                return;
+            if(range == null) {
+                addStatement(type, name, declarationStart);
+                return;
+            }
+
+            step = range[0] >= range[1] ? -1 : 1;
+            for(int bit = range[0]; bit != range[1] + step; bit += step)
+                addStatement(type, name + "[" + bit + "]", declarationStart);
+        }
+
+        /**
+         * Utility method to parse assignments of a signal or of its inverse.
+         * 
+         * @throws IOException if an assignment has an error or is not supported
+         */
+        private void parseAssign() throws IOException {
+            String name;
+            int statementStart;
+            int type;
+
+            do {
+                statementStart = tokenStart;
+                name = expectName();
+                expectSymbol('=');
+                type = acceptSymbol('~') || acceptSymbol('!') ? CSSaveWriter.TYPE_INVERTER : TYPE_BUFFER;
+                addStatement(type, name, statementStart);
+                addArg(expectName());
+                if(!isSymbol(',') && !isSymbol(';'))
+                    throw fail("only assignments of a signal or its inverse are supported", statementStart);
+            } while(acceptSymbol(','));
+            expectSymbol(';');
+        }
+
+        /**
+         * Utility method to parse the instances of a primitive or flip-flop up to the semicolon.
+         * 
+         * @param cell the name of the primitive or cell
+         * @param statementStart the position of the name
+         * @throws IOException if an instance has an error or the cell is not supported
+         */
+        private void parseInstance(String cell, int statementStart) throws IOException {
+            int type = gateType(cell);
+            int delay = 0;
+            String instanceName;
+
+            if(type == -1)
+                throw fail("unknown gate type " + cell, statementStart);
+            if(acceptSymbol('#')) {
+                if(tokenType != TOKEN_NUMBER)
+                    throw fail("only a delay of a single number is supported", tokenStart);
+                delay = expectNumber();
+            }
+
+            do {
+                instanceName = tokenType == TOKEN_NAME ? expectName() : null;
+                expectSymbol('(');
+                if(type == CSSaveWriter.TYPE_DFF)
+                    parseFlipFlop(instanceName, statementStart);
+                else
+                    parseGate(type, delay, statementStart);
+            } while(acceptSymbol(','));
+            expectSymbol(';');
+        }
+
+        /**
+         * Utility method to parse the ports of a primitive, the driven signals coming first.
+         * 
+         * @param type the type of the primitive
+         * @param delay the delay of the primitive, or 0 if it has none
+         * @param statementStart the position of the instance
+         * @throws IOException if the ports have an error
+         */
+        private void parseGate(int type, int delay, int statementStart) throws IOException {
+            String input;
+
+            ports.clear();
+            do {
+                if(isSymbol('.'))
+                    throw fail("ports of primitives are connected by position", tokenStart);
+                ports.add(expectName());
+            } while(acceptSymbol(','));
+            expectSymbol(')');
+            if(ports.size() < 2)
+                throw fail("a gate drives and reads at least one signal", statementStart);
+
+            // not and buf can drive several signals, which all read the last port
+            if(type == CSSaveWriter.TYPE_INVERTER || type == TYPE_BUFFER) {
+                input = ports.get(ports.size() - 1);
+                for(int p = 0; p < ports.size() - 1; p++) {
+                    addStatement(type, ports.get(p), statementStart);
+                    delays[count - 1] = delay;
+                    addArg(input);
+                }
+                return;
+            }
+
+            addStatement(type, ports.get(0), statementStart);
+            delays[count - 1] = delay;
+            for(int p = 1; p < ports.size(); p++)
+                addArg(ports.get(p));
+        }
+
+        /**
+         * Utility method to parse the ports of a flip-flop, by position or by name.
+         * 
+         * @param instanceName the name of the instance, or null if it has none
+         * @param statementStart the position of the instance
+         * @throws IOException if the ports have an error
+         */
+        private void parseFlipFlop(String instanceName, int statementStart) throws IOException {
+            String d = null;
+            String q = null;
+            String qn = null;
+            String clock = null;
+            String port;
+
+            ports.clear();
+            if(isSymbol('.')) {
+                do {
+                    expectSymbol('.');
+                    port = expectName().toUpperCase();
+                    expectSymbol('(');
+                    if(!isSymbol(')')) {
+                        if(port.equals("D"))
+                            d = expectName();
+                        else if(port.equals("Q"))
+                            q = expectName();
+                        else if(port.equals("QN") || port.equals("QB"))
+                            qn = expectName();
+                        else if(port.equals("CK") || port.equals("CLK") || port.equals("C"))
+                            clock = expectName();
+                        else
+                            throw fail("unknown flip-flop port " + port, statementStart);
+                    }
+                    expectSymbol(')');
+                } while(acceptSymbol(','));
+            } else {
+                do {
+                    ports.add(expectName());
+                } while(acceptSymbol(','));
+                if(ports.size() == 3)
+                    clock = ports.remove(0);
+                if(ports.size() != 2)
+                    throw fail("flip-flops are connected as (Q, D) or (CK, Q, D)", statementStart);
+                q = ports.get(0);
+                d = ports.get(1);
+            }
+            expectSymbol(')');
+
+            if(d == null)
+                throw fail("the flip-flop reads no signal", statementStart);
+            if(q == null)
+                q = instanceName;
+            if(q == null)
+                throw fail("the flip-flop drives no signal", statementStart);
+
+            addStatement(CSSaveWriter.TYPE_DFF, q, statementStart);
+            addArg(d);
+            if(qn != null) {
+                addStatement(CSSaveWriter.TYPE_INVERTER, qn, statementStart);
+                addArg(q);
+            }
+            if(clock != null)
+                addStatement(TYPE_CLOCK, clock, statementStart);
+        }
+
+        /**
+         * Utility method to check the number of signals read by the last statement.
+         * 
+         * @param statementStart the position of the statement
+         * @throws IOException if a NOT gate, buffer or flip-flop does not read exactly one signal
+         */
+        private void checkArgCount(int statementStart) throws IOException {
+            int type = types[count - 1];
+
+            if((type == CSSaveWriter.TYPE_INVERTER || type == TYPE_BUFFER || type == CSSaveWriter.TYPE_DFF)
+                    && argCount - argStart[count - 1] != 1)
+                throw fail(names[count - 1] + " needs to read exactly one signal", statementStart);
+        }
+
+        /**
+         * Utility method to add a statement.
+         * 
+         * @param type the type of the statement
+         * @param name the name of the signal it drives, declares or uses as a clock
+         * @param statementStart the position of the statement
+         */
+        private void addStatement(int type, String name, int statementStart) {
+            if(count == types.length) {
+                types = Arrays.copyOf(types, count * 2);
+                names = Arrays.copyOf(names, count * 2);
+                delays = Arrays.copyOf(delays, count * 2);
+                positions = Arrays.copyOf(positions, count * 2);
+                argStart = Arrays.copyOf(argStart, count * 2 + 1);
+            }
+
+            types[count] = type;
+            names[count] = name;
+            positions[count] = statementStart;
+            argStart[count] = argCount;
+            count++;
+            if(isDriving(type))
+                signalCount++;
+            else if(type == CSSaveWriter.TYPE_OUTPUT)
+                outputCount++;
+        }
+
+        /**
+         * Utility method to add a signal read by the last statement.
+         * 
+         * @param name the name of the signal
+         */
+        private void addArg(String name) {
+            if(argCount == args.length)
+                args = Arrays.copyOf(args, argCount * 2);
+            args[argCount++] = name;
+        }
+
+        /**
+         * Utility method to read the next token of this chunk.
+         * <p>
+         * Whitespace and comments are skipped; only the ends of lines of ".bench" files are kept.
+         * A Verilog name directly followed by a bit number is read as one name, like {@code a[0]},
+         * which is also how the bits of declared vectors are named.
+         */
+        private void nextToken() {
+            int c;
+            int bitStart;
+
+            while(position < end) {
+                c = bytes[position] & 0xFF;
+                if(c == '\n' && !verilog)
+                    break;
+                if(c <= ' ')
+                    position++;
+                else if(c == '#' && !verilog) {
+                    while(position < end && bytes[position] != '\n')
+                        position++;
+                } else if(c == '/' && verilog && position + 1 < end && bytes[position + 1] == '/') {
+                    while(position < end && bytes[position] != '\n')
+                        position++;
+                } else if(c == '/' && verilog && position + 1 < end && bytes[position + 1] == '*') {
+                    position += 2;
+                    while(position + 1 < end && !(bytes[position] == '*' && bytes[position + 1] == '/'))
+                        position++;
+                    position = Math.min(position + 2, end);
+                } else
+                    break;
+            }
+
+            tokenStart = position;
+            if(position == end) {
+                tokenType = TOKEN_END;
+                return;
+            }
+
+            c = bytes[position] & 0xFF;
+            if(!verilog) {
+                position++;
+                if(c == '\n')
+                    tokenType = TOKEN_LINE;
+                else if(c == '(' || c == ')' || c == ',' || c == '=') {
+                    tokenType = TOKEN_SYMBOL;
+                    tokenSymbol = (char)c;
+                } else {
+                    while(position < end && isBenchNamePart(bytes[position] & 0xFF))
+                        position++;
+                    tokenType = TOKEN_NAME;
+                    tokenText = text(tokenStart, position);
+                }
+                return;
+            }
+
+            if(c == '\\') {
+                while(position < end && (bytes[position] & 0xFF) > ' ')
+                    position++;
+                tokenType = TOKEN_NAME;
+                tokenText = text(tokenStart + 1, position);
+            } else if(Character.isLetter(c) || c == '_') {
+                while(position < end && isVerilogNamePart(bytes[position] & 0xFF))
+                    position++;
+                tokenType = TOKEN_NAME;
+                tokenText = text(tokenStart, position);
+
+                bitStart = position;
+                if(bitStart < end && bytes[bitStart] == '[') {
+                    position++;
+                    while(position < end && Character.isDigit(bytes[position]))
+                        position++;
+                    if(position > bitStart + 1 && position < end && bytes[position] == ']')
+                        tokenText = tokenText + text(bitStart, ++position);
+                    else
+                        position = bitStart;
+                }
+            } else if(Character.isDigit(c)) {
+                while(position < end && (isVerilogNamePart(bytes[position] & 0xFF) || bytes[position] == '\''))
+                    position++;
+                tokenType = TOKEN_NUMBER;
+                tokenText = text(tokenStart, position);
+            } else {
+                position++;
+                tokenType = TOKEN_SYMBOL;
+                tokenSymbol = (char)c;
+            }
+        }
+
+        /**
+         * Utility method to check whether a byte can be part of a name in a ".bench" file.
+         * 
+         * @param c the byte
+         * @return true if the byte is not whitespace, punctuation or the start of a comment
+         */
+        private boolean isBenchNamePart(int c) {
+            return c > ' ' && c != '(' && c != ')' && c != ',' && c != '=' && c != '#';
+        }
+
+        /**
+         * Utility method to check whether a byte can follow the first character of a Verilog name.
+         * 
+         * @param c the byte
+         * @return true for letters, digits, underscores and dollar signs
+         */
+        private boolean isVerilogNamePart(int c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+        }
+
+        /**
+         * Utility method to get the text of part of the file.
+         * 
+         * @param from the position of the first byte
+         * @param to the position after the last byte
+         * @return the text
+         */
+        private String text(int from, int to) {
+            return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Utility method to check whether the current token is the given symbol.
+         * 
+         * @param symbol the symbol
+         * @return true if the current token is the symbol
+         */
+        private boolean isSymbol(char symbol) {
+            return tokenType == TOKEN_SYMBOL && tokenSymbol == symbol;
+        }
+
+        /**
+         * Utility method to skip the current token if it is the given symbol.
+         * 
+         * @param symbol the symbol
+         * @return true if the token was the symbol and was skipped
+         */
+        private boolean acceptSymbol(char symbol) {
+            if(!isSymbol(symbol))
+                return false;
+
+            nextToken();
+            return true;
+        }
+
+        /**
+         * Utility method to skip the current token, which has to be the given symbol.
+         * 
+         * @param symbol the symbol
+         * @throws IOException if the current token is not the symbol
+         */
+        private void expectSymbol(char symbol) throws IOException {
+            if(!acceptSymbol(symbol))
+                throw fail("expected '" + symbol + "'", tokenStart);
+        }
+
+        /**
+         * Utility method to read the current token, which has to be a name.
+         * 
+         * @return the name
+         * @throws IOException if the current token is not a name
+         */
+        private String expectName() throws IOException {
+            String name;
+
+            if(tokenType == TOKEN_NUMBER)
+                throw fail("constants are not supported", tokenStart);
+            if(tokenType != TOKEN_NAME)
+                throw fail("expected a name", tokenStart);
+
+            name = tokenText;
+            nextToken();
+            return name;
+        }
+
+        /**
+         * Utility method to read the current token, which has to be a plain decimal number.
+         * 
+         * @return the number
+         * @throws IOException if the current token is not a decimal number
+         */
+        private int expectNumber() throws IOException {
+            int number;
+
+            if(tokenType != TOKEN_NUMBER)
+                throw fail("expected a number", tokenStart);
+            try {
+                number = Integer.parseInt(tokenText);
+            } catch(NumberFormatException nfe) {
+                throw fail("expected a decimal number", tokenStart);
+            }
+
+            nextToken();
+            return number;
+        }
+
+        /**
+         * Utility method to create the error of a position in the file.
+         * 
+         * @param message the message of the error
+         * @param errorPosition the position of the error
+         * @return the error, giving the file and line
+         */
+        private IOException fail(String message, int errorPosition) {
+            return new IOException(fileName + ":" + lineOf(errorPosition) + ": " + message);
+        }
+    }
+}
@@ -32,6 +32,14 @@ public abstract class CSNode implements Serializable {
      * otherwise a positive number indicates its track number.
      */
     protected int trackNum;
+    /**
+     * The time this node takes to change its value after one of its input nodes changed,
+     * used by {@linkplain CSTimingSimulator}.
+     * <p>
+     * Only gates and inverters take time; for them this field is positive, and circuits saved
+     * before delays existed read it as zero, which counts as a delay of one.
+     */
+    protected int delay;
     /**
      * String that is at most 6 characters to represent this node's type.
      * <p>
@@ -119,6 +127,27 @@ public abstract class CSNode implements Serializable {
         trackNum = 0;
     }
 
+    /**
+     * Sets this node's propagation delay.
+     * <p>
+     * The delay is not changed for non-positive integers given.
+     * 
+     * @param delay positive integer representing this node's new delay, in units of time
+     */
+    public void setDelay(int delay) {
+        if(delay > 0)
+            this.delay = delay;
+    }
+
+    /**
+     * Gets this node's propagation delay.
+     * 
+     * @return integer greater than or equal to zero; representing the delay in units of time
+     */
+    public int getDelay() {
+        return delay;
+    }
+
     /**
      * Gets this node's type.
      * 
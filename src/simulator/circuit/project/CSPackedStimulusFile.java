@@ -0,0 +1,248 @@
+package simulator.circuit.project;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * Class to stream input values from a packed stimulus file written by {@linkplain CSPackedStimulusWriter}.
+ * <p>
+ * The file is memory-mapped, so any number of cycles can be streamed while only the names of the
+ * inputs are kept on the heap. Each input of the file is made available as a {@linkplain CSStimulusSource}
+ * that can be given to an input variable node. When the circuit is saved, a source is saved as
+ * the path of the file and the name of its input, and the file is opened again on loading.
+ * 
+ * @author Joel Tengco
+ */
+public class CSPackedStimulusFile implements Closeable {
+    /**
+     * The mapped file.
+     */
+    private final CSMappedFile mappedFile;
+    /**
+     * The file, kept so that saved sources can open it again.
+     */
+    private final File file;
+    /**
+     * Name of the file, used in descriptions.
+     */
+    private final String fileName;
+    /**
+     * Names of the inputs in the file.
+     */
+    private final String[] inputNames;
+    /**
+     * Number of cycles in the file.
+     */
+    private final long cycleCount;
+    /**
+     * Offset of the first row.
+     */
+    private final long dataOffset;
+    /**
+     * Number of bytes in each row.
+     */
+    private final int rowBytes;
+
+    /**
+     * Opens the given packed stimulus file.
+     * 
+     * @param source the file to read
+     * @throws IOException if an error occurred when reading the header, or the file is not a
+     * packed stimulus file
+     */
+    public CSPackedStimulusFile(File source) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(source));
+
+        try {
+            if(in.readInt() != CSPackedStimulusWriter.MAGIC)
+                throw new IOException(source.getName() + " is not a packed stimulus file");
+            int version = in.readInt();
+            if(version != CSPackedStimulusWriter.VERSION)
+                throw new IOException("Unsupported packed stimulus version " + version);
+            inputNames = new String[in.readInt()];
+            in.readInt();   // padding
+            cycleCount = in.readLong();
+            dataOffset = in.readLong();
+            for(int i = 0; i < inputNames.length; i++)
+                inputNames[i] = in.readUTF();
+        } finally {
+            in.close();
+        }
+
+        file = source.getAbsoluteFile();
+        fileName = source.getName();
+        rowBytes = (inputNames.length + 7) >>> 3;
+        mappedFile = new CSMappedFile(source);
+    }
+
+    /**
+     * Gets the names of the inputs in this file.
+     * 
+     * @return an array containing the input names, in the order of the file
+     */
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    /**
+     * Gets the number of cycles in this file.
+     * 
+     * @return the number of rows of values
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Gets the stimulus source for the input with the given name.
+     * 
+     * @param inputName the name of the input in this file
+     * @return a stimulus source that streams the values of the input
+     * @throws IllegalArgumentException if this file does not contain the input
+     */
+    public CSStimulusSource getSource(String inputName) throws IllegalArgumentException {
+        for(int i = 0; i < inputNames.length; i++)
+            if(inputNames[i].equals(inputName))
+                return new Column(i);
+
+        throw new IllegalArgumentException(fileName + " does not contain " + inputName);
+    }
+
+    /**
+     * Utility method to read a single value from the mapped file.
+     * 
+     * @param column the index of the input
+     * @param position the cycle of the value
+     * @return either 1 or 0
+     */
+    private int getValue(int column, long position) {
+        if(position < 0 || position >= cycleCount)
+            throw new IndexOutOfBoundsException(position + " is outside of " + fileName);
+
+        try {
+            return (mappedFile.get(dataOffset + position * rowBytes + (column >>> 3)) >>> (column & 7)) & 1;
+        } catch(IOException ioe) {
+            throw new IllegalStateException("Could not read " + fileName + ": " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Closes the underlying file; the sources of this file can no longer be used afterwards.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        mappedFile.close();
+    }
+
+    /**
+     * Stimulus source for one input of a packed stimulus file.
+     * 
+     * @author Joel Tengco
+     */
+    private class Column implements CSStimulusSource, Serializable {
+        /**
+         * Needed to implement Serializable, and thus needed for saving circuits as files.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Index of the input within the file.
+         */
+        private final int column;
+
+        /**
+         * Constructs the source for the input at the given index.
+         * 
+         * @param column the index of the input within the file
+         */
+        Column(int column) {
+            this.column = column;
+        }
+
+        public long getLength() {
+            return cycleCount;
+        }
+
+        public int getValue(long position) {
+            return CSPackedStimulusFile.this.getValue(column, position);
+        }
+
+        public String getDescription() {
+            return inputNames[column] + " from " + fileName;
+        }
+
+        /**
+         * Saves this source as the path of its file and the name of its input, since the
+         * mapped file itself cannot be saved.
+         * 
+         * @return the saved form of this source
+         */
+        private Object writeReplace() {
+            return new SavedColumn(file.getPath(), inputNames[column]);
+        }
+    }
+
+    /**
+     * Saved form of a source of a packed stimulus file, which opens the file again when it is read back.
+     * 
+     * @author Joel Tengco
+     */
+    private static class SavedColumn implements Serializable {
+        /**
+         * Needed to implement Serializable, and thus needed for saving circuits as files.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Absolute path of the file.
+         */
+        private final String path;
+        /**
+         * Name of the input within the file.
+         */
+        private final String inputName;
+
+        /**
+         * Constructs the saved form of the source of the given input.
+         * 
+         * @param path the absolute path of the file
+         * @param inputName the name of the input within the file
+         */
+        SavedColumn(String path, String inputName) {
+            this.path = path;
+            this.inputName = inputName;
+        }
+
+        /**
+         * Opens the file again and gets the source of the input.
+         * 
+         * @return the source of the input
+         * @throws ObjectStreamException if the file could not be opened or no longer contains the input
+         */
+        private Object readResolve() throws ObjectStreamException {
+            CSPackedStimulusFile stimulusFile;
+
+            try {
+                stimulusFile = new CSPackedStimulusFile(new File(path));
+            } catch(IOException ioe) {
+                throw new InvalidObjectException("Could not open the values of " + inputName + " from " + path + ": " + ioe.getMessage());
+            }
+
+            try {
+                return stimulusFile.getSource(inputName);
+            } catch(IllegalArgumentException iae) {
+                try {
+                    stimulusFile.close();
+                } catch(IOException ioe) {
+                    // the missing input is the error to report
+                }
+                throw new InvalidObjectException("Could not open the values of " + inputName + " from " + path + ": " + iae.getMessage());
+            }
+        }
+    }
+}
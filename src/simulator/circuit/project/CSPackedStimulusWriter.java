@@ -0,0 +1,170 @@
+package simulator.circuit.project;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class to write a packed stimulus file, which is read back with {@linkplain CSPackedStimulusFile}.
+ * <p>
+ * A packed stimulus file holds the values of several input variables for every cycle, one
+ * bit per input per cycle. Each cycle is a row of {@code (inputs + 7) / 8} bytes, where bit
+ * {@code j % 8} of byte {@code j / 8} is the value of input {@code j}. The layout is:
+ * <ul>
+ *  <li>header: magic, version, input count, number of cycles, offset of the first row</li>
+ *  <li>the names of the inputs</li>
+ *  <li>the rows, one per cycle</li>
+ * </ul>
+ * 
+ * @author Joel Tengco
+ */
+public class CSPackedStimulusWriter implements Closeable {
+    /**
+     * Identifies a file as a packed stimulus file; "CSPS" in ASCII.
+     */
+    static final int MAGIC = 0x43535053;
+    /**
+     * Version of the packed stimulus format written by this class.
+     */
+    static final int VERSION = 1;
+    /**
+     * Offset of the number of cycles within the header.
+     */
+    static final int CYCLE_COUNT_OFFSET = 16;
+    /**
+     * Size of the fixed part of the header.
+     */
+    static final int HEADER_SIZE = 32;
+    /**
+     * Size of the buffer that gathers rows before they are written.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The file being written.
+     */
+    private RandomAccessFile file;
+    /**
+     * Channel of the file being written.
+     */
+    private FileChannel channel;
+    /**
+     * Buffer that gathers rows before they are written.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Number of inputs in each row.
+     */
+    private final int inputCount;
+    /**
+     * Number of bytes in each row.
+     */
+    private final int rowBytes;
+    /**
+     * Number of rows written so far.
+     */
+    private long cycleCount;
+
+    /**
+     * Creates a packed stimulus file for the inputs with the given names.
+     * 
+     * @param target the file to write; an existing file is overwritten
+     * @param inputNames the names of the inputs, in the order of their values in each row
+     * @throws IOException if an error occurred when creating the file
+     */
+    public CSPackedStimulusWriter(File target, String[] inputNames) throws IOException {
+        inputCount = inputNames.length;
+        rowBytes = (inputCount + 7) >>> 3;
+
+        file = new RandomAccessFile(target, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+
+        file.writeInt(MAGIC);
+        file.writeInt(VERSION);
+        file.writeInt(inputCount);
+        file.writeInt(0);   // padding
+        file.writeLong(0);  // number of cycles, filled in by close()
+        file.writeLong(0);  // offset of the first row, filled in below
+        for(String inputName : inputNames)
+            file.writeUTF(inputName);
+
+        long dataOffset = file.getFilePointer();
+        file.seek(CYCLE_COUNT_OFFSET + 8);
+        file.writeLong(dataOffset);
+        channel.position(dataOffset);
+
+        buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, rowBytes));
+    }
+
+    /**
+     * Writes the values of the inputs for the next cycle.
+     * <p>
+     * Any nonzero integer in the given array is stored as 1.
+     * 
+     * @param inputValues the values of the inputs, one for each input name given at construction
+     * @throws IOException if an error occurred when writing the row
+     * @throws IllegalArgumentException if the number of values does not match the number of inputs
+     */
+    public void writeRow(int[] inputValues) throws IOException, IllegalArgumentException {
+        int b;
+
+        if(inputValues.length != inputCount)
+            throw new IllegalArgumentException("Expected " + inputCount + " values but received " + inputValues.length);
+        if(buffer.remaining() < rowBytes)
+            flush();
+
+        for(int i = 0; i < rowBytes; i++) {
+            b = 0;
+            for(int bit = 0, j = i << 3; bit < 8 && j < inputCount; bit++, j++)
+                if(inputValues[j] != 0)
+                    b |= 1 << bit;
+            buffer.put((byte)b);
+        }
+
+        cycleCount++;
+    }
+
+    /**
+     * Gets the number of rows written so far.
+     * 
+     * @return the number of cycles in this file
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Utility method to write the gathered rows to the file.
+     * 
+     * @throws IOException if an error occurred when writing
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Finishes the file and closes it.
+     * <p>
+     * Invoking this method more than once has no further effect.
+     * 
+     * @throws IOException if an error occurred when finishing the file
+     */
+    public void close() throws IOException {
+        if(file == null)
+            return;
+
+        flush();
+        file.seek(CYCLE_COUNT_OFFSET);
+        file.writeLong(cycleCount);
+        file.close();
+        file = null;
+        channel = null;
+    }
+}
@@ -0,0 +1,140 @@
+package simulator.circuit.project;
+
+import java.util.Arrays;
+
+/**
+ * Class to generate input values that repeat a pattern.
+ * <p>
+ * The pattern is a list of values, each held for its own number of cycles, so a clock with
+ * a 3 cycle high phase and a 5 cycle low phase is the values 1 and 0 with the repeat counts
+ * 3 and 5. The pattern is repeated until the length of the generator is reached.
+ * 
+ * @author Joel Tengco
+ */
+public class CSPeriodicStimulus extends CSStimulusGenerator {
+    /**
+     * Needed to implement Serializable, and thus needed for saving circuits as files.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The values of the pattern; each is either 1 or 0.
+     */
+    private final int[] values;
+    /**
+     * Position within the period at which each value of the pattern ends.
+     */
+    private final long[] ends;
+
+    /**
+     * Constructs a generator that repeats the given pattern.
+     * <p>
+     * Any nonzero integer in the values is treated as 1.
+     * 
+     * @param values the values of the pattern
+     * @param repeatCounts the number of cycles each value is held for
+     * @param length the number of values, or {@linkplain CSStimulusGenerator#UNBOUNDED}
+     * @throws IllegalArgumentException if the pattern is empty, the arrays differ in length, a repeat
+     * count is not positive, or the length is negative
+     */
+    public CSPeriodicStimulus(int[] values, int[] repeatCounts, long length) throws IllegalArgumentException {
+        super(length);
+        if(values.length == 0 || values.length != repeatCounts.length)
+            throw new IllegalArgumentException("A pattern needs one repeat count for each of its values");
+
+        this.values = new int[values.length];
+        this.ends = new long[values.length];
+        for(int i = 0; i < values.length; i++) {
+            if(repeatCounts[i] <= 0)
+                throw new IllegalArgumentException("Repeat counts need to be positive");
+            this.values[i] = values[i] == 0 ? 0 : 1;
+            this.ends[i] = (i == 0 ? 0 : ends[i - 1]) + repeatCounts[i];
+        }
+    }
+
+    /**
+     * Constructs a generator that repeats the given pattern, holding each value for one cycle.
+     * 
+     * @param values the values of the pattern
+     * @param length the number of values, or {@linkplain CSStimulusGenerator#UNBOUNDED}
+     * @throws IllegalArgumentException if the pattern is empty or the length is negative
+     */
+    public CSPeriodicStimulus(int[] values, long length) throws IllegalArgumentException {
+        this(values, filledCounts(values.length), length);
+    }
+
+    /**
+     * Utility method to create repeat counts of one.
+     * 
+     * @param size the number of repeat counts
+     * @return an array of the given size filled with ones
+     */
+    private static int[] filledCounts(int size) {
+        int[] counts = new int[size];
+
+        Arrays.fill(counts, 1);
+        return counts;
+    }
+
+    /**
+     * Gets the number of cycles in one repetition of the pattern.
+     * 
+     * @return the period of this generator
+     */
+    public long getPeriod() {
+        return ends[ends.length - 1];
+    }
+
+    /**
+     * Computes the value for the given position.
+     * 
+     * @param position the index of the value
+     * @return either 1 or 0
+     */
+    protected int valueAt(long position) {
+        int index = Arrays.binarySearch(ends, position % getPeriod());
+
+        // an exact match is the end of that value, so the next one applies
+        return values[index >= 0 ? index + 1 : -index - 1];
+    }
+
+    /**
+     * Computes the values for 64 consecutive positions, packed as the lanes of a word.
+     * 
+     * @param position the position of the value in the lowest lane
+     * @return the packed values
+     */
+    protected long wordAt(long position) {
+        long period = getPeriod();
+        long offset = position % period;
+        int index = Arrays.binarySearch(ends, offset);
+        long word = 0;
+        long lane = 0;
+        long next;
+
+        index = index >= 0 ? index + 1 : -index - 1;
+        while(lane < 64) {
+            next = lane + (ends[index] - offset);
+            if(next > 64)
+                next = 64;
+            if(values[index] != 0)
+                word |= (next == 64 ? -1L : (1L << next) - 1) & (-1L << lane);
+            offset += next - lane;
+            lane = next;
+            if(++index == ends.length) {
+                index = 0;
+                offset = 0;
+            }
+        }
+
+        return word;
+    }
+
+    /**
+     * Gets a short description of this generator.
+     * 
+     * @return the description of this generator
+     */
+    public String getDescription() {
+        return "periodic, period " + getPeriod();
+    }
+}
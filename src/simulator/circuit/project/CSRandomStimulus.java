@@ -0,0 +1,122 @@
+package simulator.circuit.project;
+
+/**
+ * Class to generate pseudo-random input values from a seed.
+ * <p>
+ * The values come from a 64-bit xorshift generator, which is a linear feedback shift
+ * register over whole words: every step of the generator yields the values of the next
+ * 64 cycles at once. The same seed always yields the same values, so random soak runs
+ * can be repeated exactly. Inputs that should be independent need different seeds.
+ * <p>
+ * The generator is stepped forward as positions are requested in increasing order;
+ * going back to an earlier position restarts it from the seed.
+ * 
+ * @author Joel Tengco
+ */
+public class CSRandomStimulus extends CSStimulusGenerator {
+    /**
+     * Needed to implement Serializable, and thus needed for saving circuits as files.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The seed the values are generated from.
+     */
+    private final long seed;
+    /**
+     * State of the generator, which is also the word of values at {@code stateIndex}.
+     */
+    private transient long state;
+    /**
+     * Index of the word of values held in the state.
+     */
+    private transient long stateIndex;
+    /**
+     * True once the state has been set from the seed; false again after the generator is loaded.
+     */
+    private transient boolean started;
+
+    /**
+     * Constructs a random generator with the given seed and length.
+     * 
+     * @param seed the seed of the generator
+     * @param length the number of values, or {@linkplain CSStimulusGenerator#UNBOUNDED}
+     * @throws IllegalArgumentException if the length is negative
+     */
+    public CSRandomStimulus(long seed, long length) throws IllegalArgumentException {
+        super(length);
+        this.seed = seed;
+    }
+
+    /**
+     * Gets the seed of this generator.
+     * 
+     * @return the seed the values are generated from
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Computes the value for the given position.
+     * 
+     * @param position the index of the value
+     * @return either 1 or 0
+     */
+    protected int valueAt(long position) {
+        return (int)(randomWord(position >>> 6) >>> position) & 1;
+    }
+
+    /**
+     * Computes the values for 64 consecutive positions, packed as the lanes of a word.
+     * 
+     * @param position the position of the value in the lowest lane
+     * @return the packed values
+     */
+    protected long wordAt(long position) {
+        int shift = (int)(position & 63);
+        long low = randomWord(position >>> 6);
+
+        if(shift == 0)
+            return low;
+
+        return (low >>> shift) | (randomWord((position >>> 6) + 1) << (64 - shift));
+    }
+
+    /**
+     * Utility method to get the word of values with the given index.
+     * 
+     * @param wordIndex the index of the word; word {@code i} holds positions {@code 64 * i} to {@code 64 * i + 63}
+     * @return the word of values
+     */
+    private synchronized long randomWord(long wordIndex) {
+        if(!started || wordIndex < stateIndex) {
+            // spread the seed so that similar seeds start far apart, and never start from zero
+            state = seed + 0x9E3779B97F4A7C15L;
+            state = (state ^ (state >>> 30)) * 0xBF58476D1CE4E5B9L;
+            state = (state ^ (state >>> 27)) * 0x94D049BB133111EBL;
+            state ^= state >>> 31;
+            if(state == 0)
+                state = 0x9E3779B97F4A7C15L;
+            stateIndex = 0;
+            started = true;
+        }
+
+        while(stateIndex < wordIndex) {
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+            stateIndex++;
+        }
+
+        return state;
+    }
+
+    /**
+     * Gets a short description of this generator.
+     * 
+     * @return the description of this generator
+     */
+    public String getDescription() {
+        return "random, seed " + seed;
+    }
+}
@@ -0,0 +1,654 @@
+package simulator.circuit.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Class to decide whether a set of clauses can be satisfied.
+ * <p>
+ * The solver does conflict-driven clause learning. Each clause watches two of its literals,
+ * so assigning a variable only visits the clauses that watch its complement. A conflict is
+ * analyzed back to its first unique implication point, the resulting clause is learned, and
+ * the search jumps back to the level where that clause becomes unit. Decisions pick the
+ * unassigned variable that took part in the most recent conflicts, with the value it had
+ * last, and the search restarts after a number of conflicts that follows the Luby sequence.
+ * <p>
+ * Variables are numbered from 0. The literal of variable v is {@code 2 * v}, and its
+ * complement is {@code 2 * v + 1}.
+ * 
+ * @author Joel Tengco
+ */
+class CSSatSolver {
+    /**
+     * Number of conflicts in one unit of the restart sequence.
+     */
+    private static final int RESTART_UNIT = 100;
+    /**
+     * Factor the activity increment grows by after each conflict.
+     */
+    private static final double ACTIVITY_GROWTH = 1 / 0.95;
+
+    /**
+     * All clauses, the original ones followed by the learned ones.
+     */
+    private final ArrayList<int[]> clauses;
+    /**
+     * Clauses watching each literal, by clause index.
+     */
+    private int[][] watches;
+    /**
+     * Number of clauses watching each literal.
+     */
+    private int[] watchCount;
+    /**
+     * Value of each variable: 1 for true, -1 for false and 0 for unassigned.
+     */
+    private byte[] values;
+    /**
+     * Decision level at which each variable was assigned.
+     */
+    private int[] levels;
+    /**
+     * Clause that implied each variable, or -1 for decisions and variables assigned at level 0.
+     */
+    private int[] reasons;
+    /**
+     * Value each variable had when it was last unassigned.
+     */
+    private boolean[] phases;
+    /**
+     * Activity of each variable.
+     */
+    private double[] activities;
+    /**
+     * Assigned literals in the order they were assigned.
+     */
+    private int[] trail;
+    /**
+     * Number of assigned literals.
+     */
+    private int trailSize;
+    /**
+     * Position in the trail where each decision level starts; level d starts at {@code levelStarts[d - 1]}.
+     */
+    private int[] levelStarts;
+    /**
+     * Number of decisions on the trail.
+     */
+    private int decisionLevel;
+    /**
+     * Marks of the variables seen while analyzing a conflict.
+     */
+    private boolean[] seen;
+    /**
+     * Position in the trail of the next literal to propagate.
+     */
+    private int propagateHead;
+    /**
+     * Heap of the variables ordered by activity.
+     */
+    private int[] heap;
+    /**
+     * Number of variables in the heap.
+     */
+    private int heapSize;
+    /**
+     * Position of each variable in the heap, or -1.
+     */
+    private int[] heapPositions;
+    /**
+     * Number of variables.
+     */
+    private int varCount;
+    /**
+     * Amount the activity of a variable grows by when it takes part in a conflict.
+     */
+    private double activityIncrement;
+    /**
+     * True once a conflict was found without any decision.
+     */
+    private boolean unsatisfiable;
+    /**
+     * Number of conflicts so far.
+     */
+    private long conflictCount;
+    /**
+     * Number of decisions so far.
+     */
+    private long decisionCount;
+    /**
+     * Number of restarts so far.
+     */
+    private long restartCount;
+
+    /**
+     * Constructs a solver without variables or clauses.
+     */
+    CSSatSolver() {
+        clauses = new ArrayList<int[]>();
+        watches = new int[0][];
+        watchCount = new int[0];
+        values = new byte[0];
+        levels = new int[0];
+        reasons = new int[0];
+        phases = new boolean[0];
+        activities = new double[0];
+        trail = new int[0];
+        levelStarts = new int[0];
+        seen = new boolean[0];
+        heap = new int[0];
+        heapPositions = new int[0];
+        activityIncrement = 1;
+    }
+
+    /**
+     * Adds a new variable.
+     * 
+     * @return the number of the variable
+     */
+    int newVariable() {
+        int capacity;
+
+        if(varCount == values.length) {
+            capacity = Math.max(16, 2 * varCount);
+            watches = Arrays.copyOf(watches, 2 * capacity);
+            watchCount = Arrays.copyOf(watchCount, 2 * capacity);
+            values = Arrays.copyOf(values, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            reasons = Arrays.copyOf(reasons, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            activities = Arrays.copyOf(activities, capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            levelStarts = Arrays.copyOf(levelStarts, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+            heapPositions = Arrays.copyOf(heapPositions, capacity);
+        }
+
+        watches[2 * varCount] = new int[4];
+        watches[2 * varCount + 1] = new int[4];
+        heapPositions[varCount] = -1;
+        heapInsert(varCount);
+
+        return varCount++;
+    }
+
+    /**
+     * Gets the number of variables.
+     * 
+     * @return the number of variables
+     */
+    int getVarCount() {
+        return varCount;
+    }
+
+    /**
+     * Adds a clause, the OR of the given literals.
+     * <p>
+     * Clauses can only be added before solving starts.
+     * 
+     * @param literals the literals of the clause
+     * @throws IllegalArgumentException if a literal refers to a variable that does not exist
+     */
+    void addClause(int... literals) throws IllegalArgumentException {
+        int[] clause = literals.clone();
+        int size = 0;
+
+        if(unsatisfiable)
+            return;
+
+        // sort to find repeated literals and complementary pairs next to each other
+        Arrays.sort(clause);
+        for(int i = 0; i < clause.length; i++) {
+            if(clause[i] < 0 || clause[i] >= 2 * varCount)
+                throw new IllegalArgumentException(clause[i] + " is an invalid literal");
+            if(literalValue(clause[i]) > 0 || (size > 0 && clause[size - 1] == (clause[i] ^ 1)))
+                return;     // already satisfied
+            if(literalValue(clause[i]) < 0 || (size > 0 && clause[size - 1] == clause[i]))
+                continue;
+            clause[size++] = clause[i];
+        }
+
+        if(size == 0)
+            unsatisfiable = true;
+        else if(size == 1) {
+            assign(clause[0], -1);
+            if(propagate() != -1)
+                unsatisfiable = true;
+        } else
+            attachClause(Arrays.copyOf(clause, size));
+    }
+
+    /**
+     * Searches for an assignment that satisfies every clause.
+     * 
+     * @return true if such an assignment exists, in which case it can be read with
+     * {@linkplain #getValue(int)}; false if the clauses cannot be satisfied
+     */
+    boolean solve() {
+        long restartLimit;
+        int conflict;
+        int variable;
+
+        if(unsatisfiable)
+            return false;
+
+        while(true) {
+            restartLimit = RESTART_UNIT * luby(restartCount);
+            for(long conflicts = 0; ; ) {
+                conflict = propagate();
+                if(conflict != -1) {
+                    conflictCount++;
+                    conflicts++;
+                    if(decisionLevel == 0) {
+                        unsatisfiable = true;
+                        return false;
+                    }
+                    learn(conflict);
+                    continue;
+                }
+
+                if(conflicts >= restartLimit) {
+                    backtrack(0);
+                    restartCount++;
+                    break;
+                }
+
+                variable = pickBranchVariable();
+                if(variable == -1)
+                    return true;    // every variable is assigned without conflicts
+
+                decisionCount++;
+                levelStarts[decisionLevel++] = trailSize;
+                assign(2 * variable + (phases[variable] ? 0 : 1), -1);
+            }
+        }
+    }
+
+    /**
+     * Gets the value of a variable in the satisfying assignment found by {@linkplain #solve()}.
+     * 
+     * @param variable the number of the variable
+     * @return either 1 or 0
+     */
+    int getValue(int variable) {
+        return values[variable] > 0 ? 1 : 0;
+    }
+
+    /**
+     * Gets the number of conflicts found so far.
+     * 
+     * @return the number of conflicts
+     */
+    long getConflictCount() {
+        return conflictCount;
+    }
+
+    /**
+     * Gets the number of decisions made so far.
+     * 
+     * @return the number of decisions
+     */
+    long getDecisionCount() {
+        return decisionCount;
+    }
+
+    /**
+     * Gets the number of restarts so far.
+     * 
+     * @return the number of restarts
+     */
+    long getRestartCount() {
+        return restartCount;
+    }
+
+    /**
+     * Utility method to get the value of a literal.
+     * 
+     * @param literal the literal
+     * @return 1 if the literal is true, -1 if it is false and 0 if its variable is unassigned
+     */
+    private int literalValue(int literal) {
+        int value = values[literal >>> 1];
+
+        return (literal & 1) == 0 ? value : -value;
+    }
+
+    /**
+     * Utility method to make a literal true.
+     * 
+     * @param literal the literal
+     * @param reason the clause that implied the literal, or -1
+     */
+    private void assign(int literal, int reason) {
+        int variable = literal >>> 1;
+
+        values[variable] = (byte)((literal & 1) == 0 ? 1 : -1);
+        levels[variable] = decisionLevel;
+        reasons[variable] = reason;
+        trail[trailSize++] = literal;
+    }
+
+    /**
+     * Utility method to add a clause of at least two literals and watch its first two literals.
+     * 
+     * @param clause the literals of the clause
+     * @return the index of the clause
+     */
+    private int attachClause(int[] clause) {
+        int index = clauses.size();
+
+        clauses.add(clause);
+        watch(clause[0], index);
+        watch(clause[1], index);
+
+        return index;
+    }
+
+    /**
+     * Utility method to add a clause to the watch list of a literal.
+     * 
+     * @param literal the watched literal
+     * @param clauseIndex the index of the clause
+     */
+    private void watch(int literal, int clauseIndex) {
+        if(watchCount[literal] == watches[literal].length)
+            watches[literal] = Arrays.copyOf(watches[literal], 2 * watchCount[literal]);
+
+        watches[literal][watchCount[literal]++] = clauseIndex;
+    }
+
+    /**
+     * Utility method to assign every literal implied by the literals on the trail.
+     * 
+     * @return the index of a clause with every literal false, or -1 if there is no conflict
+     */
+    private int propagate() {
+        int falseLiteral;
+        int[] watchList;
+        int[] clause;
+        int kept;
+        int conflict;
+        int i;
+
+        while(propagateHead < trailSize) {
+            falseLiteral = trail[propagateHead++] ^ 1;
+            watchList = watches[falseLiteral];
+            kept = 0;
+
+            for(i = 0; i < watchCount[falseLiteral]; i++) {
+                clause = clauses.get(watchList[i]);
+
+                // keep the false literal second
+                if(clause[0] == falseLiteral) {
+                    clause[0] = clause[1];
+                    clause[1] = falseLiteral;
+                }
+                if(literalValue(clause[0]) > 0) {
+                    watchList[kept++] = watchList[i];
+                    continue;
+                }
+
+                // look for another literal to watch
+                for(int k = 2; k < clause.length; k++) {
+                    if(literalValue(clause[k]) >= 0) {
+                        clause[1] = clause[k];
+                        clause[k] = falseLiteral;
+                        watch(clause[1], watchList[i]);
+                        break;
+                    }
+                }
+                if(clause[1] != falseLiteral)
+                    continue;
+
+                // the clause is unit or conflicting
+                watchList[kept++] = watchList[i];
+                if(literalValue(clause[0]) < 0) {
+                    conflict = watchList[i];
+                    for(i++; i < watchCount[falseLiteral]; i++)
+                        watchList[kept++] = watchList[i];
+                    watchCount[falseLiteral] = kept;
+                    propagateHead = trailSize;
+                    return conflict;
+                }
+                assign(clause[0], watchList[i]);
+            }
+
+            watchCount[falseLiteral] = kept;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Utility method to learn from a conflict: finds the clause at the first unique implication
+     * point, jumps back to where it becomes unit, and adds it.
+     * 
+     * @param conflict the index of the conflicting clause
+     */
+    private void learn(int conflict) {
+        ArrayList<Integer> learned = new ArrayList<Integer>();
+        int[] clause;
+        int pending = 0;
+        int literal = -1;
+        int position = trailSize - 1;
+        int backtrackLevel = 0;
+        int reason = conflict;
+        int variable;
+        int[] result;
+
+        learned.add(Integer.valueOf(0));    // room for the asserting literal
+        do {
+            clause = clauses.get(reason);
+            for(int k = literal == -1 ? 0 : 1; k < clause.length; k++) {
+                variable = clause[k] >>> 1;
+                if(seen[variable] || levels[variable] == 0)
+                    continue;
+
+                seen[variable] = true;
+                bumpActivity(variable);
+                if(levels[variable] == decisionLevel)
+                    pending++;
+                else {
+                    learned.add(Integer.valueOf(clause[k]));
+                    backtrackLevel = Math.max(backtrackLevel, levels[variable]);
+                }
+            }
+
+            // the next literal of the current level on the trail
+            while(!seen[trail[position] >>> 1])
+                position--;
+            literal = trail[position--];
+            seen[literal >>> 1] = false;
+            reason = reasons[literal >>> 1];
+            pending--;
+        } while(pending > 0);
+
+        learned.set(0, Integer.valueOf(literal ^ 1));
+        for(int k = 1; k < learned.size(); k++)
+            seen[learned.get(k).intValue() >>> 1] = false;
+        activityIncrement *= ACTIVITY_GROWTH;
+        if(activityIncrement > 1e100)
+            rescaleActivities();
+
+        backtrack(backtrackLevel);
+        if(learned.size() == 1) {
+            assign(literal ^ 1, -1);
+            return;
+        }
+
+        result = new int[learned.size()];
+        for(int k = 0; k < result.length; k++)
+            result[k] = learned.get(k).intValue();
+        // watch a literal of the backtrack level second, so the clause stays watched correctly
+        for(int k = 2; k < result.length; k++) {
+            if(levels[result[k] >>> 1] > levels[result[1] >>> 1]) {
+                variable = result[1];
+                result[1] = result[k];
+                result[k] = variable;
+            }
+        }
+        assign(literal ^ 1, attachClause(result));
+    }
+
+    /**
+     * Utility method to unassign every variable above a decision level.
+     * 
+     * @param level the decision level to go back to
+     */
+    private void backtrack(int level) {
+        int variable;
+
+        if(decisionLevel <= level)
+            return;
+
+        for(int i = trailSize - 1; i >= levelStarts[level]; i--) {
+            variable = trail[i] >>> 1;
+            phases[variable] = values[variable] > 0;
+            values[variable] = 0;
+            reasons[variable] = -1;
+            if(heapPositions[variable] == -1)
+                heapInsert(variable);
+        }
+
+        trailSize = levelStarts[level];
+        propagateHead = trailSize;
+        decisionLevel = level;
+    }
+
+    /**
+     * Utility method to pick the unassigned variable with the highest activity.
+     * 
+     * @return the variable, or -1 if every variable is assigned
+     */
+    private int pickBranchVariable() {
+        int variable;
+
+        while(heapSize > 0) {
+            variable = heapRemoveTop();
+            if(values[variable] == 0)
+                return variable;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Utility method to raise the activity of a variable that took part in a conflict.
+     * 
+     * @param variable the variable
+     */
+    private void bumpActivity(int variable) {
+        activities[variable] += activityIncrement;
+        if(heapPositions[variable] != -1)
+            heapUp(heapPositions[variable]);
+    }
+
+    /**
+     * Utility method to scale every activity down before they overflow.
+     */
+    private void rescaleActivities() {
+        for(int v = 0; v < varCount; v++)
+            activities[v] *= 1e-100;
+        activityIncrement *= 1e-100;
+    }
+
+    /**
+     * Utility method to get an element of the Luby sequence: 1, 1, 2, 1, 1, 2, 4, 1, ...
+     * 
+     * @param index the index of the element, from 0
+     * @return the element of the sequence
+     */
+    private static long luby(long index) {
+        long size = 1;
+        int power = 0;
+
+        // find the finite subsequence that contains the index
+        while(size < index + 1) {
+            power++;
+            size = 2 * size + 1;
+        }
+        while(size - 1 != index) {
+            size = (size - 1) >> 1;
+            power--;
+            index = index % size;
+        }
+
+        return 1L << power;
+    }
+
+    /**
+     * Utility method to add a variable to the heap.
+     * 
+     * @param variable the variable
+     */
+    private void heapInsert(int variable) {
+        heap[heapSize] = variable;
+        heapPositions[variable] = heapSize;
+        heapUp(heapSize++);
+    }
+
+    /**
+     * Utility method to remove the variable with the highest activity from the heap.
+     * 
+     * @return the variable
+     */
+    private int heapRemoveTop() {
+        int top = heap[0];
+
+        heapPositions[top] = -1;
+        heap[0] = heap[--heapSize];
+        if(heapSize > 0) {
+            heapPositions[heap[0]] = 0;
+            heapDown(0);
+        }
+
+        return top;
+    }
+
+    /**
+     * Utility method to move a variable up the heap until its parent is at least as active.
+     * 
+     * @param position the position of the variable in the heap
+     */
+    private void heapUp(int position) {
+        int variable = heap[position];
+        int parent;
+
+        while(position > 0) {
+            parent = (position - 1) >> 1;
+            if(activities[heap[parent]] >= activities[variable])
+                break;
+            heap[position] = heap[parent];
+            heapPositions[heap[position]] = position;
+            position = parent;
+        }
+
+        heap[position] = variable;
+        heapPositions[variable] = position;
+    }
+
+    /**
+     * Utility method to move a variable down the heap until its children are at most as active.
+     * 
+     * @param position the position of the variable in the heap
+     */
+    private void heapDown(int position) {
+        int variable = heap[position];
+        int child;
+
+        while(2 * position + 1 < heapSize) {
+            child = 2 * position + 1;
+            if(child + 1 < heapSize && activities[heap[child + 1]] > activities[heap[child]])
+                child++;
+            if(activities[heap[child]] <= activities[variable])
+                break;
+            heap[position] = heap[child];
+            heapPositions[heap[position]] = position;
+            position = child;
+        }
+
+        heap[position] = variable;
+        heapPositions[variable] = position;
+    }
+}
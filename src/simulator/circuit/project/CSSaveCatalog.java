@@ -0,0 +1,336 @@
+package simulator.circuit.project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/**
+ * Class to keep an index of the save folder, so that the saved circuits can be listed with
+ * their descriptions without reading the save files; see {@linkplain CSSaveInfo}.
+ * <p>
+ * The index is a file in the save folder named {@linkplain #FILE_NAME}. For every save file it
+ * holds the length and last modified time of the save file and of its edit journal, and the
+ * description of the circuit. When the index is refreshed, only the save files whose length or
+ * time changed are read again:
+ * <ul>
+ *  <li>a save file with a description in its header, and no edits in its journal, is described
+ *      by its header, which is read from the first bytes of the file</li>
+ *  <li>a save file with edits in its journal, or without a description, such as a save file
+ *      holding serialized Java objects, is read in full once, and its journal replayed, to
+ *      describe it; the description is kept until the save file or journal changes again</li>
+ * </ul>
+ * A save file that cannot be read is kept in the index without a description. The index is
+ * written to a separate file that then replaces it, so it is never found half written.
+ * 
+ * @author Joel Tengco
+ */
+public class CSSaveCatalog {
+    /**
+     * Name of the index file in the save folder.
+     */
+    static final String FILE_NAME = ".catalog";
+    /**
+     * Identifies a file as the index of a save folder; "CSCT" in ASCII.
+     */
+    static final int MAGIC = 0x43534354;
+    /**
+     * Version of the index format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The save folder.
+     */
+    private final File dir;
+    /**
+     * Entry of every save file, by name, in order of name.
+     */
+    private final TreeMap<String, Entry> entries;
+    /**
+     * Whether the entries changed since the index was read.
+     */
+    private boolean changed;
+
+    /**
+     * Constructs an index of the given save folder without entries.
+     * 
+     * @param dir the save folder
+     */
+    private CSSaveCatalog(File dir) {
+        this.dir = dir;
+        entries = new TreeMap<String, Entry>();
+    }
+
+    /**
+     * Reads the index of a save folder, or starts an empty one if the folder has none or its
+     * index is damaged.
+     * 
+     * @param dir the save folder
+     * @return the index, as it was last written
+     */
+    static CSSaveCatalog open(File dir) {
+        CSSaveCatalog catalog = new CSSaveCatalog(dir);
+        File file = new File(dir, FILE_NAME);
+        DataInputStream in;
+
+        if(!file.isFile()) {
+            catalog.changed = true;
+            return catalog;
+        }
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                catalog.readEntries(in);
+            } finally {
+                in.close();
+            }
+        } catch(IOException ioe) {
+            // the index is only a copy of what the save files hold, so it is rebuilt
+            catalog.entries.clear();
+            catalog.changed = true;
+        }
+
+        return catalog;
+    }
+
+    /**
+     * Brings the index up to date with the given save files: entries of save files that are
+     * gone are removed, and save files that are new or changed are described again.
+     * 
+     * @param saveFiles the save files of the folder
+     * @return true if any entry changed
+     */
+    boolean refresh(File[] saveFiles) {
+        TreeMap<String, File> files = new TreeMap<String, File>();
+        Iterator<String> names;
+        Entry entry;
+        File journal;
+
+        for(File file : saveFiles)
+            files.put(file.getName(), file);
+
+        names = entries.keySet().iterator();
+        while(names.hasNext())
+            if(!files.containsKey(names.next())) {
+                names.remove();
+                changed = true;
+            }
+
+        for(File file : files.values()) {
+            journal = new File(dir, file.getName() + CSEditJournal.JOURNAL_SUFFIX);
+            entry = entries.get(file.getName());
+            if(entry != null && entry.fileLength == file.length() && entry.fileModified == file.lastModified()
+                    && entry.journalLength == journal.length() && entry.journalModified == journal.lastModified())
+                continue;
+
+            entry = new Entry();
+            entry.fileLength = file.length();
+            entry.fileModified = file.lastModified();
+            entry.journalLength = journal.length();
+            entry.journalModified = journal.lastModified();
+            entry.info = describe(file, journal);
+            entries.put(file.getName(), entry);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Writes the index to its file if any entry changed since it was read.
+     * 
+     * @throws IOException if an error occurred when writing the index
+     */
+    void write() throws IOException {
+        File file = new File(dir, FILE_NAME);
+        File next = new File(dir, FILE_NAME + CSEditJournal.NEXT_SUFFIX);
+        DataOutputStream out;
+
+        if(!changed)
+            return;
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(next)));
+        try {
+            writeEntries(out);
+        } finally {
+            out.close();
+        }
+        Files.move(next.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        changed = false;
+    }
+
+    /**
+     * Gets the names of the save files in the index, in order of name.
+     * 
+     * @return the names of the save files
+     */
+    public ArrayList<String> getNames() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    /**
+     * Gets the names of the save files whose names contain the given text, ignoring case, in
+     * order of name.
+     * 
+     * @param text the text to look for
+     * @return the names of the matching save files
+     */
+    public ArrayList<String> findNames(String text) {
+        ArrayList<String> names = new ArrayList<String>();
+        String lowerText = text.toLowerCase();
+
+        for(String name : entries.keySet())
+            if(name.toLowerCase().contains(lowerText))
+                names.add(name);
+
+        return names;
+    }
+
+    /**
+     * Gets the description of the circuit in a save file.
+     * 
+     * @param name the name of the save file
+     * @return the description, or null if the save file is not in the index or could not be read
+     */
+    public CSSaveInfo getInfo(String name) {
+        Entry entry = entries.get(name);
+
+        return entry == null ? null : entry.info;
+    }
+
+    /**
+     * Utility method to describe the circuit in a save file, reading only the header of the
+     * file unless it has no description or its journal has edits.
+     * 
+     * @param file the save file
+     * @param journal the journal of the save file, which may not exist
+     * @return the description, or null if the save file could not be read
+     */
+    private static CSSaveInfo describe(File file, File journal) {
+        CSSaveInfo info;
+        CSEngine engine;
+
+        try {
+            if(journal.length() <= CSEditJournal.HEADER_SIZE) {
+                info = CSSaveInfo.read(file);
+                if(info != null)
+                    return info;
+            }
+
+            engine = new CSEngine(CSFileIO.readSaveFile(file.getName()));
+            CSFileIO.replayJournal(file.getName(), engine);
+            return CSSaveInfo.describe(engine.getCircuit(), Math.max(file.lastModified(), journal.lastModified()));
+        } catch(IOException ioe) {
+            return null;
+        } catch(ClassNotFoundException cnfe) {
+            return null;
+        } catch(ClassCastException cce) {
+            return null;
+        } catch(IllegalArgumentException iae) {
+            return null;
+        } catch(IllegalStateException ise) {
+            return null;
+        }
+    }
+
+    /**
+     * Utility method to read the entries of the index file.
+     * 
+     * @param in the stream of the index file
+     * @throws IOException if an error occurred when reading, or the index is damaged or of
+     * another version
+     */
+    private void readEntries(DataInputStream in) throws IOException {
+        byte[] infoBytes = new byte[CSSaveInfo.SIZE];
+        int count;
+        String name;
+        Entry entry;
+
+        if(in.readInt() != MAGIC || in.readInt() != VERSION)
+            throw new IOException(FILE_NAME + " is not a save folder index of a supported version");
+
+        count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            name = in.readUTF();
+            entry = new Entry();
+            entry.fileLength = in.readLong();
+            entry.fileModified = in.readLong();
+            entry.journalLength = in.readLong();
+            entry.journalModified = in.readLong();
+            if(in.readBoolean()) {
+                in.readFully(infoBytes);
+                entry.info = CSSaveInfo.read(ByteBuffer.wrap(infoBytes));
+            }
+            entries.put(name, entry);
+        }
+    }
+
+    /**
+     * Utility method to write the entries to the index file.
+     * 
+     * @param out the stream of the index file
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeEntries(DataOutputStream out) throws IOException {
+        ByteBuffer infoBytes = ByteBuffer.allocate(CSSaveInfo.SIZE);
+        Entry entry;
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for(String name : entries.keySet()) {
+            entry = entries.get(name);
+            out.writeUTF(name);
+            out.writeLong(entry.fileLength);
+            out.writeLong(entry.fileModified);
+            out.writeLong(entry.journalLength);
+            out.writeLong(entry.journalModified);
+            out.writeBoolean(entry.info != null);
+            if(entry.info != null) {
+                infoBytes.clear();
+                entry.info.write(infoBytes);
+                out.write(infoBytes.array());
+            }
+        }
+    }
+
+    /**
+     * Class to hold what the index knows about one save file.
+     * 
+     * @author Joel Tengco
+     */
+    private static class Entry {
+        /**
+         * Length of the save file when it was described.
+         */
+        long fileLength;
+        /**
+         * Last modified time of the save file when it was described.
+         */
+        long fileModified;
+        /**
+         * Length of the journal when the save file was described, or 0 if it had none.
+         */
+        long journalLength;
+        /**
+         * Last modified time of the journal when the save file was described, or 0 if it had none.
+         */
+        long journalModified;
+        /**
+         * Description of the circuit, or null if the save file could not be read.
+         */
+        CSSaveInfo info;
+    }
+}
@@ -0,0 +1,415 @@
+package simulator.circuit.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Class to describe a saved circuit without reading the circuit: how many nodes of each type
+ * and edges it has, whether it is sequential, a hash of its contents and when it was saved.
+ * <p>
+ * Save files written by {@linkplain CSSaveWriter} and {@linkplain CSMappedSaveWriter} carry this
+ * description as a block of {@linkplain #SIZE} bytes in their header, so it is read from the
+ * first bytes of the file, and for compressed save files from the first bytes of the first
+ * block. The block holds:
+ * <ul>
+ *  <li>the number of nodes of every type, as an int per {@code TYPE_} constant of
+ *      {@linkplain CSSaveWriter}</li>
+ *  <li>the number of edges</li>
+ *  <li>flags, of which the lowest bit is set for sequential circuits</li>
+ *  <li>the content hash, a 64-bit hash of the names, opcodes, edges, inputs, track numbers,
+ *      delays and input data of the nodes, so that circuits with the same contents have the
+ *      same hash no matter when or in which layout they were saved</li>
+ *  <li>the time the file was saved, in milliseconds since the epoch</li>
+ * </ul>
+ * 
+ * @author Joel Tengco
+ */
+public class CSSaveInfo {
+    /**
+     * Number of bytes of the description in a save file.
+     */
+    static final int SIZE = 4 * (CSSaveWriter.TYPE_INVERTER + 1) + 4 + 4 + 8 + 8;
+    /**
+     * Flag of sequential circuits.
+     */
+    private static final int FLAG_SEQUENTIAL = 1;
+    /**
+     * Starting value of the content hash.
+     */
+    private static final long HASH_SEED = 0x6A09E667F3BCC909L;
+    /**
+     * Format of the time a file was saved, as shown in summaries.
+     */
+    private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm";
+
+    /**
+     * Number of nodes of every type, indexed by the {@code TYPE_} constants of {@linkplain CSSaveWriter}.
+     */
+    private final int[] nodeCounts;
+    /**
+     * Number of edges.
+     */
+    private final int edgeCount;
+    /**
+     * Whether the circuit has flip-flops.
+     */
+    private final boolean sequential;
+    /**
+     * Hash of the contents of the circuit.
+     */
+    private final long contentHash;
+    /**
+     * Time the circuit was saved, in milliseconds since the epoch.
+     */
+    private final long modified;
+
+    /**
+     * Constructs the description of a saved circuit.
+     * 
+     * @param nodeCounts the number of nodes of every type
+     * @param edgeCount the number of edges
+     * @param sequential whether the circuit has flip-flops
+     * @param contentHash the hash of the contents of the circuit
+     * @param modified the time the circuit was saved, in milliseconds since the epoch
+     */
+    CSSaveInfo(int[] nodeCounts, int edgeCount, boolean sequential, long contentHash, long modified) {
+        this.nodeCounts = nodeCounts;
+        this.edgeCount = edgeCount;
+        this.sequential = sequential;
+        this.contentHash = contentHash;
+        this.modified = modified;
+    }
+
+    /**
+     * Describes a circuit as it is about to be saved, from the opcodes, inputs and edges that
+     * the save writers work out anyway.
+     * 
+     * @param circuit the circuit
+     * @param opcodes the opcode of every node, as written to save files
+     * @param inputStart where the inputs of each node start, one longer than the number of nodes
+     * @param inputs the indeces of the nodes every node reads, one node after the other
+     * @param edgeStart where the edges of each node start, one longer than the number of nodes
+     * @param edgeTargets the targets of the edges, one node after the other
+     * @param modified the time the circuit is saved, in milliseconds since the epoch
+     * @return the description of the circuit
+     * @throws IOException if the stimulus source of an input variable node could not be serialized
+     */
+    static CSSaveInfo describe(CSGraph circuit, int[] opcodes, int[] inputStart, int[] inputs, int[] edgeStart, int[] edgeTargets, long modified) throws IOException {
+        int[] nodeCounts = new int[CSSaveWriter.TYPE_INVERTER + 1];
+        long hash = HASH_SEED;
+        String name;
+        CSNode node;
+
+        for(int i = 0; i < opcodes.length; i++) {
+            node = circuit.getNode(i);
+            nodeCounts[opcodes[i] & CSSaveWriter.TYPE_MASK]++;
+            hash = mix(hash, opcodes[i]);
+
+            name = node.getName();
+            hash = mix(hash, name.length());
+            for(int c = 0; c < name.length(); c++)
+                hash = mix(hash, name.charAt(c));
+
+            hash = mix(hash, inputStart[i + 1] - inputStart[i]);
+            for(int k = inputStart[i]; k < inputStart[i + 1]; k++)
+                hash = mix(hash, inputs[k]);
+
+            hash = mix(hash, edgeStart[i + 1] - edgeStart[i]);
+            for(int k = edgeStart[i]; k < edgeStart[i + 1]; k++)
+                hash = mix(hash, edgeTargets[k]);
+
+            if((opcodes[i] & CSSaveWriter.FLAG_TRACKED) != 0)
+                hash = mix(hash, node.getTrackNum());
+            if((opcodes[i] & CSSaveWriter.FLAG_DELAY) != 0)
+                hash = mix(hash, node.getDelay());
+            if((opcodes[i] & CSSaveWriter.FLAG_INPUT_DATA) != 0)
+                for(byte b : CSMappedSaveWriter.getInputData((InputVariableNode)node))
+                    hash = mix(hash, b);
+        }
+
+        return new CSSaveInfo(nodeCounts, edgeTargets.length, nodeCounts[CSSaveWriter.TYPE_DFF] > 0, finish(hash), modified);
+    }
+
+    /**
+     * Describes a circuit that is not being saved, such as one read from a save file that has
+     * no description or has edits in its journal.
+     * 
+     * @param circuit the circuit
+     * @param modified the time the circuit was last saved, in milliseconds since the epoch
+     * @return the description of the circuit
+     * @throws IOException if the stimulus source of an input variable node could not be serialized
+     */
+    static CSSaveInfo describe(CSGraph circuit, long modified) throws IOException {
+        int size = circuit.getSize();
+        int[] opcodes = new int[size];
+        int[] edgeStart = new int[size + 1];
+        int[] edgeTargets = circuit.getEdges(edgeStart);
+        int[] inputStart = new int[size + 1];
+        int[] inputs = CSSaveWriter.getInputs(circuit, edgeStart, edgeTargets, inputStart);
+
+        for(int i = 0; i < size; i++)
+            opcodes[i] = CSSaveWriter.getOpcode(circuit.getNode(i));
+
+        return describe(circuit, opcodes, inputStart, inputs, edgeStart, edgeTargets, modified);
+    }
+
+    /**
+     * Reads the description of the circuit in a save file from its header.
+     * <p>
+     * Only the header is read: the first bytes of the file, or of the first block of a file
+     * compressed with {@linkplain CSBlockWriter}.
+     * 
+     * @param source the save file
+     * @return the description, or null if the save file was written before save files had one
+     * or holds serialized Java objects
+     * @throws IOException if an error occurred when reading the file, or the header is damaged
+     */
+    static CSSaveInfo read(File source) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(source, "r");
+        byte[] header;
+        int magic;
+        CSBlockReader blockReader;
+
+        try {
+            if(in.length() < 8)
+                return null;
+            magic = in.readInt();
+            if(magic == CSSaveWriter.MAGIC) {
+                header = new byte[(int)Math.min(in.length(), CSSaveWriter.HEADER_SIZE + SIZE)];
+                in.seek(0);
+                in.readFully(header);
+            } else if(magic == CSMappedSaveWriter.MAGIC) {
+                header = new byte[(int)Math.min(in.length(), CSMappedSaveWriter.HEADER_SIZE + SIZE)];
+                in.seek(0);
+                in.readFully(header);
+                return readHeader(ByteBuffer.wrap(header), CSMappedSaveWriter.HEADER_SIZE, source);
+            } else if(magic == CSBlockWriter.MAGIC) {
+                blockReader = new CSBlockReader(source);
+                try {
+                    header = blockReader.readPrefix(CSSaveWriter.HEADER_SIZE + SIZE);
+                } finally {
+                    blockReader.close();
+                }
+                if(header.length < 8 || ByteBuffer.wrap(header).getInt() != CSSaveWriter.MAGIC)
+                    return null;
+            } else
+                return null;
+        } finally {
+            in.close();
+        }
+
+        return readHeader(ByteBuffer.wrap(header), CSSaveWriter.HEADER_SIZE, source);
+    }
+
+    /**
+     * Utility method to read the description from the header of a save file, which follows
+     * the header of the first version of the layout.
+     * 
+     * @param header the first bytes of the save file
+     * @param offset where the description starts in the header
+     * @param source the save file, for messages
+     * @return the description, or null if the header is of the first version
+     * @throws IOException if the header is damaged
+     */
+    private static CSSaveInfo readHeader(ByteBuffer header, int offset, File source) throws IOException {
+        if(header.getInt(4) < 2)
+            return null;
+        if(header.capacity() < offset + SIZE)
+            throw new IOException(source.getName() + " is damaged");
+
+        header.position(offset);
+        return read(header);
+    }
+
+    /**
+     * Reads a description written by {@linkplain #write(ByteBuffer)}.
+     * 
+     * @param buffer the buffer holding the description at its position
+     * @return the description
+     * @throws IOException if the description is damaged
+     */
+    static CSSaveInfo read(ByteBuffer buffer) throws IOException {
+        int[] nodeCounts = new int[CSSaveWriter.TYPE_INVERTER + 1];
+        int edgeCount;
+        int flags;
+
+        for(int type = 0; type < nodeCounts.length; type++) {
+            nodeCounts[type] = buffer.getInt();
+            if(nodeCounts[type] < 0)
+                throw new IOException("The description of the saved circuit is damaged");
+        }
+        edgeCount = buffer.getInt();
+        flags = buffer.getInt();
+        if(edgeCount < 0)
+            throw new IOException("The description of the saved circuit is damaged");
+
+        return new CSSaveInfo(nodeCounts, edgeCount, (flags & FLAG_SEQUENTIAL) != 0, buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Writes this description as {@linkplain #SIZE} bytes.
+     * 
+     * @param buffer the buffer to write to, with at least {@linkplain #SIZE} bytes remaining
+     */
+    void write(ByteBuffer buffer) {
+        for(int count : nodeCounts)
+            buffer.putInt(count);
+        buffer.putInt(edgeCount);
+        buffer.putInt(sequential ? FLAG_SEQUENTIAL : 0);
+        buffer.putLong(contentHash);
+        buffer.putLong(modified);
+    }
+
+    /**
+     * Gets the number of nodes of the circuit.
+     * 
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        int total = 0;
+
+        for(int count : nodeCounts)
+            total += count;
+
+        return total;
+    }
+
+    /**
+     * Gets the number of nodes of the given type.
+     * 
+     * @param type one of the {@code TYPE_} constants of {@linkplain CSSaveWriter}
+     * @return the number of nodes of the type
+     */
+    int getNodeCount(int type) {
+        return nodeCounts[type];
+    }
+
+    /**
+     * Gets the number of input variable nodes of the circuit.
+     * 
+     * @return the number of input variable nodes
+     */
+    public int getInputCount() {
+        return nodeCounts[CSSaveWriter.TYPE_INPUT];
+    }
+
+    /**
+     * Gets the number of output variable nodes of the circuit.
+     * 
+     * @return the number of output variable nodes
+     */
+    public int getOutputCount() {
+        return nodeCounts[CSSaveWriter.TYPE_OUTPUT];
+    }
+
+    /**
+     * Gets the number of flip-flops of the circuit, not counting their output nodes.
+     * 
+     * @return the number of flip-flops
+     */
+    public int getFlipFlopCount() {
+        return nodeCounts[CSSaveWriter.TYPE_DFF];
+    }
+
+    /**
+     * Gets the number of gates of the circuit, of any type.
+     * 
+     * @return the number of gates
+     */
+    public int getGateCount() {
+        int total = 0;
+
+        for(int type = CSSaveWriter.TYPE_AND; type <= CSSaveWriter.TYPE_NXOR; type++)
+            total += nodeCounts[type];
+
+        return total;
+    }
+
+    /**
+     * Gets the number of inverters of the circuit.
+     * 
+     * @return the number of inverters
+     */
+    public int getInverterCount() {
+        return nodeCounts[CSSaveWriter.TYPE_INVERTER];
+    }
+
+    /**
+     * Gets the number of edges of the circuit.
+     * 
+     * @return the number of edges
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns whether the circuit is sequential, as in has flip-flops.
+     * 
+     * @return true if the circuit has flip-flops
+     */
+    public boolean isSequential() {
+        return sequential;
+    }
+
+    /**
+     * Gets the hash of the contents of the circuit, which is the same for circuits with the same
+     * nodes, names, connections and settings.
+     * 
+     * @return the content hash
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Gets the time the circuit was saved.
+     * 
+     * @return the time, in milliseconds since the epoch
+     */
+    public long getModified() {
+        return modified;
+    }
+
+    /**
+     * Gets a one-line summary of the circuit, as shown when choosing a circuit to load.
+     * 
+     * @return the summary
+     */
+    public String getSummary() {
+        return String.format("%d nodes (%d in, %d out, %d FF, %d gates, %d inv), %d edges, %s, saved %s",
+                getNodeCount(), getInputCount(), getOutputCount(), getFlipFlopCount(), getGateCount(),
+                getInverterCount(), edgeCount, sequential ? "sequential" : "combinational",
+                new SimpleDateFormat(DATE_FORMAT).format(new Date(modified)));
+    }
+
+    /**
+     * Utility method to mix a value into the content hash.
+     * 
+     * @param hash the hash so far
+     * @param value the value
+     * @return the new hash
+     */
+    private static long mix(long hash, int value) {
+        hash ^= value * 0x9E3779B97F4A7C15L;
+        return Long.rotateLeft(hash, 31) * 0xBF58476D1CE4E5B9L;
+    }
+
+    /**
+     * Utility method to finish the content hash, so that every bit of it depends on every value.
+     * 
+     * @param hash the hash of all values
+     * @return the content hash
+     */
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
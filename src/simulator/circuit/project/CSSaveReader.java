@@ -0,0 +1,911 @@
+package simulator.circuit.project;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Class to read a circuit from a save file written by {@linkplain CSSaveWriter}.
+ * <p>
+ * The file is read through one buffer in large blocks and decoded into arrays, which are laid
+ * out in memory the way {@linkplain CSMappedSaveWriter} lays out a mapped save file. The circuit
+ * is then opened from them by {@linkplain CSMappedCircuit}, so no node is created until it is
+ * asked for. Every index, input and name read is still checked, so that a damaged file cannot
+ * produce a broken circuit.
+ * 
+ * @author Joel Tengco
+ */
+public class CSSaveReader implements Closeable {
+    /**
+     * Size of the buffer that the file is read into.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Largest size of an array that can be allocated.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    /**
+     * Number of low bits of an offset of a save file laid out in memory that are the offset
+     * within its segment.
+     */
+    private static final int SEGMENT_SHIFT = Integer.numberOfTrailingZeros(CSMappedFile.DEFAULT_SEGMENT_SIZE);
+    /**
+     * Mask of the offset within a segment of a save file laid out in memory.
+     */
+    private static final long SEGMENT_MASK = CSMappedFile.DEFAULT_SEGMENT_SIZE - 1;
+
+    /**
+     * Channel of the file being read, or null once closed.
+     */
+    private ReadableByteChannel channel;
+    /**
+     * Name of the file being read, used in error messages.
+     */
+    private final String sourceName;
+    /**
+     * Buffer holding the part of the file being read.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Number of nodes of the saved circuit.
+     */
+    private final int nodeCount;
+    /**
+     * Number of edges of the saved circuit.
+     */
+    private final int edgeCount;
+    /**
+     * Number of inputs of all nodes of the saved circuit.
+     */
+    private final int inputCount;
+    /**
+     * Description of the saved circuit, or null for save files written before they had one.
+     */
+    private CSSaveInfo info;
+
+    /**
+     * Opens a save file and reads its header.
+     * 
+     * @param source the file to read
+     * @throws IOException if an error occurred when reading the header, or the file is not a
+     * save file of a supported version
+     */
+    public CSSaveReader(File source) throws IOException {
+        this(new RandomAccessFile(source, "r").getChannel(), source.getName());
+    }
+
+    /**
+     * Starts reading a save file from the given channel, such as the stream of a file
+     * compressed by {@linkplain CSBlockWriter}, and reads its header.
+     * 
+     * @param channel the channel to read from; it is closed by {@linkplain #close()}
+     * @throws IOException if an error occurred when reading the header, or the file is not a
+     * save file of a supported version
+     */
+    public CSSaveReader(ReadableByteChannel channel) throws IOException {
+        this(channel, "the save file");
+    }
+
+    /**
+     * Starts reading a save file from the given channel and reads its header.
+     * 
+     * @param channel the channel to read from; it is closed by {@linkplain #close()}
+     * @param sourceName the name of the file, used in error messages
+     * @throws IOException if an error occurred when reading the header, or the file is not a
+     * save file of a supported version
+     */
+    private CSSaveReader(ReadableByteChannel channel, String sourceName) throws IOException {
+        int version;
+
+        this.channel = channel;
+        this.sourceName = sourceName;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+
+        try {
+            ensure(CSSaveWriter.HEADER_SIZE);
+            if(buffer.getInt() != CSSaveWriter.MAGIC)
+                throw new IOException("The file is not a circuit save file");
+            version = buffer.getInt();
+            if(version < 1 || version > CSSaveWriter.VERSION)
+                throw new IOException("Unsupported save file version " + version);
+
+            nodeCount = buffer.getInt();
+            edgeCount = buffer.getInt();
+            inputCount = buffer.getInt();
+            if(nodeCount < 0 || edgeCount < 0 || inputCount < 0)
+                throw new IOException("The save file is damaged");
+            if(version >= 2) {
+                ensure(CSSaveInfo.SIZE);
+                info = CSSaveInfo.read(buffer);
+            }
+        } catch(IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Gets the description of the saved circuit from the header of the file.
+     * 
+     * @return the description, or null for save files written before they had one
+     */
+    public CSSaveInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * Gets the number of nodes of the saved circuit.
+     * 
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the number of edges of the saved circuit.
+     * 
+     * @return the number of edges
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Reads the saved circuit.
+     * <p>
+     * The file is decoded into the layout of {@linkplain CSMappedSaveWriter} in memory, and the
+     * circuit is opened from it as from a mapped save file: its nodes are only created when they
+     * are asked for, and stimulus sources are only read back when their node is created.
+     * 
+     * @return the circuit, in the state it was saved in
+     * @throws IOException if an error occurred when reading, or the file is damaged
+     */
+    public CSGraph readCircuit() throws IOException {
+        byte[] names = new byte[(int)Math.min(Math.max(8L * nodeCount, 64), MAX_ARRAY_SIZE)];
+        int[] nameStart = new int[nodeCount + 1];
+        int[] nameHashes = new int[nodeCount];
+        int[] opcodes = new int[nodeCount];
+        int[] edgeStart = new int[nodeCount + 1];
+        int[] edgeTargets = new int[edgeCount];
+        int[] inputStart = new int[nodeCount + 1];
+        int[] inputNodes = new int[inputCount];
+        int[] trackNums = new int[nodeCount];
+        int[] delays = new int[nodeCount];
+        int[] nameTable;
+        ArrayList<byte[]> inputData = new ArrayList<byte[]>();
+        long[] sections = new long[CSMappedSaveWriter.SECTION_COUNT];
+        Layout layout;
+        int nameLength = 0;
+        int shared;
+        int length;
+        int type;
+        int keyCount = 0;
+        int attributeCount = 0;
+        long dataSize = 0;
+        long dataOffset = 0;
+        long size;
+
+        for(int i = 0; i < nodeCount; i++) {
+            shared = readVarint();
+            length = readVarint();
+            if(shared < 0 || length < 0)
+                throw new IOException("The save file is damaged");
+            shared = getPrefixLength(names, i == 0 ? 0 : nameStart[i - 1], nameLength, shared);
+            if(length > MAX_ARRAY_SIZE - nameLength - shared)
+                throw new IOException("The names of the save file are too long to be read");
+            if(nameLength + shared + length > names.length)
+                names = Arrays.copyOf(names, (int)Math.min(Math.max(2L * names.length, nameLength + shared + length), MAX_ARRAY_SIZE));
+
+            System.arraycopy(names, i == 0 ? 0 : nameStart[i - 1], names, nameLength, shared);
+            readBytes(names, nameLength + shared, length);
+            nameStart[i] = nameLength;
+            nameLength += shared + length;
+            nameHashes[i] = getNameHash(names, nameStart[i], nameLength);
+        }
+        nameStart[nodeCount] = nameLength;
+
+        for(int i = 0; i < nodeCount; i++) {
+            ensure(1);
+            opcodes[i] = buffer.get() & 0xFF;
+            if((opcodes[i] & CSSaveWriter.TYPE_MASK) > CSSaveWriter.TYPE_INVERTER)
+                throw new IOException("The save file is damaged");
+        }
+
+        readRows(edgeStart, edgeTargets);
+        readRows(inputStart, inputNodes);
+        checkInputs(opcodes, inputStart, inputNodes);
+
+        for(int i = 0; i < nodeCount; i++) {
+            type = opcodes[i] & CSSaveWriter.TYPE_MASK;
+            if(type < CSSaveWriter.TYPE_AND || type > CSSaveWriter.TYPE_NXOR)
+                keyCount++;
+            if((opcodes[i] & CSSaveWriter.FLAG_TRACKED) != 0) {
+                trackNums[i] = readVarint();
+                if(trackNums[i] > 0 && type >= CSSaveWriter.TYPE_AND && type <= CSSaveWriter.TYPE_NXOR)
+                    keyCount++;
+            }
+            if((opcodes[i] & (CSSaveWriter.FLAG_TRACKED | CSSaveWriter.FLAG_DELAY)) != 0)
+                attributeCount++;
+        }
+        for(int i = 0; i < nodeCount; i++)
+            delays[i] = (opcodes[i] & CSSaveWriter.FLAG_DELAY) != 0 ? readVarint() : CSSaveWriter.getDefaultDelay(opcodes[i] & CSSaveWriter.TYPE_MASK);
+        for(int i = 0; i < nodeCount; i++)
+            if((opcodes[i] & CSSaveWriter.FLAG_INPUT_DATA) != 0) {
+                if((opcodes[i] & CSSaveWriter.TYPE_MASK) != CSSaveWriter.TYPE_INPUT)
+                    throw new IOException("The save file is damaged");
+                inputData.add(readInputData());
+                dataSize += inputData.get(inputData.size() - 1).length;
+            }
+
+        nameTable = getNameTable(names, nameStart, nameHashes);
+
+        // the sizes of the sections, each padded to a multiple of 8 bytes
+        size = CSMappedSaveWriter.HEADER_SIZE + CSSaveInfo.SIZE;
+        size = padSection(size + nodeCount);
+        size = padSection(size + 8L * (nodeCount + 1));
+        size = padSection(size + nameLength);
+        size = padSection(size + 4L * nameTable.length);
+        size = padSection(size + 4L * (nodeCount + 1));
+        size = padSection(size + 4L * edgeCount);
+        size = padSection(size + 4L * (nodeCount + 1));
+        size = padSection(size + 4L * inputCount);
+        size = padSection(size + 4L * keyCount);
+        size = padSection(size + (long)CSMappedSaveWriter.ATTRIBUTE_SIZE * attributeCount);
+        size = padSection(size + (long)CSMappedSaveWriter.DATA_INDEX_SIZE * inputData.size());
+        size += dataSize;
+
+        layout = new Layout(size);
+        layout.position = CSMappedSaveWriter.HEADER_SIZE + CSSaveInfo.SIZE;
+
+        sections[CSMappedSaveWriter.SECTION_OPCODES] = layout.startSection();
+        for(int i = 0; i < nodeCount; i++)
+            layout.putByte(opcodes[i]);
+
+        sections[CSMappedSaveWriter.SECTION_NAME_OFFSETS] = layout.startSection();
+        for(int i = 0; i <= nodeCount; i++)
+            layout.putLong(nameStart[i]);
+        sections[CSMappedSaveWriter.SECTION_NAMES] = layout.startSection();
+        layout.putBytes(names, 0, nameLength);
+        sections[CSMappedSaveWriter.SECTION_NAME_TABLE] = layout.startSection();
+        for(int slot : nameTable)
+            layout.putInt(slot);
+
+        sections[CSMappedSaveWriter.SECTION_EDGE_START] = layout.startSection();
+        for(int i = 0; i <= nodeCount; i++)
+            layout.putInt(edgeStart[i]);
+        sections[CSMappedSaveWriter.SECTION_EDGES] = layout.startSection();
+        for(int k = 0; k < edgeCount; k++)
+            layout.putInt(edgeTargets[k]);
+
+        sections[CSMappedSaveWriter.SECTION_INPUT_START] = layout.startSection();
+        for(int i = 0; i <= nodeCount; i++)
+            layout.putInt(inputStart[i]);
+        sections[CSMappedSaveWriter.SECTION_INPUTS] = layout.startSection();
+        for(int k = 0; k < inputCount; k++)
+            layout.putInt(inputNodes[k]);
+
+        sections[CSMappedSaveWriter.SECTION_KEY_NODES] = layout.startSection();
+        for(int i = 0; i < nodeCount; i++) {
+            type = opcodes[i] & CSSaveWriter.TYPE_MASK;
+            if(type < CSSaveWriter.TYPE_AND || type > CSSaveWriter.TYPE_NXOR || trackNums[i] > 0)
+                layout.putInt(i);
+        }
+
+        sections[CSMappedSaveWriter.SECTION_ATTRIBUTES] = layout.startSection();
+        for(int i = 0; i < nodeCount; i++) {
+            if((opcodes[i] & (CSSaveWriter.FLAG_TRACKED | CSSaveWriter.FLAG_DELAY)) != 0) {
+                layout.putInt(i);
+                layout.putInt(trackNums[i]);
+                layout.putInt(delays[i]);
+            }
+        }
+
+        sections[CSMappedSaveWriter.SECTION_INPUT_DATA_INDEX] = layout.startSection();
+        for(int i = 0, d = 0; i < nodeCount; i++) {
+            if((opcodes[i] & CSSaveWriter.FLAG_INPUT_DATA) != 0) {
+                layout.putInt(i);
+                layout.putInt(0);
+                layout.putLong(dataOffset);
+                dataOffset += inputData.get(d++).length;
+            }
+        }
+
+        sections[CSMappedSaveWriter.SECTION_INPUT_DATA] = layout.startSection();
+        for(byte[] data : inputData)
+            layout.putBytes(data, 0, data.length);
+
+        layout.position = 0;
+        layout.putInt(CSMappedSaveWriter.MAGIC);
+        layout.putInt(CSMappedSaveWriter.VERSION);
+        layout.putInt(nodeCount);
+        layout.putInt(edgeCount);
+        layout.putInt(inputCount);
+        layout.putInt(keyCount);
+        layout.putInt(attributeCount);
+        layout.putInt(inputData.size());
+        layout.putInt(nameTable.length);
+        layout.putInt(0);
+        for(long sectionOffset : sections)
+            layout.putLong(sectionOffset);
+        if(info != null)
+            info.write(layout.getHeader());
+
+        return new CSGraph(new CSMappedCircuit(sourceName, new CSMappedFile(layout.segments, CSMappedFile.DEFAULT_SEGMENT_SIZE)));
+    }
+
+    /**
+     * Closes the save file.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        if(channel == null)
+            return;
+
+        channel.close();
+        channel = null;
+    }
+
+    /**
+     * Returns whether the given file starts like a save file written by {@linkplain CSSaveWriter}.
+     * 
+     * @param source the file to check
+     * @return true if the file starts with the magic number of save files
+     * @throws IOException if an error occurred when reading the file
+     */
+    static boolean isSaveFile(File source) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(source, "r");
+
+        try {
+            return in.length() >= 4 && in.readInt() == CSSaveWriter.MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Creates a node that does not need another node to be created.
+     * 
+     * @param type the saved type of the node
+     * @param name the name of the node
+     * @return the new node
+     */
+    static CSNode createNode(int type, String name) {
+        switch(type) {
+            case CSSaveWriter.TYPE_INPUT:   return new InputVariableNode(name);
+            case CSSaveWriter.TYPE_OUTPUT:  return new OutputVariableNode(name);
+            case CSSaveWriter.TYPE_DFF:     return new DFlipFlop(name);
+            case CSSaveWriter.TYPE_AND:     return new AndGate(name);
+            case CSSaveWriter.TYPE_NAND:    return new NandGate(name);
+            case CSSaveWriter.TYPE_OR:      return new OrGate(name);
+            case CSSaveWriter.TYPE_NOR:     return new NorGate(name);
+            case CSSaveWriter.TYPE_XOR:     return new XorGate(name);
+            default:                        return new NXorGate(name);
+        }
+    }
+
+    /**
+     * Returns whether nodes of the given saved type need their input node to be created.
+     * 
+     * @param type the saved type of the node
+     * @return true for inverters and flip-flop output nodes
+     */
+    static boolean isDependentType(int type) {
+        return type == CSSaveWriter.TYPE_INVERTER || type == CSSaveWriter.TYPE_FF_OUT || type == CSSaveWriter.TYPE_FF_OUT_NEGATED;
+    }
+
+    /**
+     * Creates an inverter or flip-flop output node from its input node.
+     * 
+     * @param type the saved type of the node
+     * @param name the name of the node
+     * @param inputNode the node it reads
+     * @return the new node
+     * @throws IOException if a flip-flop output node does not read a flip-flop
+     */
+    static CSNode createDependentNode(int type, String name, CSNode inputNode) throws IOException {
+        FlipFlop flipFlop;
+        FFOutNode outNode;
+
+        if(type == CSSaveWriter.TYPE_INVERTER)
+            return new Inverter(name, inputNode);
+
+        if(!(inputNode instanceof FlipFlop))
+            throw new IOException("The save file is damaged");
+        flipFlop = (FlipFlop)inputNode;
+        outNode = new FFOutNode(name, flipFlop);
+        if(type == CSSaveWriter.TYPE_FF_OUT)
+            flipFlop.setOutNodes(outNode, flipFlop.outNodeNegated);
+        else
+            flipFlop.setOutNodes(flipFlop.outNode, outNode);
+
+        return outNode;
+    }
+
+    /**
+     * Checks that a node can read the given number of nodes.
+     * 
+     * @param node the node
+     * @param count the number of nodes it reads in the save file
+     * @throws IOException if the node cannot have that many inputs
+     */
+    static void checkInputCount(CSNode node, int count) throws IOException {
+        if(node instanceof Gate)
+            return;
+        if(count > 1 || (node instanceof InputVariableNode && count != 0))
+            throw new IOException("The save file is damaged");
+    }
+
+    /**
+     * Connects a node to one of the nodes it reads.
+     * <p>
+     * Inverters and flip-flop output nodes already know their input node from when they were
+     * created, so nothing is done for them.
+     * 
+     * @param node the node
+     * @param inputNode the node it reads
+     */
+    static void addInput(CSNode node, CSNode inputNode) {
+        if(node instanceof Gate)
+            ((Gate)node).inputNodes.add(inputNode);
+        else if(node instanceof VariableInput)
+            ((VariableInput)node).addInputNode(inputNode);
+    }
+
+    /**
+     * Utility method to read the position and values of an input variable node as an entry of
+     * the input data of {@linkplain CSMappedSaveWriter}, padded to a multiple of 8 bytes.
+     * <p>
+     * A stimulus source is kept serialized, and is only read back when its node is created.
+     * 
+     * @return the entry
+     * @throws IOException if an error occurred when reading, or the data is damaged
+     */
+    private byte[] readInputData() throws IOException {
+        long position = readVarLong();
+        int kind;
+        int length;
+        ByteBuffer entry;
+
+        ensure(1);
+        kind = buffer.get();
+        if(kind == CSSaveWriter.DATA_SEQUENCE) {
+            length = readVarint();
+            if(length < 0)
+                throw new IOException("The save file is damaged");
+            entry = ByteBuffer.allocate(16 + 8 * (int)((length + 63L) >>> 6));
+            entry.putLong(position);
+            entry.putInt(kind);
+            entry.putInt(length);
+            while(entry.hasRemaining()) {
+                ensure(8);
+                entry.putLong(buffer.getLong());
+            }
+        } else if(kind == CSSaveWriter.DATA_SOURCE) {
+            length = readVarint();
+            if(length < 0 || length > MAX_ARRAY_SIZE - 23)
+                throw new IOException("The save file is damaged");
+            entry = ByteBuffer.allocate(16 + ((length + 7) & ~7));
+            entry.putLong(position);
+            entry.putInt(kind);
+            entry.putInt(length);
+            readBytes(entry.array(), 16, length);
+        } else if(kind == CSSaveWriter.DATA_NONE) {
+            entry = ByteBuffer.allocate(16);
+            entry.putLong(position);
+            entry.putInt(kind);
+        } else
+            throw new IOException("The save file is damaged");
+
+        return entry.array();
+    }
+
+    /**
+     * Utility method to check that every node reads as many nodes as its type allows, and that
+     * every inverter and flip-flop output node can be created from the node it reads.
+     * 
+     * @param opcodes the opcode of every node
+     * @param inputStart where the inputs of each node start
+     * @param inputNodes the inputs of the nodes
+     * @throws IOException if a node cannot read the nodes it reads in the save file
+     */
+    private void checkInputs(int[] opcodes, int[] inputStart, int[] inputNodes) throws IOException {
+        int[] checked = new int[nodeCount];
+        int type;
+        int count;
+        int index;
+
+        for(int i = 0; i < nodeCount; i++) {
+            type = opcodes[i] & CSSaveWriter.TYPE_MASK;
+            count = inputStart[i + 1] - inputStart[i];
+            if(isDependentType(type)) {
+                if(count != 1)
+                    throw new IOException("The save file is damaged");
+                if(type != CSSaveWriter.TYPE_INVERTER && (opcodes[inputNodes[inputStart[i]]] & CSSaveWriter.TYPE_MASK) != CSSaveWriter.TYPE_DFF)
+                    throw new IOException("The save file is damaged");
+            } else if((type < CSSaveWriter.TYPE_AND || type > CSSaveWriter.TYPE_NXOR)
+                    && (count > 1 || (type == CSSaveWriter.TYPE_INPUT && count != 0)))
+                throw new IOException("The save file is damaged");
+        }
+
+        // a chain of inverters has to start at a node that is not an inverter
+        for(int i = 0; i < nodeCount; i++) {
+            index = i;
+            while(checked[index] == 0 && isDependentType(opcodes[index] & CSSaveWriter.TYPE_MASK)) {
+                checked[index] = i + 1;
+                index = inputNodes[inputStart[index]];
+            }
+            if(checked[index] == i + 1)
+                throw new IOException("The save file is damaged");
+        }
+    }
+
+    /**
+     * Utility method to build the hash table of the names, as {@linkplain CSMappedSaveWriter}
+     * does.
+     * 
+     * @param names the names in UTF-8, one after the other
+     * @param nameStart where each name starts, one longer than the number of nodes
+     * @param nameHashes the hash code of each name
+     * @return the index of the node of every slot, or -1 for empty slots
+     * @throws IOException if two nodes have the same name
+     */
+    private int[] getNameTable(byte[] names, int[] nameStart, int[] nameHashes) throws IOException {
+        int tableSize = CSMappedSaveWriter.getNameTableSize(nodeCount);
+        int[] table = new int[tableSize];
+        int slot;
+
+        Arrays.fill(table, -1);
+        for(int i = 0; i < nodeCount; i++) {
+            slot = CSMappedSaveWriter.getNameSlot(nameHashes[i], tableSize);
+            while(table[slot] != -1) {
+                if(nameHashes[table[slot]] == nameHashes[i] && isSameName(names, nameStart, table[slot], i))
+                    throw new IOException("The save file is damaged: two nodes are named "
+                            + new String(names, nameStart[i], nameStart[i + 1] - nameStart[i], StandardCharsets.UTF_8));
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            table[slot] = i;
+        }
+
+        return table;
+    }
+
+    /**
+     * Utility method to read the rows of a compressed sparse row section: the number of
+     * entries of every node, then the entries, each as the difference from the one before.
+     * 
+     * @param rowStart array to store where the entries of each node start, one longer than the
+     * number of nodes
+     * @param entries array to store the entries in
+     * @throws IOException if an error occurred when reading, or the section is damaged
+     */
+    private void readRows(int[] rowStart, int[] entries) throws IOException {
+        int count;
+        int previous;
+        int k = 0;
+
+        for(int i = 0; i < nodeCount; i++) {
+            count = readVarint();
+            if(count < 0 || count > entries.length - rowStart[i])
+                throw new IOException("The save file is damaged");
+            rowStart[i + 1] = rowStart[i] + count;
+        }
+        if(rowStart[nodeCount] != entries.length)
+            throw new IOException("The save file is damaged");
+
+        for(int i = 0; i < nodeCount; i++) {
+            previous = i;
+            for(; k < rowStart[i + 1]; k++) {
+                entries[k] = previous + unzigzag(readVarint());
+                if(entries[k] < 0 || entries[k] >= nodeCount)
+                    throw new IOException("The save file is damaged");
+                previous = entries[k];
+            }
+        }
+    }
+
+    /**
+     * Utility method to get the number of bytes that the first characters of a name take in UTF-8.
+     * 
+     * @param names the names in UTF-8
+     * @param start where the name starts
+     * @param end where the name ends
+     * @param charCount the number of characters, counting a surrogate pair as two
+     * @return the number of bytes of the characters
+     * @throws IOException if the name has fewer characters
+     */
+    private static int getPrefixLength(byte[] names, int start, int end, int charCount) throws IOException {
+        int position = start;
+        int b;
+
+        for(int c = 0; c < charCount; c++) {
+            if(position >= end)
+                throw new IOException("The save file is damaged");
+            b = names[position] & 0xFF;
+            if(b < 0x80)
+                position++;
+            else if(b < 0xE0)
+                position += 2;
+            else if(b < 0xF0)
+                position += 3;
+            else {
+                position += 4;
+                c++;
+            }
+        }
+        if(position > end)
+            throw new IOException("The save file is damaged");
+
+        return position - start;
+    }
+
+    /**
+     * Utility method to get the hash code of a name in UTF-8, the same as that of the name as
+     * a string.
+     * 
+     * @param names the names in UTF-8
+     * @param start where the name starts
+     * @param end where the name ends
+     * @return the hash code of the name
+     */
+    private static int getNameHash(byte[] names, int start, int end) {
+        int hash = 0;
+
+        for(int k = start; k < end; k++) {
+            if(names[k] < 0)
+                return new String(names, start, end - start, StandardCharsets.UTF_8).hashCode();
+            hash = 31 * hash + names[k];
+        }
+
+        return hash;
+    }
+
+    /**
+     * Utility method to check whether two nodes have the same name.
+     * 
+     * @param names the names in UTF-8, one after the other
+     * @param nameStart where each name starts
+     * @param first the index of one node
+     * @param second the index of the other node
+     * @return true if the names are the same
+     */
+    private static boolean isSameName(byte[] names, int[] nameStart, int first, int second) {
+        int length = nameStart[first + 1] - nameStart[first];
+
+        if(nameStart[second + 1] - nameStart[second] != length)
+            return false;
+        for(int k = 0; k < length; k++)
+            if(names[nameStart[first] + k] != names[nameStart[second] + k])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Utility method to round the end of a section up to where the next section starts.
+     * 
+     * @param end the offset of the end of the section
+     * @return the end rounded up to a multiple of 8
+     */
+    private static long padSection(long end) {
+        return (end + 7) & ~7L;
+    }
+
+    /**
+     * Utility method to decode a number written by {@linkplain CSSaveWriter#zigzag(int)}.
+     * 
+     * @param value the encoded number
+     * @return the signed number
+     */
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Utility method to read a varint.
+     * 
+     * @return the number
+     * @throws IOException if an error occurred when reading, or the varint is too long
+     */
+    private int readVarint() throws IOException {
+        int value = 0;
+        int b;
+
+        if(buffer.remaining() < 5)
+            ensureAvailable(5);
+        for(int shift = 0; shift < 35; shift += 7) {
+            if(!buffer.hasRemaining())
+                throw new EOFException("The save file ends too early");
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0)
+                return value;
+        }
+
+        throw new IOException("The save file is damaged");
+    }
+
+    /**
+     * Utility method to read a varint of up to 64 bits.
+     * 
+     * @return the number
+     * @throws IOException if an error occurred when reading, or the varint is too long
+     */
+    private long readVarLong() throws IOException {
+        long value = 0;
+        int b;
+
+        ensureAvailable(10);
+        for(int shift = 0; shift < 70; shift += 7) {
+            if(!buffer.hasRemaining())
+                throw new EOFException("The save file ends too early");
+            b = buffer.get();
+            value |= (long)(b & 0x7F) << shift;
+            if(b >= 0)
+                return value;
+        }
+
+        throw new IOException("The save file is damaged");
+    }
+
+    /**
+     * Utility method to read bytes of any number into an array.
+     * 
+     * @param bytes the array to fill
+     * @param offset where to start filling the array
+     * @param length the number of bytes to read
+     * @throws IOException if an error occurred when reading, or the file ends too early
+     */
+    private void readBytes(byte[] bytes, int offset, int length) throws IOException {
+        int end = offset + length;
+        int count;
+
+        while(offset < end) {
+            ensure(1);
+            count = Math.min(buffer.remaining(), end - offset);
+            buffer.get(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Utility method to make sure the buffer holds the given number of bytes.
+     * 
+     * @param count the number of bytes, at most the size of the buffer
+     * @throws IOException if an error occurred when reading, or the file ends too early
+     */
+    private void ensure(int count) throws IOException {
+        ensureAvailable(count);
+        if(buffer.remaining() < count)
+            throw new EOFException("The save file ends too early");
+    }
+
+    /**
+     * Utility method to read more of the file into the buffer, until it holds the given number
+     * of bytes or the file ends.
+     * 
+     * @param count the number of bytes, at most the size of the buffer
+     * @throws IOException if an error occurred when reading
+     */
+    private void ensureAvailable(int count) throws IOException {
+        if(buffer.remaining() >= count)
+            return;
+
+        buffer.compact();
+        while(buffer.position() < count && channel.read(buffer) != -1);
+        buffer.flip();
+    }
+
+    /**
+     * Contents in the layout of a mapped save file, written into memory at a moving position.
+     * The contents are split into segments of {@linkplain CSMappedFile#DEFAULT_SEGMENT_SIZE}
+     * bytes, and since every section starts at a multiple of 8 bytes, no value spans two segments.
+     */
+    private static class Layout {
+        /**
+         * The segments of the contents, all but the last of the full size.
+         */
+        private final ByteBuffer[] segments;
+        /**
+         * Offset at which the next value is written.
+         */
+        private long position;
+
+        /**
+         * Allocates the contents.
+         * 
+         * @param size the size of the contents in bytes
+         */
+        private Layout(long size) {
+            long segmentSize = CSMappedFile.DEFAULT_SEGMENT_SIZE;
+
+            segments = new ByteBuffer[(int)((size + segmentSize - 1) / segmentSize)];
+            for(int s = 0; s < segments.length; s++)
+                segments[s] = ByteBuffer.allocate((int)Math.min(segmentSize, size - s * segmentSize));
+        }
+
+        /**
+         * Moves to a multiple of 8 bytes, where the next section starts.
+         * 
+         * @return the offset of the next section
+         */
+        private long startSection() {
+            position = padSection(position);
+
+            return position;
+        }
+
+        /**
+         * Gets the header of the contents, positioned where the description of the circuit starts.
+         * 
+         * @return a view of the first segment
+         */
+        private ByteBuffer getHeader() {
+            ByteBuffer header = segments[0].duplicate();
+
+            header.position(CSMappedSaveWriter.HEADER_SIZE);
+            return header;
+        }
+
+        /**
+         * Writes a byte.
+         * 
+         * @param value the byte, in the low 8 bits
+         */
+        private void putByte(int value) {
+            segments[(int)(position >>> SEGMENT_SHIFT)].put((int)(position & SEGMENT_MASK), (byte)value);
+            position++;
+        }
+
+        /**
+         * Writes an int.
+         * 
+         * @param value the int
+         */
+        private void putInt(int value) {
+            segments[(int)(position >>> SEGMENT_SHIFT)].putInt((int)(position & SEGMENT_MASK), value);
+            position += 4;
+        }
+
+        /**
+         * Writes a long.
+         * 
+         * @param value the long
+         */
+        private void putLong(long value) {
+            segments[(int)(position >>> SEGMENT_SHIFT)].putLong((int)(position & SEGMENT_MASK), value);
+            position += 8;
+        }
+
+        /**
+         * Writes bytes of any number, which may span segments.
+         * 
+         * @param bytes the array holding the bytes
+         * @param offset where the bytes start in the array
+         * @param length the number of bytes
+         */
+        private void putBytes(byte[] bytes, int offset, int length) {
+            ByteBuffer segment;
+            int count;
+
+            while(length > 0) {
+                segment = segments[(int)(position >>> SEGMENT_SHIFT)].duplicate();
+                segment.position((int)(position & SEGMENT_MASK));
+                count = Math.min(segment.remaining(), length);
+                segment.put(bytes, offset, count);
+                offset += count;
+                length -= count;
+                position += count;
+            }
+        }
+    }
+}
@@ -0,0 +1,638 @@
+package simulator.circuit.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+
+/**
+ * Class to write a circuit to a save file, which is read back with {@linkplain CSSaveReader}.
+ * <p>
+ * Save files used to hold the circuit as serialized Java objects, which stores a class
+ * description for every kind of node and follows the references between nodes recursively.
+ * This format instead stores each part of the circuit as a flat array. Small integers, which
+ * are most of the file, are written as varints: 7 bits per byte, with the high bit set on every
+ * byte but the last. Node indeces in edge lists are written as the zigzag-encoded difference
+ * from the index before them, so that nearby nodes take a single byte. The layout is:
+ * <ul>
+ *  <li>header: magic, version, node count, number of edges, number of gate inputs, then the
+ *      description of the circuit of {@linkplain CSSaveInfo}, so that it can be listed without
+ *      reading the rest of the file</li>
+ *  <li>the string table of node names, each stored as the length of the prefix it shares with
+ *      the name before it and the rest of the name in UTF-8</li>
+ *  <li>the opcodes, one byte per node: the type of the node in the low 4 bits and flags for
+ *      its value, track number, delay and input data in the high bits</li>
+ *  <li>the edges in compressed sparse row form: the number of edges of every node, then the
+ *      targets of all edges, in the order of the adjacency lists</li>
+ *  <li>the inputs of every node in the same form, in the order the node reads them</li>
+ *  <li>the track numbers and delays of the nodes flagged as having them</li>
+ *  <li>the input data of flagged input variable nodes: the position within the sequence and
+ *      either the input sequence, packed 64 values per word, or a serialized stimulus source</li>
+ * </ul>
+ * Everything is written through one buffer, so the whole file is written in large blocks.
+ * 
+ * @author Joel Tengco
+ */
+public class CSSaveWriter implements Closeable {
+    /**
+     * Identifies a file as a circuit simulator save file; "CSSV" in ASCII.
+     */
+    static final int MAGIC = 0x43535356;
+    /**
+     * Version of the save format written by this class.
+     */
+    static final int VERSION = 2;
+    /**
+     * Size of the header, not counting the description of the circuit that follows it from
+     * version 2 on.
+     */
+    static final int HEADER_SIZE = 20;
+    /**
+     * Type of an input variable node.
+     */
+    static final int TYPE_INPUT = 0;
+    /**
+     * Type of an output variable node.
+     */
+    static final int TYPE_OUTPUT = 1;
+    /**
+     * Type of a D flip-flop.
+     */
+    static final int TYPE_DFF = 2;
+    /**
+     * Type of the output node of a flip-flop.
+     */
+    static final int TYPE_FF_OUT = 3;
+    /**
+     * Type of the negated output node of a flip-flop.
+     */
+    static final int TYPE_FF_OUT_NEGATED = 4;
+    /**
+     * Type of an AND gate.
+     */
+    static final int TYPE_AND = 5;
+    /**
+     * Type of a NAND gate.
+     */
+    static final int TYPE_NAND = 6;
+    /**
+     * Type of an OR gate.
+     */
+    static final int TYPE_OR = 7;
+    /**
+     * Type of a NOR gate.
+     */
+    static final int TYPE_NOR = 8;
+    /**
+     * Type of an XOR gate.
+     */
+    static final int TYPE_XOR = 9;
+    /**
+     * Type of an NXOR gate.
+     */
+    static final int TYPE_NXOR = 10;
+    /**
+     * Type of an inverter.
+     */
+    static final int TYPE_INVERTER = 11;
+    /**
+     * Bits of an opcode that hold the type of the node.
+     */
+    static final int TYPE_MASK = 0x0F;
+    /**
+     * Opcode flag of a node whose value is 1.
+     */
+    static final int FLAG_VALUE = 0x10;
+    /**
+     * Opcode flag of a node that is tracked.
+     */
+    static final int FLAG_TRACKED = 0x20;
+    /**
+     * Opcode flag of a node whose delay is not the default of its type.
+     */
+    static final int FLAG_DELAY = 0x40;
+    /**
+     * Opcode flag of an input variable node with a position, input sequence or stimulus source.
+     */
+    static final int FLAG_INPUT_DATA = 0x80;
+    /**
+     * Input data kind of an input variable node with neither an input sequence nor a stimulus source.
+     */
+    static final int DATA_NONE = 0;
+    /**
+     * Input data kind of an input variable node with an input sequence.
+     */
+    static final int DATA_SEQUENCE = 1;
+    /**
+     * Input data kind of an input variable node with a serialized stimulus source.
+     */
+    static final int DATA_SOURCE = 2;
+    /**
+     * Size of the buffer that gathers the file before it is written.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Largest number of edges into a node that are searched for the nodes it reads.
+     */
+    private static final int MAX_SEARCHED_SOURCES = 16;
+
+    /**
+     * Channel of the file being written, or null once closed.
+     */
+    private WritableByteChannel channel;
+    /**
+     * Buffer that gathers the file before it is written.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a save file to write a circuit to.
+     * 
+     * @param target the file to write; an existing file is overwritten
+     * @throws IOException if an error occurred when creating the file
+     */
+    public CSSaveWriter(File target) throws IOException {
+        this(openFile(target));
+    }
+
+    /**
+     * Prepares to write a circuit to the given channel, such as one that compresses what is
+     * written with {@linkplain CSBlockWriter}.
+     * 
+     * @param channel the channel to write to; it is closed by {@linkplain #close()}
+     */
+    public CSSaveWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the given circuit to the save file.
+     * 
+     * @param circuit the circuit to write
+     * @throws IOException if an error occurred when writing
+     */
+    public void writeCircuit(CSGraph circuit) throws IOException {
+        int size = circuit.getSize();
+        int[] opcodes = new int[size];
+        int[] edgeStart = new int[size + 1];
+        int[] edgeTargets = circuit.getEdges(edgeStart);
+        int[] inputStart = new int[size + 1];
+        int[] inputs = getInputs(circuit, edgeStart, edgeTargets, inputStart);
+        String previousName = "";
+
+        for(int i = 0; i < size; i++)
+            opcodes[i] = getOpcode(circuit.getNode(i));
+
+        ensure(HEADER_SIZE + CSSaveInfo.SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(size);
+        buffer.putInt(edgeTargets.length);
+        buffer.putInt(inputs.length);
+        CSSaveInfo.describe(circuit, opcodes, inputStart, inputs, edgeStart, edgeTargets, System.currentTimeMillis()).write(buffer);
+
+        for(int i = 0; i < size; i++) {
+            writeName(previousName, circuit.getNode(i).getName());
+            previousName = circuit.getNode(i).getName();
+        }
+
+        for(int i = 0; i < size; i++) {
+            ensure(1);
+            buffer.put((byte)opcodes[i]);
+        }
+
+        for(int i = 0; i < size; i++)
+            writeVarint(edgeStart[i + 1] - edgeStart[i]);
+        for(int i = 0; i < size; i++)
+            writeIndeces(edgeTargets, edgeStart[i], edgeStart[i + 1], i);
+
+        for(int i = 0; i < size; i++)
+            writeVarint(inputStart[i + 1] - inputStart[i]);
+        for(int i = 0; i < size; i++)
+            writeIndeces(inputs, inputStart[i], inputStart[i + 1], i);
+
+        for(int i = 0; i < size; i++)
+            if((opcodes[i] & FLAG_TRACKED) != 0)
+                writeVarint(circuit.getNode(i).getTrackNum());
+        for(int i = 0; i < size; i++)
+            if((opcodes[i] & FLAG_DELAY) != 0)
+                writeVarint(circuit.getNode(i).getDelay());
+
+        for(int i = 0; i < size; i++)
+            if((opcodes[i] & FLAG_INPUT_DATA) != 0)
+                writeInputData((InputVariableNode)circuit.getNode(i));
+
+        flush();
+    }
+
+    /**
+     * Closes the save file.
+     * 
+     * @throws IOException if an error occurred when closing the file
+     */
+    public void close() throws IOException {
+        if(channel == null)
+            return;
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Utility method to create a save file, emptying it if it exists.
+     * 
+     * @param target the file to create
+     * @return the channel of the file
+     * @throws IOException if an error occurred when creating the file
+     */
+    private static FileChannel openFile(File target) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+
+        file.setLength(0);
+        return file.getChannel();
+    }
+
+    /**
+     * Gets the type of a node as written to save files.
+     * 
+     * @param node the node
+     * @return one of the {@code TYPE_} constants
+     * @throws IllegalArgumentException if the node is of a type that cannot be saved
+     */
+    static int getType(CSNode node) throws IllegalArgumentException {
+        if(node instanceof InputVariableNode)
+            return TYPE_INPUT;
+        if(node instanceof OutputVariableNode)
+            return TYPE_OUTPUT;
+        if(node instanceof DFlipFlop)
+            return TYPE_DFF;
+        if(node instanceof FFOutNode)
+            return ((FFOutNode)node).isNegated() ? TYPE_FF_OUT_NEGATED : TYPE_FF_OUT;
+        if(node instanceof NandGate)
+            return TYPE_NAND;
+        if(node instanceof AndGate)
+            return TYPE_AND;
+        if(node instanceof NorGate)
+            return TYPE_NOR;
+        if(node instanceof OrGate)
+            return TYPE_OR;
+        if(node instanceof NXorGate)
+            return TYPE_NXOR;
+        if(node instanceof XorGate)
+            return TYPE_XOR;
+        if(node instanceof Inverter)
+            return TYPE_INVERTER;
+
+        throw new IllegalArgumentException(node.getName() + " cannot be saved");
+    }
+
+    /**
+     * Gets the delay that nodes of the given type have when they are created.
+     * 
+     * @param type one of the {@code TYPE_} constants
+     * @return the default delay of the type
+     */
+    static int getDefaultDelay(int type) {
+        return type >= TYPE_AND ? 1 : 0;
+    }
+
+    /**
+     * Gets the opcode of a node as written to save files: its type and flags.
+     * 
+     * @param node the node
+     * @return the opcode written for the node
+     */
+    static int getOpcode(CSNode node) {
+        int type = getType(node);
+        int opcode = type;
+        InputVariableNode inputNode;
+
+        if(node.value != 0)
+            opcode |= FLAG_VALUE;
+        if(node.getTrackNum() > 0)
+            opcode |= FLAG_TRACKED;
+        if(node.getDelay() != getDefaultDelay(type))
+            opcode |= FLAG_DELAY;
+        if(node instanceof InputVariableNode) {
+            inputNode = (InputVariableNode)node;
+            if(inputNode.getSeqPosition() != 0 || inputNode.getInputSeqWords() != null
+                    || inputNode.getStimulusSource() instanceof Serializable)
+                opcode |= FLAG_INPUT_DATA;
+        }
+
+        return opcode;
+    }
+
+    /**
+     * Gets the indeces of the nodes a node reads, in the order it reads them.
+     * 
+     * @param node the node
+     * @param indeces the index of every node of the circuit
+     * @return the indeces of the input nodes
+     * @throws IllegalStateException if an input node is not part of the circuit
+     */
+    static int[] getInputIndeces(CSNode node, IdentityHashMap<CSNode, Integer> indeces) throws IllegalStateException {
+        int[] inputIndeces = new int[getInputCount(node)];
+
+        for(int k = 0; k < inputIndeces.length; k++)
+            inputIndeces[k] = indexOf(getInputNode(node, k), indeces);
+
+        return inputIndeces;
+    }
+
+    /**
+     * Gets the indeces of the nodes every node of a circuit reads, in compressed sparse row form.
+     * <p>
+     * The nodes a node reads are the sources of the edges into it, so they are looked for among
+     * those first; a map of every node is only built for nodes read that are not found that way,
+     * such as the inputs of gates with many inputs.
+     * 
+     * @param circuit the circuit
+     * @param edgeStart where the edges of each node start, one longer than the number of nodes
+     * @param edgeTargets the targets of the edges, one node after the other
+     * @param inputStart array to store where the inputs of each node start, one longer than the
+     * number of nodes
+     * @return the indeces of the nodes every node reads, one node after the other, each in the
+     * order the node reads them
+     * @throws IllegalStateException if an input node is not part of the circuit
+     */
+    static int[] getInputs(CSGraph circuit, int[] edgeStart, int[] edgeTargets, int[] inputStart) throws IllegalStateException {
+        int size = circuit.getSize();
+        int[] sourceStart = new int[size + 2];
+        int[] sources = new int[edgeTargets.length];
+        int[] inputs;
+        IdentityHashMap<CSNode, Integer> indeces = null;
+        CSNode node;
+        CSNode inputNode;
+
+        // the sources of the edges into each node, by counting them per target
+        for(int targetIndex : edgeTargets)
+            sourceStart[targetIndex + 2]++;
+        for(int i = 2; i < sourceStart.length; i++)
+            sourceStart[i] += sourceStart[i - 1];
+        for(int i = 0; i < size; i++)
+            for(int e = edgeStart[i]; e < edgeStart[i + 1]; e++)
+                sources[sourceStart[edgeTargets[e] + 1]++] = i;
+
+        for(int i = 0; i < size; i++)
+            inputStart[i + 1] = inputStart[i] + getInputCount(circuit.getNode(i));
+        inputs = new int[inputStart[size]];
+
+        for(int i = 0; i < size; i++) {
+            node = circuit.getNode(i);
+            for(int k = inputStart[i]; k < inputStart[i + 1]; k++) {
+                inputNode = getInputNode(node, k - inputStart[i]);
+                inputs[k] = -1;
+                if(sourceStart[i + 1] - sourceStart[i] <= MAX_SEARCHED_SOURCES)
+                    for(int s = sourceStart[i]; s < sourceStart[i + 1] && inputs[k] == -1; s++)
+                        if(circuit.getNode(sources[s]) == inputNode)
+                            inputs[k] = sources[s];
+                if(inputs[k] == -1) {
+                    if(indeces == null) {
+                        indeces = new IdentityHashMap<CSNode, Integer>(size);
+                        for(int j = 0; j < size; j++)
+                            indeces.put(circuit.getNode(j), j);
+                    }
+                    inputs[k] = indexOf(inputNode, indeces);
+                }
+            }
+        }
+
+        return inputs;
+    }
+
+    /**
+     * Gets the number of nodes a node reads.
+     * 
+     * @param node the node
+     * @return the number of input nodes
+     */
+    static int getInputCount(CSNode node) {
+        if(node instanceof Gate)
+            return ((Gate)node).inputNodes.size();
+
+        return getInputNode(node, 0) != null ? 1 : 0;
+    }
+
+    /**
+     * Gets one of the nodes a node reads.
+     * 
+     * @param node the node
+     * @param inputIndex the position of the input node among the nodes the node reads
+     * @return the input node, or null if a node that reads at most one node reads none
+     */
+    static CSNode getInputNode(CSNode node, int inputIndex) {
+        if(node instanceof Gate)
+            return ((Gate)node).inputNodes.get(inputIndex);
+        if(node instanceof Inverter)
+            return ((Inverter)node).getInputNode();
+        if(node instanceof OutputVariableNode)
+            return ((OutputVariableNode)node).getInputNode();
+        if(node instanceof DFlipFlop)
+            return ((DFlipFlop)node).getInputNode();
+        if(node instanceof FFOutNode)
+            return ((FFOutNode)node).getInputNode();
+
+        return null;
+    }
+
+    /**
+     * Utility method to get the index of an input node.
+     * 
+     * @param node the input node
+     * @param indeces the index of every node of the circuit
+     * @return the index of the node
+     * @throws IllegalStateException if the node is not part of the circuit
+     */
+    private static int indexOf(CSNode node, IdentityHashMap<CSNode, Integer> indeces) throws IllegalStateException {
+        Integer index = indeces.get(node);
+
+        if(index == null)
+            throw new IllegalStateException(node.getName() + " is not part of the circuit");
+
+        return index;
+    }
+
+    /**
+     * Utility method to write a name of the string table.
+     * 
+     * @param previousName the name written before it
+     * @param name the name to write
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeName(String previousName, String name) throws IOException {
+        int shared = 0;
+        int limit = Math.min(previousName.length(), name.length());
+        int end;
+        byte[] suffix;
+
+        while(shared < limit && previousName.charAt(shared) == name.charAt(shared))
+            shared++;
+        // never split a surrogate pair between the prefix and the suffix
+        if(shared > 0 && Character.isHighSurrogate(name.charAt(shared - 1)))
+            shared--;
+
+        writeVarint(shared);
+        // an ASCII suffix is its own UTF-8 encoding, so it is written without encoding it first
+        for(end = shared; end < name.length() && end - shared < BUFFER_SIZE && name.charAt(end) < 0x80; end++);
+        if(end == name.length()) {
+            writeVarint(end - shared);
+            ensure(end - shared);
+            for(int c = shared; c < end; c++)
+                buffer.put((byte)name.charAt(c));
+            return;
+        }
+
+        suffix = name.substring(shared).getBytes(StandardCharsets.UTF_8);
+        writeVarint(suffix.length);
+        writeBytes(suffix);
+    }
+
+    /**
+     * Utility method to write node indeces, each as the difference from the one before.
+     * 
+     * @param indeces the array holding the node indeces
+     * @param start where the indeces to write start in the array
+     * @param end where the indeces to write end in the array
+     * @param first the index the first difference is taken from
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeIndeces(int[] indeces, int start, int end, int first) throws IOException {
+        int previous = first;
+
+        for(int k = start; k < end; k++) {
+            writeVarint(zigzag(indeces[k] - previous));
+            previous = indeces[k];
+        }
+    }
+
+    /**
+     * Utility method to write the position and values of an input variable node.
+     * 
+     * @param inputNode the input variable node
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeInputData(InputVariableNode inputNode) throws IOException {
+        long[] words = inputNode.getInputSeqWords();
+        ByteArrayOutputStream bytes;
+        ObjectOutputStream out;
+
+        writeVarLong(inputNode.getSeqPosition());
+        if(words != null) {
+            ensure(1);
+            buffer.put((byte)DATA_SEQUENCE);
+            writeVarint(inputNode.getInputSeqLength());
+            for(long word : words) {
+                ensure(8);
+                buffer.putLong(word);
+            }
+        } else if(inputNode.getStimulusSource() instanceof Serializable) {
+            // generators and stimulus file sources are a few fields, so they keep their serialized form
+            bytes = new ByteArrayOutputStream();
+            out = new ObjectOutputStream(bytes);
+            out.writeObject(inputNode.getStimulusSource());
+            out.close();
+            ensure(1);
+            buffer.put((byte)DATA_SOURCE);
+            writeVarint(bytes.size());
+            writeBytes(bytes.toByteArray());
+        } else {
+            ensure(1);
+            buffer.put((byte)DATA_NONE);
+        }
+    }
+
+    /**
+     * Utility method to encode a signed number so that numbers near zero are small.
+     * 
+     * @param value the number
+     * @return 2 * value for non-negative numbers, -2 * value - 1 for negative ones
+     */
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Utility method to write a non-negative number as a varint.
+     * 
+     * @param value the number, read as unsigned
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeVarint(int value) throws IOException {
+        ensure(5);
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Utility method to write a non-negative long as a varint.
+     * 
+     * @param value the number, read as unsigned
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeVarLong(long value) throws IOException {
+        ensure(10);
+        while((value & ~0x7FL) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Utility method to write an array of bytes of any length.
+     * 
+     * @param bytes the bytes
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        int count;
+
+        while(offset < bytes.length) {
+            ensure(1);
+            count = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Utility method to make room in the buffer for the given number of bytes.
+     * 
+     * @param count the number of bytes, at most the size of the buffer
+     * @throws IOException if an error occurred when writing the buffer to the file
+     */
+    private void ensure(int count) throws IOException {
+        if(buffer.remaining() < count)
+            flush();
+    }
+
+    /**
+     * Utility method to write the contents of the buffer to the file.
+     * 
+     * @throws IOException if an error occurred when writing
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
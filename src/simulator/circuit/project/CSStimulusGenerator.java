@@ -0,0 +1,120 @@
+package simulator.circuit.project;
+
+import java.io.Serializable;
+
+/**
+ * Abstract class to encapsulate the common properties of a stimulus generator.
+ * <p>
+ * A generator is a {@linkplain CSStimulusSource} whose values are computed from their position
+ * when they are requested, so a generator of any length costs the same small amount of memory.
+ * Generators are {@code Serializable}, so an input variable node keeps its generator when the
+ * circuit is saved.
+ * <p>
+ * Besides one value at a time, a generator can produce the values of 64 consecutive cycles at
+ * once as the lanes of a single word; see {@linkplain #getWord(long)}.
+ * 
+ * @author Joel Tengco
+ */
+public abstract class CSStimulusGenerator implements CSStimulusSource, Serializable {
+    /**
+     * Needed to implement Serializable, and thus needed for saving circuits as files.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Length of a generator that never runs out of values.
+     */
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+    /**
+     * Number of values this generator provides.
+     */
+    private final long length;
+
+    /**
+     * Constructs a generator that provides the given number of values.
+     * 
+     * @param length the number of values, or {@linkplain #UNBOUNDED}
+     * @throws IllegalArgumentException if the length is negative
+     */
+    protected CSStimulusGenerator(long length) throws IllegalArgumentException {
+        if(length < 0)
+            throw new IllegalArgumentException("The length of a generator cannot be negative");
+
+        this.length = length;
+    }
+
+    /**
+     * Gets the number of values this generator provides.
+     * 
+     * @return the length of this generator
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the value of this generator for the given position.
+     * 
+     * @param position the index of the value; zero for the first cycle after a reset
+     * @return either 1 or 0
+     * @throws IndexOutOfBoundsException if the position is negative or not less than the length
+     */
+    public int getValue(long position) throws IndexOutOfBoundsException {
+        if(position < 0 || position >= length)
+            throw new IndexOutOfBoundsException(position + " is outside of a generator of length " + length);
+
+        return valueAt(position);
+    }
+
+    /**
+     * Gets the values of this generator for 64 consecutive positions, packed as the lanes of a word.
+     * <p>
+     * Bit {@code k} of the result is the value for position {@code position + k}. Lanes past the
+     * length of this generator are 0.
+     * 
+     * @param position the position of the value in the lowest lane
+     * @return the packed values
+     * @throws IndexOutOfBoundsException if the position is negative
+     */
+    public long getWord(long position) throws IndexOutOfBoundsException {
+        long word;
+
+        if(position < 0)
+            throw new IndexOutOfBoundsException(position + " is outside of a generator of length " + length);
+        if(position >= length)
+            return 0;
+
+        word = wordAt(position);
+        if(length - position < 64)
+            word &= (1L << (length - position)) - 1;
+
+        return word;
+    }
+
+    /**
+     * Computes the value for the given position.
+     * <p>
+     * The position is never negative, but may be past the length of this generator.
+     * 
+     * @param position the index of the value
+     * @return either 1 or 0
+     */
+    protected abstract int valueAt(long position);
+
+    /**
+     * Computes the values for 64 consecutive positions, packed as the lanes of a word.
+     * <p>
+     * This implementation computes each lane with {@linkplain #valueAt(long)}; generators
+     * override it when the whole word can be computed faster.
+     * 
+     * @param position the position of the value in the lowest lane
+     * @return the packed values
+     */
+    protected long wordAt(long position) {
+        long word = 0;
+
+        for(int k = 0; k < 64; k++)
+            word |= (long)valueAt(position + k) << k;
+
+        return word;
+    }
+}
@@ -0,0 +1,42 @@
+package simulator.circuit.project;
+
+/**
+ * Objects that implement this interface provide the values of an input variable node,
+ * one value per clock cycle.
+ * <p>
+ * Unlike an input sequence stored in an array, a stimulus source does not need to hold all
+ * of its values in memory; the values may be read from a file or computed when they are
+ * requested. An {@code InputVariableNode} with a stimulus source pulls the value for each
+ * cycle from it when it is updated.
+ * 
+ * @author Joel Tengco
+ */
+public interface CSStimulusSource {
+    /**
+     * Gets the number of values this source provides.
+     * 
+     * @return the number of cycles covered by this source
+     */
+    public long getLength();
+
+    /**
+     * Gets the value of this source for the given position.
+     * <p>
+     * Positions are visited in increasing order during a simulation, so sources may be
+     * optimized for sequential access, but any position between zero and the length of
+     * this source needs to be supported.
+     * 
+     * @param position the index of the value; zero for the first cycle after a reset
+     * @return either 1 or 0
+     * @throws IndexOutOfBoundsException if the position is negative or not less than the length
+     */
+    public int getValue(long position) throws IndexOutOfBoundsException;
+
+    /**
+     * Gets a short description of this source, used in place of the values when displaying
+     * the input sequence of a node.
+     * 
+     * @return a short description of where the values come from
+     */
+    public String getDescription();
+}
@@ -0,0 +1,762 @@
+package simulator.circuit.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import simulator.circuit.project.CSGraph.IllegalCircuitStateException;
+
+/**
+ * Class to generate input patterns that detect the stuck-at faults of a combinational circuit.
+ * <p>
+ * Generation starts with a few groups of 64 random patterns, which detect most of the easy
+ * faults. Each fault that is still not detected is then targeted with PODEM: input variables
+ * are assigned one at a time, each chosen by tracing an objective back from the fault site or
+ * from a gate the fault effect has reached, and the circuit is simulated with the values 0, 1
+ * and unknown in the fault free and the faulty circuit. When an assignment makes the fault
+ * effect impossible, the last assignment that was not yet flipped is flipped. The search ends
+ * when an output variable shows the fault effect, when every assignment has been tried, which
+ * proves the fault redundant, or when it has flipped too many times, which aborts the fault.
+ * <p>
+ * The unknown values of each new pattern are filled in randomly and the pattern is fault
+ * simulated with {@linkplain CSFaultSimulator}, so every other fault it detects is dropped and
+ * not targeted. Finally the patterns are compacted by simulating them again in reverse order:
+ * patterns found late detect the hard faults and often the faults of earlier patterns too, so
+ * the patterns that do not detect a fault first are left out.
+ * 
+ * @author Joel Tengco
+ */
+public class CSTestGenerator {
+    /**
+     * Number of times the search for one fault may flip an assignment before giving up.
+     */
+    public static final int BACKTRACK_LIMIT = 100;
+    /**
+     * Largest number of groups of 64 random patterns simulated before targeting faults.
+     */
+    private static final int RANDOM_BLOCKS = 16;
+    /**
+     * Value of a node that is not known yet.
+     */
+    private static final byte X = 2;
+    /**
+     * Outcome of a search that found a pattern.
+     */
+    private static final int DETECTED = 0;
+    /**
+     * Outcome of a search that proved the fault redundant.
+     */
+    private static final int REDUNDANT = 1;
+    /**
+     * Outcome of a search that gave up.
+     */
+    private static final int ABORTED = 2;
+    /**
+     * Outcome of a step of the search that set an objective.
+     */
+    private static final int SEARCHING = 3;
+
+    /**
+     * The compiled circuit.
+     */
+    private final CSCompiledCircuit compiled;
+    /**
+     * Names of the input variables, in the order of the circuit.
+     */
+    private final String[] inputNames;
+    /**
+     * The patterns, each with one value per input variable.
+     */
+    private final ArrayList<byte[]> patterns;
+    /**
+     * Number of faults of the circuit.
+     */
+    private final int faultCount;
+    /**
+     * Number of faults detected by the patterns.
+     */
+    private final int detectedCount;
+    /**
+     * Number of faults proven to be redundant.
+     */
+    private final int redundantCount;
+    /**
+     * Number of faults given up on.
+     */
+    private final int abortedCount;
+
+    /**
+     * Values of the nodes in the fault free circuit during a search.
+     */
+    private final byte[] good;
+    /**
+     * Values of the nodes in the faulty circuit during a search.
+     */
+    private final byte[] faulty;
+    /**
+     * Position of each node along the update path from the input variables; the larger, the
+     * harder the node is to control.
+     */
+    private final int[] depths;
+    /**
+     * Number of nodes between each node and the nearest output variable node.
+     */
+    private final int[] distances;
+    /**
+     * Indeces of the input variable nodes.
+     */
+    private final int[] inputIndeces;
+    /**
+     * Position of each input variable node among the input variables, or -1 for other nodes.
+     */
+    private final int[] inputPositions;
+    /**
+     * Work space with one bit per node along the update path.
+     */
+    private final long[] pending;
+    /**
+     * Nodes that depend on the node of the fault being targeted, including that node.
+     */
+    private final int[] cone;
+    /**
+     * Number of nodes in {@code cone}.
+     */
+    private int coneSize;
+    /**
+     * Work space holding the gates the fault effect may go through next, with their distances.
+     */
+    private final long[] candidates;
+    /**
+     * Work space for finding paths of unknown nodes.
+     */
+    private final int[] stack;
+    /**
+     * Stamp of the last path search that visited each node.
+     */
+    private final int[] visits;
+    /**
+     * Stamp of the current path search.
+     */
+    private int visitStamp;
+    /**
+     * Node of the fault being targeted.
+     */
+    private int faultNode;
+    /**
+     * Input of the fault being targeted within {@code fanins}, or -1 for a fault of the node output.
+     */
+    private int faultPin;
+    /**
+     * Value the fault being targeted is stuck at.
+     */
+    private byte stuckValue;
+    /**
+     * Line the search wants to set next.
+     */
+    private int objectiveNode;
+    /**
+     * Value the search wants to set the line to.
+     */
+    private byte objectiveValue;
+
+    /**
+     * Generates patterns for the given circuit.
+     * 
+     * @param circuit the circuit to generate patterns for
+     * @throws IllegalArgumentException if the circuit is sequential
+     * @throws IllegalStateException if output variable nodes do not exist
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    public CSTestGenerator(CSGraph circuit) throws IllegalArgumentException, IllegalStateException, IllegalCircuitStateException {
+        CSFaultSimulator simulator;
+        CSFaultSimulator compactor;
+        Random random = new Random(circuit.getSize());
+        long[] words;
+        byte[] pattern;
+        byte[] outcomes;
+        int inputCount;
+        int detected;
+        int redundant = 0;
+        int aborted = 0;
+
+        if(circuit.isSequential())
+            throw new IllegalArgumentException("Patterns can only be generated for circuits without flip flops");
+
+        simulator = new CSFaultSimulator(circuit, false);
+        compiled = simulator.compiled;
+        inputIndeces = simulator.inputIndeces;
+        inputCount = inputIndeces.length;
+        inputNames = new String[inputCount];
+        for(int j = 0; j < inputCount; j++)
+            inputNames[j] = circuit.getNode(inputIndeces[j]).getName();
+
+        good = new byte[compiled.getSize()];
+        faulty = new byte[compiled.getSize()];
+        pending = new long[(compiled.getSize() + 63) >>> 6];
+        depths = new int[compiled.getSize()];
+        distances = new int[compiled.getSize()];
+        inputPositions = new int[compiled.getSize()];
+        cone = new int[compiled.getSize()];
+        candidates = new long[compiled.getSize()];
+        stack = new int[compiled.getSize()];
+        visits = new int[compiled.getSize()];
+        measureNodes(simulator.outputIndeces);
+
+        // random patterns first, while they still detect faults
+        patterns = new ArrayList<byte[]>();
+        words = new long[inputCount];
+        for(int block = 0; block < RANDOM_BLOCKS; block++) {
+            for(int j = 0; j < inputCount; j++)
+                words[j] = random.nextLong();
+            detected = simulator.simulatePatterns(words, -1L, patterns.size());
+            for(int lane = 0; lane < 64; lane++) {
+                pattern = new byte[inputCount];
+                for(int j = 0; j < inputCount; j++)
+                    pattern[j] = (byte)((words[j] >>> lane) & 1);
+                patterns.add(pattern);
+            }
+            if(detected == 0)
+                break;
+        }
+
+        outcomes = new byte[simulator.getFaultCount()];
+        for(int f = 0; f < simulator.getFaultCount(); f++) {
+            if(simulator.isDetected(f))
+                continue;
+
+            pattern = new byte[inputCount];
+            switch(findPattern(simulator.faultNodes[f], simulator.faultPins[f], simulator.stuckValues[f], pattern)) {
+                case DETECTED:  for(int j = 0; j < inputCount; j++) {
+                                    if(pattern[j] == X)
+                                        pattern[j] = (byte)random.nextInt(2);
+                                    words[j] = pattern[j];
+                                }
+                                simulator.simulatePatterns(words, 1L, patterns.size());
+                                patterns.add(pattern);
+                                if(!simulator.isDetected(f))
+                                    outcomes[f] = ABORTED;
+                                break;
+                case REDUNDANT: outcomes[f] = REDUNDANT;
+                                break;
+                default:        outcomes[f] = ABORTED;
+                                break;
+            }
+        }
+
+        compactor = new CSFaultSimulator(circuit, false);
+        faultCount = simulator.getFaultCount();
+        detectedCount = compactPatterns(compactor);
+
+        // a fault the final patterns detect only counts as detected, even if its own search gave up
+        for(int f = 0; f < outcomes.length; f++) {
+            if(compactor.isDetected(f))
+                continue;
+            if(outcomes[f] == REDUNDANT)
+                redundant++;
+            else if(outcomes[f] == ABORTED)
+                aborted++;
+        }
+
+        redundantCount = redundant;
+        abortedCount = aborted;
+    }
+
+    /**
+     * Gets the names of the input variables.
+     * 
+     * @return an array containing the input variable names, in the order of the circuit
+     */
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    /**
+     * Gets the number of patterns generated.
+     * 
+     * @return the number of patterns after compaction
+     */
+    public int getPatternCount() {
+        return patterns.size();
+    }
+
+    /**
+     * Gets the values of one input variable in all patterns, as an input sequence.
+     * 
+     * @param input the position of the input variable in {@linkplain #getInputNames()}
+     * @return the value of the input variable in each pattern
+     * @throws IndexOutOfBoundsException if the input variable does not exist
+     */
+    public int[] getInputSeq(int input) throws IndexOutOfBoundsException {
+        int[] inputSeq = new int[patterns.size()];
+
+        if(input < 0 || input >= inputNames.length)
+            throw new IndexOutOfBoundsException(input + " is an invalid input variable");
+
+        for(int i = 0; i < inputSeq.length; i++)
+            inputSeq[i] = patterns.get(i)[input];
+
+        return inputSeq;
+    }
+
+    /**
+     * Gets the number of faults of the circuit.
+     * 
+     * @return the number of stuck-at faults
+     */
+    public int getFaultCount() {
+        return faultCount;
+    }
+
+    /**
+     * Gets the number of faults detected by the patterns.
+     * 
+     * @return the number of detected faults
+     */
+    public int getDetectedCount() {
+        return detectedCount;
+    }
+
+    /**
+     * Gets the number of faults that no pattern can detect.
+     * 
+     * @return the number of faults proven to be redundant
+     */
+    public int getRedundantCount() {
+        return redundantCount;
+    }
+
+    /**
+     * Gets the number of faults for which the search gave up.
+     * <p>
+     * Faults detected by the patterns generated for other faults are not counted.
+     * 
+     * @return the number of undetected faults that took more than {@linkplain #BACKTRACK_LIMIT} backtracks
+     */
+    public int getAbortedCount() {
+        return abortedCount;
+    }
+
+    /**
+     * Gets the fraction of the faults that are detected by the patterns.
+     * 
+     * @return the fault coverage, from 0 to 1
+     */
+    public double getCoverage() {
+        return detectedCount / (double)faultCount;
+    }
+
+    /**
+     * Utility method to measure the depth of each node and its distance to the output variables.
+     * 
+     * @param outputIndeces the indeces of the output variable nodes
+     */
+    private void measureNodes(int[] outputIndeces) {
+        int index;
+
+        for(int i = 0; i < inputPositions.length; i++) {
+            inputPositions[i] = -1;
+            distances[i] = Integer.MAX_VALUE;
+        }
+        for(int j = 0; j < inputIndeces.length; j++)
+            inputPositions[inputIndeces[j]] = j;
+        for(int j = 0; j < outputIndeces.length; j++)
+            distances[outputIndeces[j]] = 0;
+
+        for(int r = 0; r < compiled.order.length; r++) {
+            index = compiled.order[r];
+            for(int k = compiled.faninStart[index]; k < compiled.faninStart[index + 1]; k++)
+                depths[index] = Math.max(depths[index], depths[compiled.fanins[k]] + 1);
+        }
+
+        for(int r = compiled.order.length - 1; r >= 0; r--) {
+            index = compiled.order[r];
+            for(int k = compiled.fanoutStart[index]; k < compiled.fanoutStart[index + 1]; k++)
+                if(distances[compiled.fanouts[k]] != Integer.MAX_VALUE)
+                    distances[index] = Math.min(distances[index], distances[compiled.fanouts[k]] + 1);
+        }
+    }
+
+    /**
+     * Utility method to search for a pattern that detects a fault with PODEM.
+     * 
+     * @param node the index of the node of the fault
+     * @param pin the input of the fault within {@code fanins}, or -1 for a fault of the node output
+     * @param stuck the value the fault is stuck at
+     * @param pattern receives the value of each input variable, where {@code X} is left unassigned
+     * @return {@code DETECTED}, {@code REDUNDANT} or {@code ABORTED}
+     */
+    private int findPattern(int node, int pin, int stuck, byte[] pattern) {
+        int[] decisions = new int[pattern.length];
+        boolean[] flipped = new boolean[pattern.length];
+        int decisionCount = 0;
+        int backtracks = 0;
+        int input;
+
+        // a fault no output variable depends on cannot be detected
+        if(distances[node] == Integer.MAX_VALUE)
+            return REDUNDANT;
+
+        faultNode = node;
+        faultPin = pin;
+        stuckValue = (byte)stuck;
+        findCone();
+        for(int j = 0; j < pattern.length; j++)
+            pattern[j] = X;
+        for(int index : compiled.order) {
+            good[index] = evaluate(index, good, false, pattern);
+            faulty[index] = evaluate(index, faulty, true, pattern);
+        }
+
+        while(true) {
+            switch(findObjective()) {
+                case DETECTED:  return DETECTED;
+                case SEARCHING: input = backtrace(pattern);
+                                decisions[decisionCount] = input;
+                                flipped[decisionCount++] = false;
+                                imply(input, pattern);
+                                break;
+                default:        // undo the assignments that were flipped already, then flip the last one left
+                                while(decisionCount > 0 && flipped[decisionCount - 1]) {
+                                    input = decisions[--decisionCount];
+                                    pattern[input] = X;
+                                    imply(input, pattern);
+                                }
+                                if(decisionCount == 0)
+                                    return REDUNDANT;
+                                if(++backtracks > BACKTRACK_LIMIT)
+                                    return ABORTED;
+                                input = decisions[decisionCount - 1];
+                                pattern[input] ^= 1;
+                                flipped[decisionCount - 1] = true;
+                                imply(input, pattern);
+                                break;
+            }
+        }
+    }
+
+    /**
+     * Utility method to find the nodes that depend on the node of the fault being targeted.
+     */
+    private void findCone() {
+        int index;
+
+        visitStamp++;
+        visits[faultNode] = visitStamp;
+        cone[0] = faultNode;
+        coneSize = 1;
+        for(int c = 0; c < coneSize; c++) {
+            index = cone[c];
+            for(int k = compiled.fanoutStart[index]; k < compiled.fanoutStart[index + 1]; k++) {
+                if(visits[compiled.fanouts[k]] != visitStamp) {
+                    visits[compiled.fanouts[k]] = visitStamp;
+                    cone[coneSize++] = compiled.fanouts[k];
+                }
+            }
+        }
+    }
+
+    /**
+     * Utility method to decide how the search continues.
+     * <p>
+     * While the fault is not activated, the objective is to give the fault site the opposite of
+     * the stuck value. Afterwards it is to set an unknown input of the gate nearest to an output
+     * variable among the gates whose input shows the fault effect but whose output is not known.
+     * 
+     * @return {@code DETECTED} if an output variable shows the fault effect, {@code REDUNDANT}
+     * if the current assignments cannot detect the fault, or {@code SEARCHING} if an objective was set
+     */
+    private int findObjective() {
+        int site = faultPin == -1 ? faultNode : compiled.fanins[faultPin];
+        int candidateCount = 0;
+        int frontier;
+        int index;
+
+        if(good[site] == stuckValue)
+            return REDUNDANT;
+        if(good[site] == X) {
+            objectiveNode = site;
+            objectiveValue = (byte)(stuckValue ^ 1);
+            return SEARCHING;
+        }
+
+        // gates whose output is unknown and one of whose inputs shows the fault effect
+        for(int c = 0; c < coneSize; c++) {
+            index = cone[c];
+            if(good[index] != X && faulty[index] != X) {
+                if(good[index] != faulty[index] && distances[index] == 0)
+                    return DETECTED;
+                continue;
+            }
+            if(distances[index] == Integer.MAX_VALUE)
+                continue;
+
+            for(int k = compiled.faninStart[index]; k < compiled.faninStart[index + 1]; k++) {
+                if(isFaultEffect(index, k)) {
+                    candidates[candidateCount++] = ((long)distances[index] << 32) | index;
+                    break;
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, candidateCount);
+
+        // the nearest gate to an output variable that still has a path of unknown nodes to one
+        for(int c = 0; c < candidateCount; c++) {
+            frontier = (int)candidates[c];
+            if(!hasUnknownPath(frontier))
+                continue;
+
+            for(int k = compiled.faninStart[frontier]; k < compiled.faninStart[frontier + 1]; k++) {
+                if(!isFaultEffect(frontier, k) && isUnknown(compiled.fanins[k])) {
+                    objectiveNode = compiled.fanins[k];
+                    objectiveValue = (byte)(compiled.ops[frontier] == CSCompiledCircuit.OP_AND
+                        || compiled.ops[frontier] == CSCompiledCircuit.OP_NAND ? 1 : 0);
+                    return SEARCHING;
+                }
+            }
+        }
+
+        return REDUNDANT;
+    }
+
+    /**
+     * Utility method to check whether a node reaches an output variable through unknown nodes only.
+     * 
+     * @param node the index of the node, which is unknown itself
+     * @return true if such a path exists
+     */
+    private boolean hasUnknownPath(int node) {
+        int stackSize = 0;
+        int index;
+        int target;
+
+        visitStamp++;
+        visits[node] = visitStamp;
+        stack[stackSize++] = node;
+        while(stackSize > 0) {
+            index = stack[--stackSize];
+            if(distances[index] == 0)
+                return true;
+
+            for(int k = compiled.fanoutStart[index]; k < compiled.fanoutStart[index + 1]; k++) {
+                target = compiled.fanouts[k];
+                if(visits[target] != visitStamp && isUnknown(target) && distances[target] != Integer.MAX_VALUE) {
+                    visits[target] = visitStamp;
+                    stack[stackSize++] = target;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Utility method to follow the objective back to an unassigned input variable.
+     * <p>
+     * Where every input of a gate needs a value, the input hardest to control is followed, and
+     * where one input is enough, the easiest.
+     * 
+     * @param pattern the values of the input variables; the chosen one is assigned
+     * @return the position of the chosen input variable
+     */
+    private int backtrace(byte[] pattern) {
+        int index = objectiveNode;
+        int value = objectiveValue;
+        int next;
+        int parity;
+        byte op;
+
+        while(inputPositions[index] == -1) {
+            op = compiled.ops[index];
+            if(op == CSCompiledCircuit.OP_NOT || op == CSCompiledCircuit.OP_NAND
+                    || op == CSCompiledCircuit.OP_NOR || op == CSCompiledCircuit.OP_NXOR)
+                value ^= 1;
+
+            next = -1;
+            parity = 0;
+            for(int k = compiled.faninStart[index]; k < compiled.faninStart[index + 1]; k++) {
+                if(!isUnknown(compiled.fanins[k])) {
+                    parity ^= good[compiled.fanins[k]] & 1;
+                    continue;
+                }
+                if(next == -1)
+                    next = compiled.fanins[k];
+                else if((op == CSCompiledCircuit.OP_AND || op == CSCompiledCircuit.OP_NAND) == (value == 1)) {
+                    if(depths[compiled.fanins[k]] > depths[next])
+                        next = compiled.fanins[k];
+                } else if(op != CSCompiledCircuit.OP_XOR && op != CSCompiledCircuit.OP_NXOR) {
+                    if(depths[compiled.fanins[k]] < depths[next])
+                        next = compiled.fanins[k];
+                }
+            }
+
+            // the xor of the other known inputs decides the value needed from the chosen input
+            if(op == CSCompiledCircuit.OP_XOR || op == CSCompiledCircuit.OP_NXOR)
+                value ^= parity;
+            index = next;
+        }
+
+        pattern[inputPositions[index]] = (byte)value;
+        return inputPositions[index];
+    }
+
+    /**
+     * Utility method to update the values of the nodes after an input variable changed.
+     * <p>
+     * Only nodes whose input nodes changed are evaluated again, in the order of the update path.
+     * 
+     * @param input the position of the input variable that changed
+     * @param pattern the values of the input variables
+     */
+    private void imply(int input, byte[] pattern) {
+        int pendingCount = 0;
+        int r = compiled.rank[inputIndeces[input]];
+        int index;
+        int target;
+        byte goodValue;
+        byte faultyValue;
+
+        pending[r >>> 6] |= 1L << r;
+        pendingCount++;
+        for(int w = r >>> 6; pendingCount > 0; w++) {
+            while(pending[w] != 0) {
+                r = (w << 6) + Long.numberOfTrailingZeros(pending[w]);
+                pending[w] &= pending[w] - 1;
+                pendingCount--;
+
+                index = compiled.order[r];
+                goodValue = evaluate(index, good, false, pattern);
+                faultyValue = evaluate(index, faulty, true, pattern);
+                if(goodValue == good[index] && faultyValue == faulty[index])
+                    continue;
+
+                good[index] = goodValue;
+                faulty[index] = faultyValue;
+                for(int k = compiled.fanoutStart[index]; k < compiled.fanoutStart[index + 1]; k++) {
+                    target = compiled.rank[compiled.fanouts[k]];
+                    if((pending[target >>> 6] & (1L << target)) == 0) {
+                        pending[target >>> 6] |= 1L << target;
+                        pendingCount++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Utility method to compute the value of one node from 0, 1 and unknown values.
+     * 
+     * @param index the index of the node
+     * @param values the values of the fault free or the faulty circuit
+     * @param withFault true to apply the fault being targeted
+     * @param pattern the values of the input variables
+     * @return the value of the node
+     */
+    private byte evaluate(int index, byte[] values, boolean withFault, byte[] pattern) {
+        int start = compiled.faninStart[index];
+        int end = compiled.faninStart[index + 1];
+        boolean unknown = false;
+        byte controlling;
+        byte result;
+        byte value;
+
+        if(withFault && index == faultNode && faultPin == -1)
+            return stuckValue;
+
+        switch(compiled.ops[index]) {
+            case CSCompiledCircuit.OP_INPUT:    return pattern[inputPositions[index]];
+            case CSCompiledCircuit.OP_ZERO:     return 0;
+            case CSCompiledCircuit.OP_BUFFER:
+            case CSCompiledCircuit.OP_NOT:      value = withFault && start == faultPin ? stuckValue : values[compiled.fanins[start]];
+                                                if(value == X || compiled.ops[index] == CSCompiledCircuit.OP_BUFFER)
+                                                    return value;
+                                                return (byte)(value ^ 1);
+            case CSCompiledCircuit.OP_XOR:
+            case CSCompiledCircuit.OP_NXOR:     result = (byte)(compiled.ops[index] == CSCompiledCircuit.OP_XOR ? 0 : 1);
+                                                for(int k = start; k < end; k++) {
+                                                    value = withFault && k == faultPin ? stuckValue : values[compiled.fanins[k]];
+                                                    if(value == X)
+                                                        return X;
+                                                    result ^= value;
+                                                }
+                                                return result;
+            default:                            // a controlling input decides the output, otherwise unknown inputs leave it unknown
+                                                controlling = (byte)(compiled.ops[index] == CSCompiledCircuit.OP_AND
+                                                    || compiled.ops[index] == CSCompiledCircuit.OP_NAND ? 0 : 1);
+                                                result = (byte)(compiled.ops[index] == CSCompiledCircuit.OP_AND
+                                                    || compiled.ops[index] == CSCompiledCircuit.OP_NOR ? 0 : 1);
+                                                for(int k = start; k < end; k++) {
+                                                    value = withFault && k == faultPin ? stuckValue : values[compiled.fanins[k]];
+                                                    if(value == controlling)
+                                                        return result;
+                                                    if(value == X)
+                                                        unknown = true;
+                                                }
+                                                return unknown ? X : (byte)(result ^ 1);
+        }
+    }
+
+    /**
+     * Utility method to check whether an input of a node shows the fault effect.
+     * 
+     * @param index the index of the node
+     * @param k the position of the input within {@code fanins}
+     * @return true if the input is known and differs between the fault free and the faulty circuit
+     */
+    private boolean isFaultEffect(int index, int k) {
+        int source = compiled.fanins[k];
+        byte faultyValue = k == faultPin ? stuckValue : faulty[source];
+
+        return good[source] != X && faultyValue != X && good[source] != faultyValue;
+    }
+
+    /**
+     * Utility method to check whether a node is unknown in the fault free or the faulty circuit.
+     * 
+     * @param index the index of the node
+     * @return true if the value of the node is unknown
+     */
+    private boolean isUnknown(int index) {
+        return good[index] == X || faulty[index] == X;
+    }
+
+    /**
+     * Utility method to drop the patterns that detect no fault first when simulated in reverse order.
+     * 
+     * @param simulator a simulator of the circuit that has not detected any fault yet
+     * @return the number of faults detected by the remaining patterns
+     */
+    private int compactPatterns(CSFaultSimulator simulator) {
+        int patternCount = patterns.size();
+        long[] words = new long[inputNames.length];
+        boolean[] needed = new boolean[patternCount];
+        ArrayList<byte[]> kept = new ArrayList<byte[]>();
+        byte[] pattern;
+        int detected = 0;
+        int lanes;
+
+        // pattern i of the reversed order is pattern patternCount - 1 - i
+        for(int first = 0; first < patternCount; first += 64) {
+            lanes = Math.min(64, patternCount - first);
+            for(int j = 0; j < words.length; j++) {
+                words[j] = 0;
+                for(int lane = 0; lane < lanes; lane++) {
+                    pattern = patterns.get(patternCount - 1 - first - lane);
+                    words[j] |= (long)pattern[j] << lane;
+                }
+            }
+            detected += simulator.simulatePatterns(words, lanes == 64 ? -1L : (1L << lanes) - 1, first);
+        }
+
+        for(int f = 0; f < simulator.getFaultCount(); f++)
+            if(simulator.isDetected(f))
+                needed[patternCount - 1 - (int)simulator.getDetectingPattern(f)] = true;
+
+        for(int i = 0; i < patternCount; i++)
+            if(needed[i])
+                kept.add(patterns.get(i));
+        patterns.clear();
+        patterns.addAll(kept);
+
+        return detected;
+    }
+}
@@ -0,0 +1,750 @@
+package simulator.circuit.project;
+
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+import simulator.circuit.project.CSGraph.IllegalCircuitStateException;
+
+/**
+ * Class to find the arrival times, required times and slack of the nodes of a circuit.
+ * <p>
+ * Paths start at input variables and flip-flop outputs, and end at output variables and
+ * flip-flops. Each gate and inverter adds its {@linkplain CSNode#getDelay()} to the paths through
+ * it, and every other node adds nothing. The arrival time of a node is its longest path from a
+ * start, and the critical path is the longest path to an end. The required time of a node is the
+ * clock period minus its longest path to an end, and its slack is its required time minus its
+ * arrival time; by default the clock period is the length of the critical path, so the nodes on
+ * it have a slack of 0.
+ * <p>
+ * The analyzer stays attached to its circuit and is kept up to date as edges and nodes are added
+ * and removed: only the nodes after an edit are given new arrival times and only the nodes before
+ * it are given new required times. Each node keeps its level, the length in edges of its longest
+ * path from a start, and its height, the same to an end; nodes are visited in the order of their
+ * levels or heights, so each node is usually visited once per edit.
+ * 
+ * @author Joel Tengco
+ */
+public class CSTimingAnalyzer {
+    /**
+     * Required time and slack of nodes that have no path to an end.
+     */
+    public static final int UNCONSTRAINED = Integer.MAX_VALUE;
+
+    /**
+     * The circuit being analyzed.
+     */
+    private final CSGraph circuit;
+    /**
+     * Number of nodes of the circuit.
+     */
+    private int size;
+    /**
+     * Propagation delay of each node.
+     */
+    private int[] delays;
+    /**
+     * Longest path of each node from a start.
+     */
+    private int[] arrivals;
+    /**
+     * Longest path of each node to an end, or -1 if it has no path to an end.
+     */
+    private int[] departures;
+    /**
+     * Number of edges of the longest path of each node from a start.
+     */
+    private int[] levels;
+    /**
+     * Number of edges of the longest path of each node to an end.
+     */
+    private int[] heights;
+    /**
+     * True for input variables and flip-flop outputs, where paths start.
+     */
+    private boolean[] starts;
+    /**
+     * True for output variables and flip-flops, where paths end.
+     */
+    private boolean[] ends;
+    /**
+     * Nodes each node reads, leaving out the flip-flop of a flip-flop output.
+     */
+    private int[][] fanins;
+    /**
+     * Number of nodes in each list of {@code fanins}.
+     */
+    private int[] faninCounts;
+    /**
+     * Nodes that read each node, leaving out the outputs of a flip-flop.
+     */
+    private int[][] fanouts;
+    /**
+     * Number of nodes in each list of {@code fanouts}.
+     */
+    private int[] fanoutCounts;
+    /**
+     * Ends by arrival time, as {@code (arrival << 32) | node}.
+     */
+    private final TreeSet<Long> endArrivals;
+    /**
+     * Nodes to be given new arrival times, as {@code (level << 32) | node}.
+     */
+    private final PriorityQueue<Long> forwardQueue;
+    /**
+     * Nodes to be given new required times, as {@code (height << 32) | node}.
+     */
+    private final PriorityQueue<Long> backwardQueue;
+    /**
+     * True for the nodes in {@code forwardQueue}.
+     */
+    private boolean[] forwardQueued;
+    /**
+     * True for the nodes in {@code backwardQueue}.
+     */
+    private boolean[] backwardQueued;
+    /**
+     * False after an edit made the circuit cyclic, until the times are found again from scratch.
+     */
+    private boolean valid;
+    /**
+     * Clock period the required times are measured against, or 0 for the critical path length.
+     */
+    private int clockPeriod;
+    /**
+     * Number of times a node was given new times since the analyzer was built.
+     */
+    private long visitCount;
+
+    /**
+     * Constructs the analyzer of the given circuit and finds the times of every node.
+     * <p>
+     * The circuit keeps the analyzer up to date from then on; see
+     * {@linkplain CSGraph#getTimingAnalyzer()}.
+     * 
+     * @param circuit the circuit to analyze
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    CSTimingAnalyzer(CSGraph circuit) throws IllegalCircuitStateException {
+        this.circuit = circuit;
+        endArrivals = new TreeSet<Long>();
+        forwardQueue = new PriorityQueue<Long>();
+        backwardQueue = new PriorityQueue<Long>();
+        rebuild();
+    }
+
+    /**
+     * Sets the clock period that required times are measured against.
+     * <p>
+     * Use 0 to measure them against the length of the critical path. The period is not changed
+     * for negative integers given.
+     * 
+     * @param clockPeriod the new clock period, in units of time
+     */
+    public void setClockPeriod(int clockPeriod) {
+        if(clockPeriod >= 0)
+            this.clockPeriod = clockPeriod;
+    }
+
+    /**
+     * Gets the clock period that required times are measured against.
+     * 
+     * @return the clock period set, or the length of the critical path if none is set
+     */
+    public int getClockPeriod() {
+        return clockPeriod > 0 ? clockPeriod : getCriticalPathLength();
+    }
+
+    /**
+     * Gets the length of the critical path, the longest path from a start to an end.
+     * 
+     * @return the arrival time of the latest end, or 0 if the circuit has no ends
+     */
+    public int getCriticalPathLength() {
+        return endArrivals.isEmpty() ? 0 : (int)(endArrivals.last() >>> 32);
+    }
+
+    /**
+     * Gets the nodes of the critical path.
+     * 
+     * @return the indeces of the nodes, from the start of the path to its end
+     */
+    public int[] getCriticalPath() {
+        LinkedList<Integer> path = new LinkedList<Integer>();
+        int[] indeces;
+        int node;
+        int previous;
+        int i = 0;
+
+        if(!endArrivals.isEmpty())
+            node = (int)(endArrivals.last() & 0xFFFFFFFFL);
+        else
+            node = -1;
+
+        // walk back through the fanins that set each arrival time
+        while(node != -1) {
+            path.addFirst(node);
+            previous = -1;
+            for(int k = 0; k < faninCounts[node] && previous == -1; k++)
+                if(arrivals[fanins[node][k]] == arrivals[node] - delays[node])
+                    previous = fanins[node][k];
+            node = previous;
+        }
+
+        indeces = new int[path.size()];
+        for(int index : path)
+            indeces[i++] = index;
+
+        return indeces;
+    }
+
+    /**
+     * Gets the arrival time of a node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the length of the longest path from a start to the node, including the node's delay
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    public int getArrivalTime(int nodeIndex) throws IndexOutOfBoundsException {
+        checkIndex(nodeIndex);
+        return arrivals[nodeIndex];
+    }
+
+    /**
+     * Gets the required time of a node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the latest arrival time of the node that meets the clock period, or
+     * {@linkplain #UNCONSTRAINED} if the node has no path to an end
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    public int getRequiredTime(int nodeIndex) throws IndexOutOfBoundsException {
+        checkIndex(nodeIndex);
+        if(departures[nodeIndex] == -1)
+            return UNCONSTRAINED;
+
+        return getClockPeriod() - departures[nodeIndex];
+    }
+
+    /**
+     * Gets the slack of a node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the required time minus the arrival time, negative if the node is too late, or
+     * {@linkplain #UNCONSTRAINED} if the node has no path to an end
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    public int getSlack(int nodeIndex) throws IndexOutOfBoundsException {
+        checkIndex(nodeIndex);
+        if(departures[nodeIndex] == -1)
+            return UNCONSTRAINED;
+
+        return getClockPeriod() - departures[nodeIndex] - arrivals[nodeIndex];
+    }
+
+    /**
+     * Gets the worst slack of all nodes, the clock period minus the length of the critical path.
+     * 
+     * @return the worst slack, or {@linkplain #UNCONSTRAINED} if the circuit has no ends
+     */
+    public int getWorstSlack() {
+        if(endArrivals.isEmpty())
+            return UNCONSTRAINED;
+
+        return getClockPeriod() - getCriticalPathLength();
+    }
+
+    /**
+     * Gets the number of times a node was given new times since the analyzer was built.
+     * 
+     * @return the number of node visits, which measures the work of the edits
+     */
+    long getVisitCount() {
+        return visitCount;
+    }
+
+    /**
+     * Finds the times of every node again if an edit left the circuit cyclic.
+     * 
+     * @throws IllegalCircuitStateException if the circuit is still in an invalid state
+     */
+    void validate() throws IllegalCircuitStateException {
+        if(!valid)
+            rebuild();
+    }
+
+    /**
+     * Adds the node at the end of the circuit, with no edges.
+     */
+    void nodeAdded() {
+        CSNode node = circuit.getNode(size);
+
+        ensureCapacity(size + 1);
+        delays[size] = getNodeDelay(node);
+        starts[size] = node instanceof InputVariableNode || node instanceof FFOutNode;
+        ends[size] = node instanceof OutputVariableNode || node instanceof FlipFlop;
+        arrivals[size] = starts[size] ? 0 : delays[size];
+        departures[size] = ends[size] ? 0 : -1;
+        levels[size] = starts[size] ? 0 : 1;
+        heights[size] = 0;
+        faninCounts[size] = 0;
+        fanoutCounts[size] = 0;
+        forwardQueued[size] = false;
+        backwardQueued[size] = false;
+        if(ends[size] && valid)
+            endArrivals.add(key(arrivals[size], size));
+        size++;
+    }
+
+    /**
+     * Removes the node at the given index, along with its edges, and finds the new times of the
+     * nodes it was connected to.
+     * 
+     * @param nodeIndex the index the node had
+     */
+    void nodeRemoved(int nodeIndex) {
+        int[] list;
+
+        for(int k = 0; k < fanoutCounts[nodeIndex]; k++) {
+            removeFromList(fanins, faninCounts, fanouts[nodeIndex][k], nodeIndex);
+            enqueueForward(fanouts[nodeIndex][k]);
+        }
+        for(int k = 0; k < faninCounts[nodeIndex]; k++) {
+            removeFromList(fanouts, fanoutCounts, fanins[nodeIndex][k], nodeIndex);
+            enqueueBackward(fanins[nodeIndex][k]);
+        }
+        if(ends[nodeIndex])
+            endArrivals.remove(key(arrivals[nodeIndex], nodeIndex));
+
+        // move every node after the removed one down by one index
+        shiftDown(nodeIndex);
+        for(int i = 0; i < size; i++) {
+            list = fanins[i];
+            for(int k = 0; k < faninCounts[i]; k++)
+                if(list[k] > nodeIndex)
+                    list[k]--;
+            list = fanouts[i];
+            for(int k = 0; k < fanoutCounts[i]; k++)
+                if(list[k] > nodeIndex)
+                    list[k]--;
+        }
+        forwardQueue.clear();
+        backwardQueue.clear();
+        for(int i = 0; i < size; i++) {
+            if(forwardQueued[i])
+                forwardQueue.add(key(levels[i], i));
+            if(backwardQueued[i])
+                backwardQueue.add(key(heights[i], i));
+        }
+        if(valid) {
+            endArrivals.clear();
+            for(int i = 0; i < size; i++)
+                if(ends[i])
+                    endArrivals.add(key(arrivals[i], i));
+        }
+
+        propagate();
+    }
+
+    /**
+     * Adds an edge and finds the new times of the nodes after and before it.
+     * 
+     * @param sourceIndex the index of the source of the edge
+     * @param targetIndex the index of the target of the edge
+     */
+    void edgeAdded(int sourceIndex, int targetIndex) {
+        // flip-flops end paths, their outputs start new ones
+        if(circuit.getNode(sourceIndex) instanceof FlipFlop)
+            return;
+
+        fanouts[sourceIndex] = addToList(fanouts[sourceIndex], fanoutCounts[sourceIndex]++, targetIndex);
+        fanins[targetIndex] = addToList(fanins[targetIndex], faninCounts[targetIndex]++, sourceIndex);
+        enqueueForward(targetIndex);
+        enqueueBackward(sourceIndex);
+        propagate();
+    }
+
+    /**
+     * Removes an edge and finds the new times of the nodes after and before it.
+     * 
+     * @param sourceIndex the index of the source of the edge
+     * @param targetIndex the index of the target of the edge
+     */
+    void edgeRemoved(int sourceIndex, int targetIndex) {
+        if(circuit.getNode(sourceIndex) instanceof FlipFlop)
+            return;
+
+        removeFromList(fanouts, fanoutCounts, sourceIndex, targetIndex);
+        removeFromList(fanins, faninCounts, targetIndex, sourceIndex);
+        enqueueForward(targetIndex);
+        enqueueBackward(sourceIndex);
+        propagate();
+    }
+
+    /**
+     * Takes the new delay of a node and finds the new times of the nodes it affects.
+     * 
+     * @param nodeIndex the index of the node
+     */
+    void delayChanged(int nodeIndex) {
+        delays[nodeIndex] = getNodeDelay(circuit.getNode(nodeIndex));
+        enqueueForward(nodeIndex);
+        for(int k = 0; k < faninCounts[nodeIndex]; k++)
+            enqueueBackward(fanins[nodeIndex][k]);
+        propagate();
+    }
+
+    /**
+     * Utility method to find the times of every node from scratch, in the order of the update path.
+     * 
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    private void rebuild() throws IllegalCircuitStateException {
+        int[] order = circuit.getUpdatePathIndeces();
+
+        size = 0;
+        delays = new int[0];
+        fanins = null;
+        fanouts = null;
+        ensureCapacity(circuit.getSize());
+        valid = false;
+        for(int i = 0; i < circuit.getSize(); i++)
+            nodeAdded();
+
+        // flip-flops end paths, their outputs start new ones
+        for(int i = 0; i < size; i++) {
+            if(circuit.getNode(i) instanceof FlipFlop)
+                continue;
+            for(int target : circuit.getAdjList(i)) {
+                fanouts[i] = addToList(fanouts[i], fanoutCounts[i]++, target);
+                fanins[target] = addToList(fanins[target], faninCounts[target]++, i);
+            }
+        }
+
+        for(int i = 0; i < order.length; i++)
+            updateArrival(order[i]);
+        for(int i = order.length - 1; i >= 0; i--)
+            updateDeparture(order[i]);
+
+        forwardQueue.clear();
+        backwardQueue.clear();
+        endArrivals.clear();
+        for(int i = 0; i < size; i++)
+            if(ends[i])
+                endArrivals.add(key(arrivals[i], i));
+        valid = true;
+    }
+
+    /**
+     * Utility method to give the queued nodes their new times, nodes after an edit first by level
+     * and nodes before it first by height.
+     * <p>
+     * A node is queued again whenever a node it depends on changes, so the times are right even
+     * when levels or heights changed along the way. On a cycle the levels keep growing; once
+     * they pass the number of nodes, the analyzer is marked invalid until the cycle is removed.
+     */
+    private void propagate() {
+        int node;
+
+        if(!valid) {
+            clearQueues();
+            return;
+        }
+
+        while(!forwardQueue.isEmpty()) {
+            node = (int)(forwardQueue.poll() & 0xFFFFFFFFL);
+            forwardQueued[node] = false;
+            if(updateArrival(node))
+                for(int k = 0; k < fanoutCounts[node]; k++)
+                    enqueueForward(fanouts[node][k]);
+            if(levels[node] > size) {
+                valid = false;
+                clearQueues();
+                return;
+            }
+        }
+
+        while(!backwardQueue.isEmpty()) {
+            node = (int)(backwardQueue.poll() & 0xFFFFFFFFL);
+            backwardQueued[node] = false;
+            if(updateDeparture(node))
+                for(int k = 0; k < faninCounts[node]; k++)
+                    enqueueBackward(fanins[node][k]);
+            if(heights[node] > size) {
+                valid = false;
+                clearQueues();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Utility method to find the arrival time and level of a node from the nodes it reads.
+     * 
+     * @param node the index of the node
+     * @return true if the arrival time or level changed
+     */
+    private boolean updateArrival(int node) {
+        int arrival = 0;
+        int level = 0;
+        int fanin;
+
+        visitCount++;
+        if(!starts[node]) {
+            for(int k = 0; k < faninCounts[node]; k++) {
+                fanin = fanins[node][k];
+                arrival = Math.max(arrival, arrivals[fanin]);
+                level = Math.max(level, levels[fanin]);
+            }
+            arrival += delays[node];
+            level++;
+        }
+
+        if(arrival == arrivals[node] && level == levels[node])
+            return false;
+
+        if(ends[node] && valid) {
+            endArrivals.remove(key(arrivals[node], node));
+            endArrivals.add(key(arrival, node));
+        }
+        arrivals[node] = arrival;
+        levels[node] = level;
+        return true;
+    }
+
+    /**
+     * Utility method to find the longest path to an end and the height of a node from the nodes
+     * that read it.
+     * 
+     * @param node the index of the node
+     * @return true if the path or height changed
+     */
+    private boolean updateDeparture(int node) {
+        int departure = ends[node] ? 0 : -1;
+        int height = 0;
+        int fanout;
+
+        visitCount++;
+        if(!ends[node]) {
+            for(int k = 0; k < fanoutCounts[node]; k++) {
+                fanout = fanouts[node][k];
+                if(departures[fanout] != -1)
+                    departure = Math.max(departure, departures[fanout] + delays[fanout]);
+                height = Math.max(height, heights[fanout] + 1);
+            }
+        }
+
+        if(departure == departures[node] && height == heights[node])
+            return false;
+
+        departures[node] = departure;
+        heights[node] = height;
+        return true;
+    }
+
+    /**
+     * Utility method to queue a node to be given a new arrival time.
+     * 
+     * @param node the index of the node
+     */
+    private void enqueueForward(int node) {
+        if(!forwardQueued[node]) {
+            forwardQueued[node] = true;
+            forwardQueue.add(key(levels[node], node));
+        }
+    }
+
+    /**
+     * Utility method to queue a node to be given a new required time.
+     * 
+     * @param node the index of the node
+     */
+    private void enqueueBackward(int node) {
+        if(!backwardQueued[node]) {
+            backwardQueued[node] = true;
+            backwardQueue.add(key(heights[node], node));
+        }
+    }
+
+    /**
+     * Utility method to empty both queues.
+     */
+    private void clearQueues() {
+        forwardQueue.clear();
+        backwardQueue.clear();
+        for(int i = 0; i < size; i++) {
+            forwardQueued[i] = false;
+            backwardQueued[i] = false;
+        }
+    }
+
+    /**
+     * Utility method to make room for the given number of nodes.
+     * 
+     * @param capacity the number of nodes
+     */
+    private void ensureCapacity(int capacity) {
+        int newLength;
+
+        if(capacity <= delays.length)
+            return;
+
+        newLength = Math.max(capacity, delays.length * 2);
+        delays = copyOf(delays, newLength);
+        arrivals = copyOf(arrivals, newLength);
+        departures = copyOf(departures, newLength);
+        levels = copyOf(levels, newLength);
+        heights = copyOf(heights, newLength);
+        faninCounts = copyOf(faninCounts, newLength);
+        fanoutCounts = copyOf(fanoutCounts, newLength);
+        starts = copyOf(starts, newLength);
+        ends = copyOf(ends, newLength);
+        forwardQueued = copyOf(forwardQueued, newLength);
+        backwardQueued = copyOf(backwardQueued, newLength);
+        fanins = copyOf(fanins, newLength);
+        fanouts = copyOf(fanouts, newLength);
+    }
+
+    /**
+     * Utility method to move the nodes after the given index down by one.
+     * 
+     * @param nodeIndex the index of the removed node
+     */
+    private void shiftDown(int nodeIndex) {
+        int count = size - nodeIndex - 1;
+
+        System.arraycopy(delays, nodeIndex + 1, delays, nodeIndex, count);
+        System.arraycopy(arrivals, nodeIndex + 1, arrivals, nodeIndex, count);
+        System.arraycopy(departures, nodeIndex + 1, departures, nodeIndex, count);
+        System.arraycopy(levels, nodeIndex + 1, levels, nodeIndex, count);
+        System.arraycopy(heights, nodeIndex + 1, heights, nodeIndex, count);
+        System.arraycopy(faninCounts, nodeIndex + 1, faninCounts, nodeIndex, count);
+        System.arraycopy(fanoutCounts, nodeIndex + 1, fanoutCounts, nodeIndex, count);
+        System.arraycopy(starts, nodeIndex + 1, starts, nodeIndex, count);
+        System.arraycopy(ends, nodeIndex + 1, ends, nodeIndex, count);
+        System.arraycopy(forwardQueued, nodeIndex + 1, forwardQueued, nodeIndex, count);
+        System.arraycopy(backwardQueued, nodeIndex + 1, backwardQueued, nodeIndex, count);
+        System.arraycopy(fanins, nodeIndex + 1, fanins, nodeIndex, count);
+        System.arraycopy(fanouts, nodeIndex + 1, fanouts, nodeIndex, count);
+        size--;
+        fanins[size] = null;
+        fanouts[size] = null;
+    }
+
+    /**
+     * Utility method to check that a node exists.
+     * 
+     * @param nodeIndex the index of the node
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    private void checkIndex(int nodeIndex) throws IndexOutOfBoundsException {
+        if(nodeIndex < 0 || nodeIndex >= size)
+            throw new IndexOutOfBoundsException(nodeIndex + " is an invalid index");
+    }
+
+    /**
+     * Utility method to get the delay a node adds to the paths through it.
+     * 
+     * @param node the node
+     * @return the delay of gates and inverters, at least 1, or 0 for every other node
+     */
+    private static int getNodeDelay(CSNode node) {
+        if(node instanceof Gate || node instanceof Inverter)
+            return Math.max(node.getDelay(), 1);
+
+        return 0;
+    }
+
+    /**
+     * Utility method to pack a time and a node into a key that sorts by time.
+     * 
+     * @param time the time, level or height
+     * @param node the index of the node
+     * @return the key
+     */
+    private static long key(int time, int node) {
+        return ((long)time << 32) | node;
+    }
+
+    /**
+     * Utility method to add a node to a list, growing the list if it is full.
+     * 
+     * @param list the list, or null if it was never used
+     * @param count the number of nodes in the list
+     * @param node the node to add
+     * @return the list holding the added node
+     */
+    private static int[] addToList(int[] list, int count, int node) {
+        if(list == null)
+            list = new int[2];
+        else if(count == list.length)
+            list = copyOf(list, count * 2);
+
+        list[count] = node;
+        return list;
+    }
+
+    /**
+     * Utility method to remove one occurrence of a node from a list.
+     * 
+     * @param lists the lists of every node
+     * @param counts the number of nodes in each list
+     * @param owner the node whose list to remove from
+     * @param node the node to remove
+     */
+    private static void removeFromList(int[][] lists, int[] counts, int owner, int node) {
+        int[] list = lists[owner];
+
+        for(int k = 0; k < counts[owner]; k++) {
+            if(list[k] == node) {
+                list[k] = list[--counts[owner]];
+                return;
+            }
+        }
+    }
+
+    /**
+     * Utility method to copy an array into a longer one.
+     * 
+     * @param array the array
+     * @param length the new length
+     * @return the new array
+     */
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+
+        if(array != null)
+            System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    /**
+     * Utility method to copy an array into a longer one.
+     * 
+     * @param array the array
+     * @param length the new length
+     * @return the new array
+     */
+    private static boolean[] copyOf(boolean[] array, int length) {
+        boolean[] copy = new boolean[length];
+
+        if(array != null)
+            System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    /**
+     * Utility method to copy an array into a longer one.
+     * 
+     * @param array the array
+     * @param length the new length
+     * @return the new array
+     */
+    private static int[][] copyOf(int[][] array, int length) {
+        int[][] copy = new int[length][];
+
+        if(array != null)
+            System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+}
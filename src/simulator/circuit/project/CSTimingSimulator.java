@@ -0,0 +1,484 @@
+package simulator.circuit.project;
+
+import java.util.ArrayList;
+
+import simulator.circuit.project.CSGraph.IllegalCircuitStateException;
+
+/**
+ * Class to simulate a circuit with the propagation delays of its gates and inverters.
+ * <p>
+ * Each gate and inverter changes its value {@linkplain CSNode#getDelay()} units of time after
+ * one of its input nodes changed. Every other node takes no time, and the outputs of flip-flops
+ * only change on the clock edge that starts each cycle, when the input variables take their
+ * next values as in {@linkplain CSEngine#getNextCircuitState()}. Changes are events scheduled on
+ * a {@linkplain CSTimingWheel}; an event is only scheduled when a gate computes a value that
+ * differs from the last value scheduled for it, and pulses shorter than a delay are passed on
+ * as they are, so glitches stay visible.
+ * <p>
+ * Each node keeps count of its input nodes at 1, or at 0 for "and" and "nand" gates, and the
+ * count is updated as the input nodes change. A gate is then evaluated from its own state
+ * alone, so an event costs one update per node that depends on the changed node, however
+ * many inputs those nodes have.
+ * <p>
+ * A cycle lasts until no event is left. Its settling time is the time of the last change after
+ * the clock edge, and the node that changed last ends the longest path that was active. A node
+ * that changes more than once in a cycle has a hazard: static if it ends with the value it
+ * started with, dynamic otherwise. The values at the end of each cycle are the values of the
+ * zero-delay simulation.
+ * 
+ * @author Joel Tengco
+ */
+public class CSTimingSimulator {
+    /**
+     * Largest propagation delay a node can have, which bounds the size of the timing wheel.
+     */
+    public static final int MAX_DELAY = 1 << 16;
+    /**
+     * Bit of {@code states} holding the current value of a node.
+     */
+    private static final int VALUE = 1;
+    /**
+     * Bit of {@code states} holding the value a node has once its scheduled events are taken.
+     */
+    private static final int SCHEDULED = 2;
+    /**
+     * Bit of {@code states} set for the nodes in {@code dirtyNodes}.
+     */
+    private static final int DIRTY = 4;
+    /**
+     * Bit of {@code states} set for the outputs of flip-flops, which only change on the clock edge.
+     */
+    private static final int CLOCKED = 8;
+    /**
+     * Bit of {@code states} set for the nodes that count their input nodes at 0 instead of at 1.
+     */
+    private static final int COUNTS_ZEROS = 16;
+    /**
+     * Bit of {@code states} set for XOR and XNOR gates, whose value is the parity of their count.
+     */
+    private static final int PARITY = 32;
+    /**
+     * Position in {@code states} of the bit set for the nodes whose value is the complement of
+     * what their count gives: inverters and negated flip-flop outputs, and "and", "nor" and
+     * "xnor" gates.
+     */
+    private static final int INVERTED_SHIFT = 6;
+    /**
+     * Bit of {@code states} set for the nodes that changed in the current cycle.
+     */
+    private static final int CHANGED = 128;
+    /**
+     * Bit of {@code states} set for the nodes that changed more than once in the current cycle.
+     */
+    private static final int CHANGED_AGAIN = 256;
+    /**
+     * Bit of {@code states} flipped by every change of a node in the current cycle.
+     */
+    private static final int ODD_CHANGES = 512;
+    /**
+     * Position in {@code states} of the propagation delay of a node.
+     */
+    private static final int DELAY_SHIFT = 10;
+    /**
+     * Position in {@code states} of the number of input nodes counted, after the delay.
+     */
+    private static final int COUNT_SHIFT = 27;
+
+    /**
+     * The circuit being simulated.
+     */
+    private final CSGraph circuit;
+    /**
+     * The compiled circuit.
+     */
+    private final CSCompiledCircuit compiled;
+    /**
+     * The scheduled changes.
+     */
+    private final CSTimingWheel wheel;
+    /**
+     * State of each node: the bits {@code VALUE}, {@code SCHEDULED}, {@code DIRTY},
+     * {@code CLOCKED}, {@code COUNTS_ZEROS} and {@code PARITY}, the bit at {@code INVERTED_SHIFT},
+     * the bits {@code CHANGED}, {@code CHANGED_AGAIN} and {@code ODD_CHANGES}, its propagation
+     * delay from {@code DELAY_SHIFT} and the number of its input nodes at 1, or at 0 if it
+     * counts zeros, from {@code COUNT_SHIFT}. Keeping them in a single word lets a node be
+     * updated, evaluated and marked as changed with one read of memory.
+     */
+    private final long[] states;
+    /**
+     * Start of the nodes that depend on each node in {@code fanouts}, and their total at the end.
+     */
+    private final int[] fanoutStart;
+    /**
+     * Indeces of the nodes that depend on each node.
+     */
+    private final int[] fanouts;
+    /**
+     * Nodes that changed in the current cycle.
+     */
+    private final int[] changedNodes;
+    /**
+     * Number of nodes in {@code changedNodes}.
+     */
+    private int changedCount;
+    /**
+     * Nodes to evaluate at the current time.
+     */
+    private final int[] dirtyNodes;
+    /**
+     * Number of nodes in {@code dirtyNodes}.
+     */
+    private int dirtyCount;
+    /**
+     * True for the nodes whose hazards are reported: output variables and flip-flops.
+     */
+    private final boolean[] observed;
+    /**
+     * Indeces of the input variable nodes.
+     */
+    private final int[] inputIndeces;
+    /**
+     * Indeces of the outputs of flip-flops.
+     */
+    private final int[] clockedIndeces;
+    /**
+     * Number of cycles simulated.
+     */
+    private long cycleCount;
+    /**
+     * Settling time of the last cycle.
+     */
+    private long settlingTime;
+    /**
+     * Longest settling time of all cycles.
+     */
+    private long longestSettlingTime;
+    /**
+     * Number of events of the last cycle.
+     */
+    private long eventCount;
+    /**
+     * Number of events of all cycles.
+     */
+    private long totalEventCount;
+    /**
+     * Node that changed last in the last cycle, or -1.
+     */
+    private int lastNode;
+    /**
+     * Time of the last change of the current cycle.
+     */
+    private long lastChangeTime;
+
+    /**
+     * Constructs a timing simulator of the given circuit.
+     * <p>
+     * The circuit is reset, so that the input variables start from the beginning of their
+     * input sequences; they are advanced by each cycle simulated. Before the first cycle, every
+     * node has the value it settles to with all input variables and flip-flops at 0.
+     * 
+     * @param circuit the circuit to simulate
+     * @throws IllegalCircuitStateException if the circuit is in an invalid state
+     */
+    public CSTimingSimulator(CSGraph circuit) throws IllegalCircuitStateException {
+        int size = circuit.getSize();
+        int maxDelay = 1;
+        int inputCount = 0;
+        int clockedCount = 0;
+        int delay;
+        long[] values = new long[size];
+        CSNode node;
+
+        this.circuit = circuit;
+        compiled = new CSCompiledCircuit(circuit);
+        states = new long[size];
+        fanoutStart = compiled.fanoutStart;
+        fanouts = compiled.fanouts;
+        changedNodes = new int[size];
+        dirtyNodes = new int[size];
+        observed = new boolean[size];
+
+        for(int i = 0; i < size; i++) {
+            node = circuit.getNode(i);
+            delay = 0;
+            if(node instanceof Gate || node instanceof Inverter)
+                delay = Math.min(Math.max(node.getDelay(), 1), MAX_DELAY);
+            maxDelay = Math.max(maxDelay, delay);
+            states[i] = (long)delay << DELAY_SHIFT;
+            switch(compiled.ops[i]) {
+                case CSCompiledCircuit.OP_NOT:    states[i] |= 1 << INVERTED_SHIFT; break;
+                case CSCompiledCircuit.OP_AND:    states[i] |= COUNTS_ZEROS | 1 << INVERTED_SHIFT; break;
+                case CSCompiledCircuit.OP_NAND:   states[i] |= COUNTS_ZEROS; break;
+                case CSCompiledCircuit.OP_NOR:    states[i] |= 1 << INVERTED_SHIFT; break;
+                case CSCompiledCircuit.OP_XOR:    states[i] |= PARITY; break;
+                case CSCompiledCircuit.OP_NXOR:   states[i] |= PARITY | 1 << INVERTED_SHIFT; break;
+                default:                          break;
+            }
+            if(node instanceof FFOutNode)
+                states[i] |= CLOCKED;
+            observed[i] = node instanceof OutputVariableNode || node instanceof FlipFlop;
+            if(node instanceof InputVariableNode)
+                inputCount++;
+            else if((states[i] & CLOCKED) != 0)
+                clockedCount++;
+        }
+
+        inputIndeces = new int[inputCount];
+        clockedIndeces = new int[clockedCount];
+        inputCount = 0;
+        clockedCount = 0;
+        for(int i = 0; i < size; i++) {
+            if(circuit.getNode(i) instanceof InputVariableNode)
+                inputIndeces[inputCount++] = i;
+            else if((states[i] & CLOCKED) != 0)
+                clockedIndeces[clockedCount++] = i;
+        }
+
+        wheel = new CSTimingWheel(maxDelay);
+        lastNode = -1;
+
+        // flip-flop outputs come before their flip-flops on the update path, so they read 0
+        circuit.reset();
+        compiled.evaluate(values);
+        for(int i = 0; i < size; i++) {
+            if(values[i] != 0)
+                states[i] |= VALUE | SCHEDULED;
+            for(int k = compiled.faninStart[i]; k < compiled.faninStart[i + 1]; k++)
+                if((values[compiled.fanins[k]] == 0) == ((states[i] & COUNTS_ZEROS) != 0))
+                    states[i] += 1L << COUNT_SHIFT;
+        }
+    }
+
+    /**
+     * Simulates one clock cycle, until every node has settled.
+     * 
+     * @return the settling time of the cycle
+     */
+    public long simulateCycle() {
+        long cycleStart = wheel.getTime();
+        long events = 0;
+        int[] taken;
+        int count;
+        int node;
+        long state;
+        int value;
+        int delay;
+        InputVariableNode inputNode;
+
+        for(int c = 0; c < changedCount; c++)
+            states[changedNodes[c]] &= ~(CHANGED | CHANGED_AGAIN | ODD_CHANGES);
+        changedCount = 0;
+
+        // the clock edge: new input values, and flip-flop outputs take the values their flip-flops held
+        for(int index : inputIndeces) {
+            inputNode = (InputVariableNode)circuit.getNode(index);
+            inputNode.updateValue();
+            scheduleChange(index, inputNode.getValue() == 0 ? 0 : 1);
+        }
+        for(int index : clockedIndeces) {
+            value = cycleCount == 0 ? 0 : (int)states[compiled.fanins[compiled.faninStart[index]]] & VALUE;
+            scheduleChange(index, compiled.ops[index] == CSCompiledCircuit.OP_NOT ? value ^ 1 : value);
+        }
+
+        lastChangeTime = cycleStart;
+        lastNode = -1;
+        while(wheel.advance() != -1) {
+            count = wheel.takeAll();
+            taken = wheel.getTakenEvents();
+            for(int e = 0; e < count; e++)
+                applyChange(taken[e] >>> 1, taken[e] & 1);
+            events += count;
+
+            // nodes without a delay always have their scheduled value, so they only change along with it
+            while(dirtyCount > 0) {
+                node = dirtyNodes[--dirtyCount];
+                state = states[node] & ~DIRTY;
+                value = evaluateNode(state);
+                if(value == ((int)state & SCHEDULED) >>> 1) {
+                    states[node] = state;
+                    continue;
+                }
+                states[node] = state ^ SCHEDULED;
+                delay = (int)(state >>> DELAY_SHIFT) & (2 * MAX_DELAY - 1);
+                if(delay == 0)
+                    applyChange(node, value);
+                else
+                    wheel.schedule(delay, node, value);
+            }
+        }
+
+        eventCount = events;
+        settlingTime = lastChangeTime - cycleStart;
+        longestSettlingTime = Math.max(longestSettlingTime, settlingTime);
+        totalEventCount += eventCount;
+        cycleCount++;
+
+        return settlingTime;
+    }
+
+    /**
+     * Gets the number of cycles simulated.
+     * 
+     * @return the number of cycles
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Gets the settling time of the last cycle simulated.
+     * 
+     * @return the time from the clock edge to the last change
+     */
+    public long getSettlingTime() {
+        return settlingTime;
+    }
+
+    /**
+     * Gets the longest settling time of all cycles simulated.
+     * <p>
+     * A clock period needs to be at least this long for the simulated input sequences.
+     * 
+     * @return the longest time from a clock edge to the last change of its cycle
+     */
+    public long getLongestSettlingTime() {
+        return longestSettlingTime;
+    }
+
+    /**
+     * Gets the number of events of the last cycle simulated.
+     * 
+     * @return the number of scheduled changes taken in the cycle
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Gets the number of events of all cycles simulated.
+     * 
+     * @return the number of scheduled changes taken
+     */
+    public long getTotalEventCount() {
+        return totalEventCount;
+    }
+
+    /**
+     * Gets the name of the node that changed last in the last cycle simulated.
+     * 
+     * @return the name of the node at the end of the longest active path, or null if no node changed
+     */
+    public String getLastSettledName() {
+        return lastNode == -1 ? null : circuit.getNode(lastNode).getName();
+    }
+
+    /**
+     * Gets the hazards of the output variables and flip-flops in the last cycle simulated.
+     * 
+     * @return one description per hazard, as "name (static)" or "name (dynamic)"
+     */
+    public String[] getHazards() {
+        ArrayList<String> hazards = new ArrayList<String>();
+        int node;
+
+        for(int c = 0; c < changedCount; c++) {
+            node = changedNodes[c];
+            if(observed[node] && (states[node] & CHANGED_AGAIN) != 0)
+                hazards.add(circuit.getNode(node).getName() + ((states[node] & ODD_CHANGES) == 0 ? " (static)" : " (dynamic)"));
+        }
+
+        return hazards.toArray(new String[hazards.size()]);
+    }
+
+    /**
+     * Gets the number of nodes of any kind that changed more than once in the last cycle simulated.
+     * 
+     * @return the number of nodes with glitches
+     */
+    public int getGlitchCount() {
+        int count = 0;
+
+        for(int c = 0; c < changedCount; c++)
+            if((states[changedNodes[c]] & CHANGED_AGAIN) != 0)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * Gets the current value of a node.
+     * 
+     * @param nodeIndex the index of the node
+     * @return the value of the node, 1 or 0
+     * @throws IndexOutOfBoundsException if the node does not exist
+     */
+    public int getValue(int nodeIndex) throws IndexOutOfBoundsException {
+        return (int)states[nodeIndex] & VALUE;
+    }
+
+    /**
+     * Utility method to schedule a node to change at the clock edge, if its value differs.
+     * 
+     * @param node the index of the node
+     * @param value the new value, 0 or 1
+     */
+    private void scheduleChange(int node, int value) {
+        if(value != ((int)states[node] & SCHEDULED) >>> 1) {
+            states[node] ^= SCHEDULED;
+            wheel.schedule(0, node, value);
+        }
+    }
+
+    /**
+     * Utility method to compute the value of a node from its state.
+     * <p>
+     * Only nodes with input nodes are evaluated, so every node is either a parity of its count
+     * or whether its count is 0, possibly complemented.
+     * 
+     * @param state the state of the node, with its count of input nodes up to date
+     * @return the value of the node, 0 or 1
+     */
+    private static int evaluateNode(long state) {
+        long count = state >>> COUNT_SHIFT;
+        int value = (state & PARITY) != 0 ? (int)count & 1 : (int)((count | -count) >>> 63);
+
+        return value ^ ((int)state >>> INVERTED_SHIFT & 1);
+    }
+
+    /**
+     * Utility method to give a node its new value, update the counts of the nodes that depend
+     * on it and mark them.
+     * 
+     * @param node the index of the node
+     * @param value the new value, 0 or 1
+     */
+    private void applyChange(int node, int value) {
+        long changed = states[node];
+        int counted = value == 0 ? COUNTS_ZEROS : 0;
+        int target;
+        long state;
+
+        if(value == ((int)changed & VALUE))
+            return;
+
+        if((changed & CHANGED) == 0)
+            changedNodes[changedCount++] = node;
+        else
+            changed |= CHANGED_AGAIN;
+        states[node] = changed ^ (VALUE | ODD_CHANGES) | CHANGED;
+        lastChangeTime = wheel.getTime();
+        lastNode = node;
+
+        for(int k = fanoutStart[node]; k < fanoutStart[node + 1]; k++) {
+            target = fanouts[k];
+            state = states[target];
+            // one more input counted if the new value is the one the node counts, one less otherwise
+            state += (state & COUNTS_ZEROS) == counted ? 1L << COUNT_SHIFT : -1L << COUNT_SHIFT;
+            if((state & (DIRTY | CLOCKED)) == 0) {
+                state |= DIRTY;
+                dirtyNodes[dirtyCount++] = target;
+            }
+            states[target] = state;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package simulator.circuit.project;
+
+import java.util.Arrays;
+
+/**
+ * Class to schedule value changes of nodes at future points in time.
+ * <p>
+ * The wheel is an array of slots, one per point in time modulo its size, each holding a list
+ * of the events scheduled for that time. Since no event is scheduled further ahead than the
+ * size of the wheel, a slot only ever holds events of a single point in time, so scheduling an
+ * event and taking the next one are constant time. Events of the same time are taken in the
+ * order they were scheduled.
+ * <p>
+ * The events of a slot are kept one after the other in an array of its own. The events of a
+ * point in time are taken all at once by swapping the array of their slot with the array of
+ * the events taken before, so taking them reads memory in order, events can be scheduled while
+ * they are read, and a running simulation does not allocate.
+ * 
+ * @author Joel Tengco
+ */
+class CSTimingWheel {
+    /**
+     * Events of each slot, as {@code (node << 1) | value}; null for slots never used.
+     */
+    private final int[][] slotEvents;
+    /**
+     * Number of events scheduled in each slot.
+     */
+    private final int[] slotCounts;
+    /**
+     * Events taken last, which was the array of their slot.
+     */
+    private int[] takenEvents;
+    /**
+     * Size of the wheel minus one; the slot of time t is {@code t & mask}.
+     */
+    private final int mask;
+    /**
+     * Number of events scheduled but not taken yet.
+     */
+    private int pendingCount;
+    /**
+     * The current point in time.
+     */
+    private long now;
+
+    /**
+     * Constructs an empty wheel that can schedule events up to the given time ahead.
+     * 
+     * @param horizon the largest number of time units between now and a scheduled event
+     */
+    CSTimingWheel(int horizon) {
+        int size = Integer.highestOneBit(Math.max(horizon, 1)) << 1;
+
+        slotEvents = new int[size][];
+        slotCounts = new int[size];
+        takenEvents = new int[16];
+        mask = size - 1;
+    }
+
+    /**
+     * Gets the current point in time.
+     * 
+     * @return the time of the events being taken
+     */
+    long getTime() {
+        return now;
+    }
+
+    /**
+     * Returns whether events are still scheduled.
+     * 
+     * @return true if no event is scheduled
+     */
+    boolean isEmpty() {
+        return pendingCount == 0;
+    }
+
+    /**
+     * Schedules a node to change to a value after some time.
+     * 
+     * @param delay the number of time units from now, from 0 up to the horizon of the wheel
+     * @param node the index of the node
+     * @param value the new value of the node, 0 or 1
+     * @throws IllegalArgumentException if the delay is outside of the wheel
+     */
+    void schedule(int delay, int node, int value) throws IllegalArgumentException {
+        int slot;
+        int[] events;
+
+        if(delay < 0 || delay > mask)
+            throw new IllegalArgumentException("An event cannot be scheduled " + delay + " time units ahead");
+
+        slot = (int)((now + delay) & mask);
+        events = slotEvents[slot];
+        if(events == null)
+            events = slotEvents[slot] = new int[16];
+        else if(slotCounts[slot] == events.length)
+            events = slotEvents[slot] = Arrays.copyOf(events, events.length * 2);
+
+        events[slotCounts[slot]++] = (node << 1) | value;
+        pendingCount++;
+    }
+
+    /**
+     * Moves the current time forward to the next time with an event.
+     * 
+     * @return the new current time, or -1 if no event is scheduled
+     */
+    long advance() {
+        if(pendingCount == 0)
+            return -1;
+
+        while(slotCounts[(int)(now & mask)] == 0)
+            now++;
+
+        return now;
+    }
+
+    /**
+     * Takes all the events of the current time.
+     * <p>
+     * The events are left at the start of {@linkplain #getTakenEvents()}, in the order they
+     * were scheduled, until the next call. Events scheduled for the current time meanwhile are
+     * taken by the next call.
+     * 
+     * @return the number of events taken
+     */
+    int takeAll() {
+        int slot = (int)(now & mask);
+        int count = slotCounts[slot];
+        int[] events = slotEvents[slot];
+
+        if(count == 0)
+            return 0;
+
+        // the slot keeps the array of the events taken before, so it is ready for the time a whole turn later
+        slotEvents[slot] = takenEvents;
+        takenEvents = events;
+        slotCounts[slot] = 0;
+        pendingCount -= count;
+
+        return count;
+    }
+
+    /**
+     * Gets the events taken last by {@linkplain #takeAll()}.
+     * 
+     * @return an array starting with the events, each as {@code (node << 1) | value}
+     */
+    int[] getTakenEvents() {
+        return takenEvents;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,286 @@
+package simulator.circuit.project;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Class to read a binary trace written by {@linkplain CSTraceWriter}.
+ * <p>
+ * States are decoded one cycle at a time, in the order they were written. Decoding only
+ * applies toggle words to the current state, so reading a trace costs about as much as
+ * reading its bytes from disk.
+ * 
+ * @author Joel Tengco
+ */
+public class CSTraceReader implements Closeable {
+    /**
+     * Size of the buffer placed in front of the input stream.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Stream that the trace is read from.
+     */
+    private DataInputStream in;
+    /**
+     * Names of the recorded nodes.
+     */
+    private final String[] nodeNames;
+    /**
+     * The current state, packed 64 values per word.
+     */
+    private final long[] state;
+    /**
+     * Number of zero toggle words left before the pending word.
+     */
+    private long zerosRemaining;
+    /**
+     * True if the toggle word of the current token has not been applied yet.
+     */
+    private boolean wordPending;
+    /**
+     * Zero run length of the last token read.
+     */
+    private long tokenRun;
+    /**
+     * Toggle word of the last token read.
+     */
+    private long tokenWord;
+    /**
+     * Number of repeats of the last token left to apply.
+     */
+    private long repeatsRemaining;
+    /**
+     * True once the end token of the trace has been read.
+     */
+    private boolean ended;
+    /**
+     * Number of cycles read so far.
+     */
+    private long cycleCount;
+
+    /**
+     * Constructs a trace reader and reads the header of the trace from the given stream.
+     * 
+     * @param inputStream the stream to read the trace from
+     * @throws IOException if an error occurred when reading the header, or the stream does not
+     * contain a trace
+     */
+    public CSTraceReader(InputStream inputStream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+
+        if(in.readInt() != CSTraceWriter.MAGIC)
+            throw new IOException("The stream does not contain a circuit trace");
+        int version = in.readInt();
+        if(version != CSTraceWriter.VERSION)
+            throw new IOException("Unsupported trace version " + version);
+
+        nodeNames = new String[in.readInt()];
+        for(int i = 0; i < nodeNames.length; i++)
+            nodeNames[i] = in.readUTF();
+
+        state = new long[(nodeNames.length + 63) >>> 6];
+    }
+
+    /**
+     * Gets the names of the recorded nodes.
+     * 
+     * @return an array containing the names of the recorded nodes, in the order of their values
+     */
+    public String[] getNodeNames() {
+        return nodeNames.clone();
+    }
+
+    /**
+     * Gets the number of cycles read so far.
+     * 
+     * @return the number of states read from this trace
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Reads the state of the next cycle into the given array.
+     * 
+     * @param nodeValues array to store the values of the recorded nodes in; needs at least one
+     * element per recorded node
+     * @return true if a state was read, false if the end of the trace has been reached
+     * @throws IOException if an error occurred when reading, or the trace is corrupted
+     */
+    public boolean readState(int[] nodeValues) throws IOException {
+        if(!readStateWords())
+            return false;
+
+        for(int i = 0; i < nodeNames.length; i++)
+            nodeValues[i] = (int)(state[i >>> 6] >>> (i & 63)) & 1;
+
+        return true;
+    }
+
+    /**
+     * Reads the state of the next cycle.
+     * 
+     * @return array containing the values of the recorded nodes, or null if the end of the trace
+     * has been reached
+     * @throws IOException if an error occurred when reading, or the trace is corrupted
+     */
+    public int[] nextState() throws IOException {
+        int[] nodeValues = new int[nodeNames.length];
+
+        return readState(nodeValues) ? nodeValues : null;
+    }
+
+    /**
+     * Reads the state of the next cycle in its packed form.
+     * <p>
+     * The value of the node at index {@code i} is bit {@code i % 64} of word {@code i / 64}.
+     * The returned array is updated in place by later reads.
+     * 
+     * @return the packed state, or null if the end of the trace has been reached
+     * @throws IOException if an error occurred when reading, or the trace is corrupted
+     */
+    public long[] nextPackedState() throws IOException {
+        return readStateWords() ? state : null;
+    }
+
+    /**
+     * Utility method to apply the toggle words of the next cycle to the current state.
+     * 
+     * @return true if a state was read, false if the end of the trace has been reached
+     * @throws IOException if an error occurred when reading, or the trace is corrupted
+     */
+    private boolean readStateWords() throws IOException {
+        if(in == null || !hasToggleWord())
+            return false;
+
+        for(int w = 0; w < state.length; w++) {
+            if(!hasToggleWord())
+                throw new IOException("The trace ended in the middle of a cycle");
+            state[w] ^= nextToggleWord();
+        }
+
+        cycleCount++;
+        return true;
+    }
+
+    /**
+     * Utility method to check whether another toggle word exists, reading the next token if needed.
+     * 
+     * @return true if there is another toggle word in the trace
+     * @throws IOException if an error occurred when reading, or the trace is corrupted
+     */
+    private boolean hasToggleWord() throws IOException {
+        while(zerosRemaining == 0 && !wordPending) {
+            if(repeatsRemaining > 0) {
+                repeatsRemaining--;
+                zerosRemaining = tokenRun;
+                wordPending = true;
+            } else if(ended)
+                return false;
+            else
+                readToken();
+        }
+
+        return true;
+    }
+
+    /**
+     * Utility method to get the next toggle word; {@linkplain #hasToggleWord()} needs to have
+     * returned true first.
+     * 
+     * @return the next toggle word
+     */
+    private long nextToggleWord() {
+        if(zerosRemaining > 0) {
+            zerosRemaining--;
+            return 0;
+        }
+
+        wordPending = false;
+        return tokenWord;
+    }
+
+    /**
+     * Utility method to read the next token of the trace.
+     * 
+     * @throws IOException if an error occurred when reading, or the trace is corrupted
+     */
+    private void readToken() throws IOException {
+        long run = readVarLong();
+        int tag = in.readUnsignedByte();
+
+        if(tag <= CSTraceWriter.SPARSE_LIMIT) {
+            long word = 0;
+            int position = 0;
+            for(int i = 0; i < tag; i++) {
+                position += in.readUnsignedByte();
+                if(position > 63)
+                    throw new IOException("Corrupted trace: bit position out of range");
+                word |= 1L << position;
+            }
+            setToken(run, word);
+        } else if(tag == CSTraceWriter.TAG_DENSE)
+            setToken(run, in.readLong());
+        else if(tag == CSTraceWriter.TAG_REPEAT)
+            repeatsRemaining = readVarLong();
+        else if(tag == CSTraceWriter.TAG_END) {
+            zerosRemaining = run;
+            ended = true;
+        } else
+            throw new IOException("Corrupted trace: unknown token " + tag);
+    }
+
+    /**
+     * Utility method to make the given run and word the current token.
+     * 
+     * @param run the number of zero toggle words before the word
+     * @param word the nonzero toggle word
+     */
+    private void setToken(long run, long word) {
+        tokenRun = run;
+        tokenWord = word;
+        zerosRemaining = run;
+        wordPending = true;
+    }
+
+    /**
+     * Utility method to read a long written 7 bits per byte, least significant group first.
+     * 
+     * @return the value read
+     * @throws IOException if an error occurred when reading, or the value is malformed
+     */
+    private long readVarLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+
+        do {
+            if(shift > 63)
+                throw new IOException("Corrupted trace: malformed length");
+            b = in.read();
+            if(b < 0)
+                throw new EOFException("The trace ended unexpectedly");
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+
+        return value;
+    }
+
+    /**
+     * Closes this reader and the underlying stream.
+     * 
+     * @throws IOException if an error occurred when closing the stream
+     */
+    public void close() throws IOException {
+        if(in != null) {
+            in.close();
+            in = null;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package simulator.circuit.project;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Class to write the recorded states of a circuit's tracked nodes as a compact binary trace.
+ * <p>
+ * Each recorded state corresponds to one array returned by {@code CSEngine.getNextCircuitState()},
+ * so the values are ordered by track number. Instead of storing every value, the state is packed
+ * into 64-bit words and only the toggles from the previous cycle (the exclusive-or of the two
+ * states) are encoded. The toggle words of all the cycles form one long stream that is encoded
+ * as a series of tokens:
+ * <ul>
+ *  <li>a run length of all-zero toggle words (nodes that did not change)</li>
+ *  <li>the next nonzero toggle word; either as the delta-encoded positions of its set bits,
+ *      or the raw word when too many bits are set</li>
+ *  <li>a repeat count, when the exact same run and word occur again, which is typical of
+ *      clocks and other periodic signals</li>
+ * </ul>
+ * The trace is finished by {@linkplain #close()}, which also closes the underlying stream.
+ * Traces are read back with {@linkplain CSTraceReader}.
+ * 
+ * @author Joel Tengco
+ */
+public class CSTraceWriter implements Closeable {
+    /**
+     * Identifies a file as a circuit simulator trace; "CSTR" in ASCII.
+     */
+    static final int MAGIC = 0x43535452;
+    /**
+     * Version of the trace format written by this class.
+     */
+    static final int VERSION = 1;
+    /**
+     * Largest number of set bits that a toggle word can have and still be stored by its bit positions.
+     * Token tags from zero to this number hold that many bit positions.
+     */
+    static final int SPARSE_LIMIT = 6;
+    /**
+     * Token tag for a toggle word stored as its raw 8 bytes.
+     */
+    static final int TAG_DENSE = 0x40;
+    /**
+     * Token tag for a repeat count of the previous token.
+     */
+    static final int TAG_REPEAT = 0x41;
+    /**
+     * Token tag that marks the end of the trace.
+     */
+    static final int TAG_END = 0x7F;
+    /**
+     * Size of the buffer placed in front of the output stream.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Stream that the trace is written to.
+     */
+    private DataOutputStream out;
+    /**
+     * Number of nodes recorded per cycle.
+     */
+    private final int nodeCount;
+    /**
+     * The last state written, packed 64 values per word.
+     */
+    private final long[] previousState;
+    /**
+     * Number of zero toggle words waiting to be written.
+     */
+    private long zeroRun;
+    /**
+     * Zero run length of the last token written.
+     */
+    private long lastRun;
+    /**
+     * Toggle word of the last token written; zero if no token has been written yet.
+     */
+    private long lastWord;
+    /**
+     * Number of times the last token repeated and is waiting to be written.
+     */
+    private long repeatCount;
+    /**
+     * Number of cycles written so far.
+     */
+    private long cycleCount;
+
+    /**
+     * Constructs a trace writer that records states of the nodes with the given names.
+     * <p>
+     * The header of the trace is written immediately.
+     * 
+     * @param outputStream the stream to write the trace to
+     * @param nodeNames the names of the recorded nodes, in the order of their values in each state
+     * @throws IOException if an error occurred when writing the header
+     */
+    public CSTraceWriter(OutputStream outputStream, String[] nodeNames) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+        nodeCount = nodeNames.length;
+        previousState = new long[(nodeCount + 63) >>> 6];
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(nodeCount);
+        for(String nodeName : nodeNames)
+            out.writeUTF(nodeName);
+    }
+
+    /**
+     * Writes the state of the recorded nodes for the next cycle.
+     * <p>
+     * Any nonzero integer in the given array is recorded as 1.
+     * 
+     * @param nodeValues the values of the recorded nodes, one for each node name given at construction
+     * @throws IOException if an error occurred when writing the state
+     * @throws IllegalArgumentException if the number of values does not match the number of nodes
+     */
+    public void writeState(int[] nodeValues) throws IOException, IllegalArgumentException {
+        long word;
+
+        if(nodeValues.length != nodeCount)
+            throw new IllegalArgumentException("Expected " + nodeCount + " values but received " + nodeValues.length);
+
+        for(int w = 0; w < previousState.length; w++) {
+            word = 0;
+            for(int bit = 0, i = w << 6; bit < 64 && i < nodeCount; bit++, i++)
+                if(nodeValues[i] != 0)
+                    word |= 1L << bit;
+
+            writeToggleWord(word ^ previousState[w]);
+            previousState[w] = word;
+        }
+
+        cycleCount++;
+    }
+
+    /**
+     * Gets the number of cycles written so far.
+     * 
+     * @return the number of states written to this trace
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Utility method to add one toggle word to the token stream.
+     * 
+     * @param toggles the toggle word to add
+     * @throws IOException if an error occurred when writing a token
+     */
+    private void writeToggleWord(long toggles) throws IOException {
+        if(toggles == 0) {
+            zeroRun++;
+            return;
+        }
+
+        // same run and word as the last token, only count it
+        if(toggles == lastWord && zeroRun == lastRun) {
+            repeatCount++;
+            zeroRun = 0;
+            return;
+        }
+
+        flushRepeats();
+        writeVarLong(zeroRun);
+        int bitCount = Long.bitCount(toggles);
+        if(bitCount <= SPARSE_LIMIT) {
+            // positions in increasing order, each stored as the distance from the previous one
+            out.writeByte(bitCount);
+            int previousPosition = 0;
+            long remaining = toggles;
+            while(remaining != 0) {
+                int position = Long.numberOfTrailingZeros(remaining);
+                out.writeByte(position - previousPosition);
+                previousPosition = position;
+                remaining &= remaining - 1;
+            }
+        } else {
+            out.writeByte(TAG_DENSE);
+            out.writeLong(toggles);
+        }
+
+        lastRun = zeroRun;
+        lastWord = toggles;
+        zeroRun = 0;
+    }
+
+    /**
+     * Utility method to write the pending repeat count of the last token, if any.
+     * 
+     * @throws IOException if an error occurred when writing the token
+     */
+    private void flushRepeats() throws IOException {
+        if(repeatCount == 0)
+            return;
+
+        // a repeat token carries no zero run of its own
+        writeVarLong(0);
+        out.writeByte(TAG_REPEAT);
+        writeVarLong(repeatCount);
+        repeatCount = 0;
+    }
+
+    /**
+     * Utility method to write a non-negative long using 7 bits per byte, least significant group first.
+     * 
+     * @param value the value to write
+     * @throws IOException if an error occurred when writing the value
+     */
+    private void writeVarLong(long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    /**
+     * Finishes the trace and closes the underlying stream.
+     * <p>
+     * Invoking this method more than once has no further effect.
+     * 
+     * @throws IOException if an error occurred when finishing the trace
+     */
+    public void close() throws IOException {
+        if(out == null)
+            return;
+
+        flushRepeats();
+        writeVarLong(zeroRun);
+        out.writeByte(TAG_END);
+        out.close();
+        out = null;
+    }
+
+    /**
+     * Closes the underlying stream without finishing the trace, for a recording that failed.
+     * <p>
+     * The trace is left without its end, so {@linkplain CSTraceReader} rejects it instead of
+     * reading it as a shorter run. Errors when closing the stream are ignored, since the trace
+     * is discarded anyway. Invoking this method after the trace was closed has no effect.
+     */
+    public void abort() {
+        if(out == null)
+            return;
+
+        try {
+            out.close();
+        } catch(IOException ioe) {
+            // nothing more can be done with a trace that is thrown away
+        }
+        out = null;
+    }
+}
@@ -0,0 +1,293 @@
+package simulator.circuit.project;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Class to hold a truth table in a compact, columnar form.
+ * <p>
+ * Each output variable has one column, a bitset holding its value for every row: the value
+ * for row {@code r} is bit {@code r % 64} of word {@code r / 64}. As in
+ * {@linkplain CSEngine#getTruthTableData()}, the bits of the row number are the values of the
+ * input variables, with the first input variable as the most significant bit.
+ * <p>
+ * A table with n input variables takes {@code 2^n} bits per output variable, so tables can be kept
+ * around, for example to compare two revisions of a circuit. Comparisons work on whole words:
+ * {@linkplain #equals(Object)}, {@linkplain #getHammingDistance(CSTruthTable)} and
+ * {@linkplain #getOnesCount(int)} look at 64 rows per operation.
+ * 
+ * @author Joel Tengco
+ */
+public class CSTruthTable {
+    /**
+     * Largest number of input variables a table can have.
+     */
+    public static final int MAX_INPUTS = 36;
+
+    /**
+     * Names of the input variables.
+     */
+    private final String[] inputNames;
+    /**
+     * Names of the output variables.
+     */
+    private final String[] outputNames;
+    /**
+     * The column of each output variable.
+     */
+    private final long[][] columns;
+    /**
+     * Number of rows in the table.
+     */
+    private final long rowCount;
+
+    /**
+     * Constructs a table with the given variables; the column of each output variable needs to be
+     * set with {@linkplain #setColumnWords(int, long[])}.
+     * 
+     * @param inputNames the names of the input variables, in the order of the columns
+     * @param outputNames the names of the output variables, in the order of the columns
+     * @throws IllegalArgumentException if there are more than {@linkplain #MAX_INPUTS} input variables
+     */
+    CSTruthTable(String[] inputNames, String[] outputNames) throws IllegalArgumentException {
+        if(inputNames.length > MAX_INPUTS)
+            throw new IllegalArgumentException("A truth table cannot have more than " + MAX_INPUTS + " input variables");
+
+        this.inputNames = inputNames.clone();
+        this.outputNames = outputNames.clone();
+        rowCount = 1L << inputNames.length;
+        columns = new long[outputNames.length][];
+    }
+
+    /**
+     * Gets the names of the input variables.
+     * 
+     * @return an array containing the input variable names, in the order of the columns
+     */
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    /**
+     * Gets the names of the output variables.
+     * 
+     * @return an array containing the output variable names, in the order of the columns
+     */
+    public String[] getOutputNames() {
+        return outputNames.clone();
+    }
+
+    /**
+     * Gets the number of input variables.
+     * 
+     * @return the number of input variables
+     */
+    public int getInputCount() {
+        return inputNames.length;
+    }
+
+    /**
+     * Gets the number of output variables.
+     * 
+     * @return the number of output variables
+     */
+    public int getOutputCount() {
+        return outputNames.length;
+    }
+
+    /**
+     * Gets the number of rows, which is 2 to the power of the number of input variables.
+     * 
+     * @return the number of rows
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Gets the value of an output variable in the given row.
+     * 
+     * @param row the row number
+     * @param output the index of the output variable
+     * @return either 1 or 0
+     * @throws IndexOutOfBoundsException if the row or the output variable does not exist
+     */
+    public int getValue(long row, int output) throws IndexOutOfBoundsException {
+        if(row < 0 || row >= rowCount)
+            throw new IndexOutOfBoundsException(row + " is an invalid row");
+
+        return (int)(columns[output][(int)(row >>> 6)] >>> row) & 1;
+    }
+
+    /**
+     * Gets the values of all the output variables in the given row.
+     * 
+     * @param row the row number
+     * @return the packed values; output variable {@code j} is bit {@code j % 64} of word {@code j / 64}
+     * @throws IndexOutOfBoundsException if the row does not exist
+     */
+    public long[] getRow(long row) throws IndexOutOfBoundsException {
+        long[] outputs = new long[(outputNames.length + 63) >>> 6];
+
+        if(row < 0 || row >= rowCount)
+            throw new IndexOutOfBoundsException(row + " is an invalid row");
+
+        for(int j = 0; j < outputNames.length; j++)
+            outputs[j >>> 6] |= ((columns[j][(int)(row >>> 6)] >>> row) & 1) << j;
+
+        return outputs;
+    }
+
+    /**
+     * Gets a copy of the column of an output variable.
+     * 
+     * @param output the index of the output variable
+     * @return the value of the output variable for each row; row {@code r} is bit {@code r % 64} of word {@code r / 64}
+     * @throws IndexOutOfBoundsException if the output variable does not exist
+     */
+    public long[] getColumn(int output) throws IndexOutOfBoundsException {
+        return columns[output].clone();
+    }
+
+    /**
+     * Sets the column of an output variable without copying it.
+     * <p>
+     * Columns are shared with the engine's cache of truth table columns, so the given column
+     * cannot be changed afterwards.
+     * 
+     * @param output the index of the output variable
+     * @param column the value of the output variable for each row
+     */
+    void setColumnWords(int output, long[] column) {
+        columns[output] = column;
+    }
+
+    /**
+     * Gets the number of rows in which an output variable is 1.
+     * 
+     * @param output the index of the output variable
+     * @return the number of ones in the column of the output variable
+     * @throws IndexOutOfBoundsException if the output variable does not exist
+     */
+    public long getOnesCount(int output) throws IndexOutOfBoundsException {
+        long count = 0;
+
+        for(long word : columns[output])
+            count += Long.bitCount(word);
+
+        return count;
+    }
+
+    /**
+     * Returns whether an output variable of this table has the same values as an output variable
+     * of another table.
+     * 
+     * @param output the index of the output variable in this table
+     * @param other the other table
+     * @param otherOutput the index of the output variable in the other table
+     * @return true if both tables have the same number of rows and the two columns are equal
+     * @throws IndexOutOfBoundsException if either output variable does not exist
+     */
+    public boolean columnEquals(int output, CSTruthTable other, int otherOutput) throws IndexOutOfBoundsException {
+        return rowCount == other.rowCount && Arrays.equals(columns[output], other.columns[otherOutput]);
+    }
+
+    /**
+     * Gets the number of rows in which an output variable of this table differs from an output
+     * variable of another table.
+     * 
+     * @param output the index of the output variable in this table
+     * @param other the other table
+     * @param otherOutput the index of the output variable in the other table
+     * @return the Hamming distance between the two columns
+     * @throws IllegalArgumentException if the tables have a different number of rows
+     * @throws IndexOutOfBoundsException if either output variable does not exist
+     */
+    public long getHammingDistance(int output, CSTruthTable other, int otherOutput) throws IllegalArgumentException, IndexOutOfBoundsException {
+        long[] column = columns[output];
+        long[] otherColumn = other.columns[otherOutput];
+        long distance = 0;
+
+        if(rowCount != other.rowCount)
+            throw new IllegalArgumentException("Truth tables with a different number of input variables cannot be compared");
+
+        for(int w = 0; w < column.length; w++)
+            distance += Long.bitCount(column[w] ^ otherColumn[w]);
+
+        return distance;
+    }
+
+    /**
+     * Gets the number of output values that differ between this table and another table.
+     * <p>
+     * The output variables are compared in the order of the columns.
+     * 
+     * @param other the other table
+     * @return the sum of the Hamming distances of all the columns
+     * @throws IllegalArgumentException if the tables have a different number of rows or output variables
+     */
+    public long getHammingDistance(CSTruthTable other) throws IllegalArgumentException {
+        long distance = 0;
+
+        if(outputNames.length != other.outputNames.length)
+            throw new IllegalArgumentException("Truth tables with a different number of output variables cannot be compared");
+
+        for(int j = 0; j < outputNames.length; j++)
+            distance += getHammingDistance(j, other, j);
+
+        return distance;
+    }
+
+    /**
+     * Gives the rows of this table to a sink, in increasing row order.
+     * 
+     * @param sink the receiver of the rows
+     * @throws IOException if the sink failed to handle the table
+     */
+    public void writeTo(CSTruthTableSink sink) throws IOException {
+        long[] outputs = new long[(outputNames.length + 63) >>> 6];
+        long word;
+
+        sink.startTable(getInputNames(), getOutputNames());
+        for(long row = 0; row < rowCount; row++) {
+            Arrays.fill(outputs, 0);
+            for(int j = 0; j < outputNames.length; j++) {
+                word = columns[j][(int)(row >>> 6)];
+                outputs[j >>> 6] |= ((word >>> row) & 1) << j;
+            }
+            sink.acceptRow(row, outputs);
+        }
+        sink.endTable();
+    }
+
+    /**
+     * Compares this table to the specified object.
+     * <p>
+     * Two tables are equal if they have the same input and output variable names and the same
+     * values in every row.
+     * 
+     * @param obj the object to compare to
+     * @return true if the object is an equal truth table
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj)
+            return true;
+        if(!(obj instanceof CSTruthTable))
+            return false;
+
+        CSTruthTable other = (CSTruthTable)obj;
+        return Arrays.equals(inputNames, other.inputNames) && Arrays.equals(outputNames, other.outputNames)
+            && Arrays.deepEquals(columns, other.columns);
+    }
+
+    /**
+     * Gets the hash code of this table.
+     * 
+     * @return a hash code computed from the variable names and the values
+     */
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(inputNames) + Arrays.hashCode(outputNames)) + Arrays.deepHashCode(columns);
+    }
+}
@@ -0,0 +1,46 @@
+package simulator.circuit.project;
+
+import java.io.IOException;
+
+/**
+ * Objects that implement this interface receive the rows of a truth table as they are computed.
+ * <p>
+ * The truth table is streamed one row at a time in increasing row order, so a sink that does not
+ * keep the rows uses the same small amount of memory for any number of input variables. Each row is
+ * given as primitive words instead of one object per cell.
+ * 
+ * @author Joel Tengco
+ * @see CSEngine#streamTruthTable(CSTruthTableSink)
+ */
+public interface CSTruthTableSink {
+    /**
+     * Starts a new truth table, before any of its rows are given.
+     * 
+     * @param inputNames the names of the input variables, in the order of the columns
+     * @param outputNames the names of the output variables, in the order of the columns
+     * @throws IOException if an error occurred when handling the start of the table
+     */
+    public void startTable(String[] inputNames, String[] outputNames) throws IOException;
+
+    /**
+     * Receives the next row of the truth table.
+     * <p>
+     * The values of the input variables are the bits of the row number: the first input variable is
+     * the most significant bit and the last input variable is bit 0. The value of output variable
+     * {@code j} is bit {@code j % 64} of word {@code j / 64} of the output words.
+     * <p>
+     * The array of output words is reused for the following rows, so it needs to be copied if it is kept.
+     * 
+     * @param row the row number, which also holds the values of the input variables
+     * @param outputs the packed values of the output variables
+     * @throws IOException if an error occurred when handling the row
+     */
+    public void acceptRow(long row, long[] outputs) throws IOException;
+
+    /**
+     * Ends the truth table, after all of its rows have been given.
+     * 
+     * @throws IOException if an error occurred when handling the end of the table
+     */
+    public void endTable() throws IOException;
+}
@@ -0,0 +1,125 @@
+package simulator.circuit.project;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class to export a truth table as a comma-separated values file.
+ * <p>
+ * The first line holds the names of the input variables followed by the names of the output
+ * variables, and every following line holds the values of one row. Rows are written as they are
+ * received, so a truth table of any size can be exported without keeping it in memory.
+ * 
+ * @author Joel Tengco
+ */
+public class CSTruthTableWriter implements CSTruthTableSink, Closeable {
+    /**
+     * Size of the buffer placed in front of the output stream.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Writer that the table is written to.
+     */
+    private Writer out;
+    /**
+     * Characters of the row being written, reused for every row.
+     */
+    private char[] line;
+    /**
+     * Number of input variables in the table.
+     */
+    private int inputCount;
+    /**
+     * Number of output variables in the table.
+     */
+    private int outputCount;
+    /**
+     * Number of rows written so far.
+     */
+    private long rowCount;
+
+    /**
+     * Constructs a truth table writer that writes to the given stream.
+     * 
+     * @param outputStream the stream to write the table to
+     */
+    public CSTruthTableWriter(OutputStream outputStream) {
+        out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the line of column names.
+     * 
+     * @param inputNames the names of the input variables
+     * @param outputNames the names of the output variables
+     * @throws IOException if an error occurred when writing
+     */
+    public void startTable(String[] inputNames, String[] outputNames) throws IOException {
+        inputCount = inputNames.length;
+        outputCount = outputNames.length;
+        line = new char[(inputCount + outputCount) * 2];
+        for(int i = 1; i < line.length; i += 2)
+            line[i] = ',';
+        line[line.length - 1] = '\n';
+        rowCount = 0;
+
+        for(int i = 0; i < inputCount; i++)
+            out.write((i > 0 ? "," : "") + inputNames[i]);
+        for(int j = 0; j < outputCount; j++)
+            out.write((inputCount + j > 0 ? "," : "") + outputNames[j]);
+        out.write('\n');
+    }
+
+    /**
+     * Writes the values of one row.
+     * 
+     * @param row the row number, which also holds the values of the input variables
+     * @param outputs the packed values of the output variables
+     * @throws IOException if an error occurred when writing
+     */
+    public void acceptRow(long row, long[] outputs) throws IOException {
+        for(int i = 0; i < inputCount; i++)
+            line[i * 2] = (char)('0' + ((row >>> (inputCount - 1 - i)) & 1));
+        for(int j = 0; j < outputCount; j++)
+            line[(inputCount + j) * 2] = (char)('0' + ((outputs[j >>> 6] >>> j) & 1));
+
+        out.write(line);
+        rowCount++;
+    }
+
+    /**
+     * Flushes the written rows.
+     * 
+     * @throws IOException if an error occurred when writing
+     */
+    public void endTable() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Gets the number of rows written so far.
+     * 
+     * @return the number of rows of the table written
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Closes this writer and the underlying stream.
+     * 
+     * @throws IOException if an error occurred when closing the stream
+     */
+    public void close() throws IOException {
+        if(out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
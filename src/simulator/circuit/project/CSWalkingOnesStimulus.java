@@ -0,0 +1,77 @@
+package simulator.circuit.project;
+
+/**
+ * Class to generate the input values of one input in a walking ones pattern.
+ * <p>
+ * In a walking ones pattern over a group of inputs, exactly one input is 1 in each cycle and the
+ * 1 moves to the next input every cycle, going back to the first input after the last one. Each
+ * input of the group is given its own generator with its own lane in the group.
+ * 
+ * @author Joel Tengco
+ */
+public class CSWalkingOnesStimulus extends CSStimulusGenerator {
+    /**
+     * Needed to implement Serializable, and thus needed for saving circuits as files.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Position of the input within its group, starting from 0.
+     */
+    private final int lane;
+    /**
+     * Number of inputs in the group.
+     */
+    private final int width;
+
+    /**
+     * Constructs a walking ones generator for the input in the given lane of a group.
+     * 
+     * @param lane the position of the input within its group, starting from 0
+     * @param width the number of inputs in the group
+     * @param length the number of values, or {@linkplain CSStimulusGenerator#UNBOUNDED}
+     * @throws IllegalArgumentException if the lane is not within the group or the length is negative
+     */
+    public CSWalkingOnesStimulus(int lane, int width, long length) throws IllegalArgumentException {
+        super(length);
+        if(width <= 0 || lane < 0 || lane >= width)
+            throw new IllegalArgumentException("The lane needs to be within a group of at least one input");
+
+        this.lane = lane;
+        this.width = width;
+    }
+
+    /**
+     * Computes the value for the given position.
+     * 
+     * @param position the index of the value
+     * @return 1 if the walking one is on this input at the position, otherwise 0
+     */
+    protected int valueAt(long position) {
+        return position % width == lane ? 1 : 0;
+    }
+
+    /**
+     * Computes the values for 64 consecutive positions, packed as the lanes of a word.
+     * 
+     * @param position the position of the value in the lowest lane
+     * @return the packed values
+     */
+    protected long wordAt(long position) {
+        long word = 0;
+        long first = (lane - position % width + width) % width;
+
+        for(long k = first; k < 64; k += width)
+            word |= 1L << k;
+
+        return word;
+    }
+
+    /**
+     * Gets a short description of this generator.
+     * 
+     * @return the description of this generator
+     */
+    public String getDescription() {
+        return "walking one, lane " + lane + " of " + width;
+    }
+}
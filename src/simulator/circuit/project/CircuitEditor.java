@@ -7,7 +7,7 @@ import java.util.Scanner;
  * Class to handle editing circuits in the program.
  * <p>
  * Through this class, the user is able to add nodes, removes nodes, rename nodes,
- * add connections, remove connections and set input sequences.
+ * add connections, remove connections, set input sequences and set input generators.
  * 
  * @author Joel Tengco
  */
@@ -82,6 +82,7 @@ public class CircuitEditor {
         options.add("Edit circuit nodes");
         options.add("Edit circuit connections");
         options.add("Edit input sequences");
+        options.add("Set input generators");
         options.add("Return");
 
         do {
@@ -115,7 +116,9 @@ public class CircuitEditor {
                             break;
                 case 3:     setInputSeq();
                             break;
-                case 4:     return;
+                case 4:     setInputGenerator();
+                            break;
+                case 5:     return;
             }
         } while(true);
 
@@ -124,7 +127,8 @@ public class CircuitEditor {
     /**
      * Section to edit the nodes of the circuit.
      * <p>
-     * At this point, the user can add nodes, remove nodes and rename nodes.
+     * At this point, the user can add nodes, remove nodes, rename nodes and set
+     * the propagation delays of gates and inverters.
      */
     private void editNodes() {
         int userInput;
@@ -136,6 +140,7 @@ public class CircuitEditor {
         options.add("Remove a node");
         options.add("Rename a node");
         options.add("Toggle print mode");
+        options.add("Set a propagation delay");
         options.add("Return");
 
         do {
@@ -176,7 +181,9 @@ public class CircuitEditor {
                                 break;
                     case 4:     togglePrintMode();
                                 break;
-                    case 5:     return;
+                    case 5:     setNodeDelay();
+                                break;
+                    case 6:     return;
                 }
             } catch(IllegalArgumentException iae) {
                 System.err.println("\n" + iae.getMessage());
@@ -301,6 +308,29 @@ public class CircuitEditor {
         }
     }
 
+    /**
+     * Section to set the propagation delay of a gate or inverter, used in timing simulation.
+     * 
+     * @throws IllegalArgumentException if the circuit is empty
+     */
+    private void setNodeDelay() throws IllegalArgumentException {
+        int userIntInput;
+        int delay;
+        int circuitSize = engine.getCircuitSize();
+        if(circuitSize == 0)
+            throw new IllegalArgumentException("There are no nodes for you to set a delay");
+
+        userIntInput = CSUserInterface.getUserIntInput("Enter the number of the gate or inverter: ", circuitSize, inputSource);
+        delay = CSUserInterface.getUserIntInput("Enter the propagation delay: ", CSTimingSimulator.MAX_DELAY, inputSource);
+
+        try {
+            engine.setNodeDelay(userIntInput - 1, delay);
+            System.out.println("\nSuccessfully set the propagation delay to: " + delay);
+        } catch(IllegalArgumentException iae) {
+            System.err.println("\n" + iae.getMessage());
+        }
+    }
+
     /**
      * Toggles the mode of printing the list of nodes in {@linkplain #editNodes()}.
      * <p>
@@ -528,4 +558,83 @@ public class CircuitEditor {
             System.out.println("\nThere are no input nodes to set a sequence to");
         }
     }
+
+    /**
+     * Section to set generators as the sources of input variables in the circuit.
+     * <p>
+     * A generator computes the values of its input variable for each clock tick, so very
+     * long tests do not need long input sequences to be typed in. The user picks the kind
+     * of generator and then provides its settings.
+     */
+    private void setInputGenerator() {
+        int userInput;
+        int inputNodeIndex;
+        int length;
+        int bit;
+        int width;
+        int[] pattern;
+        int[] repeatCounts;
+        CSStimulusGenerator generator;
+        String prompt = "Enter the number of the node to set a generator to: ";
+        String[] circuitInputSeqStatus = engine.getCircuitInputSeqStatus();
+        String[] inputNodeNames = engine.getInputNodeNames();
+        ArrayList<String> options = new ArrayList<String>();
+        options.add("Pseudo-random values from a seed");
+        options.add("Bit of a counter");
+        options.add("Bit of a Gray code counter");
+        options.add("Walking ones");
+        options.add("Repeated pattern");
+        options.add("Return");
+
+        if(circuitInputSeqStatus.length == 0) {
+            System.out.println("\nThere are no input nodes to set a generator to");
+            return;
+        }
+
+        do {
+            System.out.println("\nCS > Main Menu > Circuit Editor > Set Input Generator");
+
+            for(String status : circuitInputSeqStatus)
+                System.out.println(status);
+
+            System.out.println((circuitInputSeqStatus.length + 1) + ". Enter this number to return");
+            System.out.println();
+
+            userInput = CSUserInterface.getUserIntInput(prompt, circuitInputSeqStatus.length + 1, inputSource);
+            if(userInput == (circuitInputSeqStatus.length + 1))
+                return;
+            inputNodeIndex = userInput - 1;
+
+            CSUserInterface.displayOptions(options);
+            userInput = CSUserInterface.getUserOptInput(options, inputSource);
+            if(userInput == options.size())
+                continue;
+
+            length = CSUserInterface.getUserIntInput("Enter the number of clock ticks to generate: ", Integer.MAX_VALUE, inputSource);
+
+            switch(userInput) {
+                case 1:     generator = new CSRandomStimulus(CSUserInterface.getUserIntInput("Enter a seed: ", Integer.MAX_VALUE, inputSource), length);
+                            break;
+                case 2:     bit = CSUserInterface.getUserIntInput("Enter the bit of the counter, 1 being the least significant: ", 64, inputSource) - 1;
+                            generator = new CSCounterStimulus(bit, 0, length);
+                            break;
+                case 3:     bit = CSUserInterface.getUserIntInput("Enter the bit of the Gray code, 1 being the least significant: ", 64, inputSource) - 1;
+                            generator = new CSGrayCodeStimulus(bit, 0, length);
+                            break;
+                case 4:     width = CSUserInterface.getUserIntInput("Enter the number of inputs the one walks across: ", Integer.MAX_VALUE, inputSource);
+                            generator = new CSWalkingOnesStimulus(CSUserInterface.getUserIntInput("Enter the position of this input, starting from 1: ", width, inputSource) - 1, width, length);
+                            break;
+                default:    pattern = CSUserInterface.getUserInputSeq("Enter the pattern of 0's and 1's separated by spaces, anything other than a zero or one will be ignored: ", inputSource);
+                            repeatCounts = new int[pattern.length];
+                            for(int i = 0; i < pattern.length; i++)
+                                repeatCounts[i] = CSUserInterface.getUserIntInput("Enter the number of clock ticks to hold value " + (i + 1) + " of the pattern: ", Integer.MAX_VALUE, inputSource);
+                            generator = new CSPeriodicStimulus(pattern, repeatCounts, length);
+            }
+
+            engine.setStimulusSource(inputNodeNames[inputNodeIndex], generator);
+            System.out.println("\nSuccessfully set a new input generator");
+
+            circuitInputSeqStatus = engine.getCircuitInputSeqStatus();
+        } while(true);
+    }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package simulator.circuit.project;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Scanner;
@@ -72,20 +73,35 @@ public class CircuitSimulator {
      * Also, if any error occurs while attempting to load the circuit, then
      * error messages are printed out and a new circuit will be created and
      * worked on instead.
+     * <p>
+     * A file name with the extension of a netlist or of an AIGER file is instead taken as the
+     * path of that file, which is imported as a new circuit that has not been saved yet, and so
+     * is the path of an archive followed by "#" and the name of one of its entries.
      * 
-     * @param fileName the name of the file that contains the saved circuit
+     * @param fileName the name of the file that contains the saved circuit, the path of a netlist or AIGER file, or an archive entry
      */
     public CircuitSimulator(String fileName) {
-        CSGraph circuit;
-
+        circuitEdited = false;
         try {
-            circuit = CSFileIO.readSaveFile(fileName);
-            engine = new CSEngine(circuit);
-            circuitName = fileName;
-            circuitIsNew = false;
-            System.out.println("Successfully loaded circuit: " + fileName + ".");
+            engine = new CSEngine();
+            if(CSFileIO.isImportable(fileName)) {
+                engine.importCircuit(fileName);
+                circuitName = CSFileIO.getImportedName(fileName);
+                circuitIsNew = true;
+                circuitEdited = true;
+                System.out.println("Successfully imported circuit: " + circuitName + ".");
+            } else {
+                engine.loadCircuit(fileName);
+                circuitName = fileName;
+                circuitIsNew = false;
+                System.out.println("Successfully loaded circuit: " + fileName + ".");
+                printRecoveredEdits();
+            }
         } catch(FileNotFoundException fnfe) {
-            System.err.println("Error: could not find saved circuit named " + fileName + ".");
+            if(CSFileIO.isImportable(fileName))
+                System.err.println("Error: could not find the file " + fileName + ".");
+            else
+                System.err.println("Error: could not find saved circuit named " + fileName + ".");
             System.err.println("Creating a new circuit . . .");
             engine = new CSEngine();
             circuitName = "new-circuit";
@@ -106,7 +122,6 @@ public class CircuitSimulator {
 
         System.out.println();
 
-        circuitEdited = false;
         inputSource = new Scanner(System.in);
         editor = new CircuitEditor(engine, inputSource);
         tester = new CircuitTester(engine, inputSource);
@@ -143,7 +158,7 @@ public class CircuitSimulator {
         System.out.println("\\\\\\\\\\\\\\\\-----------------------------");
         
         do {
-            files = CSFileIO.getSaveDir().listFiles();
+            files = CSFileIO.getSaveFiles();
             if(files != null) {
                 System.out.printf("\n%-20s %s\n", "Saved Circuits", "Last Modified");
                 System.out.println("-------------------- ------------------------------");
@@ -235,10 +250,12 @@ public class CircuitSimulator {
      * Prompts the user for a file name and if it does not already
      * exist in the saves folder, then it is properly saved. Otherwise
      * the user is asked to confirm they want to overwrite the old file
-     * or cancel.
+     * or cancel. A file name with the extension of an AIGER file exports
+     * the circuit to that path instead, and the path of an archive followed
+     * by "#" and a name adds the circuit to the archive under that name.
      */
     private void saveCircuitAs() {
-        File[] files = CSFileIO.getSaveDir().listFiles();
+        File[] files = CSFileIO.getSaveFiles();
         String fileName;
         int userInput;
         boolean overwriting = false;
@@ -247,6 +264,11 @@ public class CircuitSimulator {
 
         fileName = CSUserInterface.getUserStringInput("Save as: ", inputSource);
 
+        if(CSFileIO.isExportable(fileName)) {
+            exportCircuit(fileName);
+            return;
+        }
+
         if(files != null)
             for(int i = 0; i < files.length; i++) 
                 if(files[i].getName().equals(fileName)) {
@@ -283,6 +305,43 @@ public class CircuitSimulator {
         }
     }
 
+    /**
+     * Exports the circuit as an AIGER file with the given path, or adds it
+     * to an archive.
+     * <p>
+     * If the file or archive entry already exists, the user is asked to
+     * confirm they want to overwrite it or cancel. Exporting does not save
+     * the circuit, so the circuit keeps its name and whether it has unsaved
+     * edits.
+     * 
+     * @param fileName the path of the AIGER file, or the path of the archive followed by "#" and the name of the entry
+     */
+    private void exportCircuit(String fileName) {
+        int userInput;
+        boolean exists;
+
+        try {
+            exists = CSFileIO.isExported(fileName);
+        } catch(IOException ioe) {
+            System.err.println("\nError: " + ioe.getMessage());
+            return;
+        }
+
+        if(exists) {
+            System.out.println(fileName + " already exists. Would you like to overwrite it?");
+            userInput = CSUserInterface.getUserIntInput("Enter 1 to overwrite, or 2 to cancel: ", 2, inputSource);
+            if(userInput != 1)
+                return;
+        }
+
+        try {
+            engine.exportCircuit(fileName);
+            System.out.println("\nSuccessfully exported the circuit");
+        } catch(Exception e) {
+            System.err.println("\nError: " + e.getMessage());
+        }
+    }
+
     /**
      * Loads a circuit from a save file.
      * <p>
@@ -290,11 +349,20 @@ public class CircuitSimulator {
      * and the user can choose to load a circuit or cancel. A warning
      * is also given mentioning that any unsaved changes to the current
      * circuit will be lost.
+     * <p>
+     * Every circuit is listed with its description from the index of the
+     * save folder, so listing does not read the save files, and the list
+     * can be narrowed down to the names containing some text.
      */
     private void loadCircuit() {
         int userInput;
         String fileName;
-        File[] files = CSFileIO.getSaveDir().listFiles();
+        File[] files = CSFileIO.getSaveFiles();
+        CSSaveCatalog catalog;
+        CSSaveInfo info;
+        ArrayList<String> names;
+        ArrayList<String> options = new ArrayList<String>();
+        int nameWidth;
 
         if(files == null) {
             System.err.println("\nNo saves are available to load from.");
@@ -306,26 +374,47 @@ public class CircuitSimulator {
         System.out.println("Warning: any unsaved changes will be lost.\n" +
                             "If you want to save any changes, go back and save first.");
 
-        ArrayList<String> options = new ArrayList<String>();
-        for(File file : files)
-            options.add(file.getName());
+        catalog = CSFileIO.getCatalog();
+        names = catalog.getNames();
+        while(true) {
+            nameWidth = 1;
+            for(String name : names)
+                nameWidth = Math.max(nameWidth, name.length());
+
+            options.clear();
+            for(String name : names) {
+                info = catalog.getInfo(name);
+                options.add(String.format("%-" + nameWidth + "s  %s", name,
+                        info == null ? "(could not be read)" : info.getSummary()));
+            }
 
-        options.add("Return to Main Menu");
+            options.add("Filter by name");
+            options.add("Return to Main Menu");
 
-        System.out.println("Choose a file to load from:");
-        CSUserInterface.displayOptions(options);
-        userInput = CSUserInterface.getUserOptInput(options, inputSource);
+            System.out.println("Choose a file to load from:");
+            CSUserInterface.displayOptions(options);
+            userInput = CSUserInterface.getUserOptInput(options, inputSource);
 
-        if(userInput == options.size()) // last option is to return/cancel
-            return;
+            if(userInput == options.size()) // last option is to return/cancel
+                return;
+            if(userInput != options.size() - 1)
+                break;
+
+            names = catalog.findNames(CSUserInterface.getUserStringInput("Show saves whose names contain: ", inputSource));
+            if(names.isEmpty()) {
+                System.out.println("No save names contain that; showing all saves.");
+                names = catalog.getNames();
+            }
+        }
 
-        fileName = options.get(userInput - 1);
+        fileName = names.get(userInput - 1);
         try {
             engine.loadCircuit(fileName);
             circuitName = fileName;
             circuitIsNew = false;
             circuitEdited = false;
             System.out.println("\nSuccessfully loaded file " + fileName);
+            printRecoveredEdits();
         } catch(ClassCastException cce) {
             System.err.println("\nCannot read from the file " + fileName);
         } catch(Exception e) {
@@ -377,23 +466,47 @@ public class CircuitSimulator {
                 saveCircuit();
         }
 
+        // edits that were not saved are dropped so they are not recovered on the next load
+        engine.closeJournal();
         inputSource.close();
     }
 
+    /**
+     * Tells the user if edits that were not saved were recovered from the journal of the
+     * circuit just loaded.
+     * <p>
+     * This happens when the program stopped without saving or discarding them. The circuit
+     * is then considered edited, so the user is asked to save it.
+     */
+    private void printRecoveredEdits() {
+        if(engine.getRecoveredEditCount() > 0) {
+            System.out.println("Recovered " + engine.getRecoveredEditCount() + " unsaved edit(s) from the last session.");
+            circuitEdited = true;
+        }
+    }
+
     /**
      * Main method for the program.
      * <p>
      * If arguments exist, then the program is started with the first
      * argument being the name of the file to load from. Otherwise, a new
-     * circuit is created for the program to work on.
+     * circuit is created for the program to work on. The file name may be
+     * preceded by "--compress" to have save files and traces compressed.
      * 
-     * @param args first argument being the name of the file to load a circuit from
+     * @param args optionally "--compress", then the name of the file to load a circuit from, or
+     * the path of a netlist or AIGER file or an archive entry to import
      */
     public static void main(String[] args) {
         CircuitSimulator program;
+        int first = 0;
+
+        if(args.length > 0 && args[0].equals("--compress")) {
+            CSFileIO.setCompression(true);
+            first = 1;
+        }
 
-        if(args.length > 0)
-            program = new CircuitSimulator(args[0]);
+        if(args.length > first)
+            program = new CircuitSimulator(args[first]);
         else
             program = new CircuitSimulator();
 
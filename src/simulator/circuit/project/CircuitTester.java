@@ -1,6 +1,8 @@
 package simulator.circuit.project;
 
+import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Scanner;
 
@@ -73,6 +75,13 @@ public class CircuitTester {
         options.add("Edit tracked nodes");
         options.add("Test circuit");
         options.add(printTableOpt);
+        options.add("Record test trace");
+        options.add("Export truth table");
+        options.add("Check equivalence");
+        options.add("Report fault coverage");
+        options.add("Generate test sequences");
+        options.add("Run timing simulation");
+        options.add("Report critical path");
         options.add("Return");
 
         do {
@@ -91,7 +100,21 @@ public class CircuitTester {
                             else
                                 printTruthTable();
                             break;
-                case 4:     return;
+                case 4:     recordTrace();
+                            break;
+                case 5:     exportTruthTable();
+                            break;
+                case 6:     checkEquivalence();
+                            break;
+                case 7:     printFaultCoverage();
+                            break;
+                case 8:     generateTestSeqs();
+                            break;
+                case 9:     runTimingSimulation();
+                            break;
+                case 10:    printCriticalPath();
+                            break;
+                case 11:    return;
             }
         } while(true);
     }
@@ -292,6 +315,46 @@ public class CircuitTester {
         inputSource.nextLine();
     }
 
+    /**
+     * Records the test of the circuit as a binary trace file.
+     * <p>
+     * The same conditions as printing the test results apply; there need to be input
+     * sequences, tracked nodes and the circuit needs to be in a valid state. The user is
+     * prompted for the file name of the trace, which is saved in the trace folder.
+     */
+    private void recordTrace() {
+        String fileName;
+        long cycles;
+        int testCycles = engine.getLongestInputSeqLength();
+
+        if(testCycles == 0) {
+            System.err.println("\nThere are no input sequences to test this circuit with");
+            return;
+        }
+
+        if(engine.getLongestTrackedNameLength() == 0) {
+            System.err.println("\nTrack a node in order to record its values in the trace");
+            return;
+        }
+
+        if(!engine.isCircuitValid()) {
+            System.err.println("\nThe current state of this circuit is invalid");
+            return;
+        }
+
+        System.out.println("\nCS > Main Menu > Circuit Tester > Record Test Trace");
+        fileName = CSUserInterface.getUserStringInput("Save trace as: ", inputSource);
+
+        try {
+            cycles = engine.recordTrace(fileName, testCycles);
+            System.out.println("\nSuccessfully recorded " + cycles + " cycles to " + fileName);
+        } catch(IllegalCircuitStateException icse) {
+            System.err.println("\nCircuit has reached an invalid state");
+        } catch(Exception e) {
+            System.err.println("\nUnknown error: " + e.getMessage());
+        }
+    }
+
     /**
      * Prints the transition table of the circuit.
      * <p>
@@ -428,16 +491,17 @@ public class CircuitTester {
      * Prints the truth table of the circuit.
      * <p>
      * Assuming the circuit is combinational, the truth table is then
-     * printed and the user is prompted to hit ENTER to return.
+     * printed and the user is prompted to hit ENTER to return. The engine
+     * keeps the columns of the table, so printing it again after an edit
+     * only computes the columns of the outputs the edit affected. Tables
+     * too large to keep are printed as their rows are computed.
      */
     private void printTruthTable() {
-        ArrayList<ArrayList<Integer>> truthTableData;
-        String[] inputNodeNames;
-        String[] outputNodeNames;
-        int fieldWidth = 0;
-
         try {
-            truthTableData = engine.getTruthTableData();
+            if(engine.getInputNodeNames().length <= CSTruthTable.MAX_INPUTS)
+                engine.getTruthTable().writeTo(new TruthTablePrinter());
+            else
+                engine.streamTruthTable(new TruthTablePrinter());
         } catch(IllegalStateException ise) {
             System.err.println("\n" + ise.getMessage());
             return;
@@ -449,53 +513,313 @@ public class CircuitTester {
             return;
         }
 
-        inputNodeNames = engine.getInputNodeNames();
-        outputNodeNames = engine.getOutputNodeNames();
-        // fieldWidth = longest name in the two arrays above + 1
-        for(String name : inputNodeNames)
-            if(name.length() > fieldWidth)
-                fieldWidth = name.length();
-        for(String name : outputNodeNames)
-            if(name.length() > fieldWidth)
-                fieldWidth = name.length();
-        fieldWidth = fieldWidth + 1;
+        System.out.println("\nPress [ENTER] to return");
+        inputSource.nextLine();
+    }
 
-        // print name of circuit
-        System.out.println("Truth table for circuit: " + circuitName);
+    /**
+     * Exports the truth table of the circuit as a comma-separated values file.
+     * <p>
+     * The user is prompted for the file name, which is saved in the table folder.
+     * Rows are written as they are computed, so tables of any size can be exported.
+     */
+    private void exportTruthTable() {
+        String fileName;
+        CSTruthTableWriter writer = null;
+
+        if(engine.isCircuitSequential()) {
+            System.err.println("\nThis circuit is a sequential circuit, it does not have a truth table");
+            return;
+        }
+
+        System.out.println("\nCS > Main Menu > Circuit Tester > Export Truth Table");
+        fileName = CSUserInterface.getUserStringInput("Export truth table as: ", inputSource);
+
+        try {
+            writer = new CSTruthTableWriter(CSFileIO.openTableOutput(fileName));
+            engine.streamTruthTable(writer);
+            System.out.println("\nSuccessfully exported " + writer.getRowCount() + " rows to " + fileName);
+        } catch(IllegalStateException ise) {
+            System.err.println("\n" + ise.getMessage());
+        } catch(IllegalCircuitStateException icse) {
+            System.err.println("\n" + icse.getMessage());
+        } catch(Exception e) {
+            System.err.println("\nUnknown error: " + e.getMessage());
+        } finally {
+            try {
+                if(writer != null)
+                    writer.close();
+            } catch(Exception e) {
+                System.err.println("\nUnknown error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks whether the circuit computes the same functions as a saved circuit.
+     * <p>
+     * If the circuits differ, the input values of a counterexample are printed together with
+     * the output values of both circuits.
+     */
+    private void checkEquivalence() {
+        String fileName;
+        CSEquivalenceChecker checker;
+        String[] names;
+        int[] values;
+        int[] otherValues;
+
+        if(engine.isCircuitSequential()) {
+            System.err.println("\nThis circuit is a sequential circuit, it cannot be checked for equivalence");
+            return;
+        }
+
+        System.out.println("\nCS > Main Menu > Circuit Tester > Check Equivalence");
+        fileName = CSUserInterface.getUserStringInput("Compare with saved circuit: ", inputSource);
+
+        try {
+            checker = engine.checkEquivalence(fileName);
+        } catch(FileNotFoundException fnfe) {
+            System.err.println("\nCould not find saved circuit named " + fileName);
+            return;
+        } catch(IllegalArgumentException iae) {
+            System.err.println("\n" + iae.getMessage());
+            return;
+        } catch(IllegalCircuitStateException icse) {
+            System.err.println("\n" + icse.getMessage());
+            return;
+        } catch(Exception e) {
+            System.err.println("\nCannot read from the file " + fileName);
+            return;
+        }
+
+        if(checker.isEquivalent()) {
+            System.out.println("\n" + circuitName + " and " + fileName + " are equivalent");
+            return;
+        }
+
+        System.out.println("\n" + circuitName + " and " + fileName + " differ for these input values:");
+        names = checker.getInputNames();
+        values = checker.getCounterexample();
+        for(int j = 0; j < names.length; j++)
+            System.out.println(names[j] + " = " + values[j]);
+
+        System.out.println("\nOutput values (" + circuitName + " / " + fileName + "):");
+        names = checker.getOutputNames();
+        values = checker.getCounterexampleOutputs(0);
+        otherValues = checker.getCounterexampleOutputs(1);
+        for(int j = 0; j < names.length; j++)
+            System.out.println(names[j] + " = " + values[j] + " / " + otherValues[j]
+                + (values[j] != otherValues[j] ? "  <--" : ""));
+    }
+
+    /**
+     * Prints the stuck-at fault coverage of the input sequences, followed by the faults
+     * that they do not detect.
+     */
+    private void printFaultCoverage() {
+        CSFaultSimulator simulator;
+
+        System.out.println("\nCS > Main Menu > Circuit Tester > Fault Coverage");
+
+        try {
+            simulator = engine.simulateFaults();
+        } catch(IllegalStateException ise) {
+            System.err.println("\n" + ise.getMessage());
+            return;
+        } catch(IllegalCircuitStateException icse) {
+            System.err.println("\n" + icse.getMessage());
+            return;
+        }
+
+        System.out.println("\n" + simulator.getDetectedCount() + " of " + simulator.getFaultCount() + " faults detected by "
+            + simulator.getPatternCount() + " patterns (" + String.format("%.2f", 100 * simulator.getCoverage()) + "% coverage)");
+
+        if(simulator.getDetectedCount() == simulator.getFaultCount())
+            return;
+
+        System.out.println("\nUndetected faults:");
+        for(int f = 0; f < simulator.getFaultCount(); f++)
+            if(!simulator.isDetected(f))
+                System.out.println(simulator.getFaultName(f));
+    }
+
+    /**
+     * Replaces the input sequences with generated ones that detect the stuck-at faults, and
+     * prints the fault coverage they reach.
+     */
+    private void generateTestSeqs() {
+        CSTestGenerator generator;
+
+        System.out.println("\nCS > Main Menu > Circuit Tester > Generate Test Sequences");
+
+        try {
+            generator = engine.generateTestSeqs();
+        } catch(IllegalStateException ise) {
+            System.err.println("\n" + ise.getMessage());
+            return;
+        } catch(IllegalCircuitStateException icse) {
+            System.err.println("\n" + icse.getMessage());
+            return;
+        }
+
+        System.out.println("\nInput sequences set to " + generator.getPatternCount() + " generated patterns");
+        System.out.println(generator.getDetectedCount() + " of " + generator.getFaultCount() + " faults detected ("
+            + String.format("%.2f", 100 * generator.getCoverage()) + "% coverage)");
+        System.out.println(generator.getRedundantCount() + " faults are redundant, "
+            + generator.getAbortedCount() + " faults were given up on");
+    }
+
+    /**
+     * Simulates the input sequences with the propagation delays of the gates and inverters, and
+     * prints the settling time, events and hazards of each clock cycle.
+     */
+    private void runTimingSimulation() {
+        CSTimingSimulator simulator;
+        int cycleCount = engine.getLongestInputSeqLength();
+        String[] hazards;
+
+        System.out.println("\nCS > Main Menu > Circuit Tester > Timing Simulation");
+
+        if(cycleCount == 0) {
+            System.err.println("\nNo input sequences to simulate");
+            return;
+        }
+
+        try {
+            simulator = engine.getTimingSimulator();
+        } catch(IllegalCircuitStateException icse) {
+            System.err.println("\n" + icse.getMessage());
+            return;
+        }
 
-        // print input and output nodes
-        System.out.println();
-        for(String name : inputNodeNames)
-            System.out.printf("%" + fieldWidth + "s", name);
-        System.out.print(" | ");
-        for(String name : outputNodeNames)
-            System.out.printf("%" + fieldWidth + "s", name);
         System.out.println();
+        for(int cycle = 1; cycle <= cycleCount; cycle++) {
+            simulator.simulateCycle();
+            hazards = simulator.getHazards();
+            System.out.print("Cycle " + cycle + ": settled after " + simulator.getSettlingTime()
+                + ", " + simulator.getEventCount() + " events");
+            if(simulator.getLastSettledName() != null)
+                System.out.print(", last change at " + simulator.getLastSettledName());
+            if(hazards.length > 0)
+                System.out.print(", hazards: " + String.join(", ", hazards));
+            System.out.println();
+        }
 
-        // print dashes to separate headers from data
-        int dashesNeeded1 = fieldWidth * inputNodeNames.length;     // stores length of input variables section (left section) of table
-        int dashesNeeded2 = fieldWidth * outputNodeNames.length;    // stores length of output variables section (right section) of table
-        for(int i = 0; i < dashesNeeded1; i++)
-            System.out.print("-");
-        System.out.print("-+-");
-        for(int i = 0; i < dashesNeeded2; i++)
-            System.out.print("-");
-        System.out.println("-");
+        System.out.println("\nLongest settling time: " + simulator.getLongestSettlingTime()
+            + " (" + simulator.getTotalEventCount() + " events in total)");
+        engine.resetCircuit();
+    }
 
-        // print the table
-        for(int i = 0; i < truthTableData.size(); i++) {
-            for(int j = 0; j < inputNodeNames.length; j++)
-                System.out.printf("%" + fieldWidth + "d", truthTableData.get(i).get(j).intValue());
+    /**
+     * Prints the critical path of the circuit, with the arrival time of each of its nodes.
+     */
+    private void printCriticalPath() {
+        CSTimingAnalyzer analyzer;
+        String[] nodeNames = engine.getCircuitNodeNames();
+        int[] path;
 
-            System.out.print(" | ");
+        System.out.println("\nCS > Main Menu > Circuit Tester > Critical Path");
+
+        try {
+            analyzer = engine.getTimingAnalyzer();
+        } catch(IllegalCircuitStateException icse) {
+            System.err.println("\n" + icse.getMessage());
+            return;
+        }
+
+        path = analyzer.getCriticalPath();
+        if(path.length == 0) {
+            System.err.println("\nThere are no output variables or flip flops for a path to reach");
+            return;
+        }
 
-            for(int j = inputNodeNames.length; j < truthTableData.get(0).size(); j++)
-                System.out.printf("%" + fieldWidth + "d", truthTableData.get(i).get(j).intValue());
+        System.out.println("\nCritical path length: " + analyzer.getCriticalPathLength() + "\n");
+        System.out.printf("%7s | %s\n", "ARRIVAL", "NODE");
+        System.out.println("--------+----------------------");
+        for(int index : path)
+            System.out.printf("%7d | %s\n", analyzer.getArrivalTime(index), nodeNames[index]);
+        System.out.println("-------------------------------");
+    }
 
+    /**
+     * Truth table sink that prints each row as it is received.
+     * 
+     * @author Joel Tengco
+     */
+    private class TruthTablePrinter implements CSTruthTableSink {
+        /**
+         * Width of each column of the table.
+         */
+        private int fieldWidth;
+        /**
+         * Number of input variables in the table.
+         */
+        private int inputCount;
+        /**
+         * Number of output variables in the table.
+         */
+        private int outputCount;
+        /**
+         * Characters of the row being printed, reused for every row.
+         */
+        private char[] line;
+
+        public void startTable(String[] inputNodeNames, String[] outputNodeNames) {
+            inputCount = inputNodeNames.length;
+            outputCount = outputNodeNames.length;
+
+            // fieldWidth = longest name in the two arrays above + 1
+            fieldWidth = 0;
+            for(String name : inputNodeNames)
+                if(name.length() > fieldWidth)
+                    fieldWidth = name.length();
+            for(String name : outputNodeNames)
+                if(name.length() > fieldWidth)
+                    fieldWidth = name.length();
+            fieldWidth = fieldWidth + 1;
+
+            // print name of circuit
+            System.out.println("Truth table for circuit: " + circuitName);
+
+            // print input and output nodes
             System.out.println();
+            for(String name : inputNodeNames)
+                System.out.printf("%" + fieldWidth + "s", name);
+            System.out.print(" | ");
+            for(String name : outputNodeNames)
+                System.out.printf("%" + fieldWidth + "s", name);
+            System.out.println();
+
+            // print dashes to separate headers from data
+            int dashesNeeded1 = fieldWidth * inputNodeNames.length;     // stores length of input variables section (left section) of table
+            int dashesNeeded2 = fieldWidth * outputNodeNames.length;    // stores length of output variables section (right section) of table
+            for(int i = 0; i < dashesNeeded1; i++)
+                System.out.print("-");
+            System.out.print("-+-");
+            for(int i = 0; i < dashesNeeded2; i++)
+                System.out.print("-");
+            System.out.println("-");
+
+            // each value is right aligned in its field; the values are filled in for every row
+            line = new char[fieldWidth * (inputCount + outputCount) + 3];
+            Arrays.fill(line, ' ');
+            line[fieldWidth * inputCount + 1] = '|';
         }
 
-        System.out.println("\nPress [ENTER] to return");
-        inputSource.nextLine();
+        public void acceptRow(long row, long[] outputs) {
+            int position = fieldWidth - 1;
+
+            for(int j = 0; j < inputCount; j++, position += fieldWidth)
+                line[position] = (char)('0' + ((row >>> (inputCount - 1 - j)) & 1));
+            position += 3;
+            for(int j = 0; j < outputCount; j++, position += fieldWidth)
+                line[position] = (char)('0' + ((outputs[j >>> 6] >>> j) & 1));
+
+            System.out.println(line);
+        }
+
+        public void endTable() {
+            System.out.flush();
+        }
     }
 }
\ No newline at end of file
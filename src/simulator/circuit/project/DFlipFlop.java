@@ -34,6 +34,15 @@ public class DFlipFlop extends FlipFlop implements VariableInput {
         super(name, "DFF");
     }
 
+    /**
+     * Gets a reference to the node that determines this D flip-flop's next state.
+     * 
+     * @return the input node of this D flip-flop, or null if it does not exist
+     */
+    public CSNode getInputNode() {
+        return inputNode;
+    }
+
     /**
      * Adds an input node for this D flip-flop's value to depend on.
      * <p>
@@ -32,6 +32,24 @@ public class FFOutNode extends CSNode {
         this.inputNode = inputNode;
     }
 
+    /**
+     * Gets a reference to the flip-flop that this output node corresponds to.
+     * 
+     * @return the flip-flop whose value this output node provides
+     */
+    public FlipFlop getInputNode() {
+        return inputNode;
+    }
+
+    /**
+     * Returns whether or not this output node is the negated output of its flip-flop.
+     * 
+     * @return true if this output node provides the complement of the flip-flop's value
+     */
+    public boolean isNegated() {
+        return inputNode.outNodeNegated == this;
+    }
+
     /**
      * Update this output node's value.
      * <p>
@@ -29,6 +29,7 @@ public abstract class Gate extends CSNode implements VariableInput {
     public Gate(String name, String type) {
         super(name, type);
         inputNodes = new ArrayList<CSNode>();
+        delay = 1;
     }
 
     /**
@@ -1,5 +1,11 @@
 package simulator.circuit.project;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
 import java.util.Arrays;
 
 /**
@@ -8,6 +14,9 @@ import java.util.Arrays;
  * These type of nodes are the entry points in a circuit, where they
  * do not have other nodes in the circuit to determine its value.
  * Instead, they depend on values set by the user.
+ * <p>
+ * The values come either from an input sequence held in memory, or from a
+ * {@linkplain CSStimulusSource} that provides the value for each cycle on demand.
  * 
  * @author Joel Tengco
  */
@@ -17,13 +26,38 @@ public class InputVariableNode extends CSNode {
     */
     private static final long serialVersionUID = 1L;
     /**
-     * Array of integers to represent this input variable node's input sequence.
+     * Fields written to save files.
+     * <p>
+     * These are listed explicitly so that save files written before stimulus sources
+     * and packed sequences existed can still be read; the unpacked "inputSeq" field
+     * is only read from such files and is never written.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("inputSeq", int[].class),
+        new ObjectStreamField("seqWords", long[].class),
+        new ObjectStreamField("seqLength", int.class),
+        new ObjectStreamField("currentIndex", int.class),
+        new ObjectStreamField("stimulusSource", CSStimulusSource.class)
+    };
+    /**
+     * This input variable node's input sequence, packed 64 values per word; bit
+     * {@code i % 64} of word {@code i / 64} holds the i-th value. Null if there is
+     * no input sequence.
+     */
+    private long[] seqWords;
+    /**
+     * Number of values in the input sequence.
      */
-    private int[] inputSeq;
+    private int seqLength;
     /**
-     * Contains the current index within the input sequence array.
+     * Source of the values of this node in place of the input sequence; null if the
+     * input sequence is used.
      */
-    private int currentIndex;
+    private CSStimulusSource stimulusSource;
+    /**
+     * Contains the current index within the input sequence or stimulus source.
+     */
+    private long currentIndex;
 
     /**
      * Constructs a new input variable node with the specified name.
@@ -47,7 +81,7 @@ public class InputVariableNode extends CSNode {
      */
     public InputVariableNode(String name, int[] inputSeq) {
         super(name, "INPUT");
-        this.inputSeq = inputSeq;
+        packInputSeq(inputSeq);
         currentIndex = 0;
     }
 
@@ -56,37 +90,183 @@ public class InputVariableNode extends CSNode {
      * <p>
      * Note that any nonzero integer in the given array will result in updating
      * this input variable node's value to 1, and a zero will simply update the
-     * value to 0.
+     * value to 0. Any stimulus source of this node is replaced.
      * 
      * @param inputSeq the new input sequence for this input variable node
      */
     public void setInputSeq(int[] inputSeq) {
-        this.inputSeq = inputSeq;
+        packInputSeq(inputSeq);
+        stimulusSource = null;
+        currentIndex = 0;
+    }
+
+    /**
+     * Sets a new input sequence for this input variable node from packed words.
+     * <p>
+     * Bit {@code i % 64} of word {@code i / 64} is the i-th value of the sequence. The
+     * words are copied, and any bits past the given length are ignored. Any stimulus
+     * source of this node is replaced.
+     * 
+     * @param words the packed values of the new input sequence, or null to remove the sequence
+     * @param length the number of values in the new input sequence
+     * @throws IllegalArgumentException if the length is negative or there are too few words for it
+     */
+    public void setInputSeq(long[] words, int length) throws IllegalArgumentException {
+        if(words == null) {
+            setInputSeq(null);
+            return;
+        }
+        if(length < 0 || words.length < ((length + 63L) >>> 6))
+            throw new IllegalArgumentException("Invalid packed input sequence length " + length);
+
+        seqWords = Arrays.copyOf(words, (length + 63) >>> 6);
+        if((length & 63) != 0)
+            seqWords[seqWords.length - 1] &= (1L << length) - 1;
+        seqLength = length;
+        stimulusSource = null;
+        currentIndex = 0;
+    }
+
+    /**
+     * Gets a copy of this input variable node's input sequence in its packed form.
+     * <p>
+     * Bit {@code i % 64} of word {@code i / 64} is the i-th value of the sequence; use
+     * {@linkplain #getInputSeqLength()} for the number of values.
+     * 
+     * @return the packed input sequence, or null if an input sequence does not exist
+     */
+    public long[] getInputSeqWords() {
+        return seqWords == null ? null : seqWords.clone();
+    }
+
+    /**
+     * Utility method to store the given values as the packed input sequence.
+     * 
+     * @param inputSeq the values to store, or null to remove the input sequence
+     */
+    private void packInputSeq(int[] inputSeq) {
+        if(inputSeq == null) {
+            seqWords = null;
+            seqLength = 0;
+            return;
+        }
+
+        seqWords = new long[(inputSeq.length + 63) >>> 6];
+        seqLength = inputSeq.length;
+        for(int i = 0; i < inputSeq.length; i++)
+            if(inputSeq[i] != 0)
+                seqWords[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * Sets a stimulus source for this input variable node.
+     * <p>
+     * The values of this node are then pulled from the source, one per update, in place
+     * of the input sequence. The input sequence of this node is replaced.
+     * <p>
+     * Only sources that are {@code Serializable} are kept when the circuit is saved; other
+     * sources need to be set again after loading. Sources streaming from a stimulus file are
+     * saved as the path of the file, which is opened again when the circuit is loaded.
+     * 
+     * @param stimulusSource the new source of values, or null to remove the current one
+     */
+    public void setStimulusSource(CSStimulusSource stimulusSource) {
+        this.stimulusSource = stimulusSource;
+        seqWords = null;
+        seqLength = 0;
         currentIndex = 0;
     }
 
+    /**
+     * Gets the stimulus source of this input variable node.
+     * 
+     * @return the source of values of this node, or null if the input sequence is used
+     */
+    public CSStimulusSource getStimulusSource() {
+        return stimulusSource;
+    }
+
     /**
      * Gets a string representation of this input variable node's input sequence.
      * <p>
      * The string is surrounded by square brackets ("[" and "]"), with each integer separated by ", ".
-     * If an input sequence does not exist, then "null" is returned.
+     * If an input sequence does not exist, then "null" is returned. For nodes with a stimulus
+     * source, the brackets contain the description of the source and its number of values instead.
      * 
      * @return a string representation of the input sequence
      */
     public String getInputSeq() {
-        return Arrays.toString(inputSeq);
+        if(stimulusSource != null)
+            return "[" + stimulusSource.getDescription() + ", "
+                + (stimulusSource.getLength() == CSStimulusGenerator.UNBOUNDED ? "unbounded" : stimulusSource.getLength() + " values") + "]";
+        if(seqWords == null)
+            return "null";
+
+        StringBuilder result = new StringBuilder(seqLength * 3 + 2);
+        result.append('[');
+        for(int i = 0; i < seqLength; i++) {
+            if(i > 0)
+                result.append(", ");
+            result.append((seqWords[i >>> 6] >>> i) & 1);
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * Returns whether or not this input variable node has values to be updated with.
+     * 
+     * @return true if this node has an input sequence or a stimulus source, false otherwise
+     */
+    public boolean hasInputSeq() {
+        return seqWords != null || stimulusSource != null;
     }
 
     /**
      * Gets the number of integers within this input variable node's input sequence.
+     * <p>
+     * For nodes with a stimulus source, this is the number of values of the source,
+     * limited to {@code Integer.MAX_VALUE}.
      * 
      * @return the size of the input sequence
      */
     public int getInputSeqLength() {
-        if(inputSeq == null)
-            return 0;
+        return (int)Math.min(getStimulusLength(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the number of values this input variable node can be updated with.
+     * 
+     * @return the length of the input sequence or stimulus source
+     */
+    public long getStimulusLength() {
+        if(stimulusSource != null)
+            return stimulusSource.getLength();
         else
-            return inputSeq.length;
+            return seqLength;
+    }
+
+    /**
+     * Gets the position of this input variable node within its input sequence.
+     * <p>
+     * The position is the index of the value to be used by the next update, which
+     * is also the number of updates since the last reset.
+     * 
+     * @return the current position within the input sequence
+     */
+    long getSeqPosition() {
+        return currentIndex;
+    }
+
+    /**
+     * Sets the position of this input variable node within its input sequence.
+     * <p>
+     * This is used to restore a previously recorded state of the circuit; the value
+     * of this node is not changed.
+     * 
+     * @param position the index of the value to be used by the next update
+     */
+    void setSeqPosition(long position) {
+        currentIndex = Math.min(position, getStimulusLength());
     }
 
     /**
@@ -111,11 +291,60 @@ public class InputVariableNode extends CSNode {
      * with {@linkplain #resetValue()}.
      */
     public void updateValue() {
-        if(inputSeq == null || currentIndex == inputSeq.length)
+        if(stimulusSource != null) {
+            if(currentIndex == stimulusSource.getLength())
+                value = 0;
+            else
+                value = (stimulusSource.getValue(currentIndex++) == 0 ? 0 : 1);
+        } else if(seqWords == null || currentIndex == seqLength)
             value = 0;
         else {
-            value = (inputSeq[currentIndex] == 0 ? 0 : 1);
+            value = (int)(seqWords[(int)(currentIndex >>> 6)] >>> currentIndex) & 1;
             currentIndex++;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes this input variable node to a save file.
+     * <p>
+     * The input sequence is saved in its packed form. Stimulus sources that cannot be
+     * saved are left out.
+     * 
+     * @param out the stream to write to
+     * @throws IOException if an error occurred when writing
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+
+        fields.put("inputSeq", null);
+        fields.put("seqWords", seqWords);
+        fields.put("seqLength", seqLength);
+        fields.put("currentIndex", (int)Math.min(currentIndex, Integer.MAX_VALUE));
+        fields.put("stimulusSource", stimulusSource instanceof Serializable ? stimulusSource : null);
+        out.writeFields();
+    }
+
+    /**
+     * Reads this input variable node from a save file.
+     * 
+     * @param in the stream to read from
+     * @throws IOException if an error occurred when reading
+     * @throws ClassNotFoundException if the class of a saved stimulus source could not be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        int[] inputSeq = (int[])fields.get("inputSeq", null);
+
+        // older save files hold the unpacked sequence
+        if(inputSeq != null)
+            packInputSeq(inputSeq);
+        else {
+            seqWords = (long[])fields.get("seqWords", null);
+            seqLength = fields.get("seqLength", 0);
+            if(seqWords != null && (seqLength < 0 || seqWords.length < ((seqLength + 63L) >>> 6)))
+                throw new InvalidObjectException("Invalid packed input sequence length " + seqLength);
+        }
+        currentIndex = fields.get("currentIndex", 0);
+        stimulusSource = (CSStimulusSource)fields.get("stimulusSource", null);
+    }
+}
@@ -29,6 +29,7 @@ public class Inverter extends CSNode {
     public Inverter(String name, CSNode inputNode) {
         super(name, "INVERT");
         this.inputNode = inputNode;
+        delay = 1;
     }
 
     /**
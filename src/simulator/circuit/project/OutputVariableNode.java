@@ -29,6 +29,15 @@ public class OutputVariableNode extends CSNode implements VariableInput {
         super(name, "OUTPUT");
     }
 
+    /**
+     * Gets a reference to the node that this output variable node depends on.
+     * 
+     * @return the input node of this output variable node, or null if it does not exist
+     */
+    public CSNode getInputNode() {
+        return inputNode;
+    }
+
     /**
      * Adds a new input node for this output variable node.
      * <p>